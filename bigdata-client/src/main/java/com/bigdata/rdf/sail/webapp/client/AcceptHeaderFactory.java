@@ -221,13 +221,16 @@ public class AcceptHeaderFactory {
      */
     public static String getDefaultSolutionsAcceptHeader() {
        
+        // Note: Forces the registration of the format.
+        final TupleQueryResultFormat compactBinary = BigdataBinaryResultsFormat.FORMAT;
+
+        final TupleQueryResultParserRegistry registry = TupleQueryResultParserRegistry
+                .getInstance();
+
         // Copy into a Set.
         final Set<TupleQueryResultFormat> values = new LinkedHashSet<TupleQueryResultFormat>(
                 TupleQueryResultFormat.values());
         
-        final TupleQueryResultParserRegistry registry = TupleQueryResultParserRegistry
-                .getInstance();
-        
         final Iterator<TupleQueryResultFormat> itr = values.iterator();
 
         while (itr.hasNext()) {
@@ -249,8 +252,13 @@ public class AcceptHeaderFactory {
 
         }
         
+        /*
+         * Prefer the compact binary format when its parser is available since
+         * it is both smaller and cheaper to parse.
+         */
         final List<String> list2 = AcceptHeaderFactory.getAcceptParams(values,
-                TupleQueryResultFormat.BINARY);
+                values.contains(compactBinary) ? compactBinary
+                        : TupleQueryResultFormat.BINARY);
 
         return toString(list2);
         
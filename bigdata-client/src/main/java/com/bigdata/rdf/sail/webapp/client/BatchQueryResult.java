@@ -0,0 +1,113 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp.client;
+
+import org.openrdf.query.TupleQueryResult;
+
+/**
+ * Class representing the result of a batch of SPARQL SELECT and ASK queries
+ * evaluated in one round trip against the REST API. The results are fully
+ * materialized and are reported in the same order as the queries in the
+ * batch.
+ * 
+ * @see RemoteRepository#batchQuery(String...)
+ */
+public class BatchQueryResult {
+
+    /**
+     * The {@link TupleQueryResult} for each SELECT query and the
+     * {@link Boolean} for each ASK query.
+     */
+    private final Object[] results;
+
+    BatchQueryResult(final Object[] results) {
+
+        if (results == null)
+            throw new IllegalArgumentException();
+
+        this.results = results;
+
+    }
+
+    /**
+     * The #of queries in the batch.
+     */
+    public int size() {
+
+        return results.length;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the query at that index was an ASK query.
+     * 
+     * @param index
+     *            The index of the query in the batch.
+     */
+    public boolean isBooleanResult(final int index) {
+
+        return results[index] instanceof Boolean;
+
+    }
+
+    /**
+     * Return the solutions for a SELECT query.
+     * 
+     * @param index
+     *            The index of the query in the batch.
+     * 
+     * @throws IllegalStateException
+     *             if the query at that index was not a SELECT query.
+     */
+    public TupleQueryResult getTupleQueryResult(final int index) {
+
+        if (isBooleanResult(index))
+            throw new IllegalStateException("Not a SELECT query: index="
+                    + index);
+
+        return (TupleQueryResult) results[index];
+
+    }
+
+    /**
+     * Return the result of an ASK query.
+     * 
+     * @param index
+     *            The index of the query in the batch.
+     * 
+     * @throws IllegalStateException
+     *             if the query at that index was not an ASK query.
+     */
+    public boolean getBooleanResult(final int index) {
+
+        if (!isBooleanResult(index))
+            throw new IllegalStateException("Not an ASK query: index="
+                    + index);
+
+        return (Boolean) results[index];
+
+    }
+
+}
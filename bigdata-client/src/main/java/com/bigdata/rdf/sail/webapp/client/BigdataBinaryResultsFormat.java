@@ -0,0 +1,209 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp.client;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+/**
+ * A compact, dictionary encoded binary interchange format for SPARQL solution
+ * sets. Each RDF {@link org.openrdf.model.Value} is sent at most once per
+ * response and is then referenced from the solutions by a small integer. Inline
+ * numeric and boolean literals are sent in their native binary form rather than
+ * as text. The format is streamed: the parser delivers each solution as soon as
+ * its record has been read.
+ * <p>
+ * The layout of a response is:
+ * 
+ * <pre>
+ * response := MAGIC VERSION nvars varName* record* END
+ * record   := TERM kind term | ROW cell* | RESET
+ * term     := string                  (URI, BNODE, LITERAL)
+ *           | string string           (LANG_LITERAL: label, language)
+ *           | string termRef          (TYPED_LITERAL: label, datatype)
+ * cell     := 0                       (unbound)
+ *           | 1 inlineType value      (inline literal)
+ *           | termRef + 2             (reference to a term)
+ * </pre>
+ * 
+ * Each ROW has one cell per declared variable. Terms are numbered in the order
+ * in which they are declared, starting at zero. A RESET record clears the term
+ * dictionary so the writer can bound the memory demand on both sides for very
+ * large results. Integers (<code>nvars</code>, cells and term references) are
+ * written as unsigned variable length integers (7 bits per byte, low order
+ * bits first). A string is its UTF-8 byte length followed by those bytes.
+ */
+public class BigdataBinaryResultsFormat {
+
+    /**
+     * The MIME type for this format.
+     */
+    public static final String MIME_TYPE = "application/x-bigdata-binary-results";
+
+    /**
+     * The {@link TupleQueryResultFormat}. It is registered with
+     * {@link TupleQueryResultFormat#register(TupleQueryResultFormat)} when
+     * this class is loaded.
+     */
+    public static final TupleQueryResultFormat FORMAT;
+
+    static {
+
+        FORMAT = new TupleQueryResultFormat("BIGDATA-BINARY",
+                Arrays.asList(MIME_TYPE), null/* charset */,
+                Arrays.asList("bdbr"));
+
+        TupleQueryResultFormat.register(FORMAT);
+
+    }
+
+    /**
+     * The magic bytes at the start of a response.
+     */
+    public static final byte[] MAGIC = new byte[] { 'B', 'D', 'B', 'R' };
+
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /*
+     * Record types.
+     */
+    public static final byte END = 0;
+    public static final byte TERM = 1;
+    public static final byte ROW = 2;
+    public static final byte RESET = 3;
+
+    /*
+     * Term kinds.
+     */
+    public static final byte URI = 1;
+    public static final byte BNODE = 2;
+    public static final byte LITERAL = 3;
+    public static final byte LANG_LITERAL = 4;
+    public static final byte TYPED_LITERAL = 5;
+
+    /*
+     * Cells.
+     */
+    public static final int UNBOUND = 0;
+    public static final int INLINE = 1;
+    public static final int FIRST_TERM_REF = 2;
+
+    /*
+     * Inline literal types.
+     */
+    public static final byte XSD_BOOLEAN = 1;
+    public static final byte XSD_BYTE = 2;
+    public static final byte XSD_SHORT = 3;
+    public static final byte XSD_INT = 4;
+    public static final byte XSD_LONG = 5;
+    public static final byte XSD_FLOAT = 6;
+    public static final byte XSD_DOUBLE = 7;
+    /** An <code>xsd:integer</code> whose value fits in a signed long. */
+    public static final byte XSD_INTEGER = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Write an unsigned variable length integer.
+     */
+    public static void writeUnsigned(final DataOutput out, int v)
+            throws IOException {
+
+        if (v < 0)
+            throw new IllegalArgumentException();
+
+        while ((v & ~0x7F) != 0) {
+
+            out.writeByte((v & 0x7F) | 0x80);
+
+            v >>>= 7;
+
+        }
+
+        out.writeByte(v);
+
+    }
+
+    /**
+     * Read an unsigned variable length integer.
+     */
+    public static int readUnsigned(final DataInput in) throws IOException {
+
+        int v = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+
+            final int b = in.readUnsignedByte();
+
+            v |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return v;
+
+        }
+
+        throw new IOException("Malformed variable length integer");
+
+    }
+
+    /**
+     * Write a string as its UTF-8 byte length followed by those bytes.
+     */
+    public static void writeString(final DataOutput out, final String s)
+            throws IOException {
+
+        final byte[] b = s.getBytes(UTF8);
+
+        writeUnsigned(out, b.length);
+
+        out.write(b);
+
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     */
+    public static String readString(final DataInput in) throws IOException {
+
+        final byte[] b = new byte[readUnsigned(in)];
+
+        in.readFully(b);
+
+        return new String(b, UTF8);
+
+    }
+
+    private BigdataBinaryResultsFormat() {
+    }
+
+}
@@ -0,0 +1,246 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp.client;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.QueryResultHandlerException;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.resultio.QueryResultParseException;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultParserBase;
+
+/**
+ * Parser for the {@link BigdataBinaryResultsFormat}.
+ */
+public class BigdataBinaryResultsParser extends TupleQueryResultParserBase {
+
+    public BigdataBinaryResultsParser() {
+        super();
+    }
+
+    public BigdataBinaryResultsParser(final ValueFactory valueFactory) {
+        super(valueFactory);
+    }
+
+    @Override
+    public TupleQueryResultFormat getTupleQueryResultFormat() {
+
+        return BigdataBinaryResultsFormat.FORMAT;
+
+    }
+
+    @Override
+    public void parseQueryResult(final InputStream is) throws IOException,
+            QueryResultParseException, QueryResultHandlerException {
+
+        doParse(is);
+
+    }
+
+    /**
+     * @deprecated Use {@link #parseQueryResult(InputStream)}.
+     */
+    @Deprecated
+    @Override
+    public void parse(final InputStream is) throws IOException,
+            QueryResultParseException, TupleQueryResultHandlerException {
+
+        doParse(is);
+
+    }
+
+    private void doParse(final InputStream is) throws IOException,
+            QueryResultParseException, TupleQueryResultHandlerException {
+
+        final DataInputStream in = new DataInputStream(
+                is instanceof BufferedInputStream ? is
+                        : new BufferedInputStream(is));
+
+        final byte[] magic = new byte[BigdataBinaryResultsFormat.MAGIC.length];
+
+        in.readFully(magic);
+
+        if (!Arrays.equals(magic, BigdataBinaryResultsFormat.MAGIC))
+            throw new QueryResultParseException("Bad magic: "
+                    + Arrays.toString(magic));
+
+        final int version = in.readInt();
+
+        if (version != BigdataBinaryResultsFormat.VERSION)
+            throw new QueryResultParseException("Unknown version: " + version);
+
+        final int nvars = BigdataBinaryResultsFormat.readUnsigned(in);
+
+        final List<String> names = new ArrayList<String>(nvars);
+
+        for (int i = 0; i < nvars; i++) {
+
+            names.add(BigdataBinaryResultsFormat.readString(in));
+
+        }
+
+        if (handler != null)
+            handler.startQueryResult(names);
+
+        // The term dictionary.
+        final List<Value> terms = new ArrayList<Value>();
+
+        while (true) {
+
+            final byte recordType = in.readByte();
+
+            switch (recordType) {
+            case BigdataBinaryResultsFormat.END:
+                if (handler != null)
+                    handler.endQueryResult();
+                return;
+            case BigdataBinaryResultsFormat.TERM:
+                terms.add(readTerm(in, terms));
+                break;
+            case BigdataBinaryResultsFormat.RESET:
+                terms.clear();
+                break;
+            case BigdataBinaryResultsFormat.ROW: {
+                final Value[] values = new Value[nvars];
+                for (int i = 0; i < nvars; i++) {
+                    values[i] = readCell(in, terms);
+                }
+                if (handler != null)
+                    handler.handleSolution(new ListBindingSet(names, values));
+                break;
+            }
+            default:
+                throw new QueryResultParseException("Unknown record type: "
+                        + recordType);
+            }
+
+        }
+
+    }
+
+    private Value readTerm(final DataInputStream in, final List<Value> terms)
+            throws IOException, QueryResultParseException {
+
+        final byte kind = in.readByte();
+
+        switch (kind) {
+        case BigdataBinaryResultsFormat.URI:
+            return valueFactory.createURI(BigdataBinaryResultsFormat
+                    .readString(in));
+        case BigdataBinaryResultsFormat.BNODE:
+            return valueFactory.createBNode(BigdataBinaryResultsFormat
+                    .readString(in));
+        case BigdataBinaryResultsFormat.LITERAL:
+            return valueFactory.createLiteral(BigdataBinaryResultsFormat
+                    .readString(in));
+        case BigdataBinaryResultsFormat.LANG_LITERAL: {
+            final String label = BigdataBinaryResultsFormat.readString(in);
+            final String lang = BigdataBinaryResultsFormat.readString(in);
+            return valueFactory.createLiteral(label, lang);
+        }
+        case BigdataBinaryResultsFormat.TYPED_LITERAL: {
+            final String label = BigdataBinaryResultsFormat.readString(in);
+            final Value datatype = getTerm(terms,
+                    BigdataBinaryResultsFormat.readUnsigned(in));
+            if (!(datatype instanceof URI))
+                throw new QueryResultParseException("Datatype not a URI: "
+                        + datatype);
+            return valueFactory.createLiteral(label, (URI) datatype);
+        }
+        default:
+            throw new QueryResultParseException("Unknown term kind: " + kind);
+        }
+
+    }
+
+    private Value readCell(final DataInputStream in, final List<Value> terms)
+            throws IOException, QueryResultParseException {
+
+        final int cell = BigdataBinaryResultsFormat.readUnsigned(in);
+
+        switch (cell) {
+        case BigdataBinaryResultsFormat.UNBOUND:
+            return null;
+        case BigdataBinaryResultsFormat.INLINE:
+            return readInline(in);
+        default:
+            return getTerm(terms, cell
+                    - BigdataBinaryResultsFormat.FIRST_TERM_REF);
+        }
+
+    }
+
+    private Value readInline(final DataInputStream in) throws IOException,
+            QueryResultParseException {
+
+        final byte type = in.readByte();
+
+        switch (type) {
+        case BigdataBinaryResultsFormat.XSD_BOOLEAN:
+            return valueFactory.createLiteral(in.readBoolean());
+        case BigdataBinaryResultsFormat.XSD_BYTE:
+            return valueFactory.createLiteral(in.readByte());
+        case BigdataBinaryResultsFormat.XSD_SHORT:
+            return valueFactory.createLiteral(in.readShort());
+        case BigdataBinaryResultsFormat.XSD_INT:
+            return valueFactory.createLiteral(in.readInt());
+        case BigdataBinaryResultsFormat.XSD_LONG:
+            return valueFactory.createLiteral(in.readLong());
+        case BigdataBinaryResultsFormat.XSD_FLOAT:
+            return valueFactory.createLiteral(in.readFloat());
+        case BigdataBinaryResultsFormat.XSD_DOUBLE:
+            return valueFactory.createLiteral(in.readDouble());
+        case BigdataBinaryResultsFormat.XSD_INTEGER:
+            return valueFactory.createLiteral(Long.toString(in.readLong()),
+                    XMLSchema.INTEGER);
+        default:
+            throw new QueryResultParseException("Unknown inline type: " + type);
+        }
+
+    }
+
+    private static Value getTerm(final List<Value> terms, final int id)
+            throws QueryResultParseException {
+
+        if (id < 0 || id >= terms.size())
+            throw new QueryResultParseException("Undefined term: " + id);
+
+        return terms.get(id);
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp.client;
+
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultParser;
+import org.openrdf.query.resultio.TupleQueryResultParserFactory;
+
+/**
+ * A {@link TupleQueryResultParserFactory} for the
+ * {@link BigdataBinaryResultsFormat}.
+ */
+public class BigdataBinaryResultsParserFactory implements
+        TupleQueryResultParserFactory {
+
+    /**
+     * Returns {@link BigdataBinaryResultsFormat#FORMAT}.
+     */
+    @Override
+    public TupleQueryResultFormat getTupleQueryResultFormat() {
+        return BigdataBinaryResultsFormat.FORMAT;
+    }
+
+    /**
+     * Returns a new instance of {@link BigdataBinaryResultsParser}.
+     */
+    @Override
+    public TupleQueryResultParser getParser() {
+        return new BigdataBinaryResultsParser();
+    }
+
+}
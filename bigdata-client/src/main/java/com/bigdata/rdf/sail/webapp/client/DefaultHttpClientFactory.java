@@ -105,6 +105,45 @@ public final class DefaultHttpClientFactory implements IHttpClientFactory {
 		 */
 		public static final int DEFAULT_REQUEST_BUFFER_SIZE = 16 * 1024;
 
+		/**
+		 * The name of the system property that may be used to specify the
+		 * maximum #of connections that will be pooled for each destination
+		 * (default {@value #DEFAULT_MAX_CONNECTIONS_PER_DESTINATION}).
+		 * <p>
+		 * Connections are persistent (HTTP/1.1 keep-alive) and are reused by
+		 * subsequent requests. An application that issues many small
+		 * concurrent queries should size this to its concurrency so requests
+		 * do not wait for a connection. See also
+		 * {@link RemoteRepository#batchQuery(String...)}.
+		 */
+		public static final String MAX_CONNECTIONS_PER_DESTINATION = DefaultHttpClientFactory.class
+				.getName() + ".maxConnectionsPerDestination";
+
+		/**
+		 * The default maximum #of pooled connections per destination (@value
+		 * {@value #DEFAULT_MAX_CONNECTIONS_PER_DESTINATION}).
+		 * <p>
+		 * Note: This is the default for the jetty platform.
+		 */
+		public static final int DEFAULT_MAX_CONNECTIONS_PER_DESTINATION = 64;
+
+		/**
+		 * The name of the system property that may be used to specify the
+		 * maximum #of requests that may be queued for each destination while
+		 * waiting for a pooled connection (default
+		 * {@value #DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION}).
+		 */
+		public static final String MAX_REQUESTS_QUEUED_PER_DESTINATION = DefaultHttpClientFactory.class
+				.getName() + ".maxRequestsQueuedPerDestination";
+
+		/**
+		 * The default maximum #of queued requests per destination (@value
+		 * {@value #DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION}).
+		 * <p>
+		 * Note: This is the default for the jetty platform.
+		 */
+		public static final int DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION = 1024;
+
 	}
 
 	@Override
@@ -190,6 +229,30 @@ public final class DefaultHttpClientFactory implements IHttpClientFactory {
 
 			}
 
+			/*
+			 * Configure the connection pool.
+			 */
+			{
+				final int maxConnections = Integer.parseInt(System.getProperty(
+						Options.MAX_CONNECTIONS_PER_DESTINATION,
+						Integer.toString(Options.DEFAULT_MAX_CONNECTIONS_PER_DESTINATION)));
+
+				final int maxQueued = Integer.parseInt(System.getProperty(
+						Options.MAX_REQUESTS_QUEUED_PER_DESTINATION,
+						Integer.toString(Options.DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION)));
+
+				if (log.isInfoEnabled()) {
+					log.info(Options.MAX_CONNECTIONS_PER_DESTINATION + "="
+							+ maxConnections);
+					log.info(Options.MAX_REQUESTS_QUEUED_PER_DESTINATION + "="
+							+ maxQueued);
+				}
+
+				cm.setMaxConnectionsPerDestination(maxConnections);
+
+				cm.setMaxRequestsQueuedPerDestination(maxQueued);
+			}
+
 			// Start the client.
 			cm.start();
 
@@ -671,6 +671,54 @@ public class RemoteRepository extends RemoteRepositoryBase {
     }
     
 
+    /**
+     * Evaluate a batch of SPARQL SELECT and ASK queries in one round trip.
+     * This avoids the per-request connection and header overhead when an
+     * application issues many small queries. The queries are evaluated in the
+     * given order against the same commit point. The solutions are fully
+     * materialized, so this is not appropriate for queries with large
+     * results.
+     * 
+     * @param queries
+     *            The SPARQL SELECT and ASK queries.
+     * 
+     * @return The results in the same order as the queries.
+     */
+    public BatchQueryResult batchQuery(final String... queries)
+            throws Exception {
+
+        if (queries == null || queries.length == 0)
+            throw new IllegalArgumentException();
+
+        final UUID uuid = UUID.randomUUID();
+
+        final ConnectOptions opts = mgr.newQueryConnectOptions(
+                sparqlEndpointURL, uuid, tx);
+
+        // Note: A long batch is sent as a form entity by doConnect().
+        opts.method = "POST";
+
+        opts.addRequestParam("batch");
+        opts.addRequestParam("query", queries);
+
+        JettyResponseListener resp = null;
+        try {
+
+            opts.setAcceptHeader(ConnectOptions.MIME_APPLICATION_JSON);
+
+            checkResponseCode(resp = doConnect(opts));
+
+            return batchResults(resp);
+
+        } finally {
+
+            if (resp != null)
+                resp.abort();
+
+        }
+
+    }
+
     /**
      * Adds RDF data to the remote repository.
      * 
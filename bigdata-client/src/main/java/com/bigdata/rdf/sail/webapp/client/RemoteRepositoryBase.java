@@ -23,11 +23,13 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 */
 package com.bigdata.rdf.sail.webapp.client;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -41,6 +43,9 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.resultio.BooleanQueryResultFormat;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.RDFWriterFactory;
@@ -48,6 +53,11 @@ import org.openrdf.rio.RDFWriterRegistry;
 import org.xml.sax.Attributes;
 import org.xml.sax.ext.DefaultHandler2;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 /**
  * Base class providing some common functionality.
  * 
@@ -405,6 +415,115 @@ public class RemoteRepositoryBase extends RemoteRepositoryDecls {
 
    }
 
+   /**
+    * Extracts the results of a batch of SPARQL SELECT and ASK queries. The
+    * response is a JSON array whose elements are the SPARQL JSON results for
+    * each query in the batch.
+    * 
+    * @param response
+    *            The connection from which to read the results.
+    * 
+    * @return The results.
+    * 
+    * @throws Exception
+    *             If anything goes wrong.
+    */
+   static protected BatchQueryResult batchResults(
+           final JettyResponseListener response) throws Exception {
+
+       try {
+
+           final String contentType = response.getContentType();
+
+           if (!contentType.startsWith(IMimeTypes.MIME_APPLICATION_JSON)) {
+
+               throw new RuntimeException("Expecting Content-Type of "
+                       + IMimeTypes.MIME_APPLICATION_JSON + ", not "
+                       + contentType);
+
+           }
+
+           final JsonFactory factory = new JsonFactory();
+
+           final JsonParser parser = factory.createParser(response
+                   .getInputStream());
+
+           if (parser.nextToken() != JsonToken.START_ARRAY)
+               throw new IOException("Expecting a JSON array");
+
+           final List<Object> results = new LinkedList<Object>();
+
+           while (parser.nextToken() == JsonToken.START_OBJECT) {
+
+               // Copy the element for the SPARQL JSON results parsers.
+               final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+               final JsonGenerator generator = factory.createGenerator(baos);
+               generator.copyCurrentStructure(parser);
+               generator.close();
+
+               final byte[] a = baos.toByteArray();
+
+               if (isBooleanResult(factory, a)) {
+
+                   results.add(QueryResultIO.parse(new ByteArrayInputStream(
+                           a), BooleanQueryResultFormat.JSON));
+
+               } else {
+
+                   results.add(QueryResultIO.parse(new ByteArrayInputStream(
+                           a), TupleQueryResultFormat.JSON));
+
+               }
+
+           }
+
+           // done.
+           return new BatchQueryResult(results.toArray());
+
+       } finally {
+
+        if (response != null) {
+           response.abort();
+        }
+
+       }
+
+   }
+
+   /**
+    * Return <code>true</code> iff the SPARQL JSON results document has a
+    * top-level <code>boolean</code> member (the result of an ASK query).
+    */
+   static private boolean isBooleanResult(final JsonFactory factory,
+           final byte[] a) throws IOException {
+
+       final JsonParser parser = factory.createParser(a);
+
+       try {
+
+           parser.nextToken(); // START_OBJECT
+
+           while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+               if ("boolean".equals(parser.getCurrentName()))
+                   return true;
+
+               // skip the value of the member.
+               parser.nextToken();
+               parser.skipChildren();
+
+           }
+
+           return false;
+
+       } finally {
+
+           parser.close();
+
+       }
+
+   }
+
    /**
     * Convert an array of URIs to an array of URI strings.
     */
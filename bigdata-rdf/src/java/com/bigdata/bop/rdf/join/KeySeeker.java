@@ -0,0 +1,123 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.rdf.join;
+
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.IRangeQuery;
+import com.bigdata.btree.ITuple;
+import com.bigdata.btree.ITupleCursor;
+import com.bigdata.btree.ITupleIterator;
+
+/**
+ * A forward-only view of a key-range of an index which can seek to a key. An
+ * {@link ITupleCursor} is used when the index supports one, so a seek is a
+ * single descent of the B+Tree (or a move within the current leaf). Otherwise
+ * a new range iterator is opened for each seek.
+ */
+class KeySeeker {
+
+    private final IIndex ndx;
+
+    private final byte[] toKey;
+
+    private ITupleIterator<?> itr;
+
+    private final boolean cursor;
+
+    /**
+     * @param ndx
+     *            The index.
+     * @param fromKey
+     *            The inclusive lower bound (optional).
+     * @param toKey
+     *            The exclusive upper bound (optional).
+     */
+    KeySeeker(final IIndex ndx, final byte[] fromKey, final byte[] toKey) {
+
+        this.ndx = ndx;
+
+        this.toKey = toKey;
+
+        this.itr = ndx.rangeIterator(fromKey, toKey, 0/* capacity */,
+                IRangeQuery.KEYS | IRangeQuery.CURSOR, null/* filter */);
+
+        this.cursor = itr instanceof ITupleCursor;
+
+    }
+
+    /**
+     * Return the key of the next tuple -or- <code>null</code> if there are no
+     * more tuples.
+     */
+    byte[] next() {
+
+        return itr.hasNext() ? itr.next().getKey() : null;
+
+    }
+
+    /**
+     * Return the key of the first tuple whose key is GTE the given key -or-
+     * <code>null</code> if there is no such tuple.
+     */
+    byte[] seek(final byte[] key) {
+
+        if (cursor) {
+
+            final ITuple<?> t = ((ITupleCursor<?>) itr).seek(key);
+
+            if (t != null)
+                return t.getKey();
+
+        } else {
+
+            itr = ndx.rangeIterator(key, toKey, 0/* capacity */,
+                    IRangeQuery.KEYS, null/* filter */);
+
+        }
+
+        return next();
+
+    }
+
+    /**
+     * Return <code>true</code> iff the key begins with the prefix.
+     */
+    static boolean startsWith(final byte[] key, final byte[] prefix) {
+
+        if (key.length < prefix.length)
+            return false;
+
+        for (int k = 0; k < prefix.length; k++) {
+
+            if (key[k] != prefix[k])
+                return false;
+
+        }
+
+        return true;
+
+    }
+
+}
@@ -0,0 +1,570 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.rdf.join;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.btree.BytesUtil;
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.ITupleCursor;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.btree.keys.SuccessorUtil;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.SPOKeyOrder;
+import com.bigdata.rdf.spo.SPORelation;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsynchronizedArrayBuffer;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * SubjectStarJoin(left)[predicates={...}]
+ * <p>
+ * Join of the source solutions with a subject-star: a set of triple patterns
+ * which share the same variable in the subject position and have constants in
+ * the predicate position. Rather than running one pipeline join per triple
+ * pattern (with one index probe per intermediate solution per join), the star
+ * is evaluated as an n-way merge join ordered by the subject.
+ * <ul>
+ * <li>Each triple pattern having a constant (or bound) object is a POS range
+ * scan whose keys are ordered by subject. These scans are intersected using
+ * leap-frog seeks on {@link ITupleCursor}s, so subjects which are missing from
+ * any of the scans are skipped without being visited.</li>
+ * <li>Each triple pattern having an unbound object is read from a single
+ * forward {@link ITupleCursor} over the SPO index. Since the subjects are
+ * visited in order and the predicates are probed in key order for each
+ * subject, that cursor only ever seeks forward.</li>
+ * </ul>
+ * The solutions are produced in subject order for each source solution. A
+ * source solution which binds the subject variable restricts the star to
+ * that subject.
+ * <p>
+ * Note: This operator is only used for the triple store mode and it reads
+ * directly on the SPO and POS indices. Access path filters are not applied,
+ * so the query plan must not use this operator for triple patterns which
+ * require them (e.g., to exclude inferences or history).
+ * 
+ * @see SPOKeyOrder#POS
+ * @see SPOKeyOrder#SPO
+ */
+public class SubjectStarJoinOp extends PipelineOp {
+
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends PipelineOp.Annotations {
+
+        /**
+         * The triple patterns of the subject-star (required). Each triple
+         * pattern has the same variable in the subject position and a
+         * constant in the predicate position. At least one triple pattern
+         * must have a constant in the object position. The variables in the
+         * object positions must be distinct from each other and from the
+         * subject variable.
+         */
+        String PREDICATES = SubjectStarJoinOp.class.getName() + ".predicates";
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public SubjectStarJoinOp(final SubjectStarJoinOp op) {
+
+        super(op);
+
+    }
+
+    /**
+     * Shallow copy constructor.
+     * 
+     * @param args
+     * @param annotations
+     */
+    public SubjectStarJoinOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        final IPredicate<ISPO>[] preds = getPredicates();
+
+        if (preds.length < 2)
+            throw new IllegalArgumentException(Annotations.PREDICATES);
+
+        final IVariableOrConstant<?> s = preds[0].get(0);
+
+        if (!s.isVar())
+            throw new IllegalArgumentException(Annotations.PREDICATES);
+
+        final Set<IVariable<?>> vars = new HashSet<IVariable<?>>();
+
+        vars.add((IVariable<?>) s);
+
+        boolean constantObject = false;
+
+        for (IPredicate<ISPO> pred : preds) {
+
+            // Note: Variables are canonical.
+            if (s != pred.get(0) || !pred.get(1).isConstant())
+                throw new IllegalArgumentException(Annotations.PREDICATES);
+
+            if (pred.arity() > 3 && pred.get(3) != null)
+                throw new IllegalArgumentException(Annotations.PREDICATES);
+
+            final IVariableOrConstant<?> o = pred.get(2);
+
+            if (o.isConstant()) {
+
+                constantObject = true;
+
+            } else if (!vars.add((IVariable<?>) o)) {
+
+                throw new IllegalArgumentException(Annotations.PREDICATES);
+
+            }
+
+        }
+
+        if (!constantObject)
+            throw new IllegalArgumentException(Annotations.PREDICATES);
+
+    }
+
+    public SubjectStarJoinOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#PREDICATES
+     */
+    @SuppressWarnings("unchecked")
+    public IPredicate<ISPO>[] getPredicates() {
+
+        return (IPredicate<ISPO>[]) getRequiredProperty(Annotations.PREDICATES);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new SubjectStarJoinTask(this, context));
+
+    }
+
+    /**
+     * A triple pattern in the star whose object is not bound.
+     */
+    private static class Probe {
+
+        /** The encoded predicate. */
+        final byte[] p;
+
+        /** The variable in the object position. */
+        final IVariable<?> var;
+
+        Probe(final byte[] p, final IVariable<?> var) {
+            this.p = p;
+            this.var = var;
+        }
+
+    }
+
+    private static final Comparator<Probe> PROBE_ORDER = new Comparator<Probe>() {
+
+        @Override
+        public int compare(final Probe o1, final Probe o2) {
+
+            return BytesUtil.compareBytes(o1.p, o2.p);
+
+        }
+
+    };
+
+    /**
+     * Merge join of the source solutions with the subject-star.
+     */
+    static private class SubjectStarJoinTask implements Callable<Void> {
+
+        private final SubjectStarJoinOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final IPredicate<ISPO>[] preds;
+
+        @SuppressWarnings("rawtypes")
+        private final IVariable svar;
+
+        private final IIndex pos;
+
+        private final IIndex spo;
+
+        private final IKeyBuilder keyBuilder = KeyBuilder.newInstance();
+
+        SubjectStarJoinTask(final SubjectStarJoinOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.preds = op.getPredicates();
+
+            this.svar = (IVariable<?>) preds[0].get(0);
+
+            final SPORelation relation = (SPORelation) context
+                    .getRelation(preds[0]);
+
+            this.pos = relation.getIndex(SPOKeyOrder.POS);
+
+            this.spo = relation.getIndex(SPOKeyOrder.SPO);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> source = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            try {
+
+                final BOpStats stats = context.getStats();
+
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp = new UnsynchronizedArrayBuffer<IBindingSet>(
+                        sink, IBindingSet.class, op.getChunkCapacity());
+
+                while (source.hasNext()) {
+
+                    final IBindingSet[] chunk = source.next();
+
+                    stats.chunksIn.increment();
+
+                    stats.unitsIn.add(chunk.length);
+
+                    for (IBindingSet bset : chunk) {
+
+                        handleSolution(bset, tmp);
+
+                    }
+
+                }
+
+                tmp.flush();
+
+                sink.flush();
+
+                return null;
+
+            } finally {
+
+                sink.close();
+
+                source.close();
+
+            }
+
+        }
+
+        @SuppressWarnings("rawtypes")
+        private byte[] encode(final IV... ivs) {
+
+            keyBuilder.reset();
+
+            for (IV iv : ivs) {
+
+                IVUtility.encode(keyBuilder, iv);
+
+            }
+
+            return keyBuilder.getKey();
+
+        }
+
+        private static byte[] concat(final byte[] a, final byte[] b) {
+
+            final byte[] c = Arrays.copyOf(a, a.length + b.length);
+
+            System.arraycopy(b, 0, c, a.length, b.length);
+
+            return c;
+
+        }
+
+        /**
+         * Join a source solution with the star.
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void handleSolution(final IBindingSet bset,
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp) {
+
+            final IConstant<IV> sval = bset.get(svar);
+
+            final byte[] sBound = sval == null ? null : encode(sval.get());
+
+            /*
+             * Partition the triple patterns into the POS range scans (object
+             * is bound) and the SPO probes (object is not bound).
+             */
+            final List<byte[]> prefixes = new LinkedList<byte[]>();
+
+            final List<Probe> probes = new LinkedList<Probe>();
+
+            for (IPredicate<ISPO> pred : preds) {
+
+                final IV p = (IV) pred.get(1).get();
+
+                final IVariableOrConstant<IV> o = (IVariableOrConstant<IV>) pred
+                        .get(2);
+
+                final IConstant<IV> oval = o.isConstant() ? (IConstant<IV>) o
+                        : bset.get((IVariable<IV>) o);
+
+                if (oval != null) {
+
+                    prefixes.add(encode(p, oval.get()));
+
+                } else {
+
+                    probes.add(new Probe(encode(p), (IVariable<?>) o));
+
+                }
+
+            }
+
+            // Probe the predicates in key order.
+            final Probe[] a = probes.toArray(new Probe[probes.size()]);
+
+            Arrays.sort(a, PROBE_ORDER);
+
+            final int m = prefixes.size();
+
+            final byte[][] prefix = prefixes.toArray(new byte[m][]);
+
+            final KeySeeker[] streams = new KeySeeker[m];
+
+            for (int i = 0; i < m; i++) {
+
+                streams[i] = new KeySeeker(pos, prefix[i],
+                        SuccessorUtil.successor(prefix[i].clone()));
+
+            }
+
+            final KeySeeker spoSeeker = a.length == 0 ? null
+                    : new KeySeeker(spo, null/* fromKey */, null/* toKey */);
+
+            /*
+             * Leap-frog intersection of the POS range scans on the encoded
+             * subject (the key suffix after the bound predicate and object).
+             */
+            byte[] cand = sBound;
+
+            int agree = 0;
+
+            int i = 0;
+
+            if (cand == null) {
+
+                final byte[] key = streams[0].next();
+
+                if (key == null)
+                    return;
+
+                cand = subject(key, prefix[0]);
+
+                agree = 1;
+
+                i = 1 % m;
+
+            }
+
+            while (true) {
+
+                if (agree == m) {
+
+                    emit(bset, cand, a, spoSeeker, tmp);
+
+                    if (sBound != null)
+                        return;
+
+                    // Advance beyond the current subject.
+                    final byte[] key = streams[i].next();
+
+                    if (key == null)
+                        return;
+
+                    cand = subject(key, prefix[i]);
+
+                    agree = 1;
+
+                    i = (i + 1) % m;
+
+                    continue;
+
+                }
+
+                final byte[] key = streams[i].seek(concat(prefix[i], cand));
+
+                if (key == null)
+                    return;
+
+                final byte[] s = subject(key, prefix[i]);
+
+                if (BytesUtil.bytesEqual(s, cand)) {
+
+                    agree++;
+
+                } else {
+
+                    if (sBound != null)
+                        return;
+
+                    cand = s;
+
+                    agree = 1;
+
+                }
+
+                i = (i + 1) % m;
+
+            }
+
+        }
+
+        /**
+         * Return the encoded subject from a POS key.
+         */
+        private static byte[] subject(final byte[] key, final byte[] prefix) {
+
+            return Arrays.copyOfRange(key, prefix.length, key.length);
+
+        }
+
+        /**
+         * Output the solutions for a subject which is found in all of the POS
+         * range scans.
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void emit(final IBindingSet bset, final byte[] s,
+                final Probe[] probes, final KeySeeker spoSeeker,
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp) {
+
+            // The objects for each probe.
+            final IV[][] objects = new IV[probes.length][];
+
+            for (int j = 0; j < probes.length; j++) {
+
+                final byte[] prefix = concat(s, probes[j].p);
+
+                final List<IV> tmp2 = new LinkedList<IV>();
+
+                byte[] key = spoSeeker.seek(prefix);
+
+                while (key != null && KeySeeker.startsWith(key, prefix)) {
+
+                    tmp2.add(IVUtility.decodeFromOffset(key, prefix.length));
+
+                    key = spoSeeker.next();
+
+                }
+
+                if (tmp2.isEmpty()) {
+
+                    // No solutions for this subject.
+                    return;
+
+                }
+
+                objects[j] = tmp2.toArray(new IV[tmp2.size()]);
+
+            }
+
+            final Constant<IV> sconst = new Constant<IV>(IVUtility.decode(s));
+
+            // Output the cross product of the objects.
+            final int[] index = new int[probes.length];
+
+            while (true) {
+
+                final IBindingSet out = bset.clone();
+
+                out.set(svar, sconst);
+
+                for (int j = 0; j < probes.length; j++) {
+
+                    out.set(probes[j].var, new Constant<IV>(
+                            objects[j][index[j]]));
+
+                }
+
+                tmp.add(out);
+
+                // Next combination.
+                int j = probes.length - 1;
+
+                while (j >= 0 && ++index[j] == objects[j].length) {
+
+                    index[j] = 0;
+
+                    j--;
+
+                }
+
+                if (j < 0)
+                    return;
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,500 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.rdf.join;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstraint;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.join.JoinAnnotations;
+import com.bigdata.btree.BytesUtil;
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.ITupleCursor;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.SPO;
+import com.bigdata.rdf.spo.SPOKeyOrder;
+import com.bigdata.rdf.spo.SPORelation;
+import com.bigdata.relation.accesspath.IAccessPath;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsynchronizedArrayBuffer;
+import com.bigdata.striterator.IChunkedOrderedIterator;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * WideRowJoin(left)[predicate=(s p o)]
+ * <p>
+ * Join of the source solutions with a triple pattern whose subject is bound by
+ * those solutions, e.g., <code>?s ?p ?o</code> when retrieving all properties
+ * of the entities identified by a prior join or by the subjects of a DESCRIBE
+ * query. A {@link com.bigdata.bop.join.PipelineJoin} would issue one SPO range
+ * scan (and hence one descent of the B+Tree) per distinct subject. Instead,
+ * each chunk of source solutions is sorted by the encoded subject (and
+ * predicate, when that is also bound) and the SPO index is read in a single
+ * forward pass using {@link ITupleCursor#seek(byte[])} to skip from one
+ * subject to the next. Solutions having the same subject share one scan. The
+ * statements are joined as they are read from the cursor, so the statements
+ * for a subject are never buffered.
+ * <p>
+ * A source solution which does not bind the subject is joined using the
+ * normal access path for the as-bound triple pattern.
+ * <p>
+ * Note: This operator is only used for the triple store mode and it reads
+ * directly on the SPO index. Access path filters are not applied, so the
+ * query plan must not use this operator for triple patterns which require
+ * them (e.g., to exclude inferences or history).
+ * 
+ * @see SPOKeyOrder#SPO
+ */
+public class WideRowJoinOp extends PipelineOp {
+
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends PipelineOp.Annotations {
+
+        /**
+         * The triple pattern (required). The subject must be a variable and
+         * the context position must not be used. The join is optional iff the
+         * triple pattern is optional.
+         */
+        String PREDICATE = WideRowJoinOp.class.getName() + ".predicate";
+
+        /**
+         * Constraints to be applied to the join solutions (optional).
+         */
+        String CONSTRAINTS = JoinAnnotations.CONSTRAINTS;
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public WideRowJoinOp(final WideRowJoinOp op) {
+
+        super(op);
+
+    }
+
+    /**
+     * Shallow copy constructor.
+     * 
+     * @param args
+     * @param annotations
+     */
+    public WideRowJoinOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        final IPredicate<ISPO> pred = getPredicate();
+
+        if (!pred.get(0).isVar())
+            throw new IllegalArgumentException(Annotations.PREDICATE);
+
+        if (pred.arity() > 3 && pred.get(3) != null)
+            throw new IllegalArgumentException(Annotations.PREDICATE);
+
+    }
+
+    public WideRowJoinOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#PREDICATE
+     */
+    @SuppressWarnings("unchecked")
+    public IPredicate<ISPO> getPredicate() {
+
+        return (IPredicate<ISPO>) getRequiredProperty(Annotations.PREDICATE);
+
+    }
+
+    /**
+     * @see Annotations#CONSTRAINTS
+     */
+    public IConstraint[] constraints() {
+
+        return getProperty(Annotations.CONSTRAINTS, null/* defaultValue */);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new WideRowJoinTask(this, context));
+
+    }
+
+    /**
+     * A source solution together with the as-bound triple pattern and the key
+     * prefix for its SPO range scan.
+     */
+    private static class Row {
+
+        final IBindingSet bset;
+
+        final IPredicate<ISPO> pred;
+
+        final byte[] prefix;
+
+        Row(final IBindingSet bset, final IPredicate<ISPO> pred,
+                final byte[] prefix) {
+            this.bset = bset;
+            this.pred = pred;
+            this.prefix = prefix;
+        }
+
+    }
+
+    private static final Comparator<Row> ROW_ORDER = new Comparator<Row>() {
+
+        @Override
+        public int compare(final Row o1, final Row o2) {
+
+            return BytesUtil.compareBytes(o1.prefix, o2.prefix);
+
+        }
+
+    };
+
+    /**
+     * Sort-merge join of each chunk of source solutions against the SPO
+     * index.
+     */
+    static private class WideRowJoinTask implements Callable<Void> {
+
+        private final WideRowJoinOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final IPredicate<ISPO> pred;
+
+        private final IConstraint[] constraints;
+
+        private final boolean optional;
+
+        private final SPORelation relation;
+
+        private final IIndex spo;
+
+        private final IKeyBuilder keyBuilder = KeyBuilder.newInstance();
+
+        WideRowJoinTask(final WideRowJoinOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.pred = op.getPredicate();
+
+            this.constraints = op.constraints();
+
+            this.optional = pred.isOptional();
+
+            this.relation = (SPORelation) context.getRelation(pred);
+
+            this.spo = relation.getIndex(SPOKeyOrder.SPO);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> source = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            try {
+
+                final BOpStats stats = context.getStats();
+
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp = new UnsynchronizedArrayBuffer<IBindingSet>(
+                        sink, IBindingSet.class, op.getChunkCapacity());
+
+                while (source.hasNext()) {
+
+                    final IBindingSet[] chunk = source.next();
+
+                    stats.chunksIn.increment();
+
+                    stats.unitsIn.add(chunk.length);
+
+                    handleChunk(chunk, tmp);
+
+                }
+
+                tmp.flush();
+
+                sink.flush();
+
+                return null;
+
+            } finally {
+
+                sink.close();
+
+                source.close();
+
+            }
+
+        }
+
+        /**
+         * Join a chunk of source solutions. The solutions which bind the
+         * subject are ordered by their key prefix and then joined in a single
+         * forward pass over the SPO index.
+         */
+        @SuppressWarnings("unchecked")
+        private void handleChunk(final IBindingSet[] chunk,
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp) {
+
+            final Row[] rows = new Row[chunk.length];
+
+            int n = 0;
+
+            for (IBindingSet bset : chunk) {
+
+                final IPredicate<ISPO> asBound = pred.asBound(bset);
+
+                final IVariableOrConstant<?> s = asBound.get(0);
+
+                if (s.isVar()) {
+
+                    // The subject is not bound : use the normal access path.
+                    joinAccessPath(bset, asBound, tmp);
+
+                    continue;
+
+                }
+
+                final IVariableOrConstant<?> p = asBound.get(1);
+
+                rows[n++] = new Row(bset, asBound,
+                        p.isConstant() ? encode((IV<?, ?>) s.get(),
+                                (IV<?, ?>) p.get()) : encode((IV<?, ?>) s
+                                .get()));
+
+            }
+
+            if (n == 0)
+                return;
+
+            Arrays.sort(rows, 0, n, ROW_ORDER);
+
+            final KeySeeker seeker = new KeySeeker(spo, null/* fromKey */,
+                    null/* toKey */);
+
+            int i = 0;
+
+            while (i < n) {
+
+                // The rows [i:j) have the same key prefix.
+                int j = i + 1;
+
+                while (j < n
+                        && BytesUtil.bytesEqual(rows[i].prefix, rows[j].prefix))
+                    j++;
+
+                joinScan(seeker, rows, i, j, tmp);
+
+                i = j;
+
+            }
+
+        }
+
+        /**
+         * Join the rows in <code>[fromIndex:toIndex)</code>, all of which have
+         * the same key prefix, with the statements whose SPO key begins with
+         * that prefix. Each statement is joined with each row as it is read
+         * from the cursor.
+         */
+        private void joinScan(final KeySeeker seeker, final Row[] rows,
+                final int fromIndex, final int toIndex,
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp) {
+
+            final byte[] prefix = rows[fromIndex].prefix;
+
+            final boolean[] found = new boolean[toIndex - fromIndex];
+
+            byte[] key = seeker.seek(prefix);
+
+            while (key != null && KeySeeker.startsWith(key, prefix)) {
+
+                final SPO stmt = SPOKeyOrder.SPO.decodeKey(key);
+
+                for (int i = fromIndex; i < toIndex; i++) {
+
+                    if (join(rows[i].bset, rows[i].pred, stmt, tmp))
+                        found[i - fromIndex] = true;
+
+                }
+
+                key = seeker.next();
+
+            }
+
+            if (optional) {
+
+                for (int i = fromIndex; i < toIndex; i++) {
+
+                    if (!found[i - fromIndex])
+                        tmp.add(rows[i].bset);
+
+                }
+
+            }
+
+        }
+
+        /**
+         * Join a source solution with the statements visited by the normal
+         * access path for the as-bound triple pattern.
+         */
+        private void joinAccessPath(final IBindingSet bset,
+                final IPredicate<ISPO> asBound,
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp) {
+
+            final IAccessPath<ISPO> ap = context.getAccessPath(relation,
+                    asBound);
+
+            boolean found = false;
+
+            final IChunkedOrderedIterator<ISPO> itr = ap.iterator();
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    final ISPO e = itr.next();
+
+                    if (join(bset, asBound, new SPO(e.s(), e.p(), e.o()), tmp))
+                        found = true;
+
+                }
+
+            } finally {
+
+                itr.close();
+
+            }
+
+            if (!found && optional) {
+
+                tmp.add(bset);
+
+            }
+
+        }
+
+        /**
+         * Join a source solution with a statement.
+         * 
+         * @return <code>true</code> iff the statement agrees with the as-bound
+         *         triple pattern and the join solution satisfied the
+         *         constraints.
+         */
+        private boolean join(final IBindingSet bset,
+                final IPredicate<ISPO> asBound, final SPO stmt,
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp) {
+
+            if (!matches(asBound, stmt))
+                return false;
+
+            final IBindingSet out = bset.clone();
+
+            BOpContext.copyValues(stmt, pred, out);
+
+            if (constraints != null
+                    && !BOpUtility.isConsistent(constraints, out))
+                return false;
+
+            tmp.add(out);
+
+            return true;
+
+        }
+
+        /**
+         * Return <code>true</code> iff the statement agrees with the constants
+         * in the as-bound triple pattern.
+         */
+        private static boolean matches(final IPredicate<ISPO> asBound,
+                final SPO stmt) {
+
+            for (int i = 0; i < 3; i++) {
+
+                final IVariableOrConstant<?> t = asBound.get(i);
+
+                if (t.isConstant() && !t.get().equals(stmt.get(i)))
+                    return false;
+
+            }
+
+            return true;
+
+        }
+
+        @SuppressWarnings("rawtypes")
+        private byte[] encode(final IV... ivs) {
+
+            keyBuilder.reset();
+
+            for (IV iv : ivs) {
+
+                IVUtility.encode(keyBuilder, iv);
+
+            }
+
+            return keyBuilder.getKey();
+
+        }
+
+    }
+
+}
@@ -45,6 +45,7 @@ import org.openrdf.rio.RDFWriterFactory;
 import org.openrdf.rio.RDFWriterRegistry;
 
 import com.bigdata.rdf.model.StatementEnum;
+import com.bigdata.rdf.rio.binary.BigdataBinaryResultsWriterFactory;
 import com.bigdata.rdf.rio.json.BigdataSPARQLResultsJSONParserFactory;
 import com.bigdata.rdf.rio.json.BigdataSPARQLResultsJSONParserForConstructFactory;
 import com.bigdata.rdf.rio.json.BigdataSPARQLResultsJSONWriterFactory;
@@ -52,6 +53,7 @@ import com.bigdata.rdf.rio.json.BigdataSPARQLResultsJSONWriterForConstructFactor
 import com.bigdata.rdf.rio.ntriples.BigdataNTriplesParserFactory;
 import com.bigdata.rdf.rio.turtle.BigdataTurtleParserFactory;
 import com.bigdata.rdf.rio.turtle.BigdataTurtleWriterFactory;
+import com.bigdata.rdf.sail.webapp.client.BigdataBinaryResultsParserFactory;
 
 /**
  * This static class provides a hook which allows the replacement of services
@@ -237,6 +239,9 @@ public class ServiceProviderHook {
 
         	// add our custom RDR-enabled JSON writer for SPARQL result sets.
         	r.add(new BigdataSPARQLResultsJSONWriterFactory());
+
+        	// compact binary format for SPARQL result sets.
+        	r.add(new BigdataBinaryResultsWriterFactory());
         	
         }
 
@@ -246,6 +251,9 @@ public class ServiceProviderHook {
 
             // add our custom RDR-enabled JSON parser for SPARQL result sets.
             r.add(new BigdataSPARQLResultsJSONParserFactory());
+
+            // compact binary format for SPARQL result sets.
+            r.add(new BigdataBinaryResultsParserFactory());
             
         }
 
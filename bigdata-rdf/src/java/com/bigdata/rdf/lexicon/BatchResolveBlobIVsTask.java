@@ -65,13 +65,26 @@ class BatchResolveBlobIVsTask implements Callable<Void> {
 
     public Void call() throws Exception {
 
-        final int numNotFound = ivs.size();
-        
         // An array of IVs that to be resolved against the index.
-        final BlobIV<?>[] notFound = ivs.toArray(new BlobIV[numNotFound]);
-        
+        final BlobIV<?>[] notFound = ivs.toArray(new BlobIV[ivs.size()]);
+
         // Sort IVs into index order.
-        Arrays.sort(notFound, 0, numNotFound);
+        Arrays.sort(notFound);
+
+        /*
+         * Drop duplicate IVs. The IVs are in index order, so duplicates are
+         * adjacent. The keys are then strictly ordered, which allows the
+         * batch lookup to resolve them in a single pass over the leaves.
+         */
+        int numNotFound = 0;
+        for (int i = 0; i < notFound.length; i++) {
+
+            if (numNotFound > 0 && notFound[numNotFound - 1].equals(notFound[i]))
+                continue;
+
+            notFound[numNotFound++] = notFound[i];
+
+        }
 
         // Encode IVs as keys for the index.
         final byte[][] keys = new byte[numNotFound][];
@@ -64,13 +64,26 @@ class BatchResolveTermIVsTask implements Callable<Void> {
 
     public Void call() throws Exception {
 
-        final int numNotFound = ivs.size();
-        
         // An array of IVs that to be resolved against the index.
-            final TermId<?>[] notFound = ivs.toArray(new TermId[numNotFound]);
- 
-            // Sort IVs into index order.
-        Arrays.sort(notFound, 0, numNotFound);
+        final TermId<?>[] notFound = ivs.toArray(new TermId[ivs.size()]);
+
+        // Sort IVs into index order.
+        Arrays.sort(notFound);
+
+        /*
+         * Drop duplicate IVs. The IVs are in index order, so duplicates are
+         * adjacent. The keys are then strictly ordered, which allows the
+         * batch lookup to resolve them in a single pass over the leaves.
+         */
+        int numNotFound = 0;
+        for (int i = 0; i < notFound.length; i++) {
+
+            if (numNotFound > 0 && notFound[numNotFound - 1].equals(notFound[i]))
+                continue;
+
+            notFound[numNotFound++] = notFound[i];
+
+        }
 
         // Encode IVs as index keys.
         final byte[][] keys = new byte[numNotFound][];
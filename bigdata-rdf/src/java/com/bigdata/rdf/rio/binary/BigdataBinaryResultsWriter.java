@@ -0,0 +1,443 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.rio.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryResultHandlerException;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.resultio.QueryResultFormat;
+import org.openrdf.query.resultio.QueryResultWriterBase;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultWriter;
+
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sail.webapp.client.BigdataBinaryResultsFormat;
+
+/**
+ * Writer for the {@link BigdataBinaryResultsFormat}.
+ * <p>
+ * The term dictionary is keyed by the {@link IV} of each
+ * {@link BigdataValue}, so recognizing a repeated term does not require the
+ * {@link Value} to be hashed or compared. Literals whose {@link IV} is an
+ * inline <code>xsd:boolean</code>, <code>xsd:byte</code>,
+ * <code>xsd:short</code>, <code>xsd:int</code>, <code>xsd:long</code>,
+ * <code>xsd:float</code>, <code>xsd:double</code> or (when it fits in a long)
+ * <code>xsd:integer</code> are written natively and are not entered into the
+ * dictionary. Like the inline {@link IV} itself, this reports the canonical
+ * lexical form of the literal.
+ */
+public class BigdataBinaryResultsWriter extends QueryResultWriterBase implements
+        TupleQueryResultWriter {
+
+    /**
+     * The default maximum #of entries in the term dictionary. The dictionary
+     * is cleared (on both sides) once it reaches this size.
+     */
+    public static final int DEFAULT_MAX_TERMS = 1 << 20;
+
+    private final DataOutputStream out;
+
+    private final int maxTerms;
+
+    /**
+     * The term dictionary. The key is the {@link IV} when it is known and
+     * otherwise the {@link Value}. The value is the term identifier.
+     */
+    private final Map<Object, Integer> terms = new HashMap<Object, Integer>();
+
+    private List<String> bindingNames;
+
+    public BigdataBinaryResultsWriter(final OutputStream os) {
+
+        this(os, DEFAULT_MAX_TERMS);
+
+    }
+
+    /**
+     * @param os
+     *            Where to write the results.
+     * @param maxTerms
+     *            The maximum #of entries in the term dictionary.
+     */
+    public BigdataBinaryResultsWriter(final OutputStream os, final int maxTerms) {
+
+        if (os == null)
+            throw new IllegalArgumentException();
+
+        if (maxTerms <= 0)
+            throw new IllegalArgumentException();
+
+        this.out = new DataOutputStream(new BufferedOutputStream(os));
+
+        this.maxTerms = maxTerms;
+
+    }
+
+    @Override
+    public TupleQueryResultFormat getTupleQueryResultFormat() {
+
+        return BigdataBinaryResultsFormat.FORMAT;
+
+    }
+
+    @Override
+    public QueryResultFormat getQueryResultFormat() {
+
+        return getTupleQueryResultFormat();
+
+    }
+
+    @Override
+    public void startQueryResult(final List<String> bindingNames)
+            throws TupleQueryResultHandlerException {
+
+        this.bindingNames = bindingNames;
+
+        try {
+
+            out.write(BigdataBinaryResultsFormat.MAGIC);
+
+            out.writeInt(BigdataBinaryResultsFormat.VERSION);
+
+            BigdataBinaryResultsFormat.writeUnsigned(out, bindingNames.size());
+
+            for (String name : bindingNames) {
+
+                BigdataBinaryResultsFormat.writeString(out, name);
+
+            }
+
+        } catch (IOException e) {
+
+            throw new TupleQueryResultHandlerException(e);
+
+        }
+
+    }
+
+    @Override
+    public void handleSolution(final BindingSet bindingSet)
+            throws TupleQueryResultHandlerException {
+
+        try {
+
+            if (terms.size() + 2 * bindingNames.size() > maxTerms) {
+
+                // Bound the size of the dictionary.
+                out.writeByte(BigdataBinaryResultsFormat.RESET);
+
+                terms.clear();
+
+            }
+
+            /*
+             * Declare any terms which are not yet in the dictionary. This has
+             * to be done before the ROW since the ROW references them.
+             */
+            for (String name : bindingNames) {
+
+                final Value v = bindingSet.getValue(name);
+
+                if (v != null && getInlineType(v) == 0)
+                    declare(v);
+
+            }
+
+            out.writeByte(BigdataBinaryResultsFormat.ROW);
+
+            for (String name : bindingNames) {
+
+                final Value v = bindingSet.getValue(name);
+
+                if (v == null) {
+
+                    BigdataBinaryResultsFormat.writeUnsigned(out,
+                            BigdataBinaryResultsFormat.UNBOUND);
+
+                    continue;
+
+                }
+
+                final byte inlineType = getInlineType(v);
+
+                if (inlineType != 0) {
+
+                    BigdataBinaryResultsFormat.writeUnsigned(out,
+                            BigdataBinaryResultsFormat.INLINE);
+
+                    writeInline(inlineType, ((BigdataValue) v).getIV());
+
+                } else {
+
+                    BigdataBinaryResultsFormat.writeUnsigned(out,
+                            BigdataBinaryResultsFormat.FIRST_TERM_REF
+                                    + terms.get(getKey(v)));
+
+                }
+
+            }
+
+        } catch (IOException e) {
+
+            throw new TupleQueryResultHandlerException(e);
+
+        }
+
+    }
+
+    @Override
+    public void endQueryResult() throws TupleQueryResultHandlerException {
+
+        try {
+
+            out.writeByte(BigdataBinaryResultsFormat.END);
+
+            out.flush();
+
+        } catch (IOException e) {
+
+            throw new TupleQueryResultHandlerException(e);
+
+        }
+
+    }
+
+    /**
+     * Return the key for the term dictionary.
+     */
+    private static Object getKey(final Value v) {
+
+        if (v instanceof BigdataValue) {
+
+            final IV<?, ?> iv = ((BigdataValue) v).getIV();
+
+            if (iv != null && !iv.isNullIV())
+                return iv;
+
+        }
+
+        return v;
+
+    }
+
+    /**
+     * Enter the term into the dictionary (if it is not already present),
+     * writing a TERM record.
+     * 
+     * @return The term identifier.
+     */
+    private int declare(final Value v) throws IOException {
+
+        final Object key = getKey(v);
+
+        final Integer id = terms.get(key);
+
+        if (id != null)
+            return id;
+
+        if (v instanceof URI) {
+
+            out.writeByte(BigdataBinaryResultsFormat.TERM);
+            out.writeByte(BigdataBinaryResultsFormat.URI);
+            BigdataBinaryResultsFormat.writeString(out, v.stringValue());
+
+        } else if (v instanceof BNode) {
+
+            out.writeByte(BigdataBinaryResultsFormat.TERM);
+            out.writeByte(BigdataBinaryResultsFormat.BNODE);
+            BigdataBinaryResultsFormat.writeString(out, ((BNode) v).getID());
+
+        } else if (v instanceof Literal) {
+
+            final Literal lit = (Literal) v;
+
+            if (lit.getLanguage() != null) {
+
+                out.writeByte(BigdataBinaryResultsFormat.TERM);
+                out.writeByte(BigdataBinaryResultsFormat.LANG_LITERAL);
+                BigdataBinaryResultsFormat.writeString(out, lit.getLabel());
+                BigdataBinaryResultsFormat.writeString(out, lit.getLanguage());
+
+            } else if (lit.getDatatype() != null) {
+
+                // Note: the datatype is declared first.
+                final int datatypeId = declare(lit.getDatatype());
+
+                out.writeByte(BigdataBinaryResultsFormat.TERM);
+                out.writeByte(BigdataBinaryResultsFormat.TYPED_LITERAL);
+                BigdataBinaryResultsFormat.writeString(out, lit.getLabel());
+                BigdataBinaryResultsFormat.writeUnsigned(out, datatypeId);
+
+            } else {
+
+                out.writeByte(BigdataBinaryResultsFormat.TERM);
+                out.writeByte(BigdataBinaryResultsFormat.LITERAL);
+                BigdataBinaryResultsFormat.writeString(out, lit.getLabel());
+
+            }
+
+        } else {
+
+            throw new IllegalArgumentException("Unknown value type: " + v);
+
+        }
+
+        final int newId = terms.size();
+
+        terms.put(key, newId);
+
+        return newId;
+
+    }
+
+    /**
+     * Return the inline type code if the value is an inline literal which can
+     * be written natively and ZERO (0) otherwise.
+     */
+    private static byte getInlineType(final Value v) {
+
+        if (!(v instanceof BigdataValue))
+            return 0;
+
+        final IV<?, ?> iv = ((BigdataValue) v).getIV();
+
+        if (iv == null || !iv.isInline() || !iv.isLiteral()
+                || iv.isExtension())
+            return 0;
+
+        switch (iv.getDTE()) {
+        case XSDBoolean:
+            return BigdataBinaryResultsFormat.XSD_BOOLEAN;
+        case XSDByte:
+            return BigdataBinaryResultsFormat.XSD_BYTE;
+        case XSDShort:
+            return BigdataBinaryResultsFormat.XSD_SHORT;
+        case XSDInt:
+            return BigdataBinaryResultsFormat.XSD_INT;
+        case XSDLong:
+            return BigdataBinaryResultsFormat.XSD_LONG;
+        case XSDFloat:
+            return BigdataBinaryResultsFormat.XSD_FLOAT;
+        case XSDDouble:
+            return BigdataBinaryResultsFormat.XSD_DOUBLE;
+        case XSDInteger:
+            if (((BigInteger) iv.getInlineValue()).bitLength() < 64)
+                return BigdataBinaryResultsFormat.XSD_INTEGER;
+            return 0;
+        default:
+            return 0;
+        }
+
+    }
+
+    private void writeInline(final byte inlineType, final IV<?, ?> iv)
+            throws IOException {
+
+        out.writeByte(inlineType);
+
+        final Object x = iv.getInlineValue();
+
+        switch (inlineType) {
+        case BigdataBinaryResultsFormat.XSD_BOOLEAN:
+            out.writeBoolean((Boolean) x);
+            break;
+        case BigdataBinaryResultsFormat.XSD_BYTE:
+            out.writeByte(((Number) x).byteValue());
+            break;
+        case BigdataBinaryResultsFormat.XSD_SHORT:
+            out.writeShort(((Number) x).shortValue());
+            break;
+        case BigdataBinaryResultsFormat.XSD_INT:
+            out.writeInt(((Number) x).intValue());
+            break;
+        case BigdataBinaryResultsFormat.XSD_LONG:
+        case BigdataBinaryResultsFormat.XSD_INTEGER:
+            out.writeLong(((Number) x).longValue());
+            break;
+        case BigdataBinaryResultsFormat.XSD_FLOAT:
+            out.writeFloat(((Number) x).floatValue());
+            break;
+        case BigdataBinaryResultsFormat.XSD_DOUBLE:
+            out.writeDouble(((Number) x).doubleValue());
+            break;
+        default:
+            throw new AssertionError();
+        }
+
+    }
+
+    /*
+     * Not used by this format.
+     */
+
+    @Override
+    public void handleBoolean(final boolean value)
+            throws QueryResultHandlerException {
+        throw new UnsupportedOperationException(
+                "Cannot handle boolean results");
+    }
+
+    @Override
+    public void handleLinks(final List<String> linkUrls)
+            throws QueryResultHandlerException {
+    }
+
+    @Override
+    public void handleNamespace(final String prefix, final String uri)
+            throws QueryResultHandlerException {
+    }
+
+    @Override
+    public void startDocument() throws QueryResultHandlerException {
+    }
+
+    @Override
+    public void handleStylesheet(final String stylesheetUrl)
+            throws QueryResultHandlerException {
+    }
+
+    @Override
+    public void startHeader() throws QueryResultHandlerException {
+    }
+
+    @Override
+    public void endHeader() throws QueryResultHandlerException {
+    }
+
+}
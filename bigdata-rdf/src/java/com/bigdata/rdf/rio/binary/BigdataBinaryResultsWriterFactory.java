@@ -0,0 +1,58 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.rio.binary;
+
+import java.io.OutputStream;
+
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultWriter;
+import org.openrdf.query.resultio.TupleQueryResultWriterFactory;
+
+import com.bigdata.rdf.sail.webapp.client.BigdataBinaryResultsFormat;
+
+/**
+ * A {@link TupleQueryResultWriterFactory} for the
+ * {@link BigdataBinaryResultsFormat}.
+ */
+public class BigdataBinaryResultsWriterFactory implements
+        TupleQueryResultWriterFactory {
+
+    /**
+     * Returns {@link BigdataBinaryResultsFormat#FORMAT}.
+     */
+    @Override
+    public TupleQueryResultFormat getTupleQueryResultFormat() {
+        return BigdataBinaryResultsFormat.FORMAT;
+    }
+
+    /**
+     * Returns a new instance of {@link BigdataBinaryResultsWriter}.
+     */
+    @Override
+    public TupleQueryResultWriter getWriter(final OutputStream out) {
+        return new BigdataBinaryResultsWriter(out);
+    }
+
+}
@@ -23,6 +23,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 */
 package com.bigdata.rdf.rules;
 
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -35,14 +38,20 @@ import com.bigdata.rdf.inf.BackchainTypeResourceIterator;
 import com.bigdata.rdf.inf.ClosureStats;
 import com.bigdata.rdf.inf.Justification;
 import com.bigdata.rdf.inf.TruthMaintenance;
+import com.bigdata.rdf.spo.ISPO;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.rdf.store.DataLoader;
 import com.bigdata.rdf.store.TempTripleStore;
+import com.bigdata.relation.AbstractResource;
 import com.bigdata.relation.accesspath.IElementFilter;
+import com.bigdata.relation.rule.IProgram;
+import com.bigdata.relation.rule.IRule;
+import com.bigdata.relation.rule.IStep;
 import com.bigdata.relation.rule.Program;
 import com.bigdata.relation.rule.eval.ActionEnum;
 import com.bigdata.relation.rule.eval.IJoinNexus;
 import com.bigdata.relation.rule.eval.IJoinNexusFactory;
+import com.bigdata.striterator.IChunkedOrderedIterator;
 
 /**
  * Flyweight object encapsulates some configuration state and provides methods
@@ -277,6 +286,49 @@ public class InferenceEngine {
 
         String DEFAULT_ENABLE_OWL_FUNCTIONAL_AND_INVERSE_FUNCTIONAL_PROPERTY = "true";
 
+        /**
+         * When <code>true</code> (default
+         * {@value #DEFAULT_PARALLEL_TRUTH_MAINTENANCE}) the rules within each
+         * round of the fixed point closure used for truth maintenance are
+         * executed concurrently. The {@link TMUtility} maps each rule of the
+         * closure program onto the focus store and the database, yielding a
+         * set of rule variants which have no dependencies on one another
+         * within a round. When this option is enabled those variants are
+         * submitted together to the executor service of the database and their
+         * entailments are written onto a shared thread-safe buffer which is
+         * flushed onto the focus store once all variants in the round have
+         * completed. The fixed point iteration itself is unchanged, so the
+         * computed closure is the same as when the rules are run serially.
+         * <p>
+         * Note: This only affects closure against a focus store (truth
+         * maintenance). Database-at-once closure is governed by
+         * {@link AbstractResource.Options#FORCE_SERIAL_EXECUTION}.
+         */
+        String PARALLEL_TRUTH_MAINTENANCE = InferenceEngine.class.getName()
+                + ".parallelTruthMaintenance";
+
+        String DEFAULT_PARALLEL_TRUTH_MAINTENANCE = "false";
+
+        /**
+         * When <code>true</code> (default {@value #DEFAULT_SEMI_NAIVE_CLOSURE})
+         * closure is computed using semi-naive evaluation of the
+         * {@link FullClosure} rule set. Each round joins only the statements
+         * first derived in the previous round (the delta) against the full
+         * view of the data, rather than re-joining the full view against
+         * itself. The delta for each round is collected on a
+         * {@link TempTripleStore} and the fixed point is reached when a round
+         * derives nothing new. This applies to both database at once closure
+         * and truth maintenance (where the initial delta is the focus store)
+         * and greatly reduces the work required for deep class and property
+         * hierarchies and for transitive properties.
+         * 
+         * @see TMUtility#mapRuleForDelta(IRule, String, String, String)
+         */
+        String SEMI_NAIVE_CLOSURE = InferenceEngine.class.getName()
+                + ".semiNaiveClosure";
+
+        String DEFAULT_SEMI_NAIVE_CLOSURE = "false";
+
     }
 
     /**
@@ -412,6 +464,20 @@ public class InferenceEngine {
 		            + enableOwlFunctionalAndInverseFunctionalProperty);
 
         }
+
+        this.parallelTruthMaintenance = Boolean.parseBoolean(properties
+                .getProperty(Options.PARALLEL_TRUTH_MAINTENANCE,
+                        Options.DEFAULT_PARALLEL_TRUTH_MAINTENANCE));
+
+        if (INFO)
+            log.info(Options.PARALLEL_TRUTH_MAINTENANCE + "="
+                    + parallelTruthMaintenance);
+
+        this.semiNaiveClosure = Boolean.parseBoolean(properties.getProperty(
+                Options.SEMI_NAIVE_CLOSURE, Options.DEFAULT_SEMI_NAIVE_CLOSURE));
+
+        if (INFO)
+            log.info(Options.SEMI_NAIVE_CLOSURE + "=" + semiNaiveClosure);
         
         doNotAddFilter = new DoNotAddFilter(database.getVocabulary(), database
                 .getAxioms(), forwardChainRdfTypeRdfsResource);
@@ -509,6 +575,20 @@ public class InferenceEngine {
      */
     final protected boolean enableOwlFunctionalAndInverseFunctionalProperty;
     
+    /**
+     * Set based on {@link Options#PARALLEL_TRUTH_MAINTENANCE}. When
+     * <code>true</code>, the rules in each round of the closure against a
+     * focus store are executed concurrently.
+     */
+    final protected boolean parallelTruthMaintenance;
+
+    /**
+     * Set based on {@link Options#SEMI_NAIVE_CLOSURE}. When <code>true</code>,
+     * closure is computed by semi-naive evaluation of the {@link FullClosure}
+     * rule set.
+     */
+    final protected boolean semiNaiveClosure;
+
     /**
      * Compute the forward closure of a focusStore against the database using
      * the algorithm selected by
@@ -582,6 +662,12 @@ public class InferenceEngine {
             
         }
 
+        if (semiNaiveClosure) {
+
+            return computeSemiNaiveClosure(focusStore, justify);
+            
+        }
+
         final MappedProgram program = baseClosure.getProgram(
                 database.getSPORelation().getNamespace(),//
                 (focusStore == null ? null : focusStore.getSPORelation()
@@ -599,26 +685,8 @@ public class InferenceEngine {
 
             final long begin = System.currentTimeMillis();
 
-            /*
-             * FIXME remove IJoinNexus.RULE once we we can generate the
-             * justifications from just the bindings and no longer need the rule
-             * to generate the justifications (esp. for scale-out).
-             */
-            final int solutionFlags = IJoinNexus.ELEMENT//
-                    | (justify ? IJoinNexus.RULE | IJoinNexus.BINDINGS : 0)//
-//                  | IJoinNexus.RULE  // iff debugging.
-                  ;
-          
-            final RuleContextEnum ruleContext = focusStore == null
-            	? RuleContextEnum.DatabaseAtOnceClosure
-            	: RuleContextEnum.TruthMaintenance
-            	;
-            
-            final IJoinNexusFactory joinNexusFactory = database
-                    .newJoinNexusFactory(ruleContext, ActionEnum.Insert,
-                            solutionFlags, doNotAddFilter, justify,
-                            false/* backchain */,
-                            DefaultEvaluationPlanFactory2.INSTANCE);
+            final IJoinNexusFactory joinNexusFactory = newJoinNexusFactory(
+                    focusStore, justify);
 
             final IJoinNexus joinNexus = joinNexusFactory.newInstance(database
                     .getIndexManager());
@@ -636,5 +704,271 @@ public class InferenceEngine {
         }
         
     }
+
+    /**
+     * Return the factory for the join nexus used to compute the closure.
+     * 
+     * @param focusStore
+     *            The focusStore (optional).
+     * @param justify
+     *            {@link Justification}s will be generated iff this flag is
+     *            <code>true</code>.
+     */
+    private IJoinNexusFactory newJoinNexusFactory(
+            final AbstractTripleStore focusStore, final boolean justify) {
+
+        /*
+         * FIXME remove IJoinNexus.RULE once we we can generate the
+         * justifications from just the bindings and no longer need the rule
+         * to generate the justifications (esp. for scale-out).
+         */
+        final int solutionFlags = IJoinNexus.ELEMENT//
+                | (justify ? IJoinNexus.RULE | IJoinNexus.BINDINGS : 0)//
+//              | IJoinNexus.RULE  // iff debugging.
+              ;
+      
+        final RuleContextEnum ruleContext = focusStore == null
+        	? RuleContextEnum.DatabaseAtOnceClosure
+        	: RuleContextEnum.TruthMaintenance
+        	;
+        
+        final Properties overrides;
+        if (focusStore != null && parallelTruthMaintenance) {
+            /*
+             * Run the (mutually independent) TM variants of the rules in
+             * each round concurrently against the focusStore + database.
+             */
+            overrides = new Properties();
+            overrides.setProperty(
+                    AbstractResource.Options.FORCE_SERIAL_EXECUTION,
+                    "false");
+        } else {
+            overrides = null;
+        }
+
+        return database.newJoinNexusFactory(ruleContext, ActionEnum.Insert,
+                solutionFlags, doNotAddFilter, justify, false/* backchain */,
+                DefaultEvaluationPlanFactory2.INSTANCE, overrides);
+
+    }
+
+    /**
+     * Compute the closure using semi-naive evaluation of the
+     * {@link FullClosure} rule set.
+     * <p>
+     * Each round runs the delta variants of the rules (see
+     * {@link TMUtility#mapRuleForDelta(IRule, String, String, String)}),
+     * writing the entailments onto a new {@link TempTripleStore}. The
+     * entailments which are not already present in the database (or the
+     * focusStore) become the delta for the next round. All entailments (and
+     * their justifications) are then copied onto the focusStore (truth
+     * maintenance) or the database (database at once closure). The fixed
+     * point is reached when a round does not derive anything new.
+     * 
+     * @param focusStore
+     *            The data set that will be closed against the database
+     *            (optional). When given, this is the delta for the first
+     *            round.
+     * @param justify
+     *            {@link Justification}s will be generated iff this flag is
+     *            <code>true</code>.
+     * 
+     * @return Statistics about the operation.
+     * 
+     * @see Options#SEMI_NAIVE_CLOSURE
+     */
+    private ClosureStats computeSemiNaiveClosure(
+            final AbstractTripleStore focusStore, final boolean justify) {
+
+        final long begin = System.currentTimeMillis();
+
+        /*
+         * Note: The fast closure program relies on the order in which its
+         * steps are executed, so the semi-naive evaluation always uses the
+         * rules of the full closure program.
+         */
+        final BaseClosure closure = baseClosure instanceof FullClosure ? baseClosure
+                : new FullClosure(database);
+
+        final String focusStoreNamespace = focusStore == null ? null
+                : focusStore.getSPORelation().getNamespace();
+
+        final List<IRule> rules = new LinkedList<IRule>();
+
+        getRules(closure.getProgram(database.getSPORelation().getNamespace(),
+                null/* focusStore */), rules);
+
+        // The entailments are copied onto this store after each round.
+        final AbstractTripleStore target = focusStore == null ? database
+                : focusStore;
+
+        final IJoinNexusFactory joinNexusFactory = newJoinNexusFactory(
+                focusStore, justify);
+
+        long mutationCount = 0L;
+
+        // The delta for the current round (null iff everything is new).
+        TempTripleStore delta = null;
+
+        try {
+
+            int round = 1;
+
+            while (true) {
+
+                final String deltaNamespace = delta != null ? delta
+                        .getSPORelation().getNamespace() : focusStoreNamespace;
+
+                // Entailments computed in this round.
+                final TempTripleStore entailments = newTempTripleStore();
+
+                // Entailments which were not previously known.
+                TempTripleStore newDelta = null;
+
+                try {
+
+                    final Program program = new Program("semiNaiveClosure["
+                            + round + "]", true/* parallel */);
+
+                    for (IRule rule : rules) {
+
+                        program.addSteps(TMUtility.INSTANCE.mapRuleForDelta(
+                                rule, deltaNamespace, focusStoreNamespace,
+                                entailments.getSPORelation().getNamespace())
+                                .steps());
+
+                    }
+
+                    joinNexusFactory.newInstance(database.getIndexManager())
+                            .runMutation(program);
+
+                    newDelta = newTempTripleStore();
+
+                    IChunkedOrderedIterator<ISPO> itr = entailments
+                            .getAccessPath(
+                                    entailments.getSPORelation()
+                                            .getPrimaryKeyOrder()).iterator();
+
+                    itr = database.bulkFilterStatements(itr, false/* present */);
+
+                    if (focusStore != null) {
+
+                        itr = focusStore.bulkFilterStatements(itr, false/* present */);
+
+                    }
+
+                    final long ndelta = newDelta.addStatements(newDelta,
+                            true/* copyOnly */, itr, null/* filter */);
+
+                    mutationCount += entailments.copyStatements(target,
+                            null/* filter */, justify);
+
+                    if (INFO)
+                        log.info("round=" + round + ", #entailments="
+                                + entailments.getStatementCount()
+                                + ", #delta=" + ndelta + ", mutationCount="
+                                + mutationCount);
+
+                    if (ndelta == 0L) {
+
+                        // Fixed point.
+                        break;
+
+                    }
+
+                    // The new delta drives the next round.
+                    final TempTripleStore oldDelta = delta;
+
+                    delta = newDelta;
+
+                    newDelta = null;
+
+                    if (oldDelta != null) {
+
+                        oldDelta.close();
+
+                    }
+
+                } finally {
+
+                    entailments.close();
+
+                    if (newDelta != null) {
+
+                        // Fixed point or error.
+                        newDelta.close();
+
+                    }
+
+                }
+
+                round++;
+
+            }
+
+        } catch (Exception ex) {
+
+            throw new RuntimeException(ex);
+
+        } finally {
+
+            if (delta != null) {
+
+                delta.close();
+
+            }
+
+        }
+
+        final long elapsed = System.currentTimeMillis() - begin;
+
+        return new ClosureStats(mutationCount, elapsed);
+
+    }
+
+    /**
+     * Collect the rules in the program (recursively).
+     */
+    private static void getRules(final IStep step, final List<IRule> rules) {
+
+        if (step.isRule()) {
+
+            rules.add((IRule) step);
+
+        } else {
+
+            final Iterator<? extends IStep> itr = ((IProgram) step).steps();
+
+            while (itr.hasNext()) {
+
+                getRules(itr.next(), rules);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Return a new {@link TempTripleStore} for the delta of a round of
+     * semi-naive evaluation. The store does not have a lexicon since the
+     * statements use the term identifiers of the database.
+     */
+    private TempTripleStore newTempTripleStore() {
+
+        final Properties properties = database.getProperties();
+
+        properties.setProperty(
+                com.bigdata.rdf.store.AbstractTripleStore.Options.LEXICON,
+                "false");
+
+        properties.setProperty(
+                com.bigdata.rdf.store.AbstractTripleStore.Options.BLOOM_FILTER,
+                "false");
+
+        return new TempTripleStore(database.getIndexManager().getTempStore(),
+                properties, database);
+
+    }
     
 }
@@ -412,4 +412,135 @@ public class TMUtility {
         
     }
 
+
+    /**
+     * Map a rule for one round of semi-naive evaluation. Given a single rule
+     * with N predicates in the tail, we generate N new rules. For each of
+     * those N new rules in turn, tail[i] reads only from the <i>delta</i>
+     * (the statements first derived in the previous round) while all other
+     * predicates in the tail read from the full view (the relation named on
+     * the rule, fused with the <i>focusStore</i> when one is given). As with
+     * {@link #mapRuleForTruthMaintenance(IRule, String)}, a rule having a
+     * single predicate in the tail is only run against the <i>delta</i>. Since
+     * every solution of the original rule which is new in this round must
+     * bind at least one tail predicate to a statement in the <i>delta</i>,
+     * the UNION of the new rules computes all new entailments without
+     * re-joining the full view against itself.
+     * <p>
+     * When <i>delta</i> is <code>null</code> (the first round of a database at
+     * once closure, where everything is new) a single rule is generated whose
+     * tail is unchanged.
+     * 
+     * @param rule
+     *            The original rule. The {@link IPredicate}s in this
+     *            {@link Rule} should identify the {@link IRelation} for the
+     *            database.
+     * @param delta
+     *            The relation containing the statements derived in the
+     *            previous round (optional).
+     * @param focusStore
+     *            The relation containing the statements to be added to the
+     *            database during truth maintenance together with their
+     *            entailments so far (optional).
+     * @param head
+     *            The relation on which the new rules will write.
+     * 
+     * @return An {@link IProgram} constructed as specified above.
+     */
+    /*
+     * Note: IPredicate#setRelationName(String[]) is deprecated in favor of a
+     * scalar relation name, but it is still the only way to retarget a
+     * predicate (as in mapRuleForTruthMaintenance()).
+     */
+    @SuppressWarnings("deprecation")
+    public Program mapRuleForDelta(final IRule rule, final String delta,
+            final String focusStore, final String head) {
+
+        if (rule == null)
+            throw new IllegalArgumentException();
+
+        if (head == null)
+            throw new IllegalArgumentException();
+
+        if (!(rule.getHead() instanceof SPOPredicate))
+            throw new IllegalArgumentException("Head is not an SPOPredicate: rule="
+                    + rule);
+
+        final IPredicate<?> head2 = rule.getHead().setRelationName(
+                new String[] { head });
+
+        final int tailCount = rule.getTailCount();
+
+        final IConstraint[] constraints;
+        {
+
+            final int constraintCount = rule.getConstraintCount();
+
+            if (constraintCount > 0) {
+
+                constraints = new IConstraint[constraintCount];
+
+                for (int i = 0; i < constraintCount; i++) {
+
+                    constraints[i] = rule.getConstraint(i);
+
+                }
+
+            } else {
+
+                constraints = null;
+
+            }
+
+        }
+
+        final Program program = new Program(rule.getName(), parallel);
+
+        // #of new rules (one per tail when reading from a delta).
+        final int nrules = delta == null ? 1 : tailCount;
+
+        for (int i = 0; i < nrules; i++) {
+
+            final IPredicate[] tail2 = new IPredicate[tailCount];
+
+            for (int j = 0; j < tailCount; j++) {
+
+                final IPredicate<?> p = rule.getTail(j);
+
+                if (!(p instanceof SPOPredicate)) {
+
+                    // Not a statement pattern, e.g., a magic predicate.
+                    tail2[j] = p;
+
+                } else if (delta != null && (i == j || tailCount == 1)) {
+
+                    // The [ith] predicate reads only from the delta.
+                    tail2[j] = p.setRelationName(new String[] { delta });
+
+                } else if (focusStore != null) {
+
+                    // The fused view of the database and the focusStore.
+                    tail2[j] = p.setRelationName(new String[] {
+                            p.getOnlyRelationName(), focusStore });
+
+                } else {
+
+                    // The database.
+                    tail2[j] = p;
+
+                }
+
+            }
+
+            program.addStep(new Rule(rule.getName()
+                    + (delta == null ? "" : "[" + i + "]"), head2, tail2, rule
+                    .getQueryOptions(), constraints, rule.getConstants(), rule
+                    .getTaskFactory()));
+
+        }
+
+        return program;
+
+    }
+
 }
@@ -28,6 +28,8 @@ import java.util.Set;
 
 import com.bigdata.bop.BOp;
 import com.bigdata.bop.IVariable;
+import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.rdf.sparql.ast.QueryRoot.Annotations;
 
 /**
@@ -107,6 +109,14 @@ abstract public class QueryBase extends QueryNodeBase implements
 
         long DEFAULT_TIMEOUT = Long.MAX_VALUE;
 
+        /**
+         * The {@link QueryResourceLimits} for the query (optional). This is
+         * only interpreted for the top-level query.
+         * 
+         * @see QueryEngine.Annotations#RESOURCE_LIMITS
+         */
+        String RESOURCE_LIMITS = "resourceLimits";
+
         /**
          * The BINDINGS clause (optional).
          */
@@ -450,6 +460,22 @@ abstract public class QueryBase extends QueryNodeBase implements
         setProperty(Annotations.TIMEOUT, timeout);
     }
 
+    /**
+     * @see Annotations#RESOURCE_LIMITS
+     */
+    public QueryResourceLimits getResourceLimits() {
+        return (QueryResourceLimits) getProperty(Annotations.RESOURCE_LIMITS);
+    }
+
+    /**
+     * Set the resource limits for the query.
+     * 
+     * @see Annotations#RESOURCE_LIMITS
+     */
+    public void setResourceLimits(final QueryResourceLimits limits) {
+        setProperty(Annotations.RESOURCE_LIMITS, limits);
+    }
+
     /**
      * Set the BINDINGS.
      * 
@@ -506,6 +532,12 @@ abstract public class QueryBase extends QueryNodeBase implements
             sb.append("timeout=" + getTimeout());
         }
 
+        if (getProperty(Annotations.RESOURCE_LIMITS) != null) {
+            sb.append("\n");
+            sb.append(s);
+            sb.append("resourceLimits=" + getResourceLimits());
+        }
+
         if (construct != null && !construct.isEmpty()) {
 
             sb.append(construct.toString(indent));
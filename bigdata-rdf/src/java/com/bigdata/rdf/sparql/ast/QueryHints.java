@@ -36,11 +36,19 @@ import com.bigdata.bop.ap.SampleIndex.SampleType;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.fed.QueryEngineFactory;
+import com.bigdata.bop.joinGraph.rto.AdaptiveJoinGraph;
+import com.bigdata.bop.joinGraph.rto.JoinGraph;
+import com.bigdata.bop.joinGraph.rto.JoinOrderCache;
 import com.bigdata.bop.join.HashJoinAnnotations;
+import com.bigdata.bop.rdf.join.SubjectStarJoinOp;
+import com.bigdata.bop.rdf.join.WideRowJoinOp;
 import com.bigdata.htree.HTree;
 import com.bigdata.io.DirectBufferPool;
 import com.bigdata.rawstore.Bytes;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.spo.PredicateStatistics;
 import com.bigdata.rdf.sparql.ast.cache.CacheConnectionFactory;
+import com.bigdata.rdf.sparql.ast.cache.SolutionCache;
 import com.bigdata.rdf.sparql.ast.eval.ASTConstructIterator;
 import com.bigdata.rdf.sparql.ast.hints.QueryHintRegistry;
 import com.bigdata.rdf.sparql.ast.hints.QueryHintScope;
@@ -50,7 +58,9 @@ import com.bigdata.rdf.sparql.ast.optimizers.ASTJoinGroupOrderOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTJoinOrderByTypeOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTOptimizerList;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTStaticJoinOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTStarJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.DefaultOptimizerList;
+import com.bigdata.rdf.store.BigdataBindingSetResolverator;
 
 /**
  * Query hints are directives understood by the SPARQL end point. A query hint
@@ -151,6 +161,79 @@ public interface QueryHints {
 
     int DEFAULT_RTO_NEDGES = 1;
 
+    /**
+     * The maximum #of milliseconds that the runtime query optimizer may spend
+     * sampling a join graph (default {@value #DEFAULT_RTO_MAX_SAMPLING_MILLIS}
+     * ). When this budget is exhausted, the best join path found so far is
+     * used and any vertices not yet on that path are appended to it. A value
+     * of ZERO (0) means that the sampling time is not bounded.
+     * 
+     * @see JoinGraph.Annotations#MAX_SAMPLING_MILLIS
+     */
+    String RTO_MAX_SAMPLING_MILLIS = "RTO-maxSamplingMillis";
+
+    long DEFAULT_RTO_MAX_SAMPLING_MILLIS = JoinGraph.Annotations.DEFAULT_MAX_SAMPLING_MILLIS;
+
+    /**
+     * When <code>true</code>, the join order selected by the runtime query
+     * optimizer is cached by the shape of the join graph and reused by later
+     * executions of a join graph having the same shape, which then do not
+     * need to sample the data (default {@value #DEFAULT_RTO_REUSE_PLAN}).
+     * 
+     * @see JoinGraph.Annotations#REUSE_PLAN
+     * @see JoinOrderCache
+     */
+    String RTO_REUSE_PLAN = "RTO-reusePlan";
+
+    boolean DEFAULT_RTO_REUSE_PLAN = JoinGraph.Annotations.DEFAULT_REUSE_PLAN;
+
+    /**
+     * When <code>true</code>, a join group which is ordered by the static
+     * optimizer is evaluated with a checkpoint after the first join. The
+     * checkpoint observes the actual cardinality of the intermediate result
+     * and reorders the remaining joins if that cardinality is off from the
+     * static estimate by more than {@link #ADAPTIVE_JOIN_ORDER_RATIO}. This is
+     * much cheaper than the runtime query optimizer, but the intermediate
+     * result of the leading joins is buffered rather than pipelined. The
+     * default may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.adaptiveJoinOrder
+     * </pre>
+     * 
+     * @see AdaptiveJoinGraph
+     */
+    String ADAPTIVE_JOIN_ORDER = "adaptiveJoinOrder";
+
+    boolean DEFAULT_ADAPTIVE_JOIN_ORDER = Boolean.valueOf(System
+            .getProperty(QueryHints.class.getName() + "."
+                    + ADAPTIVE_JOIN_ORDER, "false"));
+
+    /**
+     * The factor by which the observed cardinality at the checkpoint must
+     * differ from the static estimate before the remaining joins are
+     * reordered (default {@value #DEFAULT_ADAPTIVE_JOIN_ORDER_RATIO}).
+     * 
+     * @see #ADAPTIVE_JOIN_ORDER
+     * @see AdaptiveJoinGraph.Annotations#RATIO
+     */
+    String ADAPTIVE_JOIN_ORDER_RATIO = "adaptiveJoinOrderRatio";
+
+    double DEFAULT_ADAPTIVE_JOIN_ORDER_RATIO = AdaptiveJoinGraph.Annotations.DEFAULT_RATIO;
+
+    /**
+     * The #of leading statement patterns which are run in the order chosen by
+     * the static optimizer before the checkpoint (default
+     * {@value #DEFAULT_ADAPTIVE_JOIN_ORDER_LEADING_JOINS}). With two statement
+     * patterns, the checkpoint observes the cardinality of the first join,
+     * which is where the static estimate can first go wrong.
+     * 
+     * @see #ADAPTIVE_JOIN_ORDER
+     */
+    String ADAPTIVE_JOIN_ORDER_LEADING_JOINS = "adaptiveJoinOrderLeadingJoins";
+
+    int DEFAULT_ADAPTIVE_JOIN_ORDER_LEADING_JOINS = 2;
+
     /**
      * Query hint sets the optimistic threshold for the static join order
      * optimizer.
@@ -308,6 +391,50 @@ public interface QueryHints {
 
     boolean DEFAULT_MERGE_JOIN = true;
 
+    /**
+     * When <code>true</code>, the statement patterns at the head of a join
+     * group which share the same subject variable and have constant
+     * predicates will be evaluated as a single n-way merge join of range
+     * scans ordered by the subject rather than as a sequence of pipeline
+     * joins. This is only supported for the triple store mode. The default is
+     * <code>false</code> and may be overridden using the environment variable
+     * named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.starJoin
+     * </pre>
+     * 
+     * @see SubjectStarJoinOp
+     * @see ASTStarJoinOptimizer
+     */
+    String STAR_JOIN = "starJoin";
+
+    boolean DEFAULT_STAR_JOIN = Boolean.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + STAR_JOIN, "false"));
+
+    /**
+     * When <code>true</code>, a statement pattern whose subject variable is
+     * bound by the prior joins (e.g., <code>?s ?p ?o</code> when retrieving
+     * the properties of entities) will be evaluated by sorting each chunk of
+     * solutions on the subject and reading the SPO index in a single forward
+     * cursor pass rather than issuing one range scan per subject. This is
+     * only supported for the triple store mode. When given with
+     * {@link QueryHintScope#Query}, the hint also applies to the statement
+     * patterns generated for a DESCRIBE query. The default is
+     * <code>false</code> and may be overridden using the environment variable
+     * named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.wideRowScan
+     * </pre>
+     * 
+     * @see WideRowJoinOp
+     */
+    String WIDE_ROW_SCAN = "wideRowScan";
+
+    boolean DEFAULT_WIDE_ROW_SCAN = Boolean.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + WIDE_ROW_SCAN, "false"));
+
     /**
      * Query hint for disabling the DISTINCT SPO behavior for a CONSTRUCT QUERY
      * (default {@value #DEFAULT_CONSTRUCT_DISTINCT_SPO}). When disabled, the
@@ -327,6 +454,89 @@ public interface QueryHints {
     
     boolean DEFAULT_CONSTRUCT_DISTINCT_SPO = true;
     
+    /**
+     * The maximum #of RDF Values which will be retained across the chunks of
+     * a query's solutions when the projection is materialized outside of the
+     * query plan (default {@value #DEFAULT_MATERIALIZATION_CACHE_CAPACITY}).
+     * Only the distinct {@link IV}s in each output chunk which were not
+     * resolved for an earlier chunk are read from the lexicon. Use ZERO (0) to
+     * resolve each chunk independently.
+     * 
+     * @see BigdataBindingSetResolverator
+     */
+    String MATERIALIZATION_CACHE_CAPACITY = "materializationCacheCapacity";
+
+    int DEFAULT_MATERIALIZATION_CACHE_CAPACITY = 50000;
+
+    /**
+     * When <code>true</code>, the materialized solutions of a SELECT query
+     * against a read-only view of the KB will be cached and reused for the
+     * same query against the same commit point of the KB. A commit which
+     * modifies the KB invalidates the cached solutions for that KB. The
+     * default may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.solutionCache
+     * </pre>
+     * 
+     * @see SolutionCache
+     */
+    String SOLUTION_CACHE = "solutionCache";
+
+    boolean DEFAULT_SOLUTION_CACHE = Boolean.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + SOLUTION_CACHE, "false"));
+
+    /**
+     * The maximum amount of native memory used by the {@link SolutionCache}
+     * (default 64MB). This is rounded up to a multiple of the
+     * {@link DirectBufferPool} buffer capacity. The value may be overridden
+     * using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.solutionCacheMaxMemory
+     * </pre>
+     */
+    long DEFAULT_SOLUTION_CACHE_MAX_MEMORY = Long.valueOf(System.getProperty(
+            QueryHints.class.getName() + ".solutionCacheMaxMemory", ""
+                    + (64 * Bytes.megabyte)));
+
+    /**
+     * The maximum #of solutions which will be cached for a single query by
+     * the {@link SolutionCache} (default 100000). The solutions are buffered
+     * on the JVM heap until the query is done, so this also limits the heap
+     * demand of caching. The value may be overridden using the environment
+     * variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.solutionCacheMaxSolutions
+     * </pre>
+     */
+    long DEFAULT_SOLUTION_CACHE_MAX_SOLUTIONS = Long.valueOf(System
+            .getProperty(QueryHints.class.getName()
+                    + ".solutionCacheMaxSolutions", "100000"));
+
+    /**
+     * When <code>true</code>, the static join optimizer and the range count
+     * optimizer will use the {@link PredicateStatistics} for the KB (if
+     * available) when estimating the cardinality of statement patterns in
+     * which only the predicate is bound and the cardinality of joins between
+     * such statement patterns. This produces much better estimates for star
+     * joins over correlated predicates. The statistics are maintained in the
+     * background for each KB and reflect a recent commit point. The default
+     * may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.predicateStatistics
+     * </pre>
+     * 
+     * @see PredicateStatistics
+     */
+    String PREDICATE_STATISTICS = "predicateStatistics";
+
+    boolean DEFAULT_PREDICATE_STATISTICS = Boolean.valueOf(System
+            .getProperty(QueryHints.class.getName() + "."
+                    + PREDICATE_STATISTICS, "false"));
+
     /**
      * When <code>true</code>, force the use of REMOTE access paths in scale-out
      * joins. This is intended as a tool when analyzing query patterns in
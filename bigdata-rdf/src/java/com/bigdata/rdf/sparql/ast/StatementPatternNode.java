@@ -36,6 +36,7 @@ import com.bigdata.bop.BOp;
 import com.bigdata.bop.Constant;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.NV;
+import com.bigdata.bop.rdf.join.SubjectStarJoinOp;
 import com.bigdata.htree.HTree;
 import com.bigdata.rdf.internal.constraints.RangeBOp;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpBase;
@@ -44,6 +45,7 @@ import com.bigdata.rdf.sparql.ast.eval.AST2BOpUtility;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTGraphGroupOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTRangeConstraintOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTSimpleOptionalOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTStarJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.StaticOptimizer;
 import com.bigdata.rdf.spo.DistinctTermAdvancer;
 import com.bigdata.rdf.spo.ISPO;
@@ -216,6 +218,16 @@ public class StatementPatternNode extends
 		 *      PREDICATEs query is slow </a>
 		 */
         String DISTINCT_TERM_SCAN_VAR = "distinctTermScanVar";
+
+		/**
+		 * An optional annotation on the first statement pattern of a
+		 * subject-star. The value is the #of consecutive statement patterns
+		 * (including this one) which share the same subject variable and
+		 * which will be evaluated by a single {@link SubjectStarJoinOp}.
+		 * 
+		 * @see ASTStarJoinOptimizer
+		 */
+        String STAR_JOIN_SIZE = "starJoinSize";
         
     }
     
@@ -460,6 +472,27 @@ public class StatementPatternNode extends
 		setProperty(Annotations.DISTINCT_TERM_SCAN_VAR, var);
 
 	}
+
+	/**
+	 * Return the #of statement patterns in the subject-star which begins with
+	 * this statement pattern.
+	 * 
+	 * @return The size of the star -or- ZERO (0) if this statement pattern
+	 *         does not begin a subject-star.
+	 * 
+	 * @see Annotations#STAR_JOIN_SIZE
+	 */
+	final public int getStarJoinSize() {
+
+		return getProperty(Annotations.STAR_JOIN_SIZE, 0);
+
+	}
+
+	final public void setStarJoinSize(final int size) {
+
+		setProperty(Annotations.STAR_JOIN_SIZE, size);
+
+	}
     
     /**
      * {@inheritDoc}
@@ -0,0 +1,931 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.URI;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.btree.ICheckpointProtocol;
+import com.bigdata.btree.IIndex;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.io.DirectBufferPool;
+import com.bigdata.journal.TimestampUtility;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.encoder.SolutionSetStreamDecoder;
+import com.bigdata.rdf.internal.encoder.SolutionSetStreamEncoder;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryInclude;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.service.ServiceNode;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.relation.accesspath.ThickCloseableIterator;
+import com.bigdata.rwstore.sector.MemoryManager;
+import com.bigdata.rwstore.sector.MemoryManagerOutOfMemory;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A cache for the materialized solutions of read-only SELECT queries. Each
+ * entry is keyed by the namespace of the KB, the commit time of the last
+ * update to the statement indices of that KB as visible to the read view, and
+ * the optimized AST (together with the query string and the exogenous
+ * bindings). The solutions are encoded using the
+ * {@link SolutionSetStreamEncoder} (which preserves the cached RDF Values) and
+ * stored on a {@link MemoryManager} which is bounded by a byte budget. Entries
+ * are evicted in LRU order when the budget would be exceeded.
+ * <p>
+ * Since the commit time is part of the key, a commit which modifies the KB
+ * automatically invalidates the cached solutions for that KB: queries against
+ * the new commit point will not find the old entries. The entries for older
+ * commit points of a KB are discarded as soon as solutions are cached for a
+ * newer commit point of that KB. A commit against some other KB instance does
+ * not invalidate the cached solutions.
+ * <p>
+ * Solutions are only cached for read-only views of KBs backed by a local
+ * journal, and only if the query does not use a SERVICE, a pre-existing named
+ * solution set, or a non-deterministic function (RAND, NOW, UUID, STRUUID,
+ * BNODE). The solutions are recorded as they are visited by the caller and are
+ * only cached once the caller has drained all solutions and if there were not
+ * more than {@link QueryHints#DEFAULT_SOLUTION_CACHE_MAX_SOLUTIONS} of them.
+ * 
+ * @see QueryHints#SOLUTION_CACHE
+ * @see QueryHints#DEFAULT_SOLUTION_CACHE_MAX_MEMORY
+ */
+public class SolutionCache {
+
+    private static final Logger log = Logger.getLogger(SolutionCache.class);
+
+    /**
+     * Weak key cache to enforce the singleton pattern.
+     * 
+     * @see CacheConnectionFactory
+     */
+    private static final WeakHashMap<QueryEngine, SolutionCache> instanceCache = new WeakHashMap<QueryEngine, SolutionCache>();
+
+    /**
+     * The queue onto which the {@link QueryEngineRef}s are placed once their
+     * {@link QueryEngine} has been garbage collected.
+     */
+    private static final ReferenceQueue<QueryEngine> queryEngineRefQueue = new ReferenceQueue<QueryEngine>();
+
+    /**
+     * The {@link QueryEngineRef} for each cache in the {@link #instanceCache}.
+     * This keeps the references reachable until they are enqueued. Guarded by
+     * {@link #instanceCache}.
+     */
+    private static final Map<SolutionCache, QueryEngineRef> queryEngineRefs = new HashMap<SolutionCache, QueryEngineRef>();
+
+    /**
+     * A weak reference to a {@link QueryEngine} together with its
+     * {@link SolutionCache}. If the {@link QueryEngine} is garbage collected
+     * without having been shutdown, then the reference is enqueued and the
+     * native memory of the cache is released by
+     * {@link #closeCollectedInstances()}.
+     */
+    private static class QueryEngineRef extends WeakReference<QueryEngine> {
+
+        private final SolutionCache cache;
+
+        QueryEngineRef(final QueryEngine queryEngine,
+                final SolutionCache cache) {
+
+            super(queryEngine, queryEngineRefQueue);
+
+            this.cache = cache;
+
+        }
+
+    }
+
+    /**
+     * Singleton factory.
+     * 
+     * @param queryEngine
+     *            The {@link QueryEngine}.
+     * 
+     * @return The {@link SolutionCache} for that {@link QueryEngine}.
+     */
+    static public SolutionCache getInstance(final QueryEngine queryEngine) {
+
+        if (queryEngine == null)
+            throw new IllegalArgumentException();
+
+        closeCollectedInstances();
+
+        synchronized (instanceCache) {
+
+            SolutionCache cache = instanceCache.get(queryEngine);
+
+            if (cache == null) {
+
+                cache = new SolutionCache(
+                        QueryHints.DEFAULT_SOLUTION_CACHE_MAX_MEMORY,
+                        QueryHints.DEFAULT_SOLUTION_CACHE_MAX_SOLUTIONS);
+
+                instanceCache.put(queryEngine, cache);
+
+                queryEngineRefs.put(cache,
+                        new QueryEngineRef(queryEngine, cache));
+
+            }
+
+            return cache;
+
+        }
+
+    }
+
+    /**
+     * Close the {@link SolutionCache} of each {@link QueryEngine} which was
+     * garbage collected without having been shutdown, releasing its native
+     * memory.
+     */
+    private static void closeCollectedInstances() {
+
+        Reference<? extends QueryEngine> ref;
+
+        while ((ref = queryEngineRefQueue.poll()) != null) {
+
+            final SolutionCache cache = ((QueryEngineRef) ref).cache;
+
+            synchronized (instanceCache) {
+
+                queryEngineRefs.remove(cache);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Closing the cache of a collected query engine.");
+
+            cache.close();
+
+        }
+
+    }
+
+    /**
+     * Close the {@link SolutionCache} for the {@link QueryEngine} (if any),
+     * releasing its native memory. This is invoked when the
+     * {@link QueryEngine} is shutdown. The cache of a {@link QueryEngine}
+     * which is garbage collected without having been shutdown is closed by
+     * the next call to {@link #getInstance(QueryEngine)}.
+     * 
+     * @param queryEngine
+     *            The {@link QueryEngine}.
+     */
+    static public void closeInstance(final QueryEngine queryEngine) {
+
+        final SolutionCache cache;
+
+        synchronized (instanceCache) {
+
+            cache = instanceCache.remove(queryEngine);
+
+            if (cache != null)
+                queryEngineRefs.remove(cache);
+
+        }
+
+        if (cache != null) {
+
+            cache.close();
+
+        }
+
+    }
+
+    /**
+     * The functions whose value is not determined by their arguments.
+     */
+    private static final Set<URI> nonDeterministicFunctions = new HashSet<URI>(
+            Arrays.asList(new URI[] { FunctionRegistry.RAND,
+                    FunctionRegistry.NOW, FunctionRegistry.UUID,
+                    FunctionRegistry.STRUUID, FunctionRegistry.BNODE }));
+
+    /**
+     * The #of solutions in each decoded chunk.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * The maximum #of solutions which will be cached for a query.
+     */
+    private final long maxSolutions;
+
+    /**
+     * The backing store for the encoded solutions.
+     */
+    private final MemoryManager mmgr;
+
+    /**
+     * LRU ordered map from the {@link Key} to the {@link Entry} for the
+     * encoded solutions. All access is synchronized on this map.
+     */
+    private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<Key, Entry>(
+            16, .75f, true/* accessOrder */);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Set once the native memory has been released. Guarded by {@link #cache}.
+     */
+    private boolean closed = false;
+
+    /**
+     * @param maxMemory
+     *            The maximum #of bytes of native memory which will be used for
+     *            the encoded solutions (rounded up to a multiple of the
+     *            {@link DirectBufferPool} buffer capacity).
+     * @param maxSolutions
+     *            The maximum #of solutions which will be cached for a query.
+     */
+    public SolutionCache(final long maxMemory, final long maxSolutions) {
+
+        if (maxMemory <= 0L)
+            throw new IllegalArgumentException();
+
+        if (maxSolutions <= 0L)
+            throw new IllegalArgumentException();
+
+        final DirectBufferPool pool = DirectBufferPool.INSTANCE;
+
+        final long sectors = (maxMemory + pool.getBufferCapacity() - 1)
+                / pool.getBufferCapacity();
+
+        this.mmgr = new MemoryManager(pool,
+                (int) Math.min(Integer.MAX_VALUE, sectors), false/* blocks */,
+                null/* properties */);
+
+        this.maxSolutions = maxSolutions;
+
+    }
+
+    /**
+     * The #of queries whose solutions were read from the cache.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * The #of cacheable queries whose solutions were not in the cache.
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+
+    }
+
+    /**
+     * The #of entries which were evicted to stay within the memory budget.
+     */
+    public long getEvictionCount() {
+
+        return evictionCount.get();
+
+    }
+
+    /**
+     * The #of entries in the cache.
+     */
+    public int size() {
+
+        synchronized (cache) {
+
+            return cache.size();
+
+        }
+
+    }
+
+    /**
+     * The #of bytes of native memory used by the encoded solutions.
+     */
+    public long getUserBytes() {
+
+        return mmgr.getUserBytes();
+
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public void clear() {
+
+        synchronized (cache) {
+
+            if (closed)
+                return;
+
+            cache.clear();
+
+            mmgr.clear();
+
+        }
+
+    }
+
+    /**
+     * Discard all entries and release the native memory. The cache is empty
+     * and will not cache any more solutions once closed.
+     * 
+     * @see #closeInstance(QueryEngine)
+     */
+    public void close() {
+
+        synchronized (cache) {
+
+            if (closed)
+                return;
+
+            closed = true;
+
+            cache.clear();
+
+            mmgr.close();
+
+        }
+
+    }
+
+    /**
+     * Return the key under which the solutions for the query would be cached
+     * -or- <code>null</code> if the solutions for the query can not be cached.
+     * 
+     * @param store
+     *            The view of the KB against which the query will be run.
+     * @param queryStr
+     *            The query string (optional).
+     * @param optimizedQuery
+     *            The optimized AST.
+     * @param bindingSets
+     *            The exogenous solutions for the query (optional).
+     */
+    public static Key getKey(final AbstractTripleStore store,
+            final String queryStr, final QueryRoot optimizedQuery,
+            final IBindingSet[] bindingSets) {
+
+        if (!TimestampUtility.isReadOnly(store.getTimestamp())) {
+
+            // Solutions are only cached for read-only views.
+            return null;
+
+        }
+
+        final IIndex ndx = store.getSPORelation().getPrimaryIndex();
+
+        if (!(ndx instanceof ICheckpointProtocol)) {
+
+            // Not a local index (e.g., scale-out).
+            return null;
+
+        }
+
+        /*
+         * The commit time of the last update to the primary statement index
+         * for the commit point from which the view reads.
+         */
+        final long commitTime = ((ICheckpointProtocol) ndx)
+                .getLastCommitTime();
+
+        if (commitTime == 0L) {
+
+            // Never committed.
+            return null;
+
+        }
+
+        if (!isDeterministic(optimizedQuery)) {
+
+            return null;
+
+        }
+
+        final StringBuilder sb = new StringBuilder();
+
+        if (queryStr != null)
+            sb.append(queryStr).append('\n');
+
+        sb.append(optimizedQuery.toString());
+
+        if (bindingSets != null)
+            sb.append('\n').append(Arrays.toString(bindingSets));
+
+        return new Key(store.getNamespace(), commitTime, sb.toString());
+
+    }
+
+    /**
+     * Return <code>true</code> iff the solutions for the query depend only on
+     * the data in the KB.
+     */
+    static boolean isDeterministic(final QueryRoot queryRoot) {
+
+        final Set<String> namedSubqueries = new HashSet<String>();
+
+        final List<NamedSubqueryInclude> includes = new LinkedList<NamedSubqueryInclude>();
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(queryRoot);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof ServiceNode) {
+
+                // SERVICE calls (including full text search).
+                return false;
+
+            } else if (op instanceof FunctionNode) {
+
+                if (nonDeterministicFunctions.contains(((FunctionNode) op)
+                        .getFunctionURI()))
+                    return false;
+
+            } else if (op instanceof NamedSubqueryRoot) {
+
+                namedSubqueries.add(((NamedSubqueryRoot) op).getName());
+
+            } else if (op instanceof NamedSubqueryInclude) {
+
+                includes.add((NamedSubqueryInclude) op);
+
+            }
+
+        }
+
+        for (NamedSubqueryInclude include : includes) {
+
+            if (!namedSubqueries.contains(include.getName())) {
+
+                // INCLUDE of a pre-existing named solution set.
+                return false;
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Return the cached solutions.
+     * 
+     * @param key
+     *            The key.
+     * 
+     * @return An iterator visiting the cached solutions -or- <code>null</code>
+     *         if the solutions are not in the cache.
+     */
+    public ICloseableIterator<IBindingSet[]> get(final Key key) {
+
+        final byte[] data;
+        final long nsolutions;
+
+        synchronized (cache) {
+
+            final Entry e = closed ? null : cache.get(key);
+
+            if (e == null) {
+
+                missCount.incrementAndGet();
+
+                return null;
+
+            }
+
+            // Note: copied out while holding the lock so it can not be freed.
+            data = e.addr == 0L ? new byte[0] : mmgr.read(e.addr);
+
+            nsolutions = e.nsolutions;
+
+        }
+
+        hitCount.incrementAndGet();
+
+        return new SolutionSetStreamDecoder(key.namespace, new DataInputStream(
+                new ByteArrayInputStream(data)), nsolutions);
+
+    }
+
+    /**
+     * Encode and cache the solutions. If there is not enough memory then
+     * entries are evicted in LRU order. If the solutions are larger than the
+     * memory budget then they are not cached.
+     * 
+     * @param key
+     *            The key.
+     * @param solutions
+     *            The solutions. All bound values must be {@link IV}s having
+     *            their cached RDF Values.
+     */
+    public void put(final Key key, final List<IBindingSet> solutions) {
+
+        final IBindingSet[][] chunks = new IBindingSet[(solutions.size()
+                + CHUNK_SIZE - 1)
+                / CHUNK_SIZE][];
+
+        {
+
+            final Iterator<IBindingSet> itr = solutions.iterator();
+
+            for (int i = 0; i < chunks.length; i++) {
+
+                final int n = Math.min(CHUNK_SIZE, solutions.size() - i
+                        * CHUNK_SIZE);
+
+                chunks[i] = new IBindingSet[n];
+
+                for (int j = 0; j < n; j++) {
+
+                    chunks[i][j] = itr.next();
+
+                }
+
+            }
+
+        }
+
+        final DataOutputBuffer buf = new DataOutputBuffer();
+
+        try {
+
+            new SolutionSetStreamEncoder(key.namespace).encode(
+                    new DataOutputStream(buf),
+                    new ThickCloseableIterator<IBindingSet[]>(chunks));
+
+        } catch (IOException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+        final int nbytes = buf.limit();
+
+        synchronized (cache) {
+
+            if (closed)
+                return;
+
+            // Discard the entries for older commit points of the same KB.
+            final Iterator<java.util.Map.Entry<Key, Entry>> itr = cache
+                    .entrySet().iterator();
+
+            while (itr.hasNext()) {
+
+                final java.util.Map.Entry<Key, Entry> e = itr.next();
+
+                final Key k = e.getKey();
+
+                if (k.namespace.equals(key.namespace)) {
+
+                    if (k.commitTime > key.commitTime) {
+
+                        // Already caching solutions for a newer commit point.
+                        return;
+
+                    }
+
+                    if (k.commitTime < key.commitTime || k.equals(key)) {
+
+                        if (e.getValue().addr != 0L)
+                            mmgr.free(e.getValue().addr);
+
+                        itr.remove();
+
+                    }
+
+                }
+
+            }
+
+            if (nbytes == 0) {
+
+                // No solutions.
+                cache.put(key, new Entry(0L/* addr */, 0L/* nsolutions */));
+
+                return;
+
+            }
+
+            while (true) {
+
+                try {
+
+                    final long addr = mmgr.allocate(ByteBuffer.wrap(
+                            buf.array(), 0, nbytes));
+
+                    cache.put(key, new Entry(addr, solutions.size()));
+
+                    return;
+
+                } catch (MemoryManagerOutOfMemory ex) {
+
+                    if (!evictLRU()) {
+
+                        // Larger than the memory budget.
+                        if (log.isInfoEnabled())
+                            log.info("Solutions too large to cache: nbytes="
+                                    + nbytes);
+
+                        return;
+
+                    }
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Evict the least recently used entry (if any).
+     * 
+     * @return <code>true</code> if an entry was evicted.
+     */
+    private boolean evictLRU() {
+
+        final Iterator<Entry> itr = cache.values().iterator();
+
+        if (!itr.hasNext())
+            return false;
+
+        final Entry e = itr.next();
+
+        if (e.addr != 0L)
+            mmgr.free(e.addr);
+
+        itr.remove();
+
+        evictionCount.incrementAndGet();
+
+        return true;
+
+    }
+
+    /**
+     * Return an iterator which visits the solutions from the source iterator
+     * and caches them under the given key once the source iterator has been
+     * exhausted (unless there were too many solutions).
+     * 
+     * @param key
+     *            The key.
+     * @param src
+     *            The source iterator. All bound values must be {@link IV}s
+     *            having their cached RDF Values.
+     */
+    public ICloseableIterator<IBindingSet> newRecordingIterator(final Key key,
+            final ICloseableIterator<IBindingSet> src) {
+
+        return new RecordingIterator(key, src);
+
+    }
+
+    /**
+     * Iterator records the visited solutions and caches them once the source
+     * is exhausted.
+     */
+    private class RecordingIterator implements ICloseableIterator<IBindingSet> {
+
+        private final Key key;
+
+        private final ICloseableIterator<IBindingSet> src;
+
+        /**
+         * The recorded solutions -or- <code>null</code> if we have stopped
+         * recording.
+         */
+        private List<IBindingSet> solutions = new LinkedList<IBindingSet>();
+
+        RecordingIterator(final Key key,
+                final ICloseableIterator<IBindingSet> src) {
+
+            this.key = key;
+
+            this.src = src;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (src.hasNext())
+                return true;
+
+            if (solutions != null) {
+
+                final List<IBindingSet> tmp = solutions;
+
+                solutions = null;
+
+                put(key, tmp);
+
+            }
+
+            return false;
+
+        }
+
+        @Override
+        public IBindingSet next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final IBindingSet bset = src.next();
+
+            if (solutions != null) {
+
+                if (solutions.size() < maxSolutions) {
+
+                    solutions.add(bset);
+
+                } else {
+
+                    // Too many solutions.
+                    solutions = null;
+
+                }
+
+            }
+
+            return bset;
+
+        }
+
+        @Override
+        public void remove() {
+
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public void close() {
+
+            // Note: Not cached unless the source was exhausted.
+            solutions = null;
+
+            src.close();
+
+        }
+
+    }
+
+    /**
+     * The encoded solutions for a query.
+     */
+    private static class Entry {
+
+        /** The address of the encoded solutions (0L if no solutions). */
+        final long addr;
+
+        /** The #of encoded solutions. */
+        final long nsolutions;
+
+        Entry(final long addr, final long nsolutions) {
+
+            this.addr = addr;
+
+            this.nsolutions = nsolutions;
+
+        }
+
+    }
+
+    /**
+     * The key for the cached solutions.
+     */
+    public static class Key {
+
+        private final String namespace;
+
+        private final long commitTime;
+
+        private final String query;
+
+        private final int hashCode;
+
+        /**
+         * @param namespace
+         *            The namespace of the KB.
+         * @param commitTime
+         *            The commit time of the last update to the statement
+         *            indices of the KB as visible to the read view.
+         * @param query
+         *            A representation of the query.
+         */
+        public Key(final String namespace, final long commitTime,
+                final String query) {
+
+            if (namespace == null)
+                throw new IllegalArgumentException();
+
+            if (query == null)
+                throw new IllegalArgumentException();
+
+            this.namespace = namespace;
+
+            this.commitTime = commitTime;
+
+            this.query = query;
+
+            this.hashCode = 31 * (31 * namespace.hashCode() + (int) (commitTime ^ (commitTime >>> 32)))
+                    + query.hashCode();
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            return hashCode;
+
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key))
+                return false;
+
+            final Key t = (Key) o;
+
+            return hashCode == t.hashCode && commitTime == t.commitTime
+                    && namespace.equals(t.namespace) && query.equals(t.query);
+
+        }
+
+        @Override
+        public String toString() {
+
+            return getClass().getSimpleName() + "{namespace=" + namespace
+                    + ",commitTime=" + commitTime + "}";
+
+        }
+
+    }
+
+}
@@ -76,6 +76,7 @@ import com.bigdata.rdf.sparql.ast.optimizers.ASTQueryHintOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.IASTOptimizer;
 import com.bigdata.rdf.sparql.ast.ssets.ISolutionSetManager;
 import com.bigdata.rdf.sparql.ast.ssets.SolutionSetManager;
+import com.bigdata.rdf.spo.PredicateStatistics;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.service.IBigdataFederation;
 
@@ -203,6 +204,25 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
      * @see QueryHints#MERGE_JOIN
      */
     public boolean mergeJoin = QueryHints.DEFAULT_MERGE_JOIN;
+
+    /**
+     * When <code>true</code>, a subject-star of statement patterns at the head
+     * of a join group will be evaluated as a merge join over the statement
+     * indices.
+     * 
+     * @see QueryHints#STAR_JOIN
+     */
+    public boolean starJoin = QueryHints.DEFAULT_STAR_JOIN;
+
+    /**
+     * When <code>true</code>, a statement pattern whose subject is bound by
+     * the prior joins will be evaluated by a single forward pass over the SPO
+     * index for each chunk of solutions. This may be overridden for a given
+     * statement pattern using a query hint.
+     * 
+     * @see QueryHints#WIDE_ROW_SCAN
+     */
+    public boolean wideRowScan = QueryHints.DEFAULT_WIDE_ROW_SCAN;
     
     /**
      * The maximum parallelism for a solution set hash join when the join is
@@ -271,6 +291,33 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
      */
     public boolean constructDistinctSPO = QueryHints.DEFAULT_CONSTRUCT_DISTINCT_SPO;
 
+    /**
+     * Set by the {@link MaterializationCacheCapacityHint}. The maximum #of
+     * resolved RDF Values retained across the chunks of the solutions when the
+     * projection is materialized outside of the query plan.
+     * 
+     * @see QueryHints#MATERIALIZATION_CACHE_CAPACITY
+     */
+    public int materializationCacheCapacity = QueryHints.DEFAULT_MATERIALIZATION_CACHE_CAPACITY;
+
+    /**
+     * Set by the {@link SolutionCacheHint}. When <code>true</code>, the
+     * materialized solutions of a SELECT query against a read-only view of
+     * the KB are cached for reuse.
+     * 
+     * @see QueryHints#SOLUTION_CACHE
+     */
+    public boolean solutionCache = QueryHints.DEFAULT_SOLUTION_CACHE;
+
+    /**
+     * Set by the {@link PredicateStatisticsHint}. When <code>true</code>, the
+     * cardinality estimates for statement patterns and joins will use the
+     * {@link PredicateStatistics} for the KB when they are available.
+     * 
+     * @see QueryHints#PREDICATE_STATISTICS
+     */
+    public boolean predicateStatistics = QueryHints.DEFAULT_PREDICATE_STATISTICS;
+
     /**
      * When <code>true</code>, force the use of REMOTE access paths in scale-out
      * joins.
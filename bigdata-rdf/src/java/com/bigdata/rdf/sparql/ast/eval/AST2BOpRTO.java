@@ -65,6 +65,7 @@ import com.bigdata.bop.join.JoinAnnotations;
 import com.bigdata.bop.join.PipelineJoin;
 import com.bigdata.bop.join.PipelineJoinStats;
 import com.bigdata.bop.joinGraph.PartitionedJoinGroup;
+import com.bigdata.bop.joinGraph.rto.AdaptiveJoinGraph;
 import com.bigdata.bop.joinGraph.rto.EdgeSample;
 import com.bigdata.bop.joinGraph.rto.EstimateEnum;
 import com.bigdata.bop.joinGraph.rto.JGraph;
@@ -143,6 +144,12 @@ public class AST2BOpRTO extends AST2BOpJoins {
      * as TWO joins, basically just overriding this field.
      */
     static private final int RTO_MIN_JOINS = 3;
+
+    /**
+     * The minimum #of joins which must remain after the checkpoint for the
+     * {@link AdaptiveJoinGraph} to have a choice of join orders.
+     */
+    static private final int ADAPTIVE_MIN_JOINS = 2;
     
     /**
      * When <code>true</code>, the RTO will only accept simple joins into the
@@ -253,6 +260,117 @@ public class AST2BOpRTO extends AST2BOpJoins {
             final JoinGroupNode joinGroup, final Set<IVariable<?>> doneSet,
             final AST2BOpContext ctx, final AtomicInteger start) {
 
+        return convertRTOJoinGraph(left, joinGroup, doneSet, ctx, start,
+                RTO_MIN_JOINS, null/* estimatedCardinality */);
+
+    }
+
+    /**
+     * Inspect the remainder of a join group which was ordered by the static
+     * optimizer. If it begins with enough required statement patterns, then
+     * the leading statement patterns are converted into joins in the static
+     * order and the remaining statement patterns are pushed down into an
+     * {@link AdaptiveJoinGraph}. That operator is a checkpoint which observes
+     * the actual cardinality of the leading joins and reorders the remaining
+     * joins iff the static estimate was off by more than
+     * {@link QueryHints#ADAPTIVE_JOIN_ORDER_RATIO}.
+     * 
+     * @see QueryHints#ADAPTIVE_JOIN_ORDER
+     * @see QueryHints#ADAPTIVE_JOIN_ORDER_LEADING_JOINS
+     */
+    static protected PipelineOp convertAdaptiveJoinGraph(PipelineOp left,
+            final JoinGroupNode joinGroup, final Set<IVariable<?>> doneSet,
+            final AST2BOpContext ctx, final AtomicInteger start) {
+
+        final int arity = joinGroup.arity();
+
+        // The #of leading joins to run in the static order.
+        final int leadingJoins = joinGroup.getProperty(
+                QueryHints.ADAPTIVE_JOIN_ORDER_LEADING_JOINS,
+                QueryHints.DEFAULT_ADAPTIVE_JOIN_ORDER_LEADING_JOINS);
+
+        // The #of required SPs at the head of the remainder of the group.
+        int nrequired = 0;
+
+        for (int i = start.get(); i < arity; i++) {
+
+            final IGroupMemberNode child = (IGroupMemberNode) joinGroup.get(i);
+
+            if (!(child instanceof StatementPatternNode)
+                    || ((StatementPatternNode) child).isOptional()) {
+
+                break;
+
+            }
+
+            nrequired++;
+
+        }
+
+        if (nrequired < leadingJoins + ADAPTIVE_MIN_JOINS) {
+
+            // Not enough joins to reorder.
+            return left;
+
+        }
+
+        /*
+         * The leading joins run in the static order. The estimated cardinality
+         * of their join is the smallest of their estimated cardinalities (each
+         * solution for the more selective access path is assumed to join with
+         * at most one solution for the other access path).
+         */
+        long estimatedCardinality = Long.MAX_VALUE;
+
+        for (int n = 0; n < leadingJoins; n++) {
+
+            final StatementPatternNode sp = (StatementPatternNode) joinGroup
+                    .get(start.getAndIncrement());
+
+            final long card = sp.getEstimatedCardinality(null/* opt */);
+
+            if (card < 0L || estimatedCardinality < 0L) {
+
+                // Unknown.
+                estimatedCardinality = -1L;
+
+            } else {
+
+                estimatedCardinality = Math.min(estimatedCardinality, card);
+
+            }
+
+            left = join(left, //
+                    AST2BOpUtility.toPredicate(sp, ctx),//
+                    doneSet,//
+                    getJoinConstraints(sp), //
+                    null, // cutoffLimit
+                    sp.getQueryHints(), //
+                    ctx);
+
+        }
+
+        return convertRTOJoinGraph(left, joinGroup, doneSet, ctx, start,
+                ADAPTIVE_MIN_JOINS, estimatedCardinality);
+
+    }
+
+    /**
+     * Push the statement patterns at the head of the remainder of the join
+     * group down into a {@link JoinGraph}.
+     * 
+     * @param minJoins
+     *            The minimum #of statement patterns which must be accepted.
+     * @param estimatedCardinality
+     *            When non-<code>null</code>, an {@link AdaptiveJoinGraph} is
+     *            generated and this is the estimated cardinality of the
+     *            solutions flowing into it. Otherwise the RTO is used.
+     */
+    static private PipelineOp convertRTOJoinGraph(PipelineOp left,
+            final JoinGroupNode joinGroup, final Set<IVariable<?>> doneSet,
+            final AST2BOpContext ctx, final AtomicInteger start,
+            final int minJoins, final Long estimatedCardinality) {
+
         /*
          * Snapshot of the doneSet on entry. This gets passed into the RTO.
          */
@@ -382,7 +500,7 @@ public class AST2BOpRTO extends AST2BOpJoins {
     
             }
 
-            if (naccepted < RTO_MIN_JOINS) {
+            if (naccepted < minJoins) {
 
                 // There are not enough joins for the RTO.
                 return left;
@@ -406,8 +524,15 @@ public class AST2BOpRTO extends AST2BOpJoins {
         
         final int nedges = joinGroup.getProperty(QueryHints.RTO_NEDGES,
                 QueryHints.DEFAULT_RTO_NEDGES);
+
+        final long maxSamplingMillis = joinGroup.getProperty(
+                QueryHints.RTO_MAX_SAMPLING_MILLIS,
+                QueryHints.DEFAULT_RTO_MAX_SAMPLING_MILLIS);
+
+        final boolean reusePlan = joinGroup.getProperty(
+                QueryHints.RTO_REUSE_PLAN, QueryHints.DEFAULT_RTO_REUSE_PLAN);
         
-        left = new JoinGraph(leftOrEmpty(left),//
+        final List<NV> anns = new LinkedList<NV>(Arrays.asList(//
                 new NV(BOp.Annotations.BOP_ID, ctx.nextId()),//
                 new NV(BOp.Annotations.EVALUATION_CONTEXT,
                         BOpEvaluationContext.CONTROLLER),//
@@ -424,10 +549,35 @@ public class AST2BOpRTO extends AST2BOpJoins {
                 new NV(JoinGraph.Annotations.LIMIT, limit),//
                 new NV(JoinGraph.Annotations.NEDGES, nedges),//
                 new NV(JoinGraph.Annotations.SAMPLE_TYPE, sampleType.name()),//
+                new NV(JoinGraph.Annotations.MAX_SAMPLING_MILLIS,
+                        maxSamplingMillis),//
+                new NV(JoinGraph.Annotations.REUSE_PLAN, reusePlan),//
                 new NV(JoinGraph.Annotations.DONE_SET, doneSetIn),//
                 new NV(JoinGraph.Annotations.NT, new NT(ctx.getNamespace(),
                         ctx.getTimestamp()))//
-        );
+        ));
+
+        if (estimatedCardinality == null) {
+
+            left = new JoinGraph(leftOrEmpty(left),
+                    anns.toArray(new NV[anns.size()]));
+
+        } else {
+
+            final double ratio = joinGroup.getProperty(
+                    QueryHints.ADAPTIVE_JOIN_ORDER_RATIO,
+                    QueryHints.DEFAULT_ADAPTIVE_JOIN_ORDER_RATIO);
+
+            anns.add(new NV(PipelineOp.Annotations.PIPELINED, false));// at-once evaluation
+            anns.add(new NV(PipelineOp.Annotations.MAX_PARALLEL, 1));
+            anns.add(new NV(AdaptiveJoinGraph.Annotations.ESTIMATED_CARDINALITY,
+                    estimatedCardinality));
+            anns.add(new NV(AdaptiveJoinGraph.Annotations.RATIO, ratio));
+
+            left = new AdaptiveJoinGraph(leftOrEmpty(left),
+                    anns.toArray(new NV[anns.size()]));
+
+        }
 
         // These joins were consumed.
         start.addAndGet(naccepted);
@@ -461,19 +611,41 @@ public class AST2BOpRTO extends AST2BOpJoins {
     public static PipelineOp compileJoinGraph(final QueryEngine queryEngine,
             final JoinGraph joinGraph, final Path path) {
 
+        if (path == null)
+            throw new IllegalArgumentException();
+
+        return compileJoinGraph(queryEngine, joinGraph, path.getPredicates());
+
+    }
+
+    /**
+     * Compile a join graph into a query plan.
+     * 
+     * @param queryEngine
+     *            The {@link QueryEngine} on which the RTO has been executing
+     *            and on which the returned query plan may be executed.
+     * @param joinGraph
+     *            The operator that executed the RTO.
+     * @param predicates
+     *            The vertices of the join graph in the order in which they
+     *            will be evaluated.
+     * 
+     * @return The query plan to fully execute that join graph.
+     */
+    public static PipelineOp compileJoinGraph(final QueryEngine queryEngine,
+            final JoinGraph joinGraph, final IPredicate<?>[] predicates) {
+
         if (queryEngine == null)
             throw new IllegalArgumentException();
         
         if (joinGraph == null)
             throw new IllegalArgumentException();
 
-        if (path == null)
+        if (predicates == null)
             throw new IllegalArgumentException();
 
 //        final IVariable<?>[] selected = joinGraph.getSelected();
 
-        final IPredicate<?>[] predicates = path.getPredicates();
-
         final IConstraint[] constraints = joinGraph.getConstraints();
 
         final Set<IVariable<?>> doneSet = new LinkedHashSet<IVariable<?>>(
@@ -53,6 +53,7 @@ import com.bigdata.bop.controller.Steps;
 import com.bigdata.bop.controller.SubqueryOp;
 import com.bigdata.bop.controller.Union;
 import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.bop.engine.StaticAnalysisStats;
 import com.bigdata.bop.join.HTreeHashIndexOp;
 import com.bigdata.bop.join.HTreeMergeJoin;
@@ -71,7 +72,9 @@ import com.bigdata.bop.paths.ZeroLengthPathOp;
 import com.bigdata.bop.rdf.join.ChunkedMaterializationOp;
 import com.bigdata.bop.rdf.join.DataSetJoin;
 import com.bigdata.bop.rdf.join.MockTermResolverOp;
+import com.bigdata.bop.rdf.join.SubjectStarJoinOp;
 import com.bigdata.bop.rdf.join.VariableUnificationOp;
+import com.bigdata.bop.rdf.join.WideRowJoinOp;
 import com.bigdata.bop.solutions.DropOp;
 import com.bigdata.bop.solutions.GroupByOp;
 import com.bigdata.bop.solutions.GroupByRewriter;
@@ -158,6 +161,7 @@ import com.bigdata.rdf.sparql.ast.optimizers.ASTExistsOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTJoinOrderByTypeOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTNamedSubqueryOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTSetValueExpressionsOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTStarJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.service.MockIVReturningServiceCall;
 import com.bigdata.rdf.sparql.ast.service.ServiceCall;
 import com.bigdata.rdf.sparql.ast.service.ServiceCallUtility;
@@ -166,6 +170,7 @@ import com.bigdata.rdf.sparql.ast.service.ServiceRegistry;
 import com.bigdata.rdf.spo.DistinctTermAdvancer;
 import com.bigdata.rdf.spo.ExplicitSPOFilter;
 import com.bigdata.rdf.spo.SPOPredicate;
+import com.bigdata.rdf.spo.SPORelation;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.relation.accesspath.ElementFilter;
 import com.bigdata.striterator.Chunkerator;
@@ -303,6 +308,23 @@ public class AST2BOpUtility extends AST2BOpRTO {
         left = (PipelineOp) left.setProperty(
                 QueryEngine.Annotations.QUERY_ID, ctx.queryId);
 
+        /*
+         * Set the resource limits (if any) on the top-level of the query plan.
+         */
+        {
+
+            final QueryResourceLimits limits = optimizedQuery
+                    .getResourceLimits();
+
+            if (limits != null && !limits.isUnlimited()) {
+
+                left = (PipelineOp) left.setProperty(
+                        QueryEngine.Annotations.RESOURCE_LIMITS, limits);
+
+            }
+
+        }
+
         // Attach the query plan to the ASTContainer.
         astContainer.setQueryPlan(left);
         
@@ -786,22 +808,18 @@ public class AST2BOpUtility extends AST2BOpRTO {
             final String[] dependsOn = subqueryRoot.getDependsOn();
 
             /*
-             * TODO Parallelism for the named subqueries with no dependenceies
-             * has been (at least temporarily) disabled. The problem with a
-             * UNION of these no-dependency named subqueries is that each of
-             * them sees an input solution which is empty (no bindings) and
-             * copies that to its output. Since the outputs are UNIONed, we are
-             * getting N empty solutions out when we run N named subqueries with
-             * no dependencies. This is demonstrated by TestSubQuery in the
-             * "named-subquery-scope" test case. While that test was written to
-             * test something else, it happens to trigger this bug as well. This
-             * could be fixed by a count down latch operator which also gets the
-             * original inputs, waits until N named subqueries have completed,
-             * and then sends the original inputs to the next operator in the
-             * pipeline. This is the signal that the main query (or the next
-             * named subquery) can now execute.
+             * Note: Each of the no-dependency named subqueries sees an input
+             * solution which is empty (no bindings) and copies that to its
+             * output. If the outputs were UNIONed, we would get N empty
+             * solutions out when we run N named subqueries with no
+             * dependencies (this is demonstrated by TestSubQuery in the
+             * "named-subquery-scope" test case). Therefore the subqueries are
+             * run as a barrier: their outputs are discarded and the original
+             * input is sent to the next operator in the pipeline once all N
+             * named subqueries have completed. This is the signal that the
+             * main query (or the next named subquery) can now execute.
              */
-            if (dependsOn.length == 0 && false)
+            if (dependsOn.length == 0)
                 runFirst.add(subqueryRoot);
             else
                 remainder.add(subqueryRoot);
@@ -839,7 +857,8 @@ public class AST2BOpUtility extends AST2BOpRTO {
                                 BOpEvaluationContext.CONTROLLER),//
                         new NV(Steps.Annotations.SUBQUERIES, steps),//
                         new NV(Steps.Annotations.MAX_PARALLEL_SUBQUERIES,
-                                maxParallelSubqueries)//
+                                maxParallelSubqueries),//
+                        new NV(Steps.Annotations.BARRIER, true)//
                 );
 
             }
@@ -2508,6 +2527,13 @@ public class AST2BOpUtility extends AST2BOpRTO {
         }
 
         /*
+         * The Tees form a balanced binary tree whose leaves are the
+         * subqueries, so each subquery receives the source solutions after
+         * O(log(arity)) Tees rather than after a linear chain of (arity-1)
+         * Tees. Since each subquery is a distinct set of operators in the
+         * pipeline, the subqueries are evaluated concurrently once they have
+         * their inputs. This matters for wide UNIONs.
+         * 
          * Should kinda look like this:
          * 
          *       copy := CopyOp( lastBOp4 )[bopId=5]
@@ -2516,51 +2542,26 @@ public class AST2BOpUtility extends AST2BOpRTO {
          *       subquery2 := firstBOp2( lastBOp1 )[bopId=21]->...->lastBOp2(...)[sinkRef=5]
          *       subquery1 := firstBOp1( tee3 )[bopId=11]->...->lastBOp1(...)[sinkRef=5]
          *       tee3   := TEE( tee2 )[bopId=03;sinkRef=31;altSinkRef=41]
-         *       tee2   := TEE( tee1 )[bopId=02;sinkRef=03;altSinkRef=21]
-         *       tee1   := TEE( left )[bopId=01;sinkRef=02;altSinkRef=11]
+         *       tee2   := TEE( tee1 )[bopId=02;sinkRef=11;altSinkRef=21]
+         *       tee1   := TEE( left )[bopId=01;sinkRef=02;altSinkRef=03]
          *       left
+         * 
+         * Note: We need one less Tee than we have subqueries. The Tees are
+         * generated in pre-order so the root of the tree is the first Tee
+         * after [left].
          */
 
-        int thisTeeId = ctx.nextId();
-        int nextTeeId = ctx.nextId();
-        
-        /*
-         * We need one less Tee than we have subqueries.
-         */
-        for (int j = 0; j < (arity - 1); j++) {
-        	
-            final LinkedList<NV> anns = new LinkedList<NV>();
+        final List<NV[]> tees = new LinkedList<NV[]>();
 
-            anns.add(new NV(BOp.Annotations.BOP_ID, thisTeeId));
-            
-            if (j < (arity - 2)) {
-            
-            	/* 
-            	 * Not the last one - send the Tee to the next Tee and the next 
-            	 * subquery.
-            	 */
-            	anns.add(new NV(PipelineOp.Annotations.SINK_REF, nextTeeId));
-            	anns.add(new NV(PipelineOp.Annotations.ALT_SINK_REF, subqueryIds[j]));
-            	
-    			thisTeeId = nextTeeId;
-            	nextTeeId = ctx.nextId();
-            	
-            } else {
-            	
-            	/*
-            	 * Last one - send the Tee to the last two subqueries.
-            	 */
-            	anns.add(new NV(PipelineOp.Annotations.SINK_REF, subqueryIds[j]));
-            	anns.add(new NV(PipelineOp.Annotations.ALT_SINK_REF, subqueryIds[j+1]));
-            	
-            }
-            
-            left = applyQueryHints(
-                    new Tee(leftOrEmpty(left), NV.asMap(anns
-                            .toArray(new NV[anns.size()]))), unionNode, ctx);
+        addTeeTree(subqueryIds, 0/* fromIndex */, arity/* toIndex */, tees, ctx);
+
+        for (NV[] anns : tees) {
+
+            left = applyQueryHints(new Tee(leftOrEmpty(left), NV.asMap(anns)),
+                    unionNode, ctx);
 
         }
-        
+
         /*
          * Since this is a UNION, the only known materialized variables which we
          * can rely on are those which are known materialized for ALL of the
@@ -2631,6 +2632,54 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
     }
 
+    /**
+     * Generate the annotations for a balanced binary tree of {@link Tee}s
+     * whose leaves are the subqueries of a UNION.
+     * 
+     * @param subqueryIds
+     *            The ids of the first operator of each subquery.
+     * @param fromIndex
+     *            The first subquery (inclusive) covered by this (sub)tree.
+     * @param toIndex
+     *            The last subquery (exclusive) covered by this (sub)tree.
+     * @param tees
+     *            The annotations for each {@link Tee} are appended to this
+     *            list in pre-order.
+     * 
+     * @return The id of the operator at the root of the (sub)tree.
+     */
+    private static int addTeeTree(final int[] subqueryIds,
+            final int fromIndex, final int toIndex, final List<NV[]> tees,
+            final AST2BOpContext ctx) {
+
+        if (toIndex - fromIndex == 1) {
+
+            // A leaf.
+            return subqueryIds[fromIndex];
+
+        }
+
+        final int teeId = ctx.nextId();
+
+        final NV[] anns = new NV[3];
+
+        // Note: added before the children (pre-order).
+        tees.add(anns);
+
+        final int mid = (fromIndex + toIndex) >>> 1;
+
+        anns[0] = new NV(BOp.Annotations.BOP_ID, teeId);
+
+        anns[1] = new NV(PipelineOp.Annotations.SINK_REF, addTeeTree(
+                subqueryIds, fromIndex, mid, tees, ctx));
+
+        anns[2] = new NV(PipelineOp.Annotations.ALT_SINK_REF, addTeeTree(
+                subqueryIds, mid, toIndex, tees, ctx));
+
+        return teeId;
+
+    }
+
     /**
      * Generate the query plan for an arbitrary length path.
      */
@@ -3004,6 +3053,18 @@ public class AST2BOpUtility extends AST2BOpRTO {
              * handled as part of normal join group processing below.
              */
 
+        } else if (joinGroup.getProperty(QueryHints.ADAPTIVE_JOIN_ORDER,
+                QueryHints.DEFAULT_ADAPTIVE_JOIN_ORDER)) {
+
+            /*
+             * Run the leading joins in the static order and then checkpoint
+             * the observed cardinality, reordering the remaining joins if the
+             * static estimate was badly off.
+             */
+
+            left = convertAdaptiveJoinGraph(left, joinGroup, doneSet, ctx,
+                    start);
+
         }
         
         /*
@@ -3016,6 +3077,21 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
             if (child instanceof StatementPatternNode) {
                 final StatementPatternNode sp = (StatementPatternNode) child;
+                if (sp.getStarJoinSize() > 1) {
+                    /*
+                     * A subject-star identified by the ASTStarJoinOptimizer.
+                     * The star is evaluated by a single merge join operator
+                     * unless the generated predicates require filters which
+                     * that operator does not support.
+                     */
+                    final PipelineOp tmp = addSubjectStarJoin(left,
+                            joinGroup, i, ctx);
+                    if (tmp != null) {
+                        left = tmp;
+                        i += sp.getStarJoinSize() - 1;
+                        continue;
+                    }
+                }
                 /*
                  * Add statement pattern joins and the filters on those joins.
                  * 
@@ -3026,6 +3102,18 @@ public class AST2BOpUtility extends AST2BOpRTO {
                  * (it calls through to Rule2BOpUtility).
                  */
                 final Predicate<?> pred = toPredicate(sp, ctx);
+                if (isWideRowScan(sp, pred, ctx)) {
+                    /*
+                     * The subject is bound by the prior joins. Read the SPO
+                     * index in one forward pass for each chunk of solutions.
+                     */
+                    left = applyQueryHints(new WideRowJoinOp(
+                            leftOrEmpty(left),//
+                            new NV(BOp.Annotations.BOP_ID, ctx.nextId()),//
+                            new NV(WideRowJoinOp.Annotations.PREDICATE, pred)//
+                            ), sp, ctx);
+                    continue;
+                }
                 final boolean optional = sp.isOptional();
                 left = join(left, //
                         pred,//
@@ -3177,6 +3265,120 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
     }
 
+    /**
+     * Return <code>true</code> iff the statement pattern should be evaluated
+     * by a {@link WideRowJoinOp}. This is the case when the subject is a
+     * variable which is definitely bound by the prior joins, the SPO index
+     * would be used to read the statements, and neither the statement pattern
+     * nor the generated predicate require anything other than a scan of that
+     * index.
+     */
+    private static boolean isWideRowScan(final StatementPatternNode sp,
+            final Predicate<?> pred, final AST2BOpContext ctx) {
+
+        if (!sp.getQueryHintAsBoolean(QueryHints.WIDE_ROW_SCAN,
+                ctx.wideRowScan))
+            return false;
+
+        if (!ctx.isTriples() || ctx.isCluster())
+            return false;
+
+        final SPORelation spoRelation = ctx.getAbstractTripleStore()
+                .getSPORelation();
+
+        if (spoRelation.oneAccessPath || spoRelation.isHistory())
+            return false;
+
+        if (!(sp.s() instanceof VarNode) || sp.c() != null
+                || sp.sid() != null)
+            return false;
+
+        if (sp.p() instanceof VarNode && sp.o() instanceof ConstantNode) {
+            // The OSP index is more selective.
+            return false;
+        }
+
+        if (!sp.getAttachedJoinFilters().isEmpty())
+            return false;
+
+        if (sp.getRange() != null || sp.getFastRangeCountVar() != null
+                || sp.getDistinctTermScanVar() != null)
+            return false;
+
+        if (sp.getProperty(StatementPatternNode.Annotations.DISTINCT,
+                StatementPatternNode.Annotations.DEFAULT_DISTINCT))
+            return false;
+
+        if (sp.getQueryHintAsBoolean(QueryHints.HASH_JOIN, false)
+                || sp.getQueryHintAsBoolean(QueryHints.HISTORY, false))
+            return false;
+
+        if (pred.getProperty(IPredicate.Annotations.INDEX_LOCAL_FILTER) != null
+                || pred.getProperty(IPredicate.Annotations.ACCESS_PATH_FILTER) != null
+                || pred.getProperty(IPredicate.Annotations.ACCESS_PATH_EXPANDER) != null
+                || pred.getProperty(IPredicate.Annotations.KEY_ORDER) != null
+                || pred.getProperty(IPredicate.Annotations.CUTOFF_LIMIT) != null)
+            return false;
+
+        final Set<IVariable<?>> incoming = ctx.sa.getDefinitelyIncomingBindings(
+                sp, new LinkedHashSet<IVariable<?>>());
+
+        return incoming.contains(((VarNode) sp.s()).getValueExpression());
+
+    }
+
+    /**
+     * Translate a subject-star identified by the {@link ASTStarJoinOptimizer}
+     * into a single {@link SubjectStarJoinOp}. The star consists of the
+     * {@link StatementPatternNode#getStarJoinSize()} statement patterns
+     * starting at the given index in the join group.
+     * 
+     * @return The new pipeline -or- <code>null</code> if the star can not be
+     *         handled by the {@link SubjectStarJoinOp} (for example, because
+     *         the generated predicates carry filters or expanders). In this
+     *         case the statement patterns are translated as normal joins.
+     */
+    private static PipelineOp addSubjectStarJoin(final PipelineOp left,
+            final JoinGroupNode joinGroup, final int start,
+            final AST2BOpContext ctx) {
+
+        final int n = ((StatementPatternNode) joinGroup.get(start))
+                .getStarJoinSize();
+
+        if (start + n > joinGroup.arity())
+            return null;
+
+        final Predicate<?>[] preds = new Predicate<?>[n];
+
+        for (int j = 0; j < n; j++) {
+
+            final BOp child = joinGroup.get(start + j);
+
+            if (!(child instanceof StatementPatternNode))
+                return null;
+
+            final Predicate<?> pred = toPredicate((StatementPatternNode) child,
+                    ctx);
+
+            if (pred.getProperty(IPredicate.Annotations.INDEX_LOCAL_FILTER) != null
+                    || pred.getProperty(IPredicate.Annotations.ACCESS_PATH_FILTER) != null
+                    || pred.getProperty(IPredicate.Annotations.ACCESS_PATH_EXPANDER) != null) {
+
+                return null;
+
+            }
+
+            preds[j] = pred;
+
+        }
+
+        return applyQueryHints(new SubjectStarJoinOp(leftOrEmpty(left),//
+                new NV(BOp.Annotations.BOP_ID, ctx.nextId()),//
+                new NV(SubjectStarJoinOp.Annotations.PREDICATES, preds)//
+                ), joinGroup, ctx);
+
+    }
+
     /**
      * Attempt to translate the join group using a merge join.
      * <P>
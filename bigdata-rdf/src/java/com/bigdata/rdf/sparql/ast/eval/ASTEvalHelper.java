@@ -86,6 +86,7 @@ import com.bigdata.rdf.sparql.ast.UpdateRoot;
 import com.bigdata.rdf.sparql.ast.cache.DescribeBindingsCollector;
 import com.bigdata.rdf.sparql.ast.cache.DescribeCacheUpdater;
 import com.bigdata.rdf.sparql.ast.cache.IDescribeCache;
+import com.bigdata.rdf.sparql.ast.cache.SolutionCache;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.rdf.store.BigdataBindingSetResolverator;
 import com.bigdata.striterator.ChunkedWrappedIterator;
@@ -249,9 +250,39 @@ public class ASTEvalHelper {
         final boolean materializeProjectionInQuery = context.materializeProjectionInQuery
                 && !optimizedQuery.hasSlice();
 
-        final CloseableIteration<BindingSet, QueryEvaluationException> itr = ASTEvalHelper
-                .evaluateQuery(astContainer, context, 
-                        materializeProjectionInQuery, projected);
+        /*
+         * The solution cache (if enabled) and the key for this query (if the
+         * solutions for this query may be cached).
+         */
+        final SolutionCache solutionCache = context.solutionCache ? SolutionCache
+                .getInstance(context.queryEngine) : null;
+
+        final SolutionCache.Key cacheKey = solutionCache == null ? null
+                : SolutionCache.getKey(store, astContainer.getQueryString(),
+                        optimizedQuery,
+                        astContainer.getOptimizedASTBindingSets());
+
+        final ICloseableIterator<IBindingSet[]> cachedSolutions = cacheKey == null ? null
+                : solutionCache.get(cacheKey);
+
+        final CloseableIteration<BindingSet, QueryEvaluationException> itr;
+
+        if (cachedSolutions != null) {
+
+            /*
+             * The cached solutions have their RDF Values, so we just convert
+             * them into Sesame BindingSets.
+             */
+            itr = new Bigdata2Sesame2BindingSetIterator(
+                    new Dechunkerator<IBindingSet>(cachedSolutions));
+
+        } else {
+
+            itr = ASTEvalHelper.evaluateQuery(astContainer, context,
+                    materializeProjectionInQuery, projected, solutionCache,
+                    cacheKey);
+
+        }
 
         TupleQueryResult r = null;
         try {
@@ -768,6 +799,30 @@ public class ASTEvalHelper {
             final boolean materializeProjectionInQuery,
             final IVariable<?>[] required) throws QueryEvaluationException {
 
+        return evaluateQuery(astContainer, ctx, materializeProjectionInQuery,
+                required, null/* solutionCache */, null/* cacheKey */);
+
+    }
+
+    /**
+     * Evaluate a query, optionally caching the materialized solutions.
+     * 
+     * @param solutionCache
+     *            The {@link SolutionCache} (optional).
+     * @param cacheKey
+     *            The key under which the materialized solutions will be
+     *            cached once they have been drained (optional).
+     * 
+     * @see #evaluateQuery(ASTContainer, AST2BOpContext, boolean, IVariable[])
+     */
+    private static CloseableIteration<BindingSet, QueryEvaluationException> evaluateQuery(
+            final ASTContainer astContainer,
+            final AST2BOpContext ctx,            
+            final boolean materializeProjectionInQuery,
+            final IVariable<?>[] required,
+            final SolutionCache solutionCache,
+            final SolutionCache.Key cacheKey) throws QueryEvaluationException {
+
         doSparqlLogging(ctx);
         
         final PipelineOp queryPlan = astContainer.getQueryPlan();
@@ -789,7 +844,8 @@ public class ASTEvalHelper {
              * compatible iteration with materialized RDF Values.
              */
             return iterator(runningQuery, ctx.db,
-                    materializeProjectionInQuery, required);
+                    materializeProjectionInQuery, required,
+                    ctx.materializationCacheCapacity, solutionCache, cacheKey);
 
         } catch (Throwable t) {
             if (runningQuery != null) {
@@ -853,6 +909,15 @@ public class ASTEvalHelper {
      *            responsibility for that materialization step.
      * @param required
      *            The variables which must be materialized (optional).
+     * @param materializationCacheCapacity
+     *            The maximum #of RDF Values which will be retained across
+     *            chunks when this method takes responsibility for the
+     *            materialization step.
+     * @param solutionCache
+     *            The {@link SolutionCache} (optional).
+     * @param cacheKey
+     *            The key under which the materialized solutions will be
+     *            cached once they have been drained (optional).
      * 
      * @return A Sesame {@link CloseableIteration} which will drain
      *         {@link BindingSet}s of materialized RDF {@link Value}s.
@@ -860,7 +925,10 @@ public class ASTEvalHelper {
     private static CloseableIteration<BindingSet, QueryEvaluationException> iterator(
             final IRunningQuery runningQuery, final AbstractTripleStore db,
             final boolean materializeProjectionInQuery,
-            final IVariable<?>[] required) {
+            final IVariable<?>[] required,
+            final int materializationCacheCapacity,
+            final SolutionCache solutionCache,
+            final SolutionCache.Key cacheKey) {
     
         /*
          * FIXME We should not dechunk just to rechunk here. This is not very
@@ -913,7 +981,8 @@ public class ASTEvalHelper {
              */
             
             // Convert IVs in IBindingSets to Sesame BindingSets with Values.
-            it3 = new Bigdata2Sesame2BindingSetIterator(it2);
+            it3 = new Bigdata2Sesame2BindingSetIterator(record(solutionCache,
+                    cacheKey, it2));
 
         } else {
         
@@ -951,6 +1020,10 @@ public class ASTEvalHelper {
              * BigdataBindingSetResolverator, there will be exactly one thread
              * materializing RDF values (because the iterator pattern is single
              * threaded) unless the chunkSize exceeds this threshold.
+             * 
+             * Only the distinct IVs in each chunk are resolved, and IVs which
+             * were resolved for an earlier chunk are served from a bounded
+             * cache (materializationCacheCapacity) rather than the lexicon.
              */
             
             // Historical values.
@@ -975,13 +1048,16 @@ public class ASTEvalHelper {
             final int blobsChunkSize = chunkCapacity;
             
             // Convert bigdata binding sets to Sesame binding sets.
-            it3 = new Bigdata2Sesame2BindingSetIterator(
+            it3 = new Bigdata2Sesame2BindingSetIterator(record(
+                    solutionCache,
+                    cacheKey,
                     // Materialize IVs as RDF Values.
-                    new BigdataBindingSetResolverator(db, it2,
-                            runningQuery.getQueryId(), required, chunkCapacity,
+                    new BigdataBindingSetResolverator(db, it2, runningQuery
+                            .getQueryId(), required, chunkCapacity,
                             chunkOfChunksCapacity, chunkTimeout,
-                            termsChunkSize, blobsChunkSize).start(db
-                            .getExecutorService()));
+                            termsChunkSize, blobsChunkSize,
+                            materializationCacheCapacity).start(db
+                            .getExecutorService())));
 
         }
      
@@ -989,6 +1065,23 @@ public class ASTEvalHelper {
         
     }
 
+    /**
+     * Wrap the materialized solutions such that they will be cached once they
+     * have been drained.
+     * 
+     * @return The source iterator if there is no cache key.
+     */
+    private static ICloseableIterator<IBindingSet> record(
+            final SolutionCache solutionCache, final SolutionCache.Key cacheKey,
+            final ICloseableIterator<IBindingSet> src) {
+
+        if (cacheKey == null)
+            return src;
+
+        return solutionCache.newRecordingIterator(cacheKey, src);
+
+    }
+
     /**
      * Dechunkify the running query and monitor the Sesame iterator.
      * 
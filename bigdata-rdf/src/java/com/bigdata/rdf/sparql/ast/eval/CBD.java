@@ -29,6 +29,8 @@ package com.bigdata.rdf.sparql.ast.eval;
 import info.aduna.iteration.CloseableIteration;
 
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,13 +39,19 @@ import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.evaluation.iterator.CollectionIteration;
 
+import com.bigdata.bop.Constant;
 import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.rdf.join.WideRowJoinOp;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.model.BigdataBNode;
 import com.bigdata.rdf.model.BigdataStatement;
 import com.bigdata.rdf.model.BigdataValue;
 import com.bigdata.rdf.sparql.ast.ASTContainer;
 import com.bigdata.rdf.sparql.ast.AssignmentNode;
+import com.bigdata.rdf.sparql.ast.BindingsClause;
 import com.bigdata.rdf.sparql.ast.ConstantNode;
 import com.bigdata.rdf.sparql.ast.DescribeModeEnum;
 import com.bigdata.rdf.sparql.ast.ProjectionNode;
@@ -538,19 +546,65 @@ public class CBD {
              */
             projection.setDescribeMode(describeExpansionMode);
             
-            int i=1;
-            for (IV<?, ?> iv : bnodeIVs) {
+            if (bnodeIVs.size() == 1) {
+
+                final IV<?, ?> iv = bnodeIVs.iterator().next();
 
                 if (!iv.hasValue())
                     throw new AssertionError("valueCache not set : " + iv);
 
-                final VarNode anonvar = new VarNode("-cbd-bnode-"+i++);
+                final VarNode anonvar = new VarNode("-cbd-bnode-1");
 
                 anonvar.setAnonymous(true);
 
                 projection.addProjectionExpression(new AssignmentNode(anonvar,
                         new ConstantNode(iv)));
 
+            } else {
+
+                /*
+                 * Bind the blank nodes to a single variable using a VALUES
+                 * clause. This gives one DESCRIBE pattern for the round rather
+                 * than one UNION branch (and one SPO range scan) per blank
+                 * node. Since the subject of that pattern is bound by the
+                 * VALUES clause, the statements for all of the blank nodes can
+                 * be read by a single forward pass over the SPO index when the
+                 * wide row scan is enabled.
+                 * 
+                 * @see WideRowJoinOp
+                 */
+
+                /*
+                 * Note: The variable must not be anonymous since anonymous
+                 * variables in the CONSTRUCT template are interpreted as blank
+                 * nodes rather than being bound from the solutions.
+                 */
+                final VarNode bnodeVar = new VarNode("-cbd-bnode");
+
+                projection.addProjectionVar(bnodeVar);
+
+                final IVariable<?> var = bnodeVar.getValueExpression();
+
+                final List<IBindingSet> bindingSets = new LinkedList<IBindingSet>();
+
+                for (IV<?, ?> iv : bnodeIVs) {
+
+                    if (!iv.hasValue())
+                        throw new AssertionError("valueCache not set : " + iv);
+
+                    bindingSets.add(new ListBindingSet(
+                            new IVariable[] { var },
+                            new IConstant[] { new Constant<IV>(iv) }));
+
+                }
+
+                final LinkedHashSet<IVariable<?>> declaredVars = new LinkedHashSet<IVariable<?>>();
+
+                declaredVars.add(var);
+
+                queryRoot.setBindingsClause(new BindingsClause(declaredVars,
+                        bindingSets));
+
             }
 
         }
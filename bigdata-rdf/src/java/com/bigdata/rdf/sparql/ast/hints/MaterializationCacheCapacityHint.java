@@ -0,0 +1,67 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.hints;
+
+import com.bigdata.rdf.sparql.ast.ASTBase;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.store.BigdataBindingSetResolverator;
+
+/**
+ * Query hint for the capacity of the cache of RDF Values which is retained
+ * across the chunks of the solutions when the projection is materialized by
+ * the {@link BigdataBindingSetResolverator}.
+ * 
+ * @see QueryHints#MATERIALIZATION_CACHE_CAPACITY
+ */
+final class MaterializationCacheCapacityHint extends AbstractIntQueryHint {
+
+    protected MaterializationCacheCapacityHint() {
+        super(QueryHints.MATERIALIZATION_CACHE_CAPACITY,
+                QueryHints.DEFAULT_MATERIALIZATION_CACHE_CAPACITY);
+    }
+
+    @Override
+    public void handle(final AST2BOpContext context,
+            final QueryRoot queryRoot,
+            final QueryHintScope scope, final ASTBase op, final Integer value) {
+
+        if (scope == QueryHintScope.Query) {
+
+            if (value < 0)
+                throw new QueryHintException(scope, op, getName(), value);
+
+            context.materializationCacheCapacity = value;
+
+            return;
+
+        }
+
+        throw new QueryHintException(scope, op, getName(), value);
+
+    }
+
+}
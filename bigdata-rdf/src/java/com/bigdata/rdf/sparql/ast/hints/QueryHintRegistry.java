@@ -101,6 +101,11 @@ public class QueryHintRegistry {
         add(new RTOSampleTypeQueryHint());
         add(new RTOLimitQueryHint());
         add(new RTONEdgesQueryHint());
+        add(new RTOMaxSamplingMillisQueryHint());
+        add(new RTOReusePlanQueryHint());
+        add(new AdaptiveJoinOrderQueryHint());
+        add(new AdaptiveJoinOrderRatioQueryHint());
+        add(new AdaptiveJoinOrderLeadingJoinsQueryHint());
         add(new OptimisticQueryHint());
         add(new NormalizeFilterExpressionHint());
 
@@ -113,6 +118,8 @@ public class QueryHintRegistry {
         
         // JOIN hints.
         add(new MergeJoinHint());
+        add(new StarJoinHint());
+        add(new WideRowScanHint());
         add(new HashJoinHint());
         add(new KeyOrderHint());
         add(new RemoteAPHint());
@@ -126,6 +133,11 @@ public class QueryHintRegistry {
 
         // CONSTRUCT
         add(new ConstructDistinctSPOHint());
+
+        // Materialization of the projection.
+        add(new MaterializationCacheCapacityHint());
+        add(new SolutionCacheHint());
+        add(new PredicateStatisticsHint());
         
         /*
          * BufferAnnotations
@@ -0,0 +1,81 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.hints;
+
+import com.bigdata.bop.joinGraph.rto.JGraph;
+import com.bigdata.rdf.sparql.ast.ASTBase;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+
+/**
+ * The query hint governing the maximum amount of time that the runtime query
+ * optimizer may spend sampling a join graph.
+ * 
+ * @see JGraph
+ * @see QueryHints#RTO_MAX_SAMPLING_MILLIS
+ */
+final class RTOMaxSamplingMillisQueryHint extends AbstractLongQueryHint {
+
+    public RTOMaxSamplingMillisQueryHint() {
+        super(QueryHints.RTO_MAX_SAMPLING_MILLIS,
+                QueryHints.DEFAULT_RTO_MAX_SAMPLING_MILLIS);
+    }
+
+    @Override
+    public Long validate(final String value) {
+
+        final long i = Long.valueOf(value);
+        
+        if (i < 0)
+            throw new IllegalArgumentException("Must be non-negative: hint="
+                    + getName() + ", value=" + value);
+        
+        return i;
+
+    }
+
+    @Override
+    public void handle(final AST2BOpContext ctx,
+            final QueryRoot queryRoot,
+            final QueryHintScope scope,
+            final ASTBase op, final Long value) {
+
+        switch (scope) {
+        case Group:
+        case GroupAndSubGroups:
+        case Query:
+        case SubQuery:
+            if (op instanceof JoinGroupNode) {
+                _setAnnotation(ctx, scope, op, getName(), value);
+            }
+            return;
+        }
+        throw new QueryHintException(scope, op, getName(), value);
+
+    }
+
+}
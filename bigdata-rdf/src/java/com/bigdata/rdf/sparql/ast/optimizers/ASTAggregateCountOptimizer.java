@@ -0,0 +1,528 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.URI;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.aggregate.AggregateBase;
+import com.bigdata.rdf.sparql.ast.AssignmentNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.GlobalAnnotations;
+import com.bigdata.rdf.sparql.ast.GraphPatternGroup;
+import com.bigdata.rdf.sparql.ast.IQueryNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.NamedSubqueriesNode;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryRoot;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryBase;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.SubqueryRoot;
+import com.bigdata.rdf.sparql.ast.UnionNode;
+import com.bigdata.rdf.sparql.ast.ValueExpressionNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpUtility;
+
+/**
+ * Extends the {@link ASTFastRangeCountOptimizer} and the
+ * {@link ASTDistinctTermScanOptimizer} to aggregate-only queries which are
+ * not a <code>COUNT(*)</code> over a single triple pattern, but which can still
+ * be answered from the index statistics (the fast range counts, which are
+ * computed from the tuple counts spanned by the B+Tree nodes) and the
+ * distinct term scan. The following rewrites are made:
+ * 
+ * <pre>
+ * SELECT (COUNT(DISTINCT ?p) AS ?n) { ?s ?p ?o }
+ * =&gt;
+ * SELECT (COUNT(*) AS ?n) { SELECT DISTINCT ?p { ?s ?p ?o } }
+ * </pre>
+ * 
+ * The sub-select is then turned into a distinct term scan by the
+ * {@link ASTDistinctTermScanOptimizer}, so the cost is O(N) in the number of
+ * distinct terms rather than in the number of statements. This rewrite is only
+ * made when the distinct term scan would be applicable.
+ * 
+ * <pre>
+ * SELECT (COUNT(*) AS ?n) { { ?s :p ?o } UNION { ?s :q ?o } }
+ * =&gt;
+ * SELECT ((?n1 + ?n2) AS ?n) {
+ *    { SELECT (COUNT(*) AS ?n1) { ?s :p ?o } }
+ *    { SELECT (COUNT(*) AS ?n2) { ?s :q ?o } }
+ * }
+ * </pre>
+ * 
+ * <pre>
+ * SELECT (COUNT(*) AS ?n) { ?s :p ?o . ?x :q ?y }
+ * =&gt;
+ * SELECT ((?n1 * ?n2) AS ?n) {
+ *    { SELECT (COUNT(*) AS ?n1) { ?s :p ?o } }
+ *    { SELECT (COUNT(*) AS ?n2) { ?x :q ?y } }
+ * }
+ * </pre>
+ * 
+ * The UNION case relies on the bag semantics of UNION (the solutions of each
+ * alternative are counted separately) and the second case on the triple
+ * patterns not sharing any variables (so the join is a cross product). Each of
+ * the generated sub-selects is then answered by the
+ * {@link ASTFastRangeCountOptimizer} using two key probes where that would give
+ * an exact answer, so this optimizer MUST run before that optimizer.
+ * <p>
+ * Only the top-level query and the named subqueries are considered. The
+ * rewrite is not made when there are exogenous solutions since those would no
+ * longer be joined with the triple patterns.
+ * 
+ * @see ASTSimpleGroupByAndCountOptimizer
+ */
+public class ASTAggregateCountOptimizer implements IASTOptimizer {
+
+    /**
+     * Used to decide whether the distinct term scan would be applicable.
+     */
+    private final ASTDistinctTermScanOptimizer distinctTermScan = new ASTDistinctTermScanOptimizer();
+
+    public ASTAggregateCountOptimizer() {
+    }
+
+    @Override
+    public QueryNodeWithBindingSet optimize(
+            final AST2BOpContext context, final QueryNodeWithBindingSet input) {
+
+        final IQueryNode queryNode = input.getQueryNode();
+        final IBindingSet[] bindingSets = input.getBindingSets();
+
+        if (context.getAbstractTripleStore().getSPORelation()
+                .indicesHaveDeleteMarkers()) {
+            /*
+             * The fast range counts would be turned into key-range scans (see
+             * ASTFastRangeCountOptimizer), so there is nothing to be gained.
+             */
+            return new QueryNodeWithBindingSet(queryNode, bindingSets);
+        }
+
+        if (hasExogenousBindings(bindingSets)) {
+            return new QueryNodeWithBindingSet(queryNode, bindingSets);
+        }
+
+        final QueryRoot queryRoot = (QueryRoot) queryNode;
+
+        if (queryRoot.getBindingsClause() != null) {
+            // Solutions declared by VALUES are joined with the WHERE clause.
+            return new QueryNodeWithBindingSet(queryNode, bindingSets);
+        }
+
+        // First, process any pre-existing named subqueries.
+        {
+
+            final NamedSubqueriesNode namedSubqueries = queryRoot
+                    .getNamedSubqueries();
+
+            if (namedSubqueries != null) {
+
+                // Note: works around concurrent modification error.
+                final List<NamedSubqueryRoot> list = BOpUtility.toList(
+                        namedSubqueries, NamedSubqueryRoot.class);
+
+                for (NamedSubqueryRoot namedSubquery : list) {
+
+                    doSelectQuery(context, queryRoot, namedSubquery);
+
+                }
+
+            }
+
+        }
+
+        // rewrite the top-level select
+        doSelectQuery(context, queryRoot, queryRoot);
+
+        return new QueryNodeWithBindingSet(queryNode, bindingSets);
+
+    }
+
+    /**
+     * Return <code>true</code> iff there is at least one non-empty exogenous
+     * solution.
+     */
+    private static boolean hasExogenousBindings(final IBindingSet[] bindingSets) {
+
+        if (bindingSets == null)
+            return false;
+
+        for (IBindingSet bset : bindingSets) {
+
+            if (bset != null && !bset.isEmpty())
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Attempt to rewrite the SELECT.
+     * 
+     * @param context
+     * @param queryRoot
+     *            The top-level of the query.
+     * @param queryBase
+     *            Either the top-level query or a named subquery.
+     */
+    private void doSelectQuery(final AST2BOpContext context,
+            final QueryRoot queryRoot, final QueryBase queryBase) {
+
+        if (queryBase.getQueryType() != QueryType.SELECT)
+            return;
+
+        if (queryBase.getGroupBy() != null || queryBase.getHaving() != null)
+            return;
+
+        if (queryBase.getBindingsClause() != null)
+            return;
+
+        /*
+         * Looking for SELECT (COUNT(...) AS ?var)
+         */
+        final ProjectionNode projection = queryBase.getProjection();
+
+        if (projection == null || projection.arity() != 1)
+            return;
+
+        final AssignmentNode assignmentNode = projection.getExpr(0);
+
+        if (!(assignmentNode.getValueExpressionNode() instanceof FunctionNode))
+            return;
+
+        final FunctionNode functionNode = (FunctionNode) assignmentNode
+                .getValueExpressionNode();
+
+        if (!functionNode.getFunctionURI().equals(FunctionRegistry.COUNT))
+            return;
+
+        if (functionNode.arity() != 1
+                || !(functionNode.get(0) instanceof VarNode))
+            return;
+
+        final VarNode countVar = (VarNode) functionNode.get(0);
+
+        final boolean isDistinct = isDistinct(functionNode);
+
+        final GraphPatternGroup<?> whereClause = queryBase
+                .getWhereClause();
+
+        if (whereClause == null || whereClause.getContext() != null)
+            return;
+
+        if (isDistinct && !countVar.isWildcard()) {
+
+            // COUNT(DISTINCT ?var) { triple-pattern }
+            doCountDistinct(context, queryRoot, queryBase, assignmentNode,
+                    countVar, whereClause);
+
+        } else if (!isDistinct && countVar.isWildcard()) {
+
+            // COUNT(*) over a UNION of triple patterns or a cross product.
+            doCountStar(context, queryBase, assignmentNode, whereClause);
+
+        }
+
+    }
+
+    /**
+     * Rewrite <code>COUNT(DISTINCT ?var) { triple-pattern }</code> as
+     * <code>COUNT(*) { SELECT DISTINCT ?var { triple-pattern } }</code> when
+     * the sub-select will be evaluated as a distinct term scan.
+     */
+    private void doCountDistinct(final AST2BOpContext context,
+            final QueryRoot queryRoot, final QueryBase queryBase,
+            final AssignmentNode assignmentNode, final VarNode countVar,
+            final GraphPatternGroup<?> whereClause) {
+
+        if (!(whereClause instanceof JoinGroupNode) || whereClause.arity() != 1
+                || !(whereClause.get(0) instanceof StatementPatternNode))
+            return;
+
+        final StatementPatternNode sp = (StatementPatternNode) whereClause
+                .get(0);
+
+        if (!isSimple(context, sp))
+            return;
+
+        if (context.isQuads()) {
+            /*
+             * Same constraint as the ASTDistinctTermScanOptimizer.
+             */
+            if (queryRoot.getDataset() != null
+                    && queryRoot.getDataset().getNamedGraphs() != null)
+                return;
+        }
+
+        if (!sp.getProducedBindings().contains(countVar.getValueExpression()))
+            return;
+
+        if (distinctTermScan.getApplicableKeyOrderIfExists(sp,
+                countVar.getValueExpression(), context) == null)
+            return;
+
+        final SubqueryRoot selectDistinct = new SubqueryRoot(QueryType.SELECT);
+        {
+            final ProjectionNode p = new ProjectionNode();
+            p.addProjectionVar(new VarNode(countVar.getValueExpression()
+                    .getName()));
+            p.setDistinct(true);
+            selectDistinct.setProjection(p);
+            selectDistinct.setWhereClause(new JoinGroupNode(sp));
+        }
+
+        final JoinGroupNode newWhereClause = new JoinGroupNode();
+        newWhereClause.addChild(selectDistinct);
+        queryBase.setWhereClause(newWhereClause);
+
+        setProjection(context, queryBase, assignmentNode.getVarNode(),
+                new FunctionNode(FunctionRegistry.COUNT,
+                        null/* scalarValues */,
+                        new ValueExpressionNode[] { new VarNode("*") }));
+
+    }
+
+    /**
+     * Rewrite <code>COUNT(*)</code> over a UNION of triple patterns as the sum
+     * of the <code>COUNT(*)</code> of each triple pattern and over a join of
+     * triple patterns which do not share any variables as the product of the
+     * <code>COUNT(*)</code> of each triple pattern.
+     */
+    private void doCountStar(final AST2BOpContext context,
+            final QueryBase queryBase, final AssignmentNode assignmentNode,
+            final GraphPatternGroup<?> whereClause) {
+
+        final List<StatementPatternNode> sps = new LinkedList<StatementPatternNode>();
+
+        // combine the counts by summing (UNION) or multiplying (product).
+        final URI combine;
+
+        // The UNION may be the WHERE clause or its only child.
+        final BOp unionOrGroup = whereClause.arity() == 1
+                && whereClause.get(0) instanceof UnionNode ? whereClause
+                .get(0) : whereClause;
+
+        if (unionOrGroup instanceof UnionNode) {
+
+            final UnionNode union = (UnionNode) unionOrGroup;
+
+            if (union.arity() < 2)
+                return;
+
+            for (JoinGroupNode child : union.getChildren()) {
+
+                if (child.isOptional() || child.isMinus()
+                        || child.arity() != 1
+                        || !(child.get(0) instanceof StatementPatternNode))
+                    return;
+
+                sps.add((StatementPatternNode) child.get(0));
+
+            }
+
+            combine = FunctionRegistry.ADD;
+
+        } else if (whereClause.arity() == 2) {
+
+            final Set<VarNode> vars = new HashSet<VarNode>();
+
+            for (BOp child : whereClause.args()) {
+
+                if (!(child instanceof StatementPatternNode))
+                    return;
+
+                final StatementPatternNode sp = (StatementPatternNode) child;
+
+                if (sp.isOptional())
+                    return;
+
+                for (VarNode v : BOpUtility.toList(sp, VarNode.class)) {
+
+                    if (!vars.add(v)) {
+                        // Shared variable (this is a join, not a product).
+                        return;
+                    }
+
+                }
+
+                sps.add(sp);
+
+            }
+
+            combine = FunctionRegistry.MULTIPLY;
+
+        } else {
+
+            return;
+
+        }
+
+        for (StatementPatternNode sp : sps) {
+
+            if (!isSimple(context, sp))
+                return;
+
+        }
+
+        /*
+         * Rewrite: one COUNT(*) sub-select per triple pattern, combined in the
+         * projection.
+         */
+        final JoinGroupNode newWhereClause = new JoinGroupNode();
+
+        ValueExpressionNode expr = null;
+
+        for (StatementPatternNode sp : sps) {
+
+            final VarNode n = new VarNode(context.createVar("-count-"));
+
+            final SubqueryRoot countStar = new SubqueryRoot(QueryType.SELECT);
+            {
+                final ProjectionNode p = new ProjectionNode();
+                final FunctionNode count = new FunctionNode(
+                        FunctionRegistry.COUNT, null/* scalarValues */,
+                        new ValueExpressionNode[] { new VarNode("*") });
+                p.addProjectionExpression(new AssignmentNode(n, count));
+                countStar.setProjection(p);
+                countStar.setWhereClause(new JoinGroupNode(sp));
+                setValueExpressions(context, p);
+            }
+
+            newWhereClause.addChild(countStar);
+
+            if (expr == null) {
+                expr = new VarNode(n.getValueExpression().getName());
+            } else {
+                expr = new FunctionNode(combine, null/* scalarValues */,
+                        new ValueExpressionNode[] { expr,
+                                new VarNode(n.getValueExpression().getName()) });
+            }
+
+        }
+
+        queryBase.setWhereClause(newWhereClause);
+
+        setProjection(context, queryBase, assignmentNode.getVarNode(), expr);
+
+    }
+
+    /**
+     * Return <code>true</code> iff the triple pattern may be evaluated using
+     * the index statistics: it is not optional, it does not reuse a variable
+     * (which would imply a filter on the access path) and, in history mode, it
+     * has been marked to read the history.
+     */
+    private static boolean isSimple(final AST2BOpContext context,
+            final StatementPatternNode sp) {
+
+        if (sp.isOptional())
+            return false;
+
+        if (context.getAbstractTripleStore().isRDRHistory()
+                && !sp.getQueryHintAsBoolean(QueryHints.HISTORY, false))
+            return false;
+
+        final Set<VarNode> vars = new HashSet<VarNode>();
+
+        for (VarNode v : BOpUtility.toList(sp, VarNode.class)) {
+
+            if (!vars.add(v))
+                return false;
+
+        }
+
+        return true;
+
+    }
+
+    private static boolean isDistinct(final FunctionNode functionNode) {
+
+        final Map<String, Object> scalarValues = functionNode.getScalarValues();
+
+        if (scalarValues == null)
+            return false;
+
+        final Object isDistinct = scalarValues
+                .get(AggregateBase.Annotations.DISTINCT);
+
+        return isDistinct instanceof Boolean && (Boolean) isDistinct;
+
+    }
+
+    /**
+     * Replace the projection with <code>(expr AS ?var)</code>.
+     */
+    private static void setProjection(final AST2BOpContext context,
+            final QueryBase queryBase, final VarNode var,
+            final ValueExpressionNode expr) {
+
+        final ProjectionNode newProjection = new ProjectionNode();
+
+        newProjection.addProjectionExpression(new AssignmentNode(var, expr));
+
+        queryBase.setProjection(newProjection);
+
+        setValueExpressions(context, newProjection);
+
+    }
+
+    /**
+     * The value expressions were already computed by the
+     * {@link ASTSetValueExpressionsOptimizer}, so they must be computed here
+     * for the projections which this optimizer introduces.
+     */
+    private static void setValueExpressions(final AST2BOpContext context,
+            final ProjectionNode projection) {
+
+        final GlobalAnnotations globals = new GlobalAnnotations(
+                context.getLexiconNamespace(), context.getTimestamp());
+
+        for (AssignmentNode a : projection) {
+
+            AST2BOpUtility.toVE(context.getBOpContext(), globals,
+                    a.getValueExpressionNode());
+
+        }
+
+    }
+
+}
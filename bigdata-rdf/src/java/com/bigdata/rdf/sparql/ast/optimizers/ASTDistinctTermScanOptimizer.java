@@ -394,7 +394,7 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
     * @param context
     * @return matching key order, if exists, null if not (indicating failure)
     */
-   private IKeyOrder<ISPO> getApplicableKeyOrderIfExists(
+   IKeyOrder<ISPO> getApplicableKeyOrderIfExists(
          StatementPatternNode sp, IVariable<?> termScanVar,
          AST2BOpContext context) {
 
@@ -45,6 +45,7 @@ import com.bigdata.rdf.sparql.ast.StaticAnalysis;
 import com.bigdata.rdf.sparql.ast.TermNode;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTStaticJoinOptimizer.Annotations;
+import com.bigdata.rdf.spo.PredicateStatistics;
 import com.bigdata.rdf.spo.SPORelation;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.relation.accesspath.IAccessPath;
@@ -206,7 +207,28 @@ public class ASTRangeCountOptimizer extends AbstractJoinGroupOptimizer
 		final StaticAnalysisStats saStats = ctx.getStaticAnalysisStats();
 		long start = System.nanoTime();
 		
-		final long cardinality = ap.rangeCount(false/* exact */);
+		long cardinality = -1L;
+
+		if (ctx.predicateStatistics && s == null && o == null && c == null
+				&& range == null && p != null) {
+
+			/*
+			 * Only the predicate is bound. Use the statistics for the
+			 * predicate (if available) rather than a range count.
+			 */
+			final PredicateStatistics stats = PredicateStatistics
+					.getStatistics(db);
+
+			final PredicateStatistics.Stats pstats = stats == null ? null
+					: stats.get(p);
+
+			if (pstats != null)
+				cardinality = pstats.count;
+
+		}
+
+		if (cardinality == -1L)
+			cardinality = ap.rangeCount(false/* exact */);
 
       saStats.registerRangeCountCall(System.nanoTime() - start);
 		
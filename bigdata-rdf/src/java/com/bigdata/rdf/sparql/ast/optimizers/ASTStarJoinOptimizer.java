@@ -0,0 +1,330 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.rdf.join.SubjectStarJoinOp;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.sparql.ast.ArbitraryLengthPathNode;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.GraphPatternGroup;
+import com.bigdata.rdf.sparql.ast.IGroupMemberNode;
+import com.bigdata.rdf.sparql.ast.IQueryNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.NamedSubqueriesNode;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryOptimizerEnum;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.SubqueryRoot;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+
+/**
+ * Optimizer identifies a subject-star at the head of a join group and marks it
+ * for evaluation by a {@link SubjectStarJoinOp}. The subject-star is formed by
+ * the first statement pattern in the group together with the other statement
+ * patterns in the leading run of required statement patterns which have the
+ * same subject variable and a constant predicate. At least one of those
+ * statement patterns must have a constant object (this is what provides the
+ * range scans ordered by subject). The statement patterns in the star are
+ * moved together (preserving their relative order) and the first one is
+ * annotated with {@link StatementPatternNode.Annotations#STAR_JOIN_SIZE}.
+ * <p>
+ * Note: This runs after the join order has been decided and the join filters
+ * have been attached. Statement patterns with attached join filters are not
+ * included in the star. Moving the remaining statement patterns of the star
+ * forward within a run of required statement patterns does not change the
+ * solutions and only causes variables to become bound earlier, so the join
+ * filters attached to the other statement patterns in that run remain valid.
+ * The star is only formed when its first statement pattern is also the first
+ * join chosen by the static optimizer, so the star does not displace a more
+ * selective join which would have bound the subject.
+ * 
+ * @see QueryHints#STAR_JOIN
+ */
+public class ASTStarJoinOptimizer implements IASTOptimizer {
+
+    @Override
+    public QueryNodeWithBindingSet optimize(
+            final AST2BOpContext context, final QueryNodeWithBindingSet input) {
+
+        final IQueryNode queryNode = input.getQueryNode();
+        final IBindingSet[] bindingSets = input.getBindingSets();
+
+        if (!context.isTriples() || context.isCluster()) {
+
+            // The star join only reads on the local triple store indices.
+            return new QueryNodeWithBindingSet(queryNode, bindingSets);
+
+        }
+
+        if (context.getAbstractTripleStore().getSPORelation().oneAccessPath
+                || context.getAbstractTripleStore().getSPORelation()
+                        .isHistory()) {
+
+            // The POS index is not available or the APs are filtered.
+            return new QueryNodeWithBindingSet(queryNode, bindingSets);
+
+        }
+
+        final QueryRoot queryRoot = (QueryRoot) queryNode;
+
+        // First, process any pre-existing named subqueries.
+        {
+
+            final NamedSubqueriesNode namedSubqueries = queryRoot
+                    .getNamedSubqueries();
+
+            if (namedSubqueries != null) {
+
+                for (NamedSubqueryRoot namedSubquery : namedSubqueries) {
+
+                    optimize(context, namedSubquery.getWhereClause());
+
+                }
+
+            }
+
+        }
+
+        // Now process the main where clause.
+        optimize(context, queryRoot.getWhereClause());
+
+        return new QueryNodeWithBindingSet(queryRoot, bindingSets);
+
+    }
+
+    /**
+     * Recursively process groups.
+     */
+    private void optimize(final AST2BOpContext context,
+            final GraphPatternGroup<?> group) {
+
+        if (group == null)
+            return;
+
+        for (IGroupMemberNode child : group) {
+
+            if (child instanceof GraphPatternGroup<?>) {
+
+                optimize(context, (GraphPatternGroup<?>) child);
+
+            } else if (child instanceof SubqueryRoot) {
+
+                optimize(context, ((SubqueryRoot) child).getWhereClause());
+
+            } else if (child instanceof ArbitraryLengthPathNode) {
+
+                optimize(context, ((ArbitraryLengthPathNode) child).subgroup());
+
+            }
+
+        }
+
+        if (group instanceof JoinGroupNode
+                && group.getQueryHintAsBoolean(QueryHints.STAR_JOIN,
+                        context.starJoin)
+                && !isRuntimeOptimized((JoinGroupNode) group)) {
+
+            optimizeJoinGroup((JoinGroupNode) group);
+
+        }
+
+    }
+
+    /**
+     * Return <code>true</code> if the join order of the group will be decided
+     * at runtime (by the RTO or the adaptive join graph). The statement
+     * patterns of such groups are left alone since those operators expect
+     * the statement patterns in the order chosen by the static optimizer.
+     */
+    private static boolean isRuntimeOptimized(final JoinGroupNode group) {
+
+        return QueryOptimizerEnum.Runtime.equals(group.getQueryOptimizer())
+                || group.getProperty(QueryHints.ADAPTIVE_JOIN_ORDER,
+                        QueryHints.DEFAULT_ADAPTIVE_JOIN_ORDER);
+
+    }
+
+    /**
+     * Identify and mark the subject-star at the head of the join group (if
+     * any).
+     */
+    private void optimizeJoinGroup(final JoinGroupNode group) {
+
+        // The leading run of required statement patterns.
+        final List<StatementPatternNode> run = new LinkedList<StatementPatternNode>();
+
+        for (IGroupMemberNode child : group) {
+
+            if (!(child instanceof StatementPatternNode)
+                    || ((StatementPatternNode) child).isOptional()) {
+
+                break;
+
+            }
+
+            run.add((StatementPatternNode) child);
+
+        }
+
+        if (run.size() < 2)
+            return;
+
+        final StatementPatternNode first = run.get(0);
+
+        if (!(first.s() instanceof VarNode))
+            return;
+
+        final VarNode s = (VarNode) first.s();
+
+        // The statement patterns in the star.
+        final List<StatementPatternNode> star = new LinkedList<StatementPatternNode>();
+
+        // The other statement patterns in the run.
+        final List<StatementPatternNode> rest = new LinkedList<StatementPatternNode>();
+
+        // The variables bound by the star.
+        final Set<VarNode> vars = new LinkedHashSet<VarNode>();
+
+        vars.add(s);
+
+        boolean constantObject = false;
+
+        for (StatementPatternNode sp : run) {
+
+            if (s.equals(sp.s()) && isSimple(sp)
+                    && (sp.o() instanceof ConstantNode || vars.add((VarNode) sp.o()))) {
+
+                star.add(sp);
+
+                if (sp.o() instanceof ConstantNode)
+                    constantObject = true;
+
+            } else {
+
+                rest.add(sp);
+
+            }
+
+        }
+
+        if (star.size() < 2 || !constantObject || star.get(0) != first) {
+
+            // Not a star.
+            return;
+
+        }
+
+        // Move the star to the head of the group.
+        int i = 0;
+
+        for (StatementPatternNode sp : star) {
+
+            group.setArg(i++, sp);
+
+        }
+
+        for (StatementPatternNode sp : rest) {
+
+            group.setArg(i++, sp);
+
+        }
+
+        first.setStarJoinSize(star.size());
+
+    }
+
+    /**
+     * Return <code>true</code> iff the statement pattern may be evaluated by a
+     * {@link SubjectStarJoinOp}, which reads directly on the statement
+     * indices. The subject must be a variable, the predicate must be a
+     * constant, and the object must be a variable or a constant which is
+     * known to the database. Statement patterns which are annotated for
+     * special access paths or which have attached join filters are not
+     * accepted.
+     */
+    private static boolean isSimple(final StatementPatternNode sp) {
+
+        if (!(sp.s() instanceof VarNode) || !(sp.p() instanceof ConstantNode))
+            return false;
+
+        if (isUnknown(sp.p()))
+            return false;
+
+        if (sp.o() instanceof ConstantNode) {
+
+            if (isUnknown(sp.o()))
+                return false;
+
+        } else if (!(sp.o() instanceof VarNode) || sp.o().equals(sp.s())) {
+
+            return false;
+
+        }
+
+        if (sp.c() != null || sp.sid() != null)
+            return false;
+
+        if (!sp.getAttachedJoinFilters().isEmpty())
+            return false;
+
+        if (sp.getRange() != null || sp.getFastRangeCountVar() != null
+                || sp.getDistinctTermScanVar() != null)
+            return false;
+
+        if (sp.getProperty(StatementPatternNode.Annotations.DISTINCT,
+                StatementPatternNode.Annotations.DEFAULT_DISTINCT))
+            return false;
+
+        if (sp.getQueryHintAsBoolean(QueryHints.HASH_JOIN, false)
+                || sp.getQueryHintAsBoolean(QueryHints.HISTORY, false))
+            return false;
+
+        return true;
+
+    }
+
+    /**
+     * Return <code>true</code> if the constant is not known to the database.
+     */
+    private static boolean isUnknown(final TermNode t) {
+
+        final IV<?, ?> iv = t.getValueExpression().get();
+
+        return iv == null || iv.isNullIV();
+
+    }
+
+}
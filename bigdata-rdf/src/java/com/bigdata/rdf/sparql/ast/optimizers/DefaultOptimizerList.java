@@ -490,6 +490,16 @@ public class DefaultOptimizerList extends ASTOptimizerList {
          */
         add(new ASTCardinalityOptimizer());
         
+		/**
+		 * Rewrites COUNT(DISTINCT ?x) { triple-pattern }, COUNT(*) over a
+		 * UNION of triple patterns and COUNT(*) over triple patterns which do
+		 * not share any variables into forms which are answered by the
+		 * distinct term scan and fast range count optimizers below, so this
+		 * must run before those optimizers.
+		 */
+		if (QueryHints.DEFAULT_FAST_RANGE_COUNT_OPTIMIZER)
+			add(new ASTAggregateCountOptimizer());
+
 		/**
 		 * Optimizes SELECT COUNT(*) { triple-pattern } using the fast range
 		 * count mechanisms when that feature would produce exact results for
@@ -592,6 +602,14 @@ public class DefaultOptimizerList extends ASTOptimizerList {
          * StatementPatternNodes.
          */
         add(new ASTAttachJoinFiltersOptimizer());
+
+        /**
+         * Mark a subject-star at the head of a join group for evaluation as a
+         * merge join (iff enabled). This only moves the statement patterns of
+         * the star forward within the leading run of required statement
+         * patterns, which does not invalidate the attached join filters.
+         */
+        add(new ASTStarJoinOptimizer());
         
         /**
          * Rewrite each join group having two or more complex optionals as named
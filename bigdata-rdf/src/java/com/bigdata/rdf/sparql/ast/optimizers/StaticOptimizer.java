@@ -12,15 +12,18 @@ import org.apache.log4j.Logger;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.joinGraph.fast.DefaultEvaluationPlan2;
 import com.bigdata.journal.ITx;
+import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.sparql.ast.IBindingProducerNode;
 import com.bigdata.rdf.sparql.ast.IReorderableNode;
 import com.bigdata.rdf.sparql.ast.QueryHints;
 import com.bigdata.rdf.sparql.ast.QueryRoot;
 import com.bigdata.rdf.sparql.ast.StatementPatternNode;
 import com.bigdata.rdf.sparql.ast.StaticAnalysis;
+import com.bigdata.rdf.sparql.ast.TermNode;
 import com.bigdata.rdf.sparql.ast.VarNode;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTStaticJoinOptimizer.Annotations;
+import com.bigdata.rdf.spo.PredicateStatistics;
 
 /**
  * This is the old static optimizer code, taken directly from
@@ -103,20 +106,31 @@ public final class StaticOptimizer {
 	 */
 	private final double optimistic;
 
+	/**
+	 * The statistics for the predicates in the KB (optional).
+	 * 
+	 * @see QueryHints#PREDICATE_STATISTICS
+	 */
+	private final PredicateStatistics stats;
+
 	public StaticOptimizer(StaticOptimizer parent, List<IReorderableNode> nodes) {
-		this(parent.sa, parent.ancestry, nodes, parent.optimistic);
+		this(parent.sa, parent.ancestry, nodes, parent.optimistic,
+				parent.stats);
 	}
 
 	StaticOptimizer(final QueryRoot queryRoot, final AST2BOpContext context,
 			final IBindingProducerNode[] ancestry,
 			final List<IReorderableNode> nodes, final double optimistic) {
 		this(new StaticAnalysis(queryRoot, context), ancestry, nodes,
-				optimistic);
+				optimistic, context.predicateStatistics ? PredicateStatistics
+						.getStatistics(context.getAbstractTripleStore())
+						: null);
 	}
 
 	private StaticOptimizer(final StaticAnalysis sa,
 			final IBindingProducerNode[] ancestry,
-			final List<IReorderableNode> nodes, final double optimistic) {
+			final List<IReorderableNode> nodes, final double optimistic,
+			final PredicateStatistics stats) {
 
 		if (ancestry == null)
 			throw new IllegalArgumentException();
@@ -149,6 +163,8 @@ public final class StaticOptimizer {
 
 		this.optimistic = optimistic;
 
+		this.stats = stats;
+
 		this.cardinality = calc();
 
 		if (ASTStaticJoinOptimizer.log.isDebugEnabled()) {
@@ -599,6 +615,12 @@ public final class StaticOptimizer {
 		// if (d1.isOptional() || d2.isOptional()) {
 		// return ONE_OPTIONAL;
 		// }
+		if (stats != null && d1 instanceof Tail && d2 instanceof Tail) {
+			final long n = estimateJoinCardinality((Tail) d1, (Tail) d2);
+			if (n != -1L) {
+				return n;
+			}
+		}
 		final boolean sharedVars = hasSharedVars(d1, d2);
 		final boolean unsharedVars = hasUnsharedVars(d1, d2);
 		final long joinCardinality;
@@ -671,6 +693,89 @@ public final class StaticOptimizer {
 		return joinCardinality;
 	}
 
+	/**
+	 * Estimate the cardinality of the join of two statement patterns using the
+	 * {@link PredicateStatistics}. This is only possible when only the
+	 * predicate is bound for each statement pattern (the subject and the
+	 * object are unbound variables, there is no context or range constraint,
+	 * and the cardinality of the tail is the statement count for the
+	 * predicate) and the statement patterns share a single variable in the
+	 * subject or object position. A subject-subject join is estimated from the
+	 * characteristic sets, which captures the correlation between the
+	 * predicates. Otherwise the estimate uses the #of distinct values for the
+	 * join variable.
+	 * 
+	 * @return The estimated join cardinality -or- <code>-1L</code> if the
+	 *         statistics can not be used for these join dimensions.
+	 */
+	private long estimateJoinCardinality(final Tail t1, final Tail t2) {
+		final IV<?, ?> p1 = getPredicate(t1);
+		final IV<?, ?> p2 = getPredicate(t2);
+		if (p1 == null || p2 == null) {
+			return -1L;
+		}
+		final StatementPatternNode sp1 = (StatementPatternNode) nodes
+				.get(t1.getTailIndex());
+		final StatementPatternNode sp2 = (StatementPatternNode) nodes
+				.get(t2.getTailIndex());
+		final Set<String> shared = new LinkedHashSet<String>(t1.getVars());
+		shared.retainAll(t2.getVars());
+		if (shared.size() != 1) {
+			return -1L;
+		}
+		final String var = shared.iterator().next();
+		final boolean subject1 = isVar(sp1.s(), var);
+		final boolean subject2 = isVar(sp2.s(), var);
+		if ((!subject1 && !isVar(sp1.o(), var))
+				|| (!subject2 && !isVar(sp2.o(), var))) {
+			// The join variable is in the context position.
+			return -1L;
+		}
+		if (subject1 && subject2) {
+			return stats.estimateStarJoin(p1, p2);
+		}
+		return stats.estimateJoin(p1, subject1, p2, subject2);
+	}
+
+	/**
+	 * Return the predicate for a tail which is a statement pattern having only
+	 * the predicate bound and whose cardinality is the statement count for
+	 * that predicate -or- <code>null</code> if the tail does not satisfy those
+	 * criteria.
+	 */
+	private IV<?, ?> getPredicate(final Tail t) {
+		final IReorderableNode node = nodes.get(t.getTailIndex());
+		if (!(node instanceof StatementPatternNode)) {
+			return null;
+		}
+		final StatementPatternNode sp = (StatementPatternNode) node;
+		if (!sp.p().isConstant() || !sp.s().isVariable()
+				|| !sp.o().isVariable()
+				|| (sp.c() != null && !sp.c().isVariable())
+				|| sp.getRange() != null || sp.isOptional()) {
+			return null;
+		}
+		final IV<?, ?> p = sp.p().getValueExpression().get();
+		if (p == null) {
+			return null;
+		}
+		final PredicateStatistics.Stats pstats = stats.get(p);
+		if (pstats == null || pstats.count != t.getCardinality()) {
+			/*
+			 * The estimated cardinality of the tail is not based on the
+			 * statistics (e.g., a variable was bound by an exogenous solution
+			 * or the statistics are stale).
+			 */
+			return null;
+		}
+		return p;
+	}
+
+	private static boolean isVar(final TermNode t, final String var) {
+		return t.isVariable()
+				&& ((VarNode) t).getValueExpression().getName().equals(var);
+	}
+
 	/**
 	 * Get the named variables for a given tail. Is there a better way to do
 	 * this?
@@ -271,6 +271,49 @@ public class ServiceRegistry {
 
     }
 
+    /**
+     * Register a {@link CustomServiceFactory} which is not exposed as a
+     * service. It is notified of each connection, but it can not be invoked
+     * from a SERVICE clause.
+     *
+     * @param factory
+     *            The factory.
+     */
+    public final void addCustomService(final CustomServiceFactory factory) {
+
+        if (factory == null)
+            throw new IllegalArgumentException();
+
+        customServices.addIfAbsent(factory);
+
+    }
+
+    /**
+     * Remove a {@link CustomServiceFactory} registered using
+     * {@link #addCustomService(CustomServiceFactory)}.
+     *
+     * @param factory
+     *            The factory.
+     *
+     * @return <code>true</code> iff the factory was removed.
+     */
+    public final boolean removeCustomService(final CustomServiceFactory factory) {
+
+        synchronized (this) {
+
+            if (services.containsValue(factory)) {
+
+                // Use remove(URI) for a registered service.
+                return false;
+
+            }
+
+            return customServices.remove(factory);
+
+        }
+
+    }
+
     /**
      * Register one URI as an alias for another.
      *
@@ -0,0 +1,834 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.spo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.ICheckpointProtocol;
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.ITuple;
+import com.bigdata.btree.ITupleIterator;
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.journal.ITx;
+import com.bigdata.journal.Journal;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Statistics about the predicates used by the statements in a KB. For each
+ * predicate this reports the #of statements, the #of distinct subjects and
+ * the #of distinct objects. It also reports the characteristic sets of the
+ * subjects (the set of predicates used by a subject and the #of subjects
+ * having exactly that set of predicates). The characteristic sets capture
+ * the correlation among the predicates of a subject and provide much better
+ * estimates of the cardinality of a star join than the assumption that the
+ * predicates are independent.
+ * <p>
+ * The statistics are collected by a scan of the SPO(C) and POS(C) indices of a
+ * read-only view of the KB. The most recent statistics for each KB are
+ * retained by {@link #getStatistics(AbstractTripleStore)} and shared by all
+ * queries. When a commit is observed for the KB which has changed the #of
+ * statements by at least {@link #DEFAULT_REFRESH_CHANGE_RATIO} since the last
+ * scan, the statistics are recomputed by a background task (at most once per
+ * {@link #DEFAULT_REFRESH_MILLIS}). Queries continue to use the older
+ * statistics until the refresh is done. Since the statistics are only used to
+ * choose a join order, stale statistics affect only the quality of the plan,
+ * never the correctness of the query.
+ */
+public class PredicateStatistics {
+
+    private static final transient Logger log = Logger
+            .getLogger(PredicateStatistics.class);
+
+    /**
+     * The minimum #of milliseconds between refreshes of the statistics for a
+     * KB. The default may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.spo.PredicateStatistics.refreshMillis
+     * </pre>
+     */
+    public static final long DEFAULT_REFRESH_MILLIS = Long.valueOf(System
+            .getProperty(PredicateStatistics.class.getName()
+                    + ".refreshMillis", "10000"));
+
+    /**
+     * The statistics for a KB are only recomputed once the #of statements in
+     * the KB differs from the #of statements scanned for the current
+     * statistics by at least this fraction. This bounds the cost of the full
+     * index scans for a KB which is updated often but whose size (and hence
+     * shape) barely changes between commits. The default may be overridden
+     * using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.spo.PredicateStatistics.refreshChangeRatio
+     * </pre>
+     */
+    public static final double DEFAULT_REFRESH_CHANGE_RATIO = Double
+            .valueOf(System.getProperty(PredicateStatistics.class.getName()
+                    + ".refreshChangeRatio", ".1"));
+
+    /**
+     * The maximum #of distinct characteristic sets which will be collected.
+     * If a KB has more distinct characteristic sets then they are not
+     * reported and star joins are estimated from the per-predicate
+     * statistics. The default may be overridden using the environment variable
+     * named
+     * 
+     * <pre>
+     * com.bigdata.rdf.spo.PredicateStatistics.maxCharacteristicSets
+     * </pre>
+     */
+    public static final int DEFAULT_MAX_CHARACTERISTIC_SETS = Integer
+            .valueOf(System.getProperty(PredicateStatistics.class.getName()
+                    + ".maxCharacteristicSets", "10000"));
+
+    /**
+     * The characteristic sets are computed from the subjects whose hash code
+     * is a multiple of this value (ONE means all subjects). The estimates
+     * derived from the characteristic sets are scaled accordingly. The default
+     * may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.spo.PredicateStatistics.sampleModulus
+     * </pre>
+     */
+    public static final int DEFAULT_SAMPLE_MODULUS = Integer.valueOf(System
+            .getProperty(PredicateStatistics.class.getName()
+                    + ".sampleModulus", "1"));
+
+    /**
+     * The statistics for a single predicate.
+     */
+    public static class Stats {
+
+        /** The #of statements using the predicate. */
+        public final long count;
+
+        /** The #of distinct subjects for the predicate. */
+        public final long distinctSubjects;
+
+        /** The #of distinct objects for the predicate. */
+        public final long distinctObjects;
+
+        Stats(final long count, final long distinctSubjects,
+                final long distinctObjects) {
+
+            this.count = count;
+
+            this.distinctSubjects = distinctSubjects;
+
+            this.distinctObjects = distinctObjects;
+
+        }
+
+        @Override
+        public String toString() {
+
+            return "{count=" + count + ",distinctSubjects=" + distinctSubjects
+                    + ",distinctObjects=" + distinctObjects + "}";
+
+        }
+
+    }
+
+    /** The namespace of the KB. */
+    private final String namespace;
+
+    /**
+     * The commit time of the last update to the KB reflected by these
+     * statistics.
+     */
+    private final long commitTime;
+
+    /** The #of statements scanned to collect these statistics. */
+    private final long statementCount;
+
+    /** The statistics for each predicate. */
+    private final Map<IV<?, ?>, Stats> predicates;
+
+    /**
+     * The #of sampled subjects having each characteristic set -or-
+     * <code>null</code> if there were too many distinct characteristic sets.
+     */
+    private final Map<Set<IV<?, ?>>, Long> characteristicSets;
+
+    /** The sample modulus used for the characteristic sets. */
+    private final int sampleModulus;
+
+    private PredicateStatistics(final String namespace, final long commitTime,
+            final long statementCount, final Map<IV<?, ?>, Stats> predicates,
+            final Map<Set<IV<?, ?>>, Long> characteristicSets,
+            final int sampleModulus) {
+
+        this.namespace = namespace;
+
+        this.commitTime = commitTime;
+
+        this.statementCount = statementCount;
+
+        this.predicates = Collections.unmodifiableMap(predicates);
+
+        this.characteristicSets = characteristicSets == null ? null
+                : Collections.unmodifiableMap(characteristicSets);
+
+        this.sampleModulus = sampleModulus;
+
+    }
+
+    /**
+     * The namespace of the KB.
+     */
+    public String getNamespace() {
+
+        return namespace;
+
+    }
+
+    /**
+     * The commit time of the last update to the KB reflected by these
+     * statistics.
+     */
+    public long getCommitTime() {
+
+        return commitTime;
+
+    }
+
+    /**
+     * The #of statements scanned to collect these statistics.
+     */
+    public long getStatementCount() {
+
+        return statementCount;
+
+    }
+
+    /**
+     * Return the statistics for the predicate.
+     * 
+     * @param p
+     *            The predicate.
+     * 
+     * @return The statistics -or- <code>null</code> if the predicate was not
+     *         used when the statistics were collected.
+     */
+    public Stats get(final IV<?, ?> p) {
+
+        return predicates.get(p);
+
+    }
+
+    /**
+     * The #of distinct predicates.
+     */
+    public int getPredicateCount() {
+
+        return predicates.size();
+
+    }
+
+    /**
+     * The characteristic sets (a set of predicates and the #of sampled
+     * subjects using exactly that set of predicates) -or- <code>null</code> if
+     * there were too many distinct characteristic sets.
+     */
+    public Map<Set<IV<?, ?>>, Long> getCharacteristicSets() {
+
+        return characteristicSets;
+
+    }
+
+    /**
+     * Estimate the cardinality of the join of <code>(?x p1 ?y)</code> with
+     * <code>(?x p2 ?z)</code> (a subject star join). When the characteristic
+     * sets are available, the estimate is the #of subjects using both
+     * predicates times the average #of statements per subject for each
+     * predicate. Otherwise this is the same as
+     * {@link #estimateJoin(IV, boolean, IV, boolean)}.
+     * 
+     * @return The estimated cardinality -or- <code>-1L</code> if there are no
+     *         statistics for one of the predicates.
+     */
+    public long estimateStarJoin(final IV<?, ?> p1, final IV<?, ?> p2) {
+
+        final Stats s1 = predicates.get(p1);
+
+        final Stats s2 = predicates.get(p2);
+
+        if (s1 == null || s2 == null)
+            return -1L;
+
+        if (characteristicSets == null) {
+
+            return estimateJoin(p1, true/* subject1 */, p2, true/* subject2 */);
+
+        }
+
+        long nsubjects = 0L;
+
+        for (Map.Entry<Set<IV<?, ?>>, Long> e : characteristicSets.entrySet()) {
+
+            final Set<IV<?, ?>> cset = e.getKey();
+
+            if (cset.contains(p1) && cset.contains(p2)) {
+
+                nsubjects += e.getValue();
+
+            }
+
+        }
+
+        // Scale up for the sample.
+        nsubjects *= sampleModulus;
+
+        if (p1.equals(p2)) {
+
+            // Self join: each subject contributes m^2 solutions.
+            final double m = (double) s1.count / s1.distinctSubjects;
+
+            return (long) Math.ceil(nsubjects * m * m);
+
+        }
+
+        final double m1 = (double) s1.count / s1.distinctSubjects;
+
+        final double m2 = (double) s2.count / s2.distinctSubjects;
+
+        return (long) Math.ceil(nsubjects * m1 * m2);
+
+    }
+
+    /**
+     * Estimate the cardinality of the join of two statement patterns which
+     * share a single variable, each having only a constant predicate. This
+     * uses the textbook estimate <code>|R1| * |R2| / max(V1, V2)</code> where
+     * <code>V</code> is the #of distinct values of the join variable in each
+     * statement pattern.
+     * 
+     * @param p1
+     *            The predicate of the first statement pattern.
+     * @param subject1
+     *            <code>true</code> if the join variable is the subject of the
+     *            first statement pattern and <code>false</code> if it is the
+     *            object.
+     * @param p2
+     *            The predicate of the second statement pattern.
+     * @param subject2
+     *            <code>true</code> if the join variable is the subject of the
+     *            second statement pattern and <code>false</code> if it is the
+     *            object.
+     * 
+     * @return The estimated cardinality -or- <code>-1L</code> if there are no
+     *         statistics for one of the predicates.
+     */
+    public long estimateJoin(final IV<?, ?> p1, final boolean subject1,
+            final IV<?, ?> p2, final boolean subject2) {
+
+        final Stats s1 = predicates.get(p1);
+
+        final Stats s2 = predicates.get(p2);
+
+        if (s1 == null || s2 == null)
+            return -1L;
+
+        final long v1 = subject1 ? s1.distinctSubjects : s1.distinctObjects;
+
+        final long v2 = subject2 ? s2.distinctSubjects : s2.distinctObjects;
+
+        return (long) Math.ceil(((double) s1.count * s2.count)
+                / Math.max(1L, Math.max(v1, v2)));
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{namespace=" + namespace
+                + ",commitTime=" + commitTime + ",npredicates="
+                + predicates.size() + ",ncharacteristicSets="
+                + (characteristicSets == null ? "N/A" : ""
+                        + characteristicSets.size()) + "}";
+
+    }
+
+    /**
+     * Compute the statistics for a view of a KB.
+     * 
+     * @param db
+     *            The view of the KB (should be a read-only view).
+     * @param maxCharacteristicSets
+     *            The maximum #of distinct characteristic sets to collect.
+     * @param sampleModulus
+     *            The characteristic sets are collected for the subjects whose
+     *            hash code is a multiple of this value.
+     * 
+     * @return The statistics.
+     */
+    public static PredicateStatistics compute(final AbstractTripleStore db,
+            final int maxCharacteristicSets, final int sampleModulus) {
+
+        if (maxCharacteristicSets < 0)
+            throw new IllegalArgumentException();
+
+        if (sampleModulus <= 0)
+            throw new IllegalArgumentException();
+
+        final long begin = System.currentTimeMillis();
+
+        final SPORelation spoRelation = db.getSPORelation();
+
+        final boolean quads = db.isQuads();
+
+        final Map<IV<?, ?>, long[]> counters = new HashMap<IV<?, ?>, long[]>();
+
+        Map<Set<IV<?, ?>>, Long> csets = new HashMap<Set<IV<?, ?>>, Long>();
+
+        long statementCount = 0L;
+
+        /*
+         * Scan the SPO(C) index. The statements are visited in subject order,
+         * so we collect the predicates for each subject and then update the
+         * statement counts, the distinct subject counts and the characteristic
+         * sets when the subject changes.
+         */
+        {
+
+            final IIndex ndx = spoRelation.getIndex(quads ? SPOKeyOrder.SPOC
+                    : SPOKeyOrder.SPO);
+
+            final Map<IV<?, ?>, long[]> subjectPredicates = new HashMap<IV<?, ?>, long[]>();
+
+            IV<?, ?> lastS = null;
+
+            @SuppressWarnings("unchecked")
+            final ITupleIterator<ISPO> itr = ndx.rangeIterator();
+
+            while (itr.hasNext()) {
+
+                final ITuple<ISPO> tuple = itr.next();
+
+                final ISPO spo = tuple.getObject();
+
+                if (lastS != null && !lastS.equals(spo.s())) {
+
+                    csets = endSubject(lastS, subjectPredicates, counters,
+                            csets, maxCharacteristicSets, sampleModulus);
+
+                }
+
+                lastS = spo.s();
+
+                statementCount++;
+
+                long[] a = subjectPredicates.get(spo.p());
+
+                if (a == null)
+                    subjectPredicates.put(spo.p(), a = new long[1]);
+
+                a[0]++;
+
+            }
+
+            if (lastS != null) {
+
+                csets = endSubject(lastS, subjectPredicates, counters, csets,
+                        maxCharacteristicSets, sampleModulus);
+
+            }
+
+        }
+
+        /*
+         * Scan the POS(C) index. The statements are visited in (p,o) order so
+         * we can count the distinct objects for each predicate.
+         */
+        {
+
+            final IIndex ndx = spoRelation.getIndex(quads ? SPOKeyOrder.POCS
+                    : SPOKeyOrder.POS);
+
+            IV<?, ?> lastP = null, lastO = null;
+
+            @SuppressWarnings("unchecked")
+            final ITupleIterator<ISPO> itr = ndx.rangeIterator();
+
+            while (itr.hasNext()) {
+
+                final ISPO spo = itr.next().getObject();
+
+                if (!spo.p().equals(lastP) || !spo.o().equals(lastO)) {
+
+                    long[] a = counters.get(spo.p());
+
+                    if (a == null)
+                        counters.put(spo.p(), a = new long[3]);
+
+                    a[2]++;
+
+                    lastP = spo.p();
+
+                    lastO = spo.o();
+
+                }
+
+            }
+
+        }
+
+        final Map<IV<?, ?>, Stats> predicates = new HashMap<IV<?, ?>, Stats>();
+
+        for (Map.Entry<IV<?, ?>, long[]> e : counters.entrySet()) {
+
+            final long[] a = e.getValue();
+
+            predicates.put(e.getKey(), new Stats(a[0], a[1], a[2]));
+
+        }
+
+        final long commitTime = getCommitTime(db);
+
+        final PredicateStatistics stats = new PredicateStatistics(
+                db.getNamespace(), commitTime, statementCount, predicates, csets,
+                sampleModulus);
+
+        if (log.isInfoEnabled())
+            log.info(stats + ", elapsed="
+                    + (System.currentTimeMillis() - begin) + "ms");
+
+        return stats;
+
+    }
+
+    /**
+     * Update the statistics for the predicates used by a subject.
+     * 
+     * @return The characteristic sets -or- <code>null</code> if there are too
+     *         many distinct characteristic sets.
+     */
+    private static Map<Set<IV<?, ?>>, Long> endSubject(final IV<?, ?> s,
+            final Map<IV<?, ?>, long[]> subjectPredicates,
+            final Map<IV<?, ?>, long[]> counters,
+            Map<Set<IV<?, ?>>, Long> csets, final int maxCharacteristicSets,
+            final int sampleModulus) {
+
+        for (Map.Entry<IV<?, ?>, long[]> e : subjectPredicates.entrySet()) {
+
+            long[] a = counters.get(e.getKey());
+
+            if (a == null)
+                counters.put(e.getKey(), a = new long[3]);
+
+            // #of statements.
+            a[0] += e.getValue()[0];
+
+            // #of distinct subjects.
+            a[1]++;
+
+        }
+
+        if (csets != null && ((s.hashCode() & 0x7fffffff) % sampleModulus) == 0) {
+
+            final Set<IV<?, ?>> cset = new LinkedHashSet<IV<?, ?>>(
+                    subjectPredicates.keySet());
+
+            final Long n = csets.get(cset);
+
+            if (n == null && csets.size() >= maxCharacteristicSets) {
+
+                // Too many distinct characteristic sets.
+                csets = null;
+
+            } else {
+
+                csets.put(cset, n == null ? 1L : n + 1);
+
+            }
+
+        }
+
+        subjectPredicates.clear();
+
+        return csets;
+
+    }
+
+    /**
+     * Return the commit time of the last update to the statement indices of
+     * the KB as visible to the view.
+     */
+    private static long getCommitTime(final AbstractTripleStore db) {
+
+        final IIndex ndx = db.getSPORelation().getPrimaryIndex();
+
+        if (ndx instanceof ICheckpointProtocol) {
+
+            return ((ICheckpointProtocol) ndx).getLastCommitTime();
+
+        }
+
+        return db.getIndexManager().getLastCommitTime();
+
+    }
+
+    /*
+     * Statistics maintained for each KB.
+     */
+
+    /**
+     * The most recent statistics for each KB (by namespace), for each index
+     * manager.
+     */
+    private static final WeakHashMap<IIndexManager, ConcurrentHashMap<String, Holder>> holders = new WeakHashMap<IIndexManager, ConcurrentHashMap<String, Holder>>();
+
+    /**
+     * The most recent statistics for a KB and the refresh task (if any).
+     */
+    private static class Holder {
+
+        volatile PredicateStatistics stats;
+
+        /** The refresh task (if one is running). */
+        final AtomicReference<Future<PredicateStatistics>> refresh = new AtomicReference<Future<PredicateStatistics>>();
+
+        /** When the last refresh was started. */
+        volatile long lastRefreshMillis;
+
+    }
+
+    private static Holder getHolder(final AbstractTripleStore db) {
+
+        ConcurrentHashMap<String, Holder> map;
+
+        synchronized (holders) {
+
+            map = holders.get(db.getIndexManager());
+
+            if (map == null) {
+
+                holders.put(db.getIndexManager(),
+                        map = new ConcurrentHashMap<String, Holder>());
+
+            }
+
+        }
+
+        Holder holder = map.get(db.getNamespace());
+
+        if (holder == null) {
+
+            final Holder tmp = map.putIfAbsent(db.getNamespace(),
+                    holder = new Holder());
+
+            if (tmp != null)
+                holder = tmp;
+
+        }
+
+        return holder;
+
+    }
+
+    /**
+     * Return the most recent statistics for the KB. If the statistics do not
+     * exist or do not reflect the last commit for the KB then a background
+     * task is started to (re-)compute them, subject to
+     * {@link #DEFAULT_REFRESH_MILLIS} and
+     * {@link #DEFAULT_REFRESH_CHANGE_RATIO}. This method does not wait for
+     * that task.
+     * <p>
+     * Note: Statistics are only maintained for a KB backed by a
+     * {@link Journal}.
+     * 
+     * @param db
+     *            A view of the KB.
+     * 
+     * @return The most recent statistics -or- <code>null</code> if no
+     *         statistics are available yet.
+     */
+    public static PredicateStatistics getStatistics(final AbstractTripleStore db) {
+
+        if (!(db.getIndexManager() instanceof Journal)) {
+
+            return null;
+
+        }
+
+        final Holder holder = getHolder(db);
+
+        final PredicateStatistics stats = holder.stats;
+
+        if (stats == null
+                || (stats.commitTime < getCommitTime(db)
+                        && System.currentTimeMillis()
+                                - holder.lastRefreshMillis >= DEFAULT_REFRESH_MILLIS && isStale(
+                            stats, db.getSPORelation().getPrimaryIndex()
+                                    .rangeCount(),
+                            DEFAULT_REFRESH_CHANGE_RATIO))) {
+
+            refresh(db);
+
+        }
+
+        return stats;
+
+    }
+
+    /**
+     * Return <code>true</code> if the #of statements in the KB has changed
+     * enough since the statistics were collected that they should be
+     * recomputed.
+     * 
+     * @param stats
+     *            The statistics.
+     * @param statementCount
+     *            The #of statements in the KB now (a fast range count).
+     * @param changeRatio
+     *            The minimum change as a fraction of the #of statements
+     *            scanned for the statistics.
+     */
+    static boolean isStale(final PredicateStatistics stats,
+            final long statementCount, final double changeRatio) {
+
+        final long threshold = Math.max(1L,
+                (long) Math.ceil(stats.statementCount * changeRatio));
+
+        return Math.abs(statementCount - stats.statementCount) >= threshold;
+
+    }
+
+    /**
+     * Start a background task to recompute the statistics for the KB from the
+     * last commit point (unless such a task is already running).
+     * 
+     * @param db
+     *            A view of the KB, which must be backed by a {@link Journal}.
+     * 
+     * @return The {@link Future} of the task.
+     */
+    public static Future<PredicateStatistics> refresh(
+            final AbstractTripleStore db) {
+
+        final Journal jnl = (Journal) db.getIndexManager();
+
+        final Holder holder = getHolder(db);
+
+        final String namespace = db.getNamespace();
+
+        final FutureTask<PredicateStatistics> ft = new FutureTask<PredicateStatistics>(
+                new Callable<PredicateStatistics>() {
+
+                    @Override
+                    public PredicateStatistics call() throws Exception {
+
+                        try {
+
+                            // Read lock on the last commit point.
+                            final long tx = jnl.newTx(ITx.READ_COMMITTED);
+
+                            try {
+
+                                final AbstractTripleStore view = (AbstractTripleStore) jnl
+                                        .getResourceLocator().locate(namespace,
+                                                tx);
+
+                                if (view == null) {
+
+                                    // KB does not exist (yet or any more).
+                                    return null;
+
+                                }
+
+                                final PredicateStatistics stats = compute(
+                                        view, DEFAULT_MAX_CHARACTERISTIC_SETS,
+                                        DEFAULT_SAMPLE_MODULUS);
+
+                                holder.stats = stats;
+
+                                return stats;
+
+                            } finally {
+
+                                jnl.abort(tx);
+
+                            }
+
+                        } finally {
+
+                            holder.refresh.set(null);
+
+                        }
+
+                    }
+
+                });
+
+        while (!holder.refresh.compareAndSet(null, ft)) {
+
+            // Already running.
+            final Future<PredicateStatistics> f = holder.refresh.get();
+
+            if (f != null)
+                return f;
+
+            // That task just finished, so try again to register ours.
+
+        }
+
+        holder.lastRefreshMillis = System.currentTimeMillis();
+
+        db.getExecutorService().execute(ft);
+
+        return ft;
+
+    }
+
+    /**
+     * Discard the statistics for all KBs on the index manager.
+     */
+    public static void clear(final IIndexManager indexManager) {
+
+        synchronized (holders) {
+
+            holders.remove(indexManager);
+
+        }
+
+    }
+
+}
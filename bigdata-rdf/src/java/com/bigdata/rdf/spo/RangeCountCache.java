@@ -0,0 +1,309 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.spo;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.ICheckpointProtocol;
+import com.bigdata.btree.IIndex;
+import com.bigdata.striterator.IKeyOrder;
+
+/**
+ * A bounded LRU cache of the fast range counts for the key ranges of the
+ * statement indices. The cache is keyed by the namespace of the KB, the
+ * {@link IKeyOrder} and {@link UUID} of the index, the commit time of the
+ * index view, and the key range. Since the index is immutable as of a given
+ * commit time, the cached range counts are shared by all queries reading on
+ * the same commit point and never need to be invalidated. Only views which
+ * report their last commit time (i.e., local read-only {@link ICheckpointProtocol}
+ * views) are cached.
+ * <p>
+ * Short queries against a KB on a disk based journal can otherwise spend most
+ * of their time in the random reads required to compute the range counts
+ * used by the static join optimizer.
+ * 
+ * @see SPOAccessPath
+ */
+public class RangeCountCache {
+
+    private static final transient Logger log = Logger
+            .getLogger(RangeCountCache.class);
+
+    /**
+     * The default capacity of the {@link #INSTANCE} (default 10000). A
+     * capacity of ZERO (0) disables the cache. The default may be overridden
+     * using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.spo.RangeCountCache.capacity
+     * </pre>
+     */
+    public static final int DEFAULT_CAPACITY = Integer.valueOf(System
+            .getProperty(RangeCountCache.class.getName() + ".capacity",
+                    "10000"));
+
+    /**
+     * The instance shared by all KBs in the JVM.
+     */
+    public static final RangeCountCache INSTANCE = new RangeCountCache(
+            DEFAULT_CAPACITY);
+
+    /**
+     * The key for a cached range count.
+     */
+    private static class Key {
+
+        private final String namespace;
+
+        private final String keyOrder;
+
+        private final UUID indexUUID;
+
+        private final long commitTime;
+
+        private final byte[] fromKey;
+
+        private final byte[] toKey;
+
+        private final int hashCode;
+
+        Key(final String namespace, final String keyOrder, final UUID indexUUID,
+                final long commitTime, final byte[] fromKey, final byte[] toKey) {
+
+            this.namespace = namespace;
+            this.keyOrder = keyOrder;
+            this.indexUUID = indexUUID;
+            this.commitTime = commitTime;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+
+            int h = namespace.hashCode();
+            h = 31 * h + keyOrder.hashCode();
+            h = 31 * h + indexUUID.hashCode();
+            h = 31 * h + (int) (commitTime ^ (commitTime >>> 32));
+            h = 31 * h + Arrays.hashCode(fromKey);
+            h = 31 * h + Arrays.hashCode(toKey);
+            this.hashCode = h;
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            return hashCode;
+
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key))
+                return false;
+
+            final Key t = (Key) o;
+
+            return hashCode == t.hashCode && commitTime == t.commitTime
+                    && keyOrder.equals(t.keyOrder)
+                    && namespace.equals(t.namespace)
+                    && indexUUID.equals(t.indexUUID)
+                    && Arrays.equals(fromKey, t.fromKey)
+                    && Arrays.equals(toKey, t.toKey);
+
+        }
+
+    }
+
+    /**
+     * The maximum #of cached range counts.
+     */
+    private final int capacity;
+
+    /**
+     * The cached range counts (LRU ordering).
+     */
+    private final LinkedHashMap<Key, Long> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            The maximum #of cached range counts. When ZERO (0), range
+     *            counts are not cached.
+     */
+    public RangeCountCache(final int capacity) {
+
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+
+        this.capacity = capacity;
+
+        this.cache = new LinkedHashMap<Key, Long>(16, .75f, true/* accessOrder */) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Key, Long> eldest) {
+
+                return size() > RangeCountCache.this.capacity;
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Return the fast range count for the key range of the index, using the
+     * cached value if there is one for the same commit point.
+     * 
+     * @param namespace
+     *            The namespace of the relation.
+     * @param keyOrder
+     *            The {@link IKeyOrder} of the index.
+     * @param ndx
+     *            The index view.
+     * @param fromKey
+     *            The inclusive lower bound (optional).
+     * @param toKey
+     *            The exclusive upper bound (optional).
+     * 
+     * @return The fast range count.
+     */
+    public long rangeCount(final String namespace,
+            final IKeyOrder<?> keyOrder, final IIndex ndx,
+            final byte[] fromKey, final byte[] toKey) {
+
+        if (capacity == 0 || namespace == null
+                || !(ndx instanceof ICheckpointProtocol)) {
+
+            // Not cachable.
+            return ndx.rangeCount(fromKey, toKey);
+
+        }
+
+        final long commitTime = ((ICheckpointProtocol) ndx)
+                .getLastCommitTime();
+
+        if (commitTime == 0L) {
+
+            // Never committed.
+            return ndx.rangeCount(fromKey, toKey);
+
+        }
+
+        final Key key = new Key(namespace, keyOrder.getIndexName(), ndx
+                .getIndexMetadata().getIndexUUID(), commitTime, fromKey, toKey);
+
+        Long n;
+
+        synchronized (cache) {
+
+            n = cache.get(key);
+
+        }
+
+        if (n != null) {
+
+            hitCount.incrementAndGet();
+
+            return n;
+
+        }
+
+        missCount.incrementAndGet();
+
+        n = ndx.rangeCount(fromKey, toKey);
+
+        synchronized (cache) {
+
+            cache.put(key, n);
+
+        }
+
+        if (log.isDebugEnabled())
+            log.debug("namespace=" + namespace + ", keyOrder=" + keyOrder
+                    + ", commitTime=" + commitTime + ", n=" + n);
+
+        return n;
+
+    }
+
+    /**
+     * The #of cached range counts.
+     */
+    public int size() {
+
+        synchronized (cache) {
+
+            return cache.size();
+
+        }
+
+    }
+
+    /**
+     * Discard all cached range counts.
+     */
+    public void clear() {
+
+        synchronized (cache) {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * The #of range counts served from the cache.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * The #of range counts which were not in the cache.
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+
+    }
+
+}
@@ -24,6 +24,7 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 package com.bigdata.rdf.spo;
 
 import com.bigdata.bop.IPredicate;
+import com.bigdata.btree.IIndex;
 import com.bigdata.journal.IIndexManager;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.relation.IRelation;
@@ -93,6 +94,28 @@ public class SPOAccessPath extends AccessPath<ISPO> {
 
     }
 
+    /**
+     * Overridden to use the {@link SPORelation#getRangeCountCache()} so the
+     * range count for the same key range is shared by all access paths
+     * reading on the same commit point.
+     */
+    @Override
+    protected long historicalRangeCount(final IIndex ndx,
+            final byte[] fromKey, final byte[] toKey) {
+
+        final SPORelation relation = getRelation();
+
+        if (relation == null) {
+
+            return super.historicalRangeCount(ndx, fromKey, toKey);
+
+        }
+
+        return relation.getRangeCountCache().rangeCount(
+                relation.getNamespace(), getKeyOrder(), ndx, fromKey, toKey);
+
+    }
+
 //    /**
 //     * Strengthened return type.
 //     * <p>
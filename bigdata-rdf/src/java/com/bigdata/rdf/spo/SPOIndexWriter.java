@@ -96,6 +96,12 @@ public class SPOIndexWriter implements Callable<Long> {
 	
 	/** <code>true</code> iff this is a SIDs mode index. */
 	private final boolean sids;
+
+    /**
+     * <code>true</code> iff the statements are already in the order of the
+     * index.
+     */
+    private final boolean presorted;
 	
     /**
      * Writes statements on a statement index (batch api).
@@ -141,12 +147,39 @@ public class SPOIndexWriter implements Callable<Long> {
             final AtomicLong numWritten,
             final boolean reportMutations) {
 
+        this(spoRelation, a, numStmts, clone, keyOrder, primaryIndex, filter,
+                sortTime, insertTime, numWritten, reportMutations, false/* presorted */);
+
+    }
+
+    /**
+     * Variant used when the caller has already sorted the statements into the
+     * order of the <i>keyOrder</i>.
+     * 
+     * @param presorted
+     *            When <code>true</code>, the statements are known to be in
+     *            the order of the <i>keyOrder</i> and will not be sorted
+     *            again. This may only be used with <code>clone := false</code>.
+     */
+    public SPOIndexWriter(final SPORelation spoRelation, final ISPO[] a,
+            final int numStmts, final boolean clone,
+            final SPOKeyOrder keyOrder, final boolean primaryIndex,
+            final IElementFilter<ISPO> filter,
+            final AtomicLong sortTime, final AtomicLong insertTime,
+            final AtomicLong numWritten,
+            final boolean reportMutations, final boolean presorted) {
+
         if (spoRelation == null)
             throw new IllegalArgumentException();
         
         if (keyOrder == null)
             throw new IllegalArgumentException();
 
+        if (presorted && clone)
+            throw new IllegalArgumentException();
+
+        this.presorted = presorted;
+
 //        this.keyOrder = keyOrder;
 		this.primaryIndex = primaryIndex;
         this.filter = filter;
@@ -206,7 +239,7 @@ public class SPOIndexWriter implements Callable<Long> {
 
         final long begin = System.currentTimeMillis();
 
-        { // sort
+        if (!presorted) { // sort
 
             Arrays.sort(stmts, 0, numStmts, comparator);
 
@@ -31,6 +31,7 @@ package com.bigdata.rdf.spo;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -232,6 +233,18 @@ public class SPORelation extends AbstractRelation<ISPO> {
         
     }
 
+    /**
+     * When <code>true</code>, SPOs are never removed from the indices, only
+     * downgraded to {@link StatementEnum#History}. Such statements are
+     * filtered out by the access paths unless
+     * {@link SPOPredicate.Annotations#INCLUDE_HISTORY} is specified.
+     */
+    public boolean isHistory() {
+
+        return history;
+
+    }
+
     public SPORelation(final IIndexManager indexManager,
             final String namespace, final Long timestamp,
             final Properties properties) {
@@ -1565,6 +1578,17 @@ public class SPORelation extends AbstractRelation<ISPO> {
 //
 //    }
 
+    /**
+     * The cache of fast range counts used by the {@link SPOAccessPath}s for
+     * historical reads on this relation. The cache is shared by all views of
+     * all KBs in the JVM.
+     */
+    public RangeCountCache getRangeCountCache() {
+
+        return RangeCountCache.INSTANCE;
+
+    }
+
     @Override
     public IAccessPath<ISPO> newAccessPath(
 //            final IRelation<ISPO> relation,
@@ -2157,6 +2181,16 @@ public class SPORelation extends AbstractRelation<ISPO> {
 
         final AtomicLong mutationCount = new AtomicLong(0);
         
+        /*
+         * When the statements are already in the order of the primary index,
+         * the writer for that index does not need to sort them again. This is
+         * a linear check so it does not add a sort to the critical path. The
+         * writers for the secondary indices always sort a copy into their own
+         * key order concurrently.
+         */
+        final boolean presorted = isSorted(a, numStmts, getPrimaryKeyOrder()
+                .getComparator());
+
         final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(3);
 
         /*
@@ -2172,7 +2206,7 @@ public class SPORelation extends AbstractRelation<ISPO> {
             tasks.add(new SPOIndexWriter(this, a, numStmts, false/* clone */,
                     SPOKeyOrder.SPO, SPOKeyOrder.SPO.isPrimaryIndex(),
                     filter, sortTime, insertTime, mutationCount,
-                    reportMutation));
+                    reportMutation, presorted));
     
             if (!oneAccessPath) {
     
@@ -2193,7 +2227,7 @@ public class SPORelation extends AbstractRelation<ISPO> {
             tasks.add(new SPOIndexWriter(this, a, numStmts, false/* clone */,
                     SPOKeyOrder.SPOC, SPOKeyOrder.SPOC.isPrimaryIndex(),
                     filter, sortTime, insertTime,
-                    mutationCount, reportMutation));
+                    mutationCount, reportMutation, presorted));
 
             if (!oneAccessPath) {
 
@@ -2245,12 +2279,25 @@ public class SPORelation extends AbstractRelation<ISPO> {
 */
         try {
 
-            futures = getExecutorService().invokeAll(tasks);
+            if (tasks.size() == 1) {
 
-            for (int i = 0; i < tasks.size(); i++) {
-                
-//                futures.get(i).get();
-                logFuture(futures.get(i));
+                /*
+                 * Note: There is nothing to run in parallel when there is a
+                 * single statement index, so just run the task in the
+                 * caller's thread.
+                 */
+                tasks.get(0).call();
+
+            } else {
+
+                futures = getExecutorService().invokeAll(tasks);
+
+                for (int i = 0; i < tasks.size(); i++) {
+
+//                    futures.get(i).get();
+                    logFuture(futures.get(i));
+
+                }
 
             }
 /*
@@ -2263,11 +2310,11 @@ public class SPORelation extends AbstractRelation<ISPO> {
                 elapsed_OSP = 0;
             }
 */
-        } catch (InterruptedException ex) {
+        } catch (RuntimeException ex) {
 
-            throw new RuntimeException(ex);
+            throw ex;
 
-        } catch (ExecutionException ex) {
+        } catch (Exception ex) {
 
             throw new RuntimeException(ex);
 
@@ -2292,6 +2339,26 @@ public class SPORelation extends AbstractRelation<ISPO> {
         
     }
 
+    /**
+     * Return <code>true</code> iff the first <i>n</i> statements are in the
+     * order imposed by the comparator.
+     */
+    private static boolean isSorted(final ISPO[] a, final int n,
+            final Comparator<ISPO> comparator) {
+
+        for (int i = 1; i < n; i++) {
+
+            // Note: The writer reports a null element.
+            if (a[i - 1] == null || a[i] == null
+                    || comparator.compare(a[i - 1], a[i]) > 0)
+                return false;
+
+        }
+
+        return true;
+
+    }
+
     private <T> T logFuture(final Future<T> f) throws ExecutionException,
             InterruptedException {
         try {
@@ -2,8 +2,10 @@ package com.bigdata.rdf.store;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
@@ -24,6 +26,7 @@ import com.bigdata.rdf.internal.impl.TermId;
 import com.bigdata.rdf.internal.impl.bnode.SidIV;
 import com.bigdata.rdf.lexicon.LexiconRelation;
 import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.QueryHints;
 import com.bigdata.rdf.spo.ISPO;
 import com.bigdata.relation.accesspath.BlockingBuffer;
 import com.bigdata.striterator.AbstractChunkedResolverator;
@@ -51,6 +54,25 @@ public class BigdataBindingSetResolverator
     private final int termsChunkSize;
     private final int blobsChunkSize;
 
+    /**
+     * A bounded LRU cache of the {@link IV}s which were resolved against the
+     * lexicon for earlier chunks of the same query. Large result sets tend to
+     * reuse the same terms (predicates, classes, shared objects) across many
+     * chunks, so this avoids reading them again from ID2TERM or BLOBS.
+     * <p>
+     * Note: Chunks are resolved by a single consumer task (see
+     * {@link AbstractChunkedResolverator}) so this cache does not need to be
+     * thread-safe. It is <code>null</code> if the cache is disabled.
+     */
+    private final Map<IV<?, ?>, BigdataValue> resolved;
+
+    /**
+     * The #of {@link IV}s which were resolved from {@link #resolved} rather
+     * than the lexicon. This is only written by the thread which resolves the
+     * chunks, but it may be read by any thread.
+     */
+    private volatile long ncacheHits = 0L;
+
     /**
      * 
      * @param db
@@ -77,13 +99,62 @@ public class BigdataBindingSetResolverator
             final int termsChunkSize,
             final int blobsChunkSize) {
 
+        this(db, src, queryId, required, chunkOfChunksCapacity, chunkCapacity,
+                chunkTimeout, termsChunkSize, blobsChunkSize,
+                QueryHints.DEFAULT_MATERIALIZATION_CACHE_CAPACITY);
+
+    }
+
+    /**
+     * 
+     * @param db
+     *            Used to resolve term identifiers to {@link Value} objects.
+     * @param src
+     *            The source iterator (will be closed when this iterator is
+     *            closed).
+     * @param queryId
+     *            The query {@link UUID} (for logging on the
+     *            {@link SolutionsLog}).
+     * @param required
+     *            The variables to be resolved (optional). When
+     *            <code>null</code>, all variables will be resolved.
+     * @param resolutionCacheCapacity
+     *            The maximum #of resolved {@link IV}s which will be retained
+     *            across chunks (LRU). When ZERO (0), each chunk is resolved
+     *            independently against the lexicon.
+     * 
+     * @see QueryHints#MATERIALIZATION_CACHE_CAPACITY
+     */
+    @SuppressWarnings("rawtypes")
+    public BigdataBindingSetResolverator(final AbstractTripleStore db,
+            final IChunkedOrderedIterator<IBindingSet> src,
+            final UUID queryId,//
+            final IVariable[] required, final int chunkOfChunksCapacity,
+            final int chunkCapacity, final long chunkTimeout,
+            final int termsChunkSize,
+            final int blobsChunkSize,
+            final int resolutionCacheCapacity) {
+
         super(db, src, new BlockingBuffer<IBindingSet[]>(chunkOfChunksCapacity,
                 chunkCapacity, chunkTimeout, TimeUnit.MILLISECONDS));
 
+        if (resolutionCacheCapacity < 0)
+            throw new IllegalArgumentException();
+        
         this.queryId = queryId;
         this.required = required;
         this.termsChunkSize = termsChunkSize;
         this.blobsChunkSize = blobsChunkSize;
+        this.resolved = resolutionCacheCapacity == 0 ? null
+                : new LinkedHashMap<IV<?, ?>, BigdataValue>(
+                        16/* initialCapacity */, .75f/* loadFactor */, true/* accessOrder */) {
+                    private static final long serialVersionUID = 1L;
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<IV<?, ?>, BigdataValue> eldest) {
+                        return size() > resolutionCacheCapacity;
+                    }
+                };
         
 //        System.err.println("required: " + (required != null ? Arrays.toString(required) : "null"));
 
@@ -134,9 +205,19 @@ public class BigdataBindingSetResolverator
             ) {
         
         return resolveChunk(queryId, lex, chunk, required, termsChunkSize,
-                blobsChunkSize);
+                blobsChunkSize, resolved);
         
     }
+
+    /**
+     * The #of {@link IV}s which were resolved from the cross-chunk cache
+     * rather than by reading on the lexicon.
+     */
+    public long getCacheHitCount() {
+
+        return ncacheHits;
+
+    }
     
     /**
      * Public entry point for batch resolution.
@@ -154,22 +235,28 @@ public class BigdataBindingSetResolverator
      *            The chunk size for materialization of {@link TermId}s.
      * @param blobsChunkSize
      *            The chunk size for materialization of {@link BlobIV}s.
+     * @param resolved
+     *            A cache of {@link IV}s resolved for earlier chunks
+     *            (optional). It is consulted before the lexicon and updated
+     *            with the {@link IV}s read from the lexicon for this chunk.
      *            
      * @return The resolved {@link IBindingSet}[] chunk.
      */
     /*
-     * Note: I've made this static to support chunked resolution outside of the
+     * Note: This was static to support chunked resolution outside of the
      * producer/consumer pattern, but there never seems to be a use case for it.
      * Each time it turns out that the BigdataValueReplacer is the right thing
-     * to use.
+     * to use. It is now an instance method so it can maintain the cross-chunk
+     * resolution cache.
      */
-    static private IBindingSet[] resolveChunk(
+    private IBindingSet[] resolveChunk(
             final UUID queryId,
             final LexiconRelation lex,//
             final IBindingSet[] chunk,//
             final IVariable<?>[] required,//
             final int termsChunkSize,//
-            final int blobsChunkSize//
+            final int blobsChunkSize,//
+            final Map<IV<?, ?>, BigdataValue> resolved//
             ) {
     
         final long begin = System.currentTimeMillis();
@@ -268,9 +355,80 @@ public class BigdataBindingSetResolverator
             log.debug("Resolving " + ids.size() + " IVs, required="
                     + Arrays.toString(required));
 
-        // batch resolve term identifiers to terms.
-        final Map<IV<?, ?>, BigdataValue> terms = lex.getTerms(ids,
-                termsChunkSize, blobsChunkSize);
+        /*
+         * Resolve the IVs which do not require a read on the lexicon (already
+         * materialized, inline, or resolved for an earlier chunk) and batch
+         * resolve the rest.
+         */
+        final Map<IV<?, ?>, BigdataValue> terms = new HashMap<IV<?, ?>, BigdataValue>(
+                ids.size());
+        {
+
+            final Collection<IV<?, ?>> misses = new HashSet<IV<?, ?>>(
+                    ids.size());
+
+            for (IV<?, ?> iv : ids) {
+
+                if (iv.hasValue()) {
+
+                    terms.put(iv, iv.getValue());
+
+                } else if (iv.isInline() && !(iv instanceof SidIV)) {
+
+                    /*
+                     * Note: SIDs are handled by the lexicon since their
+                     * components might need to be materialized.
+                     */
+                    terms.put(iv, iv.asValue(lex));
+
+                } else {
+
+                    final BigdataValue value = resolved == null ? null
+                            : resolved.get(iv);
+
+                    if (value != null) {
+
+                        terms.put(iv, value);
+
+                        ncacheHits++;
+
+                    } else {
+
+                        misses.add(iv);
+
+                    }
+
+                }
+
+            }
+
+            if (!misses.isEmpty()) {
+
+                // batch resolve term identifiers to terms.
+                final Map<IV<?, ?>, BigdataValue> tmp = lex.getTerms(misses,
+                        termsChunkSize, blobsChunkSize);
+
+                terms.putAll(tmp);
+
+                if (resolved != null) {
+
+                    for (Map.Entry<IV<?, ?>, BigdataValue> e : tmp.entrySet()) {
+
+                        if (!e.getKey().isInline())
+                            resolved.put(e.getKey(), e.getValue());
+
+                    }
+
+                }
+
+            }
+
+            if (log.isDebugEnabled())
+                log.debug("Resolved " + (ids.size() - misses.size())
+                        + " IVs without reading on the lexicon, #misses="
+                        + misses.size());
+
+        }
 
         /*
          * Assemble a chunk of resolved elements.
@@ -89,6 +89,9 @@ public class TestAll extends TestCase {
          */
         suite.addTestSuite(TestAsynchronousStatementBufferFactory.class);
 
+        // Compact binary SPARQL result set format.
+        suite.addTestSuite(TestBigdataBinaryResults.class);
+
         return suite;
         
     }
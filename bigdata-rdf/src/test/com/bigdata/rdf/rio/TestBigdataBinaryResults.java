@@ -0,0 +1,349 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.rio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.TestCase2;
+
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.impl.TupleQueryResultBuilder;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultParserRegistry;
+import org.openrdf.query.resultio.TupleQueryResultWriterRegistry;
+
+import com.bigdata.rdf.ServiceProviderHook;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.internal.impl.literal.XSDBooleanIV;
+import com.bigdata.rdf.internal.impl.literal.XSDIntegerIV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.BigdataValueFactoryImpl;
+import com.bigdata.rdf.rio.binary.BigdataBinaryResultsWriter;
+import com.bigdata.rdf.sail.webapp.client.AcceptHeaderFactory;
+import com.bigdata.rdf.sail.webapp.client.BigdataBinaryResultsFormat;
+import com.bigdata.rdf.sail.webapp.client.BigdataBinaryResultsParser;
+
+/**
+ * Test suite for the compact binary SPARQL result set format. Solutions are
+ * written using {@link BigdataBinaryResultsWriter}, parsed using
+ * {@link BigdataBinaryResultsParser}, and compared with the original solutions.
+ */
+public class TestBigdataBinaryResults extends TestCase2 {
+
+    public TestBigdataBinaryResults() {
+    }
+
+    public TestBigdataBinaryResults(final String name) {
+        super(name);
+    }
+
+    private BigdataValueFactory f;
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        ServiceProviderHook.forceLoad();
+
+        f = BigdataValueFactoryImpl.getInstance(getName());
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        if (f != null) {
+            f.remove();
+            f = null;
+        }
+
+        super.tearDown();
+
+    }
+
+    /**
+     * The format is registered and the writer and parser are discovered.
+     */
+    public void test_registry() {
+
+        final TupleQueryResultFormat format = TupleQueryResultFormat
+                .forMIMEType(BigdataBinaryResultsFormat.MIME_TYPE);
+
+        assertEquals(BigdataBinaryResultsFormat.FORMAT, format);
+
+        assertNotNull(TupleQueryResultWriterRegistry.getInstance().get(format));
+
+        assertNotNull(TupleQueryResultParserRegistry.getInstance().get(format));
+
+        // The default accept header prefers the compact binary format.
+        assertTrue(Arrays.asList(
+                AcceptHeaderFactory.getDefaultSolutionsAcceptHeader()
+                        .split(",")).contains(
+                BigdataBinaryResultsFormat.MIME_TYPE));
+
+    }
+
+    /**
+     * An empty result set.
+     */
+    public void test_empty() throws Exception {
+
+        doRoundTripTest(Arrays.asList("x", "y"), new LinkedList<BindingSet>(),
+                BigdataBinaryResultsWriter.DEFAULT_MAX_TERMS);
+
+    }
+
+    /**
+     * URIs, blank nodes, plain, language tagged and datatype literals, and
+     * unbound variables. None of the values have IVs.
+     */
+    public void test_materializedValues() throws Exception {
+
+        final List<String> names = Arrays.asList("x", "y", "z");
+
+        doRoundTripTest(names, getMaterializedSolutions(names),
+                BigdataBinaryResultsWriter.DEFAULT_MAX_TERMS);
+
+    }
+
+    /**
+     * Inline literals are written in their native encoding while terms with
+     * (non-inline) IVs are written into the dictionary.
+     */
+    public void test_inlineValues() throws Exception {
+
+        final List<String> names = Arrays.asList("x", "y");
+
+        final BigdataURI u1 = f.createURI("http://www.bigdata.com/u1");
+        u1.setIV(new TermId<BigdataURI>(VTE.URI, 12L));
+
+        final BigdataURI u2 = f.createURI("http://www.bigdata.com/u2");
+        u2.setIV(new TermId<BigdataURI>(VTE.URI, 13L));
+
+        final List<BindingSet> solutions = new LinkedList<BindingSet>();
+
+        solutions.add(new ListBindingSet(names, u1,
+                inline(f.createLiteral(true), new XSDBooleanIV<BigdataLiteral>(
+                        true))));
+
+        solutions.add(new ListBindingSet(names, u2, inline(
+                f.createLiteral((byte) 3), new XSDNumericIV<BigdataLiteral>(
+                        (byte) 3))));
+
+        solutions.add(new ListBindingSet(names, u1, inline(
+                f.createLiteral((short) -12), new XSDNumericIV<BigdataLiteral>(
+                        (short) -12))));
+
+        solutions.add(new ListBindingSet(names, u2, inline(
+                f.createLiteral(12), new XSDNumericIV<BigdataLiteral>(12))));
+
+        solutions.add(new ListBindingSet(names, u1, inline(
+                f.createLiteral(Long.MIN_VALUE),
+                new XSDNumericIV<BigdataLiteral>(Long.MIN_VALUE))));
+
+        solutions.add(new ListBindingSet(names, u2, inline(
+                f.createLiteral(1.5f), new XSDNumericIV<BigdataLiteral>(1.5f))));
+
+        solutions.add(new ListBindingSet(names, u1, inline(
+                f.createLiteral(-2.25d), new XSDNumericIV<BigdataLiteral>(
+                        -2.25d))));
+
+        solutions.add(new ListBindingSet(names, u2, inline(
+                f.createLiteral("42", XMLSchema.INTEGER),
+                new XSDIntegerIV<BigdataLiteral>(BigInteger.valueOf(42)))));
+
+        // Too large for the native encoding.
+        final BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(4);
+        solutions.add(new ListBindingSet(names, u1, inline(
+                f.createLiteral(big.toString(), XMLSchema.INTEGER),
+                new XSDIntegerIV<BigdataLiteral>(big))));
+
+        doRoundTripTest(names, solutions,
+                BigdataBinaryResultsWriter.DEFAULT_MAX_TERMS);
+
+    }
+
+    /**
+     * A small bound on the dictionary forces RESET records between solutions.
+     */
+    public void test_reset() throws Exception {
+
+        final List<String> names = Arrays.asList("x", "y", "z");
+
+        final List<BindingSet> solutions = new LinkedList<BindingSet>();
+
+        for (int i = 0; i < 10; i++) {
+
+            solutions.addAll(getMaterializedSolutions(names));
+
+        }
+
+        final byte[] data1 = doRoundTripTest(names, solutions, 8/* maxTerms */);
+
+        final byte[] data2 = doRoundTripTest(names, solutions,
+                BigdataBinaryResultsWriter.DEFAULT_MAX_TERMS);
+
+        // Terms are written more than once when the dictionary is reset.
+        assertTrue(data1.length > data2.length);
+
+    }
+
+    /**
+     * Attach the inline IV to the literal.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private BigdataValue inline(final BigdataLiteral lit, final IV iv) {
+
+        lit.setIV(iv);
+
+        iv.setValue(lit);
+
+        return lit;
+
+    }
+
+    private List<BindingSet> getMaterializedSolutions(final List<String> names) {
+
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+        final List<BindingSet> solutions = new LinkedList<BindingSet>();
+
+        solutions.add(new ListBindingSet(names,
+                vf.createURI("http://www.bigdata.com/a"), vf.createBNode("b1"),
+                vf.createLiteral("abc")));
+
+        solutions.add(new ListBindingSet(names,
+                vf.createURI("http://www.bigdata.com/a"), null,
+                vf.createLiteral("abc", "en")));
+
+        solutions.add(new ListBindingSet(names,
+                vf.createURI("http://www.bigdata.com/b"),
+                vf.createLiteral("12", XMLSchema.INT),
+                vf.createLiteral("2015-01-01", XMLSchema.DATE)));
+
+        solutions.add(new ListBindingSet(names, null, null, null));
+
+        solutions.add(new ListBindingSet(names,
+                vf.createLiteral("été", "fr"), vf.createBNode("b1"),
+                vf.createLiteral("")));
+
+        return solutions;
+
+    }
+
+    /**
+     * Write the solutions, parse them back and compare.
+     * 
+     * @return The serialized solutions.
+     */
+    private byte[] doRoundTripTest(final List<String> names,
+            final List<BindingSet> expected, final int maxTerms)
+            throws Exception {
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        final BigdataBinaryResultsWriter writer = new BigdataBinaryResultsWriter(
+                baos, maxTerms);
+
+        writer.startQueryResult(names);
+
+        for (BindingSet bset : expected) {
+
+            writer.handleSolution(bset);
+
+        }
+
+        writer.endQueryResult();
+
+        final byte[] data = baos.toByteArray();
+
+        final TupleQueryResultBuilder handler = new TupleQueryResultBuilder();
+
+        final BigdataBinaryResultsParser parser = new BigdataBinaryResultsParser();
+
+        parser.setTupleQueryResultHandler(handler);
+
+        parser.parseQueryResult(new ByteArrayInputStream(data));
+
+        final TupleQueryResult result = handler.getQueryResult();
+
+        assertEquals(names, result.getBindingNames());
+
+        final List<BindingSet> actual = new LinkedList<BindingSet>();
+
+        while (result.hasNext()) {
+
+            actual.add(result.next());
+
+        }
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+
+            for (String name : names) {
+
+                final Value e = expected.get(i).getValue(name);
+
+                final Value a = actual.get(i).getValue(name);
+
+                if (e == null) {
+
+                    assertNull(name + "[" + i + "]", a);
+
+                } else {
+
+                    assertTrue(name + "[" + i + "] expected=" + e + ", actual="
+                            + a, a.equals(e) || e.equals(a));
+
+                }
+
+            }
+
+        }
+
+        return data;
+
+    }
+
+}
@@ -247,6 +247,58 @@ public class TestDatabaseAtOnceClosure extends AbstractRuleTestCase {
 
     }
 
+    /**
+     * Semi-naive evaluation of the closure.
+     * 
+     * @see InferenceEngine.Options#SEMI_NAIVE_CLOSURE
+     */
+    public void test_fixedPoint_Small_SemiNaive() throws Exception {
+
+        final Properties properties = getProperties(FastClosure.class, false/* nestedSubquery */);
+
+        properties.setProperty(InferenceEngine.Options.SEMI_NAIVE_CLOSURE,
+                "true");
+
+        final AbstractTripleStore store = getStore(properties);
+
+        try {
+
+            doFixedPointTest(new String[] { "small.rdf" }, store);
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Semi-naive evaluation of the closure.
+     * 
+     * @see InferenceEngine.Options#SEMI_NAIVE_CLOSURE
+     */
+    public void test_fixedPoint_SampleData_SemiNaive() throws Exception {
+
+        final Properties properties = getProperties(FastClosure.class, false/* nestedSubquery */);
+
+        properties.setProperty(InferenceEngine.Options.SEMI_NAIVE_CLOSURE,
+                "true");
+
+        final AbstractTripleStore store = getStore(properties);
+
+        try {
+
+            doFixedPointTest(new String[] { "sample data.rdf" }, store);
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
 //    public void test_fixedPoint_SampleData_Fast_NestedSubqueryJoins()
 //            throws Exception {
 //
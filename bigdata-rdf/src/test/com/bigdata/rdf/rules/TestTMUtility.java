@@ -168,4 +168,90 @@ public class TestTMUtility extends AbstractRuleTestCase {
 
     }
 
+
+    /**
+     * Test mapping of a rule with two predicates in the tail for a round of
+     * semi-naive evaluation. This will produce 2 new rules, each of which has
+     * one tail reading from the delta and the other tail reading from the
+     * fused view of the database and the focusStore. Both rules write on the
+     * given head relation.
+     */
+    public void test_rewriteForDelta() {
+
+        final String delta = "delta";
+
+        final String head = "head";
+
+        final Rule r = new TestRuleRdfs9(database);
+
+        final Program program = TMUtility.INSTANCE.mapRuleForDelta(r, delta,
+                focusStore, head);
+
+        assertEquals(2, program.stepCount());
+
+        final Iterator<? extends IStep> itr = program.steps();
+
+        {
+
+            final IRule r0 = (IRule) itr.next();
+
+            // 1st tail.
+            assertEquals(delta, r0.getTail(0).getOnlyRelationName());
+
+            // 2nd tail
+            assertEquals(2, r0.getTail(1).getRelationCount());
+            assertEquals(database, r0.getTail(1).getRelationName(0));
+            assertEquals(focusStore, r0.getTail(1).getRelationName(1));
+
+            assertEquals(head, r0.getHead().getOnlyRelationName());
+
+        }
+
+        {
+
+            final IRule r1 = (IRule) itr.next();
+
+            // 1st tail.
+            assertEquals(2, r1.getTail(0).getRelationCount());
+            assertEquals(database, r1.getTail(0).getRelationName(0));
+            assertEquals(focusStore, r1.getTail(0).getRelationName(1));
+
+            // 2nd tail
+            assertEquals(delta, r1.getTail(1).getOnlyRelationName());
+
+            assertEquals(head, r1.getHead().getOnlyRelationName());
+
+        }
+
+        assertFalse(itr.hasNext());
+
+    }
+
+    /**
+     * Test mapping of a rule for the first round of a semi-naive database at
+     * once closure (no delta and no focusStore). This will produce a single
+     * rule which reads from the database and writes on the given head
+     * relation.
+     */
+    public void test_rewriteForDelta_firstRound() {
+
+        final String head = "head";
+
+        final Rule r = new TestRuleRdfs9(database);
+
+        final Program program = TMUtility.INSTANCE.mapRuleForDelta(r,
+                null/* delta */, null/* focusStore */, head);
+
+        assertEquals(1, program.stepCount());
+
+        final IRule r0 = (IRule) program.steps().next();
+
+        assertEquals(database, r0.getTail(0).getOnlyRelationName());
+
+        assertEquals(database, r0.getTail(1).getOnlyRelationName());
+
+        assertEquals(head, r0.getHead().getOnlyRelationName());
+
+    }
+
 }
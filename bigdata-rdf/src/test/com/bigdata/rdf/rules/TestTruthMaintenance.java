@@ -933,6 +933,46 @@ public class TestTruthMaintenance extends AbstractInferenceEngineTestCase {
 
 //        fail("enable test");
         
+        doStressTest(getProperties());
+        
+    }
+
+    /**
+     * Variant of {@link #test_stress()} in which the rules in each round of
+     * the truth maintenance closure are executed concurrently.
+     * 
+     * @see InferenceEngine.Options#PARALLEL_TRUTH_MAINTENANCE
+     */
+    public void test_stress_parallelTruthMaintenance() {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(
+                InferenceEngine.Options.PARALLEL_TRUTH_MAINTENANCE, "true");
+
+        doStressTest(properties);
+
+    }
+
+    /**
+     * Variant of {@link #test_stress()} using semi-naive evaluation for the
+     * truth maintenance closure.
+     * 
+     * @see InferenceEngine.Options#SEMI_NAIVE_CLOSURE
+     */
+    public void test_stress_semiNaiveClosure() {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(InferenceEngine.Options.SEMI_NAIVE_CLOSURE,
+                "true");
+
+        doStressTest(properties);
+
+    }
+
+    private void doStressTest(final Properties properties) {
+
         final String ontology = "bigdata-rdf/src/resources/data/lehigh/univ-bench.owl";
         final String resource =
                 "bigdata-rdf/src/resources/data/lehigh/U1";
@@ -960,8 +1000,6 @@ public class TestTruthMaintenance extends AbstractInferenceEngineTestCase {
 //            
 //        }
 
-        final Properties properties = getProperties();
-
         /*
          * Note: overrides properties to make sure that entailments are
          * not computed on load.
@@ -64,6 +64,9 @@ public class TestAll extends TestCase {
             suite.addTestSuite(TestCacheConnectionFactory.class);
 
         }
+
+        // Cache for the solutions of read-only SELECT queries.
+        suite.addTestSuite(TestSolutionCache.class);
                 
         /*
          * Note: Data-driven unit tests are used for the SPARQL named solution
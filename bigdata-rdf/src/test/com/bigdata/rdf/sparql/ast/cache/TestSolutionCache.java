@@ -0,0 +1,484 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.openrdf.model.URI;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.fed.QueryEngineFactory;
+import com.bigdata.journal.Journal;
+import com.bigdata.rawstore.Bytes;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.sail.sparql.Bigdata2ASTSPARQLParser;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.AbstractASTEvaluationTestCase;
+import com.bigdata.rdf.sparql.ast.eval.ASTEvalHelper;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * Test suite for the {@link SolutionCache}.
+ */
+public class TestSolutionCache extends AbstractASTEvaluationTestCase {
+
+    public TestSolutionCache() {
+    }
+
+    public TestSolutionCache(String name) {
+        super(name);
+    }
+
+    /**
+     * A hard reference to the query controller for the store. The
+     * {@link QueryEngineFactory} only holds a weak reference, so the
+     * controller (and hence its {@link SolutionCache}) could otherwise be
+     * replaced while a test is running.
+     */
+    private QueryEngine queryEngine;
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        queryEngine = QueryEngineFactory.getQueryController(store
+                .getIndexManager());
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        queryEngine = null;
+
+        super.tearDown();
+
+    }
+
+    /**
+     * Unit test for storing and reading back solutions, including the
+     * discard of the solutions for an older commit point of the same KB.
+     */
+    public void test_putGet() {
+
+        final SolutionCache cache = new SolutionCache(Bytes.megabyte,
+                1000/* maxSolutions */);
+
+        try {
+
+            final SolutionCache.Key k1 = new SolutionCache.Key("kb", 10L, "q1");
+
+            final SolutionCache.Key k2 = new SolutionCache.Key("kb", 20L, "q1");
+
+            final SolutionCache.Key k3 = new SolutionCache.Key("other", 10L,
+                    "q1");
+
+            assertNull(cache.get(k1));
+
+            cache.put(k1, solutions(0, 5));
+            cache.put(k3, solutions(0, 3));
+
+            assertEquals(2, cache.size());
+
+            assertSameSolutions(solutions(0, 5), cache.get(k1));
+            assertSameSolutions(solutions(0, 3), cache.get(k3));
+
+            // New commit point for [kb] discards the entry for the old one.
+            cache.put(k2, solutions(5, 7));
+
+            assertEquals(2, cache.size());
+            assertNull(cache.get(k1));
+            assertSameSolutions(solutions(5, 7), cache.get(k2));
+            assertSameSolutions(solutions(0, 3), cache.get(k3));
+
+            // Solutions for an older commit point are not cached.
+            cache.put(k1, solutions(0, 5));
+            assertNull(cache.get(k1));
+
+            // Empty solutions are cached.
+            final SolutionCache.Key k4 = new SolutionCache.Key("other", 10L,
+                    "q2");
+            cache.put(k4, solutions(0, 0));
+            assertSameSolutions(solutions(0, 0), cache.get(k4));
+
+        } finally {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * Unit test for LRU eviction when the memory budget is exhausted.
+     */
+    public void test_eviction() {
+
+        final SolutionCache cache = new SolutionCache(1/* maxMemory */,
+                100000/* maxSolutions */);
+
+        try {
+
+            final long capacity = com.bigdata.io.DirectBufferPool.INSTANCE
+                    .getBufferCapacity();
+
+            int i = 0;
+
+            while (cache.getEvictionCount() == 0) {
+
+                cache.put(new SolutionCache.Key("kb", 10L, "q" + i),
+                        solutions(0, 10000));
+
+                assertTrue(cache.getUserBytes() <= capacity);
+
+                if (++i > 10000)
+                    fail("Nothing was evicted.");
+
+            }
+
+            // The oldest entry was evicted.
+            assertNull(cache.get(new SolutionCache.Key("kb", 10L, "q0")));
+
+            // The most recent entry is still present.
+            assertSameSolutions(solutions(0, 10000), cache.get(new SolutionCache.Key(
+                    "kb", 10L, "q" + (i - 1))));
+
+        } finally {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * Unit test for the solution cache as used by
+     * {@link ASTEvalHelper#evaluateTupleQuery(AbstractTripleStore, ASTContainer, QueryBindingSet)}
+     * . The solutions are only cached for read-only views and are reused until
+     * there is a commit for the KB.
+     */
+    public void test_evaluateTupleQuery() throws Exception {
+
+        final URI p = valueFactory.createURI("http://example.org/p");
+        final URI g = valueFactory.createURI("http://example.org/g");
+
+        store.addStatement(valueFactory.createURI("http://example.org/a"), p,
+                valueFactory.createLiteral("a"), g);
+
+        store.commit();
+
+        final SolutionCache cache = SolutionCache.getInstance(queryEngine);
+
+        final String query = "PREFIX hint: <http://www.bigdata.com/queryHints#>\n"
+                + "SELECT (COUNT(*) AS ?n) WHERE {\n"
+                + "  hint:Query hint:solutionCache \"true\" .\n"
+                + "  ?s <http://example.org/p> ?o }";
+
+        final long hits0 = cache.getHitCount();
+        final long misses0 = cache.getMissCount();
+
+        // Not cached for the unisolated view.
+        assertEquals("1", evaluateCount(store, query));
+        assertEquals("1", evaluateCount(store, query));
+        assertEquals(hits0, cache.getHitCount());
+        assertEquals(misses0, cache.getMissCount());
+
+        // Cached for a read-only view.
+        assertEquals("1", evaluateCount(getReadOnlyView(), query));
+        assertEquals(misses0 + 1, cache.getMissCount());
+
+        assertEquals("1", evaluateCount(getReadOnlyView(), query));
+        assertEquals(hits0 + 1, cache.getHitCount());
+
+        // Commit invalidates the cached solutions.
+        store.addStatement(valueFactory.createURI("http://example.org/b"), p,
+                valueFactory.createLiteral("b"), g);
+
+        store.commit();
+
+        assertEquals("2", evaluateCount(getReadOnlyView(), query));
+        assertEquals(misses0 + 2, cache.getMissCount());
+
+        assertEquals("2", evaluateCount(getReadOnlyView(), query));
+        assertEquals(hits0 + 2, cache.getHitCount());
+
+    }
+
+    /**
+     * Unit test for an empty result which is cached, invalidated by a commit
+     * and then cached again for the new commit point. The empty result does
+     * not use any native memory, so discarding its entry must not free it.
+     */
+    public void test_emptyResult_commit_sameQuery() throws Exception {
+
+        final URI p = valueFactory.createURI("http://example.org/p");
+        final URI g = valueFactory.createURI("http://example.org/g");
+
+        store.addStatement(valueFactory.createURI("http://example.org/a"), p,
+                valueFactory.createLiteral("a"), g);
+
+        store.commit();
+
+        final SolutionCache cache = SolutionCache.getInstance(queryEngine);
+
+        final String query = "PREFIX hint: <http://www.bigdata.com/queryHints#>\n"
+                + "SELECT ?s WHERE {\n"
+                + "  hint:Query hint:solutionCache \"true\" .\n"
+                + "  ?s <http://example.org/q> ?o }";
+
+        final long hits0 = cache.getHitCount();
+        final long misses0 = cache.getMissCount();
+
+        // The empty result is cached.
+        assertEquals(0, evaluateRowCount(getReadOnlyView(), query));
+        assertEquals(misses0 + 1, cache.getMissCount());
+
+        assertEquals(0, evaluateRowCount(getReadOnlyView(), query));
+        assertEquals(hits0 + 1, cache.getHitCount());
+
+        // Commit invalidates the cached (empty) solutions.
+        store.addStatement(valueFactory.createURI("http://example.org/b"), p,
+                valueFactory.createLiteral("b"), g);
+
+        store.commit();
+
+        assertEquals(0, evaluateRowCount(getReadOnlyView(), query));
+        assertEquals(misses0 + 2, cache.getMissCount());
+
+        assertEquals(0, evaluateRowCount(getReadOnlyView(), query));
+        assertEquals(hits0 + 2, cache.getHitCount());
+
+    }
+
+    /**
+     * Unit test for {@link SolutionCache#close()}.
+     */
+    public void test_close() {
+
+        final SolutionCache cache = new SolutionCache(Bytes.megabyte,
+                1000/* maxSolutions */);
+
+        final SolutionCache.Key k1 = new SolutionCache.Key("kb", 10L, "q1");
+
+        cache.put(k1, solutions(0, 5));
+
+        assertEquals(1, cache.size());
+
+        cache.close();
+
+        // The entries were discarded.
+        assertEquals(0, cache.size());
+        assertNull(cache.get(k1));
+
+        // Nothing more is cached.
+        cache.put(k1, solutions(0, 5));
+        assertEquals(0, cache.size());
+
+        // Close is idempotent.
+        cache.close();
+
+    }
+
+    /**
+     * Unit test verifies that the cache of a {@link QueryEngine} which is
+     * garbage collected without having been shutdown is closed.
+     */
+    public void test_closeCollectedInstance() throws InterruptedException {
+
+        QueryEngine tmp = new QueryEngine(store.getIndexManager());
+
+        final SolutionCache cache = SolutionCache.getInstance(tmp);
+
+        final SolutionCache.Key k1 = new SolutionCache.Key("kb", 10L, "q1");
+
+        cache.put(k1, solutions(0, 5));
+
+        assertEquals(1, cache.size());
+
+        tmp = null;
+
+        for (int i = 0; i < 100 && cache.size() != 0; i++) {
+
+            System.gc();
+
+            Thread.sleep(10/* ms */);
+
+            // Closes the caches of the collected query engines.
+            SolutionCache.getInstance(queryEngine);
+
+        }
+
+        assertEquals(0, cache.size());
+
+        // Nothing more is cached.
+        cache.put(k1, solutions(0, 5));
+        assertEquals(0, cache.size());
+
+    }
+
+    /**
+     * Return a read-only view of the KB as of the last commit point.
+     */
+    private AbstractTripleStore getReadOnlyView() {
+
+        final Journal jnl = (Journal) store.getIndexManager();
+
+        return (AbstractTripleStore) jnl.getResourceLocator().locate(
+                store.getNamespace(), jnl.getLastCommitTime());
+
+    }
+
+    /**
+     * Evaluate a query projecting <code>?n</code> and return its value.
+     */
+    private String evaluateCount(final AbstractTripleStore view,
+            final String query) throws Exception {
+
+        final ASTContainer astContainer = new Bigdata2ASTSPARQLParser(view)
+                .parseQuery2(query, baseURI);
+
+        final TupleQueryResult result = ASTEvalHelper.evaluateTupleQuery(
+                view, astContainer, new QueryBindingSet());
+
+        try {
+
+            assertTrue(result.hasNext());
+
+            final BindingSet bset = result.next();
+
+            assertFalse(result.hasNext());
+
+            return bset.getValue("n").stringValue();
+
+        } finally {
+
+            result.close();
+
+        }
+
+    }
+
+    /**
+     * Evaluate a query and return the #of solutions.
+     */
+    private int evaluateRowCount(final AbstractTripleStore view,
+            final String query) throws Exception {
+
+        final ASTContainer astContainer = new Bigdata2ASTSPARQLParser(view)
+                .parseQuery2(query, baseURI);
+
+        final TupleQueryResult result = ASTEvalHelper.evaluateTupleQuery(
+                view, astContainer, new QueryBindingSet());
+
+        try {
+
+            int n = 0;
+
+            while (result.hasNext()) {
+
+                result.next();
+
+                n++;
+
+            }
+
+            return n;
+
+        } finally {
+
+            result.close();
+
+        }
+
+    }
+
+    /**
+     * Return solutions binding <code>x</code> to the integers in the given
+     * half-open range.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static List<IBindingSet> solutions(final int from, final int to) {
+
+        final IVariable<IV> x = Var.var("x");
+
+        final List<IBindingSet> list = new LinkedList<IBindingSet>();
+
+        for (int i = from; i < to; i++) {
+
+            final ListBindingSet bset = new ListBindingSet();
+
+            bset.set(x, new Constant<IV>(new XSDNumericIV(i)));
+
+            list.add(bset);
+
+        }
+
+        return list;
+
+    }
+
+    private static void assertSameSolutions(final List<IBindingSet> expected,
+            final ICloseableIterator<IBindingSet[]> actual) {
+
+        assertNotNull(actual);
+
+        final List<IBindingSet> tmp = new LinkedList<IBindingSet>();
+
+        try {
+
+            while (actual.hasNext()) {
+
+                for (IBindingSet bset : actual.next()) {
+
+                    tmp.add(bset);
+
+                }
+
+            }
+
+        } finally {
+
+            actual.close();
+
+        }
+
+        assertEquals(expected, tmp);
+
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.eval;
+
+import java.util.Properties;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.join.DistinctTermScanOp;
+import com.bigdata.bop.join.FastRangeCountOp;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTAggregateCountOptimizer;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * SPARQL level test suite for the {@link ASTAggregateCountOptimizer}.
+ */
+public class TestAggregateCountOptimizer extends
+        AbstractDataDrivenSPARQLTestCase {
+
+    public TestAggregateCountOptimizer() {
+    }
+
+    public TestAggregateCountOptimizer(String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * <pre>
+     * SELECT (COUNT(DISTINCT ?z) as ?count) WHERE { ?x rdf:type ?z }
+     * </pre>
+     * 
+     * is answered by a distinct term scan on POS.
+     */
+    public void test_aggregateCount_01() throws Exception {
+
+        final TestHelper h = runTest("01");
+
+        assertOps(1/* distinctTermScan */, 0/* fastRangeCount */, h);
+
+    }
+
+    /**
+     * <pre>
+     * SELECT (COUNT(DISTINCT ?p) as ?count) WHERE { ?s ?p ?o }
+     * </pre>
+     * 
+     * is answered by a distinct term scan on POS.
+     */
+    public void test_aggregateCount_02() throws Exception {
+
+        final TestHelper h = runTest("02");
+
+        assertOps(1/* distinctTermScan */, 0/* fastRangeCount */, h);
+
+    }
+
+    /**
+     * <pre>
+     * SELECT (COUNT(*) as ?count)
+     * WHERE { { ?x rdf:type ?z } UNION { ?x rdfs:label ?l } }
+     * </pre>
+     * 
+     * is answered by the sum of two fast range counts.
+     */
+    public void test_aggregateCount_03() throws Exception {
+
+        final TestHelper h = runTest("03");
+
+        assertOps(0/* distinctTermScan */, 2/* fastRangeCount */, h);
+
+    }
+
+    /**
+     * <pre>
+     * SELECT (COUNT(*) as ?count)
+     * WHERE { ?x rdf:type ?z . ?y rdfs:label ?l }
+     * </pre>
+     * 
+     * is answered by the product of two fast range counts since the triple
+     * patterns do not share any variables.
+     */
+    public void test_aggregateCount_04() throws Exception {
+
+        final TestHelper h = runTest("04");
+
+        assertOps(0/* distinctTermScan */, 2/* fastRangeCount */, h);
+
+    }
+
+    /**
+     * Correct rejection test for
+     * 
+     * <pre>
+     * SELECT (COUNT(DISTINCT ?x) as ?count) WHERE { ?x rdf:type ?z }
+     * </pre>
+     * 
+     * There is no PSO index, so the distinct term scan can not be used.
+     */
+    public void test_aggregateCount_05() throws Exception {
+
+        final TestHelper h = runTest("05");
+
+        assertOps(0/* distinctTermScan */, 0/* fastRangeCount */, h);
+
+    }
+
+    /**
+     * Correct rejection test for
+     * 
+     * <pre>
+     * SELECT (COUNT(*) as ?count)
+     * WHERE { ?x rdf:type ?z . ?x rdfs:label ?l }
+     * </pre>
+     * 
+     * The triple patterns share a variable, so this is a join and not a cross
+     * product.
+     */
+    public void test_aggregateCount_06() throws Exception {
+
+        final TestHelper h = runTest("06");
+
+        assertOps(0/* distinctTermScan */, 0/* fastRangeCount */, h);
+
+    }
+
+    private TestHelper runTest(final String n) throws Exception {
+
+        final TestHelper h = new TestHelper(
+                "aggregateCount_triples_" + n, // testURI,
+                "aggregateCount_triples_" + n + ".rq",// queryFileURL
+                "aggregateCount_triples.ttl",// dataFileURL
+                "aggregateCount_triples_" + n + ".srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        return h;
+
+    }
+
+    /**
+     * Verify the number of {@link DistinctTermScanOp}s and
+     * {@link FastRangeCountOp}s in the query plan.
+     */
+    private void assertOps(final int distinctTermScan,
+            final int fastRangeCount, final TestHelper h) {
+
+        assertEquals(
+                distinctTermScan,
+                BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                        DistinctTermScanOp.class).size());
+
+        assertEquals(
+                fastRangeCount,
+                BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                        FastRangeCountOp.class).size());
+
+    }
+
+}
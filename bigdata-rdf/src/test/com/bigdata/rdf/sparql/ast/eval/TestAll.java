@@ -117,6 +117,8 @@ public class TestAll extends TestCase {
 
         // Test suite for a merge join pattern
         suite.addTestSuite(TestMergeJoin.class);
+        suite.addTestSuite(TestSubjectStarJoin.class);
+        suite.addTestSuite(TestWideRowJoin.class);
         
         // Test suite for explain hint annotations
         suite.addTestSuite(TestExplainHints.class);
@@ -203,6 +205,10 @@ public class TestAll extends TestCase {
         // SELECT (COUNT(*) as ?count) ?z WHERE {  ?x rdf:type ?z  } GROUP BY ?z
         // @see #1059 (combination of fast-range-count and distinct-term-scan)
         suite.addTest(TestSimpleGroupByAndCountOptimizer.suite());
+
+        // SELECT (COUNT(DISTINCT ?z) as ?count) { ?x rdf:type ?z }, COUNT(*)
+        // over a UNION of triple patterns, etc.
+        suite.addTestSuite(TestAggregateCountOptimizer.class);
         
         /*
          * Runtime Query Optimizer (RTO).
@@ -188,4 +188,28 @@ public class TestNamedSubQuery extends AbstractDataDrivenSPARQLTestCase {
 
     }
     
+    /**
+     * Two named subqueries without any dependencies on one another. These are
+     * evaluated in parallel and each solution must be reported exactly once.
+     * 
+     * <pre>
+     * select ?x ?o
+     *   with {
+     *     select ?x where { ?x rdf:type foaf:Person }
+     *   } AS %namedSet1
+     *   with {
+     *     select ?x ?o where { ?x rdfs:label ?o }
+     *   } AS %namedSet2
+     * where {
+     *   INCLUDE %namedSet1
+     *   INCLUDE %namedSet2
+     * }
+     * </pre>
+     */
+    public void test_named_subquery_parallel() throws Exception {
+
+        new TestHelper("named-subquery-parallel").runTest();
+
+    }
+    
 }
@@ -0,0 +1,179 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.eval;
+
+import java.util.Properties;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.rdf.join.SubjectStarJoinOp;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Data driven test suite for the {@link SubjectStarJoinOp}, which evaluates a
+ * subject-star (a set of statement patterns sharing the same subject variable)
+ * using a merge join over the statement indices.
+ * 
+ * @see QueryHints#STAR_JOIN
+ */
+public class TestSubjectStarJoin extends AbstractDataDrivenSPARQLTestCase {
+
+    public TestSubjectStarJoin() {
+    }
+
+    public TestSubjectStarJoin(final String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * A star with one constant object and two variable objects.
+     * 
+     * <pre>
+     * SELECT ?s ?name ?age
+     * WHERE {
+     *   hint:Query hint:starJoin "true" .
+     *   ?s rdf:type :Person .
+     *   ?s :name ?name .
+     *   ?s :age ?age .
+     * }
+     * </pre>
+     */
+    public void test_starJoin_01() throws Exception {
+
+        final TestHelper h = new TestHelper("starJoin_01", // testURI,
+                "starJoin_01.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "starJoin_01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertStarJoins(1, h);
+
+    }
+
+    /**
+     * The same query without the query hint. The star join is not used and
+     * the solutions are the same.
+     */
+    public void test_starJoin_01_noHint() throws Exception {
+
+        final TestHelper h = new TestHelper("starJoin_01_noHint", // testURI,
+                "starJoin_01_noHint.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "starJoin_01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertStarJoins(0, h);
+
+    }
+
+    /**
+     * A star with a multi-valued property. Each value of the property is
+     * reported as a distinct solution.
+     * 
+     * <pre>
+     * SELECT ?s ?name ?email
+     * WHERE {
+     *   hint:Query hint:starJoin "true" .
+     *   ?s rdf:type :Person .
+     *   ?s :email ?email .
+     *   ?s :name ?name .
+     * }
+     * </pre>
+     */
+    public void test_starJoin_02() throws Exception {
+
+        final TestHelper h = new TestHelper("starJoin_02", // testURI,
+                "starJoin_02.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "starJoin_02.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertStarJoins(1, h);
+
+    }
+
+    /**
+     * A star with two constant objects, which are intersected before the
+     * variable objects are read.
+     * 
+     * <pre>
+     * SELECT ?s ?name
+     * WHERE {
+     *   hint:Query hint:starJoin "true" .
+     *   ?s rdf:type :Person .
+     *   ?s :age 30 .
+     *   ?s :name ?name .
+     * }
+     * </pre>
+     */
+    public void test_starJoin_03() throws Exception {
+
+        final TestHelper h = new TestHelper("starJoin_03", // testURI,
+                "starJoin_03.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "starJoin_03.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertStarJoins(1, h);
+
+    }
+
+    /**
+     * Verify the number of {@link SubjectStarJoinOp}s in the query plan.
+     */
+    private void assertStarJoins(final int expected, final TestHelper h) {
+
+        assertEquals(
+                expected,
+                BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                        SubjectStarJoinOp.class).size());
+
+    }
+
+}
@@ -289,4 +289,21 @@ public class TestUnions extends AbstractDataDrivenSPARQLTestCase {
         
     }
     
+    /**
+     * A UNION with six alternatives. The branches are fed by a balanced tree
+     * of {@link com.bigdata.bop.bset.Tee} operators rather than a linear
+     * chain, so this verifies that each branch sees the source solution
+     * exactly once.
+     */
+    public void test_union_09() throws Exception {
+        
+        new TestHelper(
+                "union_09", // testURI,
+                "union_09.rq",// queryFileURL
+                "union_09.ttl",// dataFileURL
+                "union_09.srx"// resultFileURL
+                ).runTest();
+        
+    }
+    
 }
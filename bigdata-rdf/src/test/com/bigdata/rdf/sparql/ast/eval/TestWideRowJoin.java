@@ -0,0 +1,197 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.eval;
+
+import java.util.Properties;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.rdf.join.WideRowJoinOp;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Data driven test suite for the {@link WideRowJoinOp}, which joins a chunk of
+ * solutions that bind the subject of a statement pattern in a single forward
+ * pass over the SPO index.
+ * 
+ * @see QueryHints#WIDE_ROW_SCAN
+ */
+public class TestWideRowJoin extends AbstractDataDrivenSPARQLTestCase {
+
+    public TestWideRowJoin() {
+    }
+
+    public TestWideRowJoin(final String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * Retrieve all properties of the entities identified by a prior join.
+     * 
+     * <pre>
+     * SELECT ?s ?p ?o
+     * WHERE {
+     *   ?s rdf:type :Person .
+     *   ?s ?p ?o .
+     *   hint:Query hint:wideRowScan "true" .
+     * }
+     * </pre>
+     */
+    public void test_wideRow_01() throws Exception {
+
+        final TestHelper h = new TestHelper("wideRow_01", // testURI,
+                "wideRow_01.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "wideRow_01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertWideRowJoins(1, h);
+
+    }
+
+    /**
+     * The same query with the wide row scan disabled for the statement
+     * pattern. The solutions are the same.
+     */
+    public void test_wideRow_01_noHint() throws Exception {
+
+        final TestHelper h = new TestHelper("wideRow_01_noHint", // testURI,
+                "wideRow_01_noHint.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "wideRow_01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertWideRowJoins(0, h);
+
+    }
+
+    /**
+     * A required and an optional statement pattern with a constant predicate
+     * and the subject bound by a prior join.
+     * 
+     * <pre>
+     * SELECT ?s ?name ?email
+     * WHERE {
+     *   ?s rdf:type :Person .
+     *   ?s :name ?name .
+     *   OPTIONAL { ?s :email ?email }
+     *   hint:Query hint:wideRowScan "true" .
+     * }
+     * </pre>
+     */
+    public void test_wideRow_02() throws Exception {
+
+        final TestHelper h = new TestHelper("wideRow_02", // testURI,
+                "wideRow_02.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "wideRow_02.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertWideRowJoins(2, h);
+
+    }
+
+    /**
+     * A DESCRIBE of the resources identified by the WHERE clause.
+     * 
+     * <pre>
+     * DESCRIBE ?s
+     * WHERE {
+     *   ?s :age 30 .
+     *   hint:Query hint:wideRowScan "true" .
+     * }
+     * </pre>
+     */
+    public void test_wideRow_03_describe() throws Exception {
+
+        final TestHelper h = new TestHelper("wideRow_03", // testURI,
+                "wideRow_03.rq",// queryFileURL
+                "starJoin_01.ttl",// dataFileURL
+                "wideRow_03-result.ttl"// resultFileURL
+        );
+
+        h.runTest();
+
+        assertWideRowJoins(1, h);
+
+    }
+
+    /**
+     * A concise bounded description. Each expansion round binds the blank
+     * nodes discovered in the previous round to a single variable, which is
+     * the subject of the DESCRIBE pattern for that round.
+     * 
+     * <pre>
+     * DESCRIBE :e
+     * {
+     *    hint:Query hint:describeMode "CBD"
+     * }
+     * </pre>
+     */
+    public void test_wideRow_04_cbd() throws Exception {
+
+        new TestHelper("wideRow_04", // testURI,
+                "wideRow_04.rq",// queryFileURL
+                "wideRow_04.ttl",// dataFileURL
+                "wideRow_04-result.ttl"// resultFileURL
+        ).runTest();
+
+    }
+
+    /**
+     * Verify the number of {@link WideRowJoinOp}s in the query plan.
+     */
+    private void assertWideRowJoins(final int expected, final TestHelper h) {
+
+        assertEquals(
+                expected,
+                BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                        WideRowJoinOp.class).size());
+
+    }
+
+}
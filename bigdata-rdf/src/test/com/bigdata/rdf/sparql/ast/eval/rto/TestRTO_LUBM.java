@@ -27,10 +27,23 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.rdf.sparql.ast.eval.rto;
 
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.UUID;
 
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.fed.QueryEngineFactory;
+import com.bigdata.bop.joinGraph.rto.AdaptiveJoinGraph;
+import com.bigdata.bop.joinGraph.rto.JoinGraph;
+import com.bigdata.bop.joinGraph.rto.JoinOrderCache;
+import com.bigdata.bop.joinGraph.rto.Path;
+import com.bigdata.journal.IBTreeManager;
 import com.bigdata.rdf.axioms.NoAxioms;
 import com.bigdata.rdf.sail.BigdataSail;
+import com.bigdata.rdf.sparql.ast.QueryHints;
 
 /**
  * Data driven test suite for the Runtime Query Optimizer (RTO) using LUBM data
@@ -160,4 +173,166 @@ public class TestRTO_LUBM extends AbstractRTOTestCase {
         
     }
 
+    /**
+     * LUBM Q8 on the U1 data set with {@link QueryHints#RTO_REUSE_PLAN}. The
+     * first execution samples the data and caches the selected join order.
+     * The second execution reuses that join order and must produce the same
+     * solutions.
+     */
+    public void test_LUBM_Q8_reusePlan() throws Exception {
+
+        JoinOrderCache.INSTANCE.clear();
+
+        final long hits0 = JoinOrderCache.INSTANCE.getHitCount();
+
+        final TestHelper helper = new TestHelper(//
+                "rto/LUBM-Q8-reusePlan", // testURI,
+                "rto/LUBM-Q8-reusePlan.rq",// queryFileURL
+                "bigdata-rdf/src/resources/data/lehigh/LUBM-U1.rdf.gz",// dataFileURL
+                "rto/LUBM-Q8.srx"// resultFileURL
+        );
+
+        final int[] expected = new int[] { 1, 4, 3, 2, 5 };
+
+        assertSameJoinOrder(expected, helper);
+
+        assertEquals(1, JoinOrderCache.INSTANCE.size());
+
+        assertEquals(hits0, JoinOrderCache.INSTANCE.getHitCount());
+
+        // Run the query again (the data is already loaded).
+        new TestHelper(//
+                "rto/LUBM-Q8-reusePlan", // testURI,
+                "rto/LUBM-Q8-reusePlan.rq",// queryFileURL
+                new String[] {},// dataFileURLs
+                "rto/LUBM-Q8.srx"// resultFileURL
+        ).runTest();
+
+        assertEquals(hits0 + 1, JoinOrderCache.INSTANCE.getHitCount());
+
+        JoinOrderCache.INSTANCE.clear();
+
+    }
+
+    /**
+     * LUBM Q8 on the U1 data set with a sampling budget which is exhausted
+     * before the join paths are fully explored. The remaining vertices are
+     * appended to the best join path and the query must still produce the
+     * correct solutions.
+     */
+    public void test_LUBM_Q8_maxSamplingMillis() throws Exception {
+
+        final TestHelper helper = new TestHelper(//
+                "rto/LUBM-Q8-maxSamplingMillis", // testURI,
+                "rto/LUBM-Q8-maxSamplingMillis.rq",// queryFileURL
+                "bigdata-rdf/src/resources/data/lehigh/LUBM-U1.rdf.gz",// dataFileURL
+                "rto/LUBM-Q8.srx"// resultFileURL
+        );
+
+        final UUID queryId = UUID.randomUUID();
+
+        helper.getASTContainer().setQueryHint(QueryHints.QUERYID,
+                queryId.toString());
+
+        final QueryEngine queryEngine = QueryEngineFactory
+                .getExistingQueryController((IBTreeManager) helper
+                        .getTripleStore().getIndexManager());
+
+        final MyQueryListener l = new MyQueryListener(queryId);
+        try {
+            queryEngine.addListener(l);
+            helper.runTest();
+        } finally {
+            queryEngine.removeListener(l);
+        }
+
+        final JoinGraph joinGraph = BOpUtility.getOnly(helper
+                .getASTContainer().getQueryPlan(), JoinGraph.class);
+
+        assertNotNull(joinGraph);
+
+        Path path = null;
+        for (IRunningQuery q : l.getRunningQueries()) {
+            if (joinGraph.getPath(q) != null)
+                path = joinGraph.getPath(q);
+        }
+
+        assertNotNull(path);
+
+        /*
+         * Sampling was cut short, so the selected path does not span all of
+         * the vertices. The remaining vertices were appended to the join
+         * order (the query produced the correct solutions).
+         */
+        if (path.getVertexCount() >= joinGraph.getVertices().length)
+            fail("Sampling was not cut short: path=" + path);
+
+    }
+
+    /**
+     * LUBM Q8 on the U1 data set using the static join order with a
+     * checkpoint after the first join. The first join is a cross product whose
+     * cardinality is badly underestimated, so the remaining joins must be
+     * reordered at the checkpoint and the query must still produce the correct
+     * solutions.
+     */
+    public void test_LUBM_Q8_adaptiveJoinOrder() throws Exception {
+
+        final TestHelper helper = new TestHelper(//
+                "rto/LUBM-Q8-adaptive", // testURI,
+                "rto/LUBM-Q8-adaptive.rq",// queryFileURL
+                "bigdata-rdf/src/resources/data/lehigh/LUBM-U1.rdf.gz",// dataFileURL
+                "rto/LUBM-Q8.srx"// resultFileURL
+        );
+
+        final UUID queryId = UUID.randomUUID();
+
+        helper.getASTContainer().setQueryHint(QueryHints.QUERYID,
+                queryId.toString());
+
+        final QueryEngine queryEngine = QueryEngineFactory
+                .getExistingQueryController((IBTreeManager) helper
+                        .getTripleStore().getIndexManager());
+
+        final MyQueryListener l = new MyQueryListener(queryId);
+        try {
+            queryEngine.addListener(l);
+            helper.runTest();
+        } finally {
+            queryEngine.removeListener(l);
+        }
+
+        final AdaptiveJoinGraph joinGraph = BOpUtility.getOnly(helper
+                .getASTContainer().getQueryPlan(), AdaptiveJoinGraph.class);
+
+        assertNotNull(joinGraph);
+
+        Long observed = null;
+        int[] order = null;
+        for (IRunningQuery q : l.getRunningQueries()) {
+            if (joinGraph.getObservedCardinality(q) != null) {
+                observed = joinGraph.getObservedCardinality(q);
+                order = joinGraph.getJoinOrder(q);
+            }
+        }
+
+        assertNotNull(observed);
+        assertNotNull(order);
+
+        // The estimate was badly off.
+        assertTrue(observed > joinGraph.getEstimatedCardinality()
+                * joinGraph.getRatio());
+
+        // The static order of the remaining joins.
+        final IPredicate<?>[] vertices = joinGraph.getVertices();
+        final int[] staticOrder = new int[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            staticOrder[i] = vertices[i].getId();
+        }
+
+        if (Arrays.equals(staticOrder, order))
+            fail("Joins were not reordered: " + Arrays.toString(order));
+
+    }
+
 }
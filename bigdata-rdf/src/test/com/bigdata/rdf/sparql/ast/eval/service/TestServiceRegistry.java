@@ -457,6 +457,91 @@ public class TestServiceRegistry extends AbstractBigdataExprBuilderTestCase {
 
     }
 
+    /**
+     * Unit test a {@link CustomServiceFactory} which hooks the connection start
+     * for the {@link BigdataSail} without being registered for a service URI.
+     * 
+     * @throws SailException
+     */
+    public void test_customServiceWithoutServiceURI() throws SailException {
+
+        final MyCustomServiceFactory serviceFactory = new MyCustomServiceFactory(
+                new OpenrdfNativeServiceOptions());
+
+        try {
+
+            // Register.
+            ServiceRegistry.getInstance().addCustomService(serviceFactory);
+
+            // Idempotent.
+            ServiceRegistry.getInstance().addCustomService(serviceFactory);
+
+            /*
+             * Verify custom service visitation (just once).
+             */
+            {
+
+                final Iterator<CustomServiceFactory> itr = ServiceRegistry
+                        .getInstance().customServices();
+
+                int nfound = 0;
+
+                while (itr.hasNext()) {
+
+                    if (itr.next() == serviceFactory) {
+
+                        nfound++;
+
+                    }
+
+                }
+
+                assertEquals(1, nfound);
+
+            }
+
+            /*
+             * Verify hooked on connection start.
+             */
+            {
+                final AbstractTripleStore store = getStore(getProperties());
+                try {
+
+                    final BigdataSail sail = new BigdataSail(store);
+                    try {
+                        sail.initialize();
+                        final BigdataSailConnection conn = sail.getConnection();
+                        try {
+                            // Verify the service was notified.
+                            assertEquals("nstarted", 1,
+                                    serviceFactory.nstarted.get());
+                        } finally {
+                            conn.close();
+                        }
+
+                    } finally {
+                        sail.shutDown();
+                    }
+
+                } finally {
+                    store.destroy();
+                }
+            }
+
+        } finally {
+
+            // De-register.
+            assertTrue(ServiceRegistry.getInstance().removeCustomService(
+                    serviceFactory));
+
+        }
+
+        // Verify not registered.
+        assertFalse(ServiceRegistry.getInstance().removeCustomService(
+                serviceFactory));
+
+    }
+
     /**
      * Private helper class used to verify that new mutable connections are
      * hooked.
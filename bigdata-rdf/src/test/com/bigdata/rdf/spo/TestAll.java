@@ -86,6 +86,12 @@ public class TestAll extends TestCase {
         // test suite for the access path api.
         suite.addTestSuite(TestSPOAccessPath.class);
 
+        // predicate statistics for the static optimizer.
+        suite.addTestSuite(TestPredicateStatistics.class);
+
+        // range counts shared across views of the same commit point.
+        suite.addTestSuite(TestRangeCountCache.class);
+
         // star joins
 //        suite.addTestSuite(TestSPOStarJoin.class);
 
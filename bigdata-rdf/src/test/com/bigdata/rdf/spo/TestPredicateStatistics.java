@@ -0,0 +1,306 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.spo;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.bigdata.journal.Journal;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.StatementEnum;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
+
+/**
+ * Test suite for {@link PredicateStatistics}.
+ */
+public class TestPredicateStatistics extends AbstractTripleStoreTestCase {
+
+    public TestPredicateStatistics() {
+        super();
+    }
+
+    public TestPredicateStatistics(String name) {
+        super(name);
+    }
+
+    private BigdataURI name, email, age;
+
+    /**
+     * Ten subjects, each having a <code>name</code>. The first five subjects
+     * have an <code>email</code> (the first subject has two) and the last five
+     * have an <code>age</code> (all the same).
+     */
+    private void loadData(final AbstractTripleStore store) {
+
+        final BigdataValueFactory f = store.getValueFactory();
+
+        name = f.createURI("http://www.bigdata.com/name");
+        email = f.createURI("http://www.bigdata.com/email");
+        age = f.createURI("http://www.bigdata.com/age");
+
+        final BigdataURI graph = f.createURI("http://www.bigdata.com/graph");
+        final BigdataURI ageValue = f.createURI("http://www.bigdata.com/age/42");
+
+        final List<BigdataValue> values = new LinkedList<BigdataValue>();
+        values.addAll(Arrays.asList(new BigdataValue[] { name, email, age,
+                graph, ageValue }));
+
+        final BigdataURI[] s = new BigdataURI[10];
+        final BigdataURI[] names = new BigdataURI[10];
+        final BigdataURI[] emails = new BigdataURI[6];
+        for (int i = 0; i < s.length; i++) {
+            values.add(s[i] = f.createURI("http://www.bigdata.com/s/" + i));
+            values.add(names[i] = f.createURI("http://www.bigdata.com/name/"
+                    + i));
+        }
+        for (int i = 0; i < emails.length; i++) {
+            values.add(emails[i] = f.createURI("http://www.bigdata.com/email/"
+                    + i));
+        }
+
+        store.addTerms(values.toArray(new BigdataValue[values.size()]));
+
+        final IV<?, ?> c = store.isQuads() ? graph.getIV() : null;
+
+        final List<ISPO> stmts = new LinkedList<ISPO>();
+        for (int i = 0; i < s.length; i++) {
+            stmts.add(new SPO(s[i].getIV(), name.getIV(), names[i].getIV(),
+                    c, StatementEnum.Explicit));
+            if (i < 5) {
+                stmts.add(new SPO(s[i].getIV(), email.getIV(), emails[i]
+                        .getIV(), c, StatementEnum.Explicit));
+            } else {
+                stmts.add(new SPO(s[i].getIV(), age.getIV(), ageValue.getIV(),
+                        c, StatementEnum.Explicit));
+            }
+        }
+        // The first subject has a second email.
+        stmts.add(new SPO(s[0].getIV(), email.getIV(), emails[5].getIV(), c,
+                StatementEnum.Explicit));
+
+        store.addStatements(stmts.toArray(new ISPO[stmts.size()]),
+                stmts.size());
+
+        store.commit();
+
+    }
+
+    /**
+     * Verify the per-predicate statement, distinct subject and distinct object
+     * counts.
+     */
+    public void test_predicateStats() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            loadData(store);
+
+            final PredicateStatistics stats = PredicateStatistics.compute(
+                    store, 100/* maxCharacteristicSets */, 1/* sampleModulus */);
+
+            // Note: the axioms (if any) are also reported.
+            assertStats(10, 10, 10, stats.get(name.getIV()));
+            assertStats(6, 5, 6, stats.get(email.getIV()));
+            assertStats(5, 5, 1, stats.get(age.getIV()));
+
+            assertEquals(store.getSPORelation().getPrimaryIndex()
+                    .rangeCount(), stats.getStatementCount());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Verify the characteristic sets and the star join estimates derived from
+     * them.
+     */
+    public void test_characteristicSets() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            loadData(store);
+
+            final PredicateStatistics stats = PredicateStatistics.compute(
+                    store, 100/* maxCharacteristicSets */, 1/* sampleModulus */);
+
+            final Map<Set<IV<?, ?>>, Long> csets = stats
+                    .getCharacteristicSets();
+
+            assertNotNull(csets);
+            assertEquals(Long.valueOf(5), csets.get(newSet(name.getIV(),
+                    email.getIV())));
+            assertEquals(Long.valueOf(5), csets.get(newSet(name.getIV(),
+                    age.getIV())));
+
+            // (?x name ?n) . (?x email ?e) : exact.
+            assertEquals(6L, stats.estimateStarJoin(name.getIV(),
+                    email.getIV()));
+
+            // (?x email ?e) . (?x age ?a) : no subject has both.
+            assertEquals(0L, stats.estimateStarJoin(email.getIV(),
+                    age.getIV()));
+
+            // The independence assumption gets this wrong.
+            assertEquals(6L, stats.estimateJoin(email.getIV(),
+                    true/* subject1 */, age.getIV(), true/* subject2 */));
+
+            // Too many characteristic sets.
+            final PredicateStatistics stats2 = PredicateStatistics.compute(
+                    store, 1/* maxCharacteristicSets */, 1/* sampleModulus */);
+
+            assertNull(stats2.getCharacteristicSets());
+
+            // Falls back on the independence assumption.
+            assertEquals(6L, stats2.estimateStarJoin(email.getIV(),
+                    age.getIV()));
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Verify that the statistics are computed in the background for a KB on a
+     * {@link Journal} and reflect the last commit point.
+     */
+    public void test_getStatistics() throws Exception {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            if (!(store.getIndexManager() instanceof Journal)) {
+
+                // Not supported.
+                assertNull(PredicateStatistics.getStatistics(store));
+
+                return;
+
+            }
+
+            loadData(store);
+
+            final PredicateStatistics stats = PredicateStatistics.refresh(
+                    store).get();
+
+            assertNotNull(stats);
+
+            assertStats(6, 5, 6, stats.get(email.getIV()));
+
+            assertEquals(store.getNamespace(), stats.getNamespace());
+
+            assertTrue(stats == PredicateStatistics.getStatistics(store));
+
+        } finally {
+
+            PredicateStatistics.clear(store.getIndexManager());
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Verify that the statistics are only considered stale once the #of
+     * statements has changed by at least the given fraction.
+     */
+    public void test_isStale() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            loadData(store);
+
+            final PredicateStatistics stats = PredicateStatistics.compute(
+                    store, 100/* maxCharacteristicSets */, 1/* sampleModulus */);
+
+            final long n = stats.getStatementCount();
+
+            assertTrue(n >= 21);
+
+            // Unchanged.
+            assertFalse(PredicateStatistics.isStale(stats, n, .1));
+
+            // Changed by less than 10%.
+            assertFalse(PredicateStatistics.isStale(stats, n + 1, .1));
+            assertFalse(PredicateStatistics.isStale(stats, n - 1, .1));
+
+            // Changed by at least 10%.
+            assertTrue(PredicateStatistics.isStale(stats, n + n / 5, .1));
+            assertTrue(PredicateStatistics.isStale(stats, n - n / 5, .1));
+
+            // Any change when the ratio is zero.
+            assertFalse(PredicateStatistics.isStale(stats, n, 0d));
+            assertTrue(PredicateStatistics.isStale(stats, n + 1, 0d));
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    private static Set<IV<?, ?>> newSet(final IV<?, ?>... a) {
+
+        return new HashSet<IV<?, ?>>(Arrays.asList(a));
+
+    }
+
+    private static void assertStats(final long count,
+            final long distinctSubjects, final long distinctObjects,
+            final PredicateStatistics.Stats actual) {
+
+        assertNotNull(actual);
+        assertEquals("count", count, actual.count);
+        assertEquals("distinctSubjects", distinctSubjects,
+                actual.distinctSubjects);
+        assertEquals("distinctObjects", distinctObjects,
+                actual.distinctObjects);
+
+    }
+
+}
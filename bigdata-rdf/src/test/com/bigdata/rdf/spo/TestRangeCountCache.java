@@ -0,0 +1,237 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.spo;
+
+import com.bigdata.btree.IIndex;
+import com.bigdata.journal.ITx;
+import com.bigdata.journal.Journal;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.StatementEnum;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
+
+/**
+ * Test suite for {@link RangeCountCache}.
+ */
+public class TestRangeCountCache extends AbstractTripleStoreTestCase {
+
+    public TestRangeCountCache() {
+        super();
+    }
+
+    public TestRangeCountCache(String name) {
+        super(name);
+    }
+
+    private BigdataURI p1, p2;
+
+    private void loadData(final AbstractTripleStore store) {
+
+        final BigdataValueFactory f = store.getValueFactory();
+
+        final BigdataURI s = f.createURI("http://www.bigdata.com/s");
+        final BigdataURI o1 = f.createURI("http://www.bigdata.com/o1");
+        final BigdataURI o2 = f.createURI("http://www.bigdata.com/o2");
+        final BigdataURI c = f.createURI("http://www.bigdata.com/c");
+        p1 = f.createURI("http://www.bigdata.com/p1");
+        p2 = f.createURI("http://www.bigdata.com/p2");
+
+        store.addTerms(new BigdataValue[] { s, o1, o2, c, p1, p2 });
+
+        final ISPO[] stmts = new ISPO[] {
+                new SPO(s.getIV(), p1.getIV(), o1.getIV(),
+                        store.isQuads() ? c.getIV() : null,
+                        StatementEnum.Explicit),
+                new SPO(s.getIV(), p1.getIV(), o2.getIV(),
+                        store.isQuads() ? c.getIV() : null,
+                        StatementEnum.Explicit),
+                new SPO(s.getIV(), p2.getIV(), o1.getIV(),
+                        store.isQuads() ? c.getIV() : null,
+                        StatementEnum.Explicit), };
+
+        store.addStatements(stmts, stmts.length);
+
+        store.commit();
+
+    }
+
+    /**
+     * Verify that a range count for a read-only view is shared with another
+     * read-only view on the same commit point, and that the range counts for
+     * the unisolated view are not cached.
+     */
+    public void test_sharedAcrossViews() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            if (!(store.getIndexManager() instanceof Journal)) {
+
+                // Not supported.
+                return;
+
+            }
+
+            final Journal jnl = (Journal) store.getIndexManager();
+
+            loadData(store);
+
+            final RangeCountCache cache = store.getSPORelation()
+                    .getRangeCountCache();
+
+            cache.clear();
+
+            final long hits0 = cache.getHitCount();
+
+            // The unisolated view is not cached.
+            assertEquals(2L,
+                    store.getAccessPath(null, p1.getIV(), null).rangeCount(
+                            false/* exact */));
+
+            assertEquals(0, cache.size());
+
+            final long tx1 = jnl.newTx(ITx.READ_COMMITTED);
+
+            final long tx2 = jnl.newTx(ITx.READ_COMMITTED);
+
+            try {
+
+                final AbstractTripleStore view1 = (AbstractTripleStore) jnl
+                        .getResourceLocator().locate(store.getNamespace(), tx1);
+
+                final AbstractTripleStore view2 = (AbstractTripleStore) jnl
+                        .getResourceLocator().locate(store.getNamespace(), tx2);
+
+                assertNotSame(view1, view2);
+
+                assertEquals(2L,
+                        view1.getAccessPath(null, p1.getIV(), null).rangeCount(
+                                false/* exact */));
+
+                assertEquals(1, cache.size());
+
+                assertEquals(hits0, cache.getHitCount());
+
+                assertEquals(2L,
+                        view2.getAccessPath(null, p1.getIV(), null).rangeCount(
+                                false/* exact */));
+
+                assertEquals(1, cache.size());
+
+                assertEquals(hits0 + 1, cache.getHitCount());
+
+                // A different key range is a different entry.
+                assertEquals(1L,
+                        view2.getAccessPath(null, p2.getIV(), null).rangeCount(
+                                false/* exact */));
+
+                assertEquals(2, cache.size());
+
+            } finally {
+
+                jnl.abort(tx1);
+
+                jnl.abort(tx2);
+
+            }
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Verify that the cache is bounded and that a capacity of ZERO (0)
+     * disables the cache.
+     */
+    public void test_capacity() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            if (!(store.getIndexManager() instanceof Journal)) {
+
+                // Not supported.
+                return;
+
+            }
+
+            final Journal jnl = (Journal) store.getIndexManager();
+
+            loadData(store);
+
+            final AbstractTripleStore view = (AbstractTripleStore) jnl
+                    .getResourceLocator().locate(store.getNamespace(),
+                            jnl.getLastCommitTime());
+
+            final SPOKeyOrder keyOrder = view.getSPORelation()
+                    .getPrimaryKeyOrder();
+
+            final IIndex ndx = view.getSPORelation().getIndex(keyOrder);
+
+            final String namespace = view.getSPORelation().getNamespace();
+
+            final RangeCountCache cache = new RangeCountCache(2/* capacity */);
+
+            final long n = ndx.rangeCount();
+
+            assertEquals(n, cache.rangeCount(namespace, keyOrder, ndx,
+                    null/* fromKey */, null/* toKey */));
+            assertEquals(n, cache.rangeCount(namespace, keyOrder, ndx,
+                    new byte[] {}/* fromKey */, null/* toKey */));
+            assertEquals(n, cache.rangeCount(namespace, keyOrder, ndx,
+                    new byte[] { 0 }/* fromKey */, null/* toKey */));
+
+            assertEquals(2, cache.size());
+            assertEquals(3L, cache.getMissCount());
+
+            // The LRU entry was evicted.
+            cache.rangeCount(namespace, keyOrder, ndx, null/* fromKey */,
+                    null/* toKey */);
+            assertEquals(4L, cache.getMissCount());
+
+            final RangeCountCache disabled = new RangeCountCache(0/* capacity */);
+
+            assertEquals(n, disabled.rangeCount(namespace, keyOrder, ndx,
+                    null/* fromKey */, null/* toKey */));
+
+            assertEquals(0, disabled.size());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+}
@@ -584,6 +584,75 @@ public class TestSPORelation extends AbstractTripleStoreTestCase {
         
     }
 
+    /**
+     * Unit test for {@link SPORelation#insert(ISPO[], int, IElementFilter)}
+     * when the batch contains duplicate statements and statements which are
+     * rejected by the filter. Each statement index must receive exactly the
+     * distinct statements which pass the filter, the mutation count must not
+     * double count the duplicates, and the first occurrence of each written
+     * statement must report that it was modified.
+     */
+    public void test_insert_duplicatesAndFilter() {
+
+        final Properties properties = super.getProperties();
+        
+        // override the default axiom model.
+        properties.setProperty(com.bigdata.rdf.store.AbstractTripleStore.Options.AXIOMS_CLASS, NoAxioms.class.getName());
+        
+        final AbstractTripleStore store = getStore(properties);
+
+        try {
+
+            final SPORelation spoRelation = store.getSPORelation();
+
+            final IV U1 = uriId(11L);
+            final IV U2 = uriId(12L);
+            final IV X1 = uriId(31L);
+            final IV type = rdfType.get();
+
+            final SPO s1 = new SPO(U1, type, X1, StatementEnum.Explicit);
+            final SPO s1b = new SPO(U1, type, X1, StatementEnum.Explicit);
+            final SPO s2 = new SPO(U2, type, X1, StatementEnum.Explicit);
+            final SPO s2b = new SPO(U2, type, X1, StatementEnum.Explicit);
+            // rejected by the filter.
+            final SPO s3 = new SPO(X1, type, U1, StatementEnum.Inferred);
+
+            final ISPO[] a = new ISPO[] { s2, s1, s3, s1b, s2b };
+
+            assertEquals(2L, spoRelation.insert(a, a.length,
+                    InferredSPOFilter.INSTANCE));
+
+            // the first occurrence of each statement was written.
+            assertTrue(s1.isModified());
+            assertTrue(s2.isModified());
+            assertFalse(s1b.isModified());
+            assertFalse(s2b.isModified());
+            assertFalse(s3.isModified());
+
+            // each statement index has just the distinct statements.
+            for (SPOKeyOrder keyOrder : new SPOKeyOrder[] { SPOKeyOrder.SPO,
+                    SPOKeyOrder.POS, SPOKeyOrder.OSP }) {
+
+                assertEquals(keyOrder.toString(), 2L, spoRelation.getIndex(
+                        keyOrder).rangeCount());
+
+            }
+
+            // writing the same statements again is not a mutation.
+            final ISPO[] b = new ISPO[] {
+                    new SPO(U1, type, X1, StatementEnum.Explicit),
+                    new SPO(U1, type, X1, StatementEnum.Explicit) };
+
+            assertEquals(0L, spoRelation.insert(b, b.length, null/* filter */));
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
     /**
      * A simple test of rule execution, including query against an empty kb,
      * insert of some elements into the kb, query to verify that the data is in
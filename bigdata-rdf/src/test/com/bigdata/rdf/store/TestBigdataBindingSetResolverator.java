@@ -0,0 +1,203 @@
+/*
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+*/
+
+package com.bigdata.rdf.store;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.striterator.ChunkedWrappedIterator;
+
+/**
+ * Test suite for the cross-chunk {@link IV} resolution cache of the
+ * {@link BigdataBindingSetResolverator}.
+ */
+public class TestBigdataBindingSetResolverator extends
+        AbstractTripleStoreTestCase {
+
+    /**
+     *
+     */
+    public TestBigdataBindingSetResolverator() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestBigdataBindingSetResolverator(final String name) {
+        super(name);
+    }
+
+    private final URI A = new URIImpl("http://www.bigdata.com/A");
+    private final URI B = new URIImpl("http://www.bigdata.com/B");
+    private final URI C = new URIImpl("http://www.bigdata.com/C");
+
+    private final IVariable<?> x = Var.var("x");
+    private final IVariable<?> y = Var.var("y");
+
+    /**
+     * The {@link IV}s resolved for the first chunk are reused by the later
+     * chunks rather than being read again from the lexicon.
+     */
+    public void test_resolutionsReusedAcrossChunks() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            final BigdataBindingSetResolverator itr = resolve(store, 1000/* cacheCapacity */);
+
+            assertResolved(itr);
+
+            /*
+             * Three chunks of two solutions. The first chunk reads A, B and C
+             * from the lexicon. Each of the other two chunks finds those three
+             * IVs in the cache.
+             */
+            assertEquals(6L, itr.getCacheHitCount());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * A cache capacity of ZERO (0) disables the cache so each chunk is
+     * resolved against the lexicon.
+     */
+    public void test_resolutionCacheDisabled() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            final BigdataBindingSetResolverator itr = resolve(store, 0/* cacheCapacity */);
+
+            assertResolved(itr);
+
+            assertEquals(0L, itr.getCacheHitCount());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Resolve six solutions, {x=A|B, y=C}, in chunks of two.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private BigdataBindingSetResolverator resolve(
+            final AbstractTripleStore store, final int cacheCapacity) {
+
+        store.addTerm(A);
+        store.addTerm(B);
+        store.addTerm(C);
+
+        final IV a = store.getIV(A);
+        final IV b = store.getIV(B);
+        final IV c = store.getIV(C);
+
+        assertFalse(a.isInline());
+        assertFalse(b.isInline());
+        assertFalse(c.isInline());
+
+        final List<IBindingSet> solutions = new LinkedList<IBindingSet>();
+
+        for (int i = 0; i < 6; i++) {
+
+            final IBindingSet bset = new ListBindingSet();
+
+            // Note: clone without the cached value so the IV must be resolved.
+            bset.set(x, new Constant<IV>((i % 2 == 0 ? a : b).clone(true)));
+            bset.set(y, new Constant<IV>(c.clone(true)));
+
+            solutions.add(bset);
+
+        }
+
+        final BigdataBindingSetResolverator itr = new BigdataBindingSetResolverator(
+                store, new ChunkedWrappedIterator<IBindingSet>(
+                        solutions.iterator(), 2/* chunkSize */,
+                        IBindingSet.class), UUID.randomUUID(),
+                null/* required */, 10/* chunkOfChunksCapacity */,
+                2/* chunkCapacity */, 1000/* chunkTimeout */,
+                100/* termsChunkSize */, 100/* blobsChunkSize */,
+                cacheCapacity);
+
+        itr.start(store.getExecutorService());
+
+        return itr;
+
+    }
+
+    /**
+     * Drain the iterator, verifying that each solution was materialized.
+     */
+    private void assertResolved(final BigdataBindingSetResolverator itr) {
+
+        try {
+
+            int n = 0;
+
+            while (itr.hasNext()) {
+
+                final IBindingSet bset = itr.next();
+
+                assertEquals(n % 2 == 0 ? A : B, (Value) bset.get(x).get());
+
+                assertEquals(C, (Value) bset.get(y).get());
+
+                n++;
+
+            }
+
+            assertEquals(6, n);
+
+        } finally {
+
+            itr.close();
+
+        }
+
+    }
+
+}
@@ -92,6 +92,9 @@ public class TestTripleStoreBasics extends TestCase2 {
         // test suite for bulk filter of statements absent/present in the kb.
         suite.addTestSuite(TestBulkFilter.class);
 
+        // test suite for reuse of IV resolutions across solution chunks.
+        suite.addTestSuite(TestBigdataBindingSetResolverator.class);
+
         // test suite for temp stores sharing the same lexicon.
         suite.addTestSuite(TestSharedLexiconTempStore.class);
         
@@ -0,0 +1,633 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.sail.sparql;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.openrdf.query.MalformedQueryException;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.sparql.ast.ASTBase;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.BindingsClause;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * A cache of parsed SPARQL queries. The cache maps the normalized query string
+ * (plus the base URI and the KB instance) onto the {@link ASTContainer}
+ * produced by {@link Bigdata2ASTSPARQLParser#parseQuery2(String, String)}.
+ * This avoids the cost of parsing the query, resolving its RDF Values against
+ * the lexicon, and building the AST for applications which issue the same
+ * query many times. Each caller is given its own deep copy of the cached AST
+ * since the {@link ASTContainer} is modified during query evaluation.
+ * <p>
+ * Note: Only the parsed AST is cached. The optimized AST and the query plan
+ * depend on the range counts of the access paths, on the bindings given with
+ * each request, and on the query identifier, so they are recomputed for each
+ * request.
+ * <p>
+ * Note: A parsed query may only be reused if it does not depend on the state
+ * of the database. A query is NOT cached if (a) it uses an RDF Value which was
+ * not known to the lexicon when the query was parsed (a mock {@link IV} is
+ * assigned in that case and would become stale once the Value is added to the
+ * lexicon); or (b) it declares a dataset (the graphs in the dataset are
+ * resolved when the query is parsed and may include virtual graphs whose
+ * members change over time). Term identifiers are never reassigned within a
+ * KB instance, so the {@link IV}s for known Values remain valid. The cache
+ * key includes the UUID of the TERM2ID index so entries are not reused
+ * against a different KB instance for the same namespace.
+ */
+public class ParsedQueryCache {
+
+    private static final transient Logger log = Logger
+            .getLogger(ParsedQueryCache.class);
+
+    /**
+     * The maximum #of entries in the cache.
+     */
+    private final int capacity;
+
+    /**
+     * LRU map from the cache key onto the {@link ASTContainer} for the parsed
+     * query. The cached {@link ASTContainer}s are never given to a caller.
+     */
+    private final LinkedHashMap<Key, ASTContainer> cache;
+
+    /**
+     * #of requests which were satisfied from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * #of requests which had to parse the query.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            The maximum #of parsed queries to retain.
+     */
+    public ParsedQueryCache(final int capacity) {
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+
+        this.capacity = capacity;
+
+        this.cache = new LinkedHashMap<Key, ASTContainer>(capacity, .75f,
+                true/* accessOrder */) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Key, ASTContainer> eldest) {
+
+                return size() > ParsedQueryCache.this.capacity;
+
+            }
+
+        };
+
+    }
+
+    /**
+     * The maximum #of parsed queries to retain.
+     */
+    public int getCapacity() {
+
+        return capacity;
+
+    }
+
+    /**
+     * The #of parsed queries in the cache.
+     */
+    public int size() {
+
+        synchronized (cache) {
+
+            return cache.size();
+
+        }
+
+    }
+
+    /**
+     * The #of requests which were satisfied from the cache.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * The #of requests which had to parse the query.
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+
+    }
+
+    /**
+     * Discard all cached queries for the namespace. This must be invoked when
+     * a KB instance is destroyed or (re-)created.
+     * 
+     * @param namespace
+     *            The namespace of the KB instance.
+     */
+    public void invalidate(final String namespace) {
+
+        synchronized (cache) {
+
+            final Iterator<Key> itr = cache.keySet().iterator();
+
+            while (itr.hasNext()) {
+
+                if (itr.next().namespace.equals(namespace)) {
+
+                    itr.remove();
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Discard all cached queries.
+     */
+    public void clear() {
+
+        synchronized (cache) {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * Return the {@link ASTContainer} for the query. The query is parsed iff
+     * it is not found in the cache.
+     * 
+     * @param tripleStore
+     *            The KB instance against which the query will be run.
+     * @param queryStr
+     *            The query.
+     * @param baseURI
+     *            The base URI.
+     * 
+     * @return A new {@link ASTContainer} which is not shared with any other
+     *         caller.
+     * 
+     * @throws MalformedQueryException
+     * 
+     * @see Bigdata2ASTSPARQLParser#parseQuery2(String, String)
+     */
+    public ASTContainer parseQuery(final AbstractTripleStore tripleStore,
+            final String queryStr, final String baseURI)
+            throws MalformedQueryException {
+
+        final long begin = System.nanoTime();
+
+        final Key key = new Key(tripleStore.getNamespace(), tripleStore
+                .getLexiconRelation().getTerm2IdIndex().getIndexMetadata()
+                .getIndexUUID(), baseURI, normalize(queryStr));
+
+        final ASTContainer template;
+        synchronized (cache) {
+            template = cache.get(key);
+        }
+
+        if (template != null) {
+
+            hitCount.incrementAndGet();
+
+            final ASTContainer ast = copy(template);
+
+            ast.setQueryString(queryStr);
+
+            ast.setQueryParseTime(System.nanoTime() - begin);
+
+            return ast;
+
+        }
+
+        missCount.incrementAndGet();
+
+        final ASTContainer ast = new Bigdata2ASTSPARQLParser(tripleStore)
+                .parseQuery2(queryStr, baseURI);
+
+        if (isCacheable(ast.getOriginalAST())) {
+
+            synchronized (cache) {
+
+                cache.put(key, copy(ast));
+
+            }
+
+        } else if (log.isDebugEnabled()) {
+
+            log.debug("Not cacheable: " + queryStr);
+
+        }
+
+        return ast;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the parsed query may be reused against
+     * other views of the same KB instance.
+     * 
+     * @param queryRoot
+     *            The AST as produced by the parser.
+     */
+    public static boolean isCacheable(final QueryRoot queryRoot) {
+
+        if (queryRoot.getDataset() != null) {
+
+            // The dataset is resolved against the data.
+            return false;
+
+        }
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(queryRoot);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof IConstant) {
+
+                if (isUnknownValue((IConstant<?>) op))
+                    return false;
+
+            } else if (op instanceof BindingsClause) {
+
+                for (IBindingSet bset : ((BindingsClause) op).getBindingSets()) {
+
+                    @SuppressWarnings("rawtypes")
+                    final Iterator<Map.Entry<IVariable, IConstant>> itr2 = bset
+                            .iterator();
+
+                    while (itr2.hasNext()) {
+
+                        if (isUnknownValue(itr2.next().getValue()))
+                            return false;
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the constant is an RDF Value which was not
+     * found in the lexicon.
+     */
+    private static boolean isUnknownValue(final IConstant<?> c) {
+
+        final Object v = c.get();
+
+        return v instanceof IV && ((IV<?, ?>) v).isNullIV();
+
+    }
+
+    /**
+     * Return a copy of the {@link ASTContainer} which does not share any
+     * mutable state with the given {@link ASTContainer}. The AST is deep
+     * copied and the query hints (which are not {@link BOp}s and hence are
+     * not copied by {@link BOpUtility#deepCopy(BOp)}) are cloned. The parse
+     * tree is only used to report on the query and is shared.
+     */
+    public static ASTContainer copy(final ASTContainer src) {
+
+        final QueryRoot queryRoot = BOpUtility.deepCopy(src.getOriginalAST());
+
+        // Collect the nodes first since we will modify their annotations.
+        final List<ASTBase> nodes = new ArrayList<ASTBase>();
+        {
+
+            final Iterator<BOp> itr = BOpUtility
+                    .preOrderIteratorWithAnnotations(queryRoot);
+
+            while (itr.hasNext()) {
+
+                final BOp op = itr.next();
+
+                if (op instanceof ASTBase
+                        && ((ASTBase) op).getQueryHints() != null) {
+
+                    nodes.add((ASTBase) op);
+
+                }
+
+            }
+
+        }
+
+        for (ASTBase node : nodes) {
+
+            node.setQueryHints((Properties) node.getQueryHints().clone());
+
+        }
+
+        final ASTContainer ast = new ASTContainer(queryRoot);
+
+        ast.setQueryString(src.getQueryString());
+
+        ast.setParseTree(src.getParseTree());
+
+        if (src.getQueryHints() != null) {
+
+            ast.setQueryHints((Properties) src.getQueryHints().clone());
+
+        }
+
+        return ast;
+
+    }
+
+    /**
+     * Matches an IRI reference (no whitespace or other characters which are
+     * not permitted in an IRIREF).
+     */
+    private static final Pattern IRIREF = Pattern
+            .compile("<[^<>\"{}|^`\\\\\\x00-\\x20]*>");
+
+    /**
+     * Normalize the query string. Comments are removed and each run of white
+     * space is replaced by a single space character, except within string
+     * literals and IRI references which are preserved exactly. Leading and
+     * trailing white space is removed. Queries which differ only in their
+     * layout therefore share the same cache entry.
+     * 
+     * @param queryStr
+     *            The query string.
+     * 
+     * @return The normalized query string.
+     */
+    static String normalize(final String queryStr) {
+
+        final int len = queryStr.length();
+
+        final StringBuilder sb = new StringBuilder(len);
+
+        final Matcher m = IRIREF.matcher(queryStr);
+
+        // true iff the last character written was white space.
+        boolean space = true;
+
+        int i = 0;
+
+        while (i < len) {
+
+            final char ch = queryStr.charAt(i);
+
+            if (ch == '"' || ch == '\'') {
+
+                // String literal (short or long form).
+                final int end = endOfString(queryStr, i);
+
+                sb.append(queryStr, i, end);
+
+                i = end;
+
+                space = false;
+
+            } else if (ch == '<' && m.find(i) && m.start() == i) {
+
+                // IRI reference.
+                sb.append(queryStr, i, m.end());
+
+                i = m.end();
+
+                space = false;
+
+            } else if (ch == '#') {
+
+                // Comment (to the end of the line).
+                while (i < len && queryStr.charAt(i) != '\n'
+                        && queryStr.charAt(i) != '\r') {
+
+                    i++;
+
+                }
+
+                if (!space) {
+
+                    sb.append(' ');
+
+                    space = true;
+
+                }
+
+            } else if (Character.isWhitespace(ch)) {
+
+                if (!space) {
+
+                    sb.append(' ');
+
+                    space = true;
+
+                }
+
+                i++;
+
+            } else {
+
+                sb.append(ch);
+
+                space = false;
+
+                i++;
+
+            }
+
+        }
+
+        // Strip any trailing space.
+        if (space && sb.length() > 0)
+            sb.setLength(sb.length() - 1);
+
+        return sb.toString();
+
+    }
+
+    /**
+     * Return the index of the first character after the string literal which
+     * starts at the given index. Both the short ('...') and long ('''...''')
+     * forms are recognized together with escape sequences. If the string is
+     * not terminated then the length of the query is returned.
+     */
+    private static int endOfString(final String s, final int start) {
+
+        final int len = s.length();
+
+        final char q = s.charAt(start);
+
+        final boolean isLong = start + 2 < len && s.charAt(start + 1) == q
+                && s.charAt(start + 2) == q;
+
+        int i = start + (isLong ? 3 : 1);
+
+        while (i < len) {
+
+            final char ch = s.charAt(i);
+
+            if (ch == '\\') {
+
+                // skip the escaped character.
+                i += 2;
+
+            } else if (ch == q) {
+
+                if (!isLong)
+                    return i + 1;
+
+                if (i + 2 < len && s.charAt(i + 1) == q
+                        && s.charAt(i + 2) == q) {
+
+                    // Note: A long string may end with up to two quotes.
+                    int end = i + 3;
+
+                    while (end < len && s.charAt(end) == q
+                            && end - i < 5) {
+
+                        end++;
+
+                    }
+
+                    return end;
+
+                }
+
+                i++;
+
+            } else {
+
+                i++;
+
+            }
+
+        }
+
+        return len;
+
+    }
+
+    /**
+     * The key for the cache.
+     */
+    private static final class Key {
+
+        private final String namespace;
+
+        private final UUID lexiconUUID;
+
+        private final String baseURI;
+
+        private final String queryStr;
+
+        private final int hashCode;
+
+        Key(final String namespace, final UUID lexiconUUID,
+                final String baseURI, final String queryStr) {
+
+            this.namespace = namespace;
+
+            this.lexiconUUID = lexiconUUID;
+
+            this.baseURI = baseURI;
+
+            this.queryStr = queryStr;
+
+            int h = namespace.hashCode();
+            h = 31 * h + lexiconUUID.hashCode();
+            h = 31 * h + (baseURI == null ? 0 : baseURI.hashCode());
+            h = 31 * h + queryStr.hashCode();
+
+            this.hashCode = h;
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            return hashCode;
+
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key))
+                return false;
+
+            final Key t = (Key) o;
+
+            return hashCode == t.hashCode
+                    && namespace.equals(t.namespace)
+                    && lexiconUUID.equals(t.lexiconUUID)
+                    && (baseURI == null ? t.baseURI == null : baseURI
+                            .equals(t.baseURI))
+                    && queryStr.equals(t.queryStr);
+
+        }
+
+    }
+
+}
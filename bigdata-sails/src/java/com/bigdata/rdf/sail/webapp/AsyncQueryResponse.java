@@ -0,0 +1,547 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import com.bigdata.rdf.sail.webapp.client.IMimeTypes;
+
+/**
+ * Streams the results of a SPARQL query to the client using the Servlet 3.1
+ * asynchronous and non-blocking I/O APIs.
+ * <p>
+ * The query writes its encoded results onto this {@link OutputStream}. The
+ * bytes are collected into chunks which are placed onto a bounded queue. The
+ * chunks are written onto the {@link ServletOutputStream} by a
+ * {@link WriteListener} only when the container reports that the stream can
+ * accept data without blocking. This releases the servlet container thread as
+ * soon as the query has been started rather than holding it for the life of
+ * the query. When the client is slower than the query, the queue fills and
+ * the query blocks until the client has drained a chunk, so the memory
+ * demand for each request is bounded.
+ * <p>
+ * The connection for the query is closed and the asynchronous request is
+ * completed when the query is done. If the query fails before any data has
+ * been written to the client then the client receives a
+ * <code>500 Internal Server Error</code>. If the client disconnects, the query
+ * is cancelled.
+ * 
+ * @see ConfigParams#ASYNC_QUERY_RESPONSE
+ */
+class AsyncQueryResponse extends OutputStream implements WriteListener,
+        AsyncListener {
+
+    private static final transient Logger log = Logger
+            .getLogger(AsyncQueryResponse.class);
+
+    /**
+     * The size of a chunk (bytes).
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The maximum #of chunks which may be buffered for the client.
+     */
+    static final int CAPACITY = 16;
+
+    private final HttpServletRequest req;
+
+    private final HttpServletResponse resp;
+
+    /**
+     * The chunks which have not yet been written to the client (guarded by
+     * <code>this</code>).
+     */
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+
+    /**
+     * The chunk which is being filled by the query.
+     */
+    private byte[] buf = new byte[CHUNK_SIZE];
+
+    /**
+     * The #of bytes in {@link #buf}.
+     */
+    private int count = 0;
+
+    /**
+     * The #of bytes written onto the {@link ServletOutputStream}.
+     */
+    private long nwritten = 0L;
+
+    /**
+     * Set when the query will not write any more data.
+     */
+    private boolean closed = false;
+
+    /**
+     * Set if the data could not be delivered to the client.
+     */
+    private Throwable failed = null;
+
+    /**
+     * The {@link FutureTask} for the query (set by {@link #newFutureTask(Callable,
+     * BigdataSailRepositoryConnection)}).
+     */
+    private FutureTask<Void> future;
+
+    /**
+     * Set when the asynchronous request has been started.
+     */
+    private AsyncContext asyncContext;
+
+    private ServletOutputStream sos;
+
+    /**
+     * Set once the asynchronous request has been completed.
+     */
+    private boolean completed = false;
+
+    AsyncQueryResponse(final HttpServletRequest req,
+            final HttpServletResponse resp) {
+
+        if (req == null)
+            throw new IllegalArgumentException();
+
+        if (resp == null)
+            throw new IllegalArgumentException();
+
+        this.req = req;
+
+        this.resp = resp;
+
+    }
+
+    /**
+     * Return the {@link FutureTask} which will run the query. When the query
+     * is done, the connection is closed and the buffered data are flushed to
+     * the client.
+     * 
+     * @param queryTask
+     *            The query.
+     * @param conn
+     *            The connection used by the query.
+     */
+    FutureTask<Void> newFutureTask(final Callable<Void> queryTask,
+            final BigdataSailRepositoryConnection conn) {
+
+        final FutureTask<Void> ft = new FutureTask<Void>(queryTask) {
+
+            @Override
+            protected void done() {
+
+                try {
+
+                    conn.close();
+
+                } catch (Throwable t) {
+
+                    log.error(t, t);
+
+                }
+
+                queryDone(this);
+
+            }
+
+        };
+
+        synchronized (this) {
+
+            future = ft;
+
+        }
+
+        return ft;
+
+    }
+
+    /**
+     * Start the asynchronous request. The caller's thread is released and the
+     * buffered data are written onto the response as the client is able to
+     * accept them.
+     * 
+     * @throws IllegalStateException
+     *             if the request does not support asynchronous operations.
+     */
+    synchronized void start() throws IOException {
+
+        asyncContext = req.startAsync(req, resp);
+
+        // Note: The query timeout is imposed by the query engine.
+        asyncContext.setTimeout(0L);
+
+        asyncContext.addListener(this);
+
+        sos = resp.getOutputStream();
+
+        // Note: The container will invoke onWritePossible().
+        sos.setWriteListener(this);
+
+    }
+
+    /*
+     * OutputStream (invoked by the query).
+     */
+
+    @Override
+    public void write(final int b) throws IOException {
+
+        if (count == buf.length)
+            flushChunk();
+
+        buf[count++] = (byte) b;
+
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+
+        while (len > 0) {
+
+            if (count == buf.length)
+                flushChunk();
+
+            final int n = Math.min(len, buf.length - count);
+
+            System.arraycopy(b, off, buf, count, n);
+
+            count += n;
+
+            off += n;
+
+            len -= n;
+
+        }
+
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        if (count > 0)
+            flushChunk();
+
+    }
+
+    /**
+     * Note: The stream is closed when the query is done.
+     */
+    @Override
+    public void close() throws IOException {
+
+        flush();
+
+    }
+
+    /**
+     * Place the current chunk onto the queue, blocking while the queue is
+     * full.
+     */
+    private void flushChunk() throws IOException {
+
+        final byte[] chunk = count == buf.length ? buf : copy(buf, count);
+
+        buf = new byte[CHUNK_SIZE];
+
+        count = 0;
+
+        synchronized (this) {
+
+            while (chunks.size() >= CAPACITY && failed == null) {
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+
+            }
+
+            if (failed != null)
+                throw new IOException("Client is gone", failed);
+
+            if (closed)
+                throw new IOException("Closed");
+
+            chunks.add(chunk);
+
+            drain();
+
+        }
+
+    }
+
+    private static byte[] copy(final byte[] b, final int len) {
+
+        final byte[] a = new byte[len];
+
+        System.arraycopy(b, 0, a, 0, len);
+
+        return a;
+
+    }
+
+    /**
+     * Invoked when the query is done. If the query failed before any data
+     * were sent to the client, then the buffered data are discarded and the
+     * error is reported instead.
+     */
+    private void queryDone(final FutureTask<Void> ft) {
+
+        Throwable cause = null;
+
+        try {
+
+            ft.get();
+
+        } catch (CancellationException ex) {
+
+            cause = ex;
+
+        } catch (ExecutionException ex) {
+
+            cause = ex.getCause();
+
+        } catch (InterruptedException ex) {
+
+            // Note: Not possible since the task is done.
+            cause = ex;
+
+        }
+
+        try {
+
+            if (cause == null) {
+
+                flush();
+
+            }
+
+        } catch (IOException ex) {
+
+            cause = ex;
+
+        }
+
+        synchronized (this) {
+
+            if (cause != null && failed == null) {
+
+                log.error("cause=" + cause, cause);
+
+                if (nwritten == 0L && !resp.isCommitted()) {
+
+                    // Report the error rather than partial results.
+                    chunks.clear();
+
+                    resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+                    resp.setContentType(IMimeTypes.MIME_TEXT_PLAIN);
+
+                    final StringWriter w = new StringWriter();
+
+                    cause.printStackTrace(new PrintWriter(w));
+
+                    try {
+
+                        chunks.add(w.toString().getBytes("UTF-8"));
+
+                    } catch (IOException e) {
+
+                        // Not possible (UTF-8 is always supported).
+                        throw new RuntimeException(e);
+
+                    }
+
+                }
+
+            }
+
+            closed = true;
+
+            notifyAll();
+
+            drain();
+
+        }
+
+    }
+
+    /**
+     * Write the buffered chunks onto the response for so long as it can
+     * accept data without blocking. The request is completed once the query
+     * is done and all chunks have been written.
+     */
+    private void drain() {
+
+        assert Thread.holdsLock(this);
+
+        if (sos == null || completed)
+            return;
+
+        try {
+
+            while (sos.isReady()) {
+
+                final byte[] chunk = chunks.poll();
+
+                if (chunk == null) {
+
+                    if (closed || failed != null) {
+
+                        completed = true;
+
+                        asyncContext.complete();
+
+                    }
+
+                    return;
+
+                }
+
+                sos.write(chunk);
+
+                nwritten += chunk.length;
+
+                // Wake up the query if it is blocked.
+                notifyAll();
+
+            }
+
+        } catch (IOException ex) {
+
+            onError(ex);
+
+        }
+
+    }
+
+    /*
+     * WriteListener (invoked by the container).
+     */
+
+    @Override
+    synchronized public void onWritePossible() throws IOException {
+
+        drain();
+
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+
+        final FutureTask<Void> ft;
+
+        synchronized (this) {
+
+            if (failed != null)
+                return;
+
+            if (log.isInfoEnabled())
+                log.info("Could not write on client: " + t);
+
+            failed = t;
+
+            chunks.clear();
+
+            ft = future;
+
+            // Wake up the query if it is blocked.
+            notifyAll();
+
+            if (!completed && asyncContext != null) {
+
+                completed = true;
+
+                asyncContext.complete();
+
+            }
+
+        }
+
+        if (ft != null) {
+
+            // Cancel the query.
+            ft.cancel(true/* mayInterruptIfRunning */);
+
+        }
+
+    }
+
+    /*
+     * AsyncListener (invoked by the container).
+     */
+
+    @Override
+    public void onComplete(final AsyncEvent event) {
+
+        // NOP
+
+    }
+
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+
+        onError(event.getThrowable() == null ? new IOException("Timeout")
+                : event.getThrowable());
+
+    }
+
+    @Override
+    public void onError(final AsyncEvent event) {
+
+        onError(event.getThrowable());
+
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+
+        // NOP
+
+    }
+
+}
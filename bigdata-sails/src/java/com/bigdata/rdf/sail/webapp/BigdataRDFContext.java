@@ -32,6 +32,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -77,6 +78,7 @@ import org.openrdf.rio.RDFWriterRegistry;
 import com.bigdata.BigdataStatics;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.bop.fed.QueryEngineFactory;
 import com.bigdata.counters.CAT;
 import com.bigdata.io.NullOutputStream;
@@ -100,6 +102,7 @@ import com.bigdata.rdf.sail.ISPARQLUpdateListener;
 import com.bigdata.rdf.sail.SPARQLUpdateEvent;
 import com.bigdata.rdf.sail.SPARQLUpdateEvent.DeleteInsertWhereStats;
 import com.bigdata.rdf.sail.sparql.Bigdata2ASTSPARQLParser;
+import com.bigdata.rdf.sail.sparql.ParsedQueryCache;
 import com.bigdata.rdf.sail.webapp.XMLBuilder.Node;
 import com.bigdata.rdf.sail.webapp.client.StringUtil;
 import com.bigdata.rdf.sparql.ast.ASTContainer;
@@ -275,10 +278,55 @@ public class BigdataRDFContext extends BigdataBaseContext {
      * @see SparqlEndpointConfig#queryThreadPoolSize
      */
     /*package*/final ExecutorService queryService;
+
+    /**
+     * Admission control and weighted fair scheduling for the requests which
+     * are executed on the {@link #queryService}. Requests SHOULD be submitted
+     * through the scheduler rather than directly to the {@link #queryService}.
+     * 
+     * @see QueryScheduler
+     */
+    /*package*/final QueryScheduler queryScheduler;
+
+    /**
+     * The server-side cursors for paging through query results.
+     * 
+     * @see QueryCursorManager
+     */
+    private final QueryCursorManager queryCursorManager;
+
+    /**
+     * The server-side prepared queries.
+     * 
+     * @see PreparedQueryManager
+     */
+    private final PreparedQueryManager preparedQueryManager;
+
+    /**
+     * The standing queries.
+     * 
+     * @see StandingQueryManager
+     */
+    private final StandingQueryManager standingQueryManager;
+
+    /**
+     * The active streaming INSERT requests.
+     * 
+     * @see StreamingInsert
+     */
+    private final ConcurrentHashMap<UUID, StreamingInsert> m_streamingInserts = new ConcurrentHashMap<UUID, StreamingInsert>();
 	
 	private final ScheduledFuture<?> m_queueStatsFuture;
 	private final ThreadPoolExecutorBaseStatisticsTask m_queueSampleTask;
 
+    /**
+     * The cache of parsed queries -or- <code>null</code> if the cache is
+     * disabled.
+     * 
+     * @see SparqlEndpointConfig#parsedQueryCacheCapacity
+     */
+    private final ParsedQueryCache m_parsedQueryCache;
+
     /**
      * The currently executing queries (does not include queries where a client
      * has established a connection but the query is not running because the
@@ -508,6 +556,9 @@ public class BigdataRDFContext extends BigdataBaseContext {
 
 		m_config = config;
 
+        m_parsedQueryCache = config.parsedQueryCacheCapacity == 0 ? null
+                : new ParsedQueryCache(config.parsedQueryCacheCapacity);
+
         if (config.queryThreadPoolSize == 0) {
 
             queryService = (ThreadPoolExecutor) Executors
@@ -522,6 +573,19 @@ public class BigdataRDFContext extends BigdataBaseContext {
 
         }
 
+        queryScheduler = new QueryScheduler(queryService,
+                config.queryThreadPoolSize, config.queryQueueCapacity,
+                config.namespaceQueryConcurrency, config.namespaceQueryWeights);
+
+        queryCursorManager = new QueryCursorManager(config.cursorTimeout,
+                config.maxCursors, config.cursorMaxMemory);
+
+        preparedQueryManager = new PreparedQueryManager(
+                config.maxPreparedQueries);
+
+        standingQueryManager = new StandingQueryManager(this,
+                config.maxStandingQueries);
+
 		if (indexManager.getCollectQueueStatistics()) {
 
 			final long initialDelay = 0; // initial delay in ms.
@@ -583,8 +647,17 @@ public class BigdataRDFContext extends BigdataBaseContext {
         if (m_queueStatsFuture != null)
             m_queueStatsFuture.cancel(true/* mayInterruptIfRunning */);
 
+        // Cancel any queries which are not yet running.
+        queryScheduler.shutdownNow();
+
         // Interrupt all running queries.
         queryService.shutdownNow();
+
+        // Release the memory for the open cursors.
+        queryCursorManager.shutdownNow();
+
+        // Close the streams for the standing queries.
+        standingQueryManager.shutdownNow();
         
     }
 
@@ -594,12 +667,86 @@ public class BigdataRDFContext extends BigdataBaseContext {
 	    
 	}
 
+    /**
+     * The cache of parsed queries -or- <code>null</code> if the cache is
+     * disabled.
+     */
+    public ParsedQueryCache getParsedQueryCache() {
+
+        return m_parsedQueryCache;
+
+    }
+
 	public ThreadPoolExecutorBaseStatisticsTask getSampleTask() {
 
 	    return m_queueSampleTask;
 	    
 	}
 
+    /**
+     * The scheduler for the SPARQL QUERY and UPDATE requests.
+     */
+    public QueryScheduler getQueryScheduler() {
+
+        return queryScheduler;
+
+    }
+
+    /**
+     * The server-side cursors for paging through query results.
+     */
+    public QueryCursorManager getQueryCursorManager() {
+
+        return queryCursorManager;
+
+    }
+
+    /**
+     * Register an active streaming INSERT.
+     */
+    void addStreamingInsert(final StreamingInsert ingest) {
+
+        m_streamingInserts.put(ingest.getUUID(), ingest);
+
+    }
+
+    /**
+     * Unregister a streaming INSERT once it is done.
+     */
+    void removeStreamingInsert(final StreamingInsert ingest) {
+
+        m_streamingInserts.remove(ingest.getUUID());
+
+    }
+
+    /**
+     * The active streaming INSERT requests.
+     */
+    public Collection<StreamingInsert> getStreamingInserts() {
+
+        return Collections.unmodifiableCollection(m_streamingInserts
+                .values());
+
+    }
+
+    /**
+     * The server-side prepared queries.
+     */
+    public PreparedQueryManager getPreparedQueryManager() {
+
+        return preparedQueryManager;
+
+    }
+
+    /**
+     * The standing queries.
+     */
+    public StandingQueryManager getStandingQueryManager() {
+
+        return standingQueryManager;
+
+    }
+
     /**
      * Return the effective boolean value of a URL query parameter such as
      * "analytic". If the URL query parameter was not given, then the effective
@@ -1377,6 +1524,24 @@ public class BigdataRDFContext extends BigdataBaseContext {
                 originalQuery.setTimeout(queryTimeoutMillis);
 
             }
+
+            {
+
+                /*
+                 * Apply the resource limits (if any) for the namespace. These
+                 * are set in web.xml.
+                 */
+
+                final QueryResourceLimits limits = getConfig()
+                        .getQueryResourceLimits(namespace);
+
+                if (!limits.isUnlimited()) {
+
+                    astContainer.getOriginalAST().setResourceLimits(limits);
+
+                }
+
+            }
             
 //            final ASTContainer astContainer = ((BigdataParsedQuery) parsedQuery)
 //                    .getASTContainer();
@@ -2387,11 +2552,47 @@ public class BigdataRDFContext extends BigdataBaseContext {
          * 
          * Note: This goes through some pains to make sure that we parse the
          * query exactly once in order to minimize the resources associated with
-         * the query parser.
+         * the query parser. When the parsed query cache is enabled, the query
+         * is only parsed if it was not found in the cache.
          */
         final AbstractTripleStore tripleStore = cxn.getTripleStore();
-        final ASTContainer astContainer = new Bigdata2ASTSPARQLParser(
-                tripleStore).parseQuery2(queryStr, baseURI);
+        final ASTContainer astContainer = m_parsedQueryCache == null ? new Bigdata2ASTSPARQLParser(
+                tripleStore).parseQuery2(queryStr, baseURI)
+                : m_parsedQueryCache.parseQuery(tripleStore, queryStr, baseURI);
+
+        return getQueryTask(cxn, namespace, timestamp, astContainer, baseURI,
+                includeInferred, bindings, acceptOverride, req, resp, os);
+
+    }
+
+    /**
+     * Return the task which will execute a SPARQL Query which has already been
+     * parsed.
+     * 
+     * @param astContainer
+     *            The parsed query. This object is modified when the query is
+     *            run and must not be shared with any other task.
+     * @param baseURI
+     *            The base URI against which the query was parsed.
+     * 
+     * @see #getQueryTask(BigdataSailRepositoryConnection, String, long,
+     *      String, boolean, Map, String, HttpServletRequest,
+     *      HttpServletResponse, OutputStream)
+     * @see PreparedQueryManager
+     */
+    public AbstractQueryTask getQueryTask(//
+            final BigdataSailRepositoryConnection cxn,//
+            final String namespace,//
+            final long timestamp,//
+            final ASTContainer astContainer,//
+            final String baseURI,//
+            final boolean includeInferred, //
+            final Map<String, Value> bindings, //
+            final String acceptOverride,//
+            final HttpServletRequest req,//
+            final HttpServletResponse resp,//
+            final OutputStream os//
+            ) throws IOException {
 
         if (log.isDebugEnabled())
             log.debug(astContainer.toString());
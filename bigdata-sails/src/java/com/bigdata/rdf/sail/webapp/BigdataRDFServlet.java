@@ -209,9 +209,18 @@ abstract public class BigdataRDFServlet extends BigdataServlet {
     protected static void launderThrowable(final Throwable t,
             final HttpServletResponse resp, final String queryStr) {
         final boolean isQuery = queryStr != null && queryStr.length() > 0;
+        final QueryRejectedException rejected = (QueryRejectedException) InnerCause
+                .getInnerCause(t, QueryRejectedException.class);
         try {
-            // log an error for the service.
-            log.error("cause=" + t + (isQuery ? ", query=" + queryStr : ""), t);
+            if (rejected != null) {
+                // Not an error. The request was not admitted.
+                if (log.isInfoEnabled())
+                    log.info("cause=" + rejected
+                            + (isQuery ? ", query=" + queryStr : ""));
+            } else {
+                // log an error for the service.
+                log.error("cause=" + t + (isQuery ? ", query=" + queryStr : ""), t);
+            }
         } finally {
             // ignore any problems here.
         }
@@ -226,7 +235,24 @@ abstract public class BigdataRDFServlet extends BigdataServlet {
 			 * Note: A committed response has already had its status code and
 			 * headers written.
 			 */
-			if (InnerCause.isInnerCause(t, DatasetNotFoundException.class)) {
+			if (rejected != null) {
+				/*
+				 * The request was not admitted because the server is
+				 * saturated. The client may retry after the indicated delay.
+				 */
+				resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				resp.setHeader("Retry-After",
+						Integer.toString(rejected.retryAfterSeconds));
+				resp.setContentType(MIME_TEXT_PLAIN);
+				try {
+					final Writer w = resp.getWriter();
+					w.write(rejected.getMessage());
+					w.flush(); // Commit the response.
+				} catch (IOException ex2) {
+					// ignore any problems here.
+				}
+				return;
+			} else if (InnerCause.isInnerCause(t, DatasetNotFoundException.class)) {
 				/*
 				 * The addressed KB does not exist.
 				 */
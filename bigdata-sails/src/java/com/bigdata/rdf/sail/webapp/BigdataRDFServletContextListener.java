@@ -53,6 +53,7 @@ import org.apache.log4j.Logger;
 
 import com.bigdata.Banner;
 import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.bop.fed.QueryEngineFactory;
 import com.bigdata.btree.BaseIndexStats;
 import com.bigdata.cache.SynchronizedHardReferenceQueueWithTimeout;
@@ -420,6 +421,299 @@ public class BigdataRDFServletContextListener implements
 
         }
 
+        final int parsedQueryCacheCapacity;
+        {
+
+            final String s = getInitParameter(ConfigParams.PARSED_QUERY_CACHE_CAPACITY);
+
+            parsedQueryCacheCapacity = s == null ? ConfigParams.DEFAULT_PARSED_QUERY_CACHE_CAPACITY
+                    : Integer.valueOf(s);
+
+            if (parsedQueryCacheCapacity < 0) {
+
+                throw new RuntimeException(ConfigParams.PARSED_QUERY_CACHE_CAPACITY
+                        + " : Must be non-negative, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.PARSED_QUERY_CACHE_CAPACITY + "="
+                        + parsedQueryCacheCapacity);
+
+        }
+
+        final int queryQueueCapacity;
+        {
+
+            final String s = getInitParameter(ConfigParams.QUERY_QUEUE_CAPACITY);
+
+            queryQueueCapacity = s == null ? ConfigParams.DEFAULT_QUERY_QUEUE_CAPACITY
+                    : Integer.valueOf(s);
+
+            if (queryQueueCapacity < 0) {
+
+                throw new RuntimeException(ConfigParams.QUERY_QUEUE_CAPACITY
+                        + " : Must be non-negative, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.QUERY_QUEUE_CAPACITY + "="
+                        + queryQueueCapacity);
+
+        }
+
+        final int namespaceQueryConcurrency;
+        {
+
+            final String s = getInitParameter(ConfigParams.NAMESPACE_QUERY_CONCURRENCY);
+
+            namespaceQueryConcurrency = s == null ? ConfigParams.DEFAULT_NAMESPACE_QUERY_CONCURRENCY
+                    : Integer.valueOf(s);
+
+            if (namespaceQueryConcurrency < 0) {
+
+                throw new RuntimeException(
+                        ConfigParams.NAMESPACE_QUERY_CONCURRENCY
+                                + " : Must be non-negative, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.NAMESPACE_QUERY_CONCURRENCY + "="
+                        + namespaceQueryConcurrency);
+
+        }
+
+        final Map<String, Integer> namespaceQueryWeights = new LinkedHashMap<String, Integer>();
+        {
+
+            String s = getInitParameter(ConfigParams.NAMESPACE_QUERY_WEIGHTS);
+
+            if (s == null)
+                s = ConfigParams.DEFAULT_NAMESPACE_QUERY_WEIGHTS;
+
+            for (String pair : s.split(",")) {
+
+                pair = pair.trim();
+
+                if (pair.length() == 0)
+                    continue;
+
+                final int pos = pair.lastIndexOf('=');
+
+                final int weight = pos == -1 ? -1 : Integer.valueOf(pair
+                        .substring(pos + 1).trim());
+
+                if (weight <= 0) {
+
+                    throw new RuntimeException(
+                            ConfigParams.NAMESPACE_QUERY_WEIGHTS
+                                    + " : Expecting namespace=weight with a positive weight, not: "
+                                    + pair);
+
+                }
+
+                namespaceQueryWeights.put(pair.substring(0, pos).trim(),
+                        weight);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.NAMESPACE_QUERY_WEIGHTS + "="
+                        + namespaceQueryWeights);
+
+        }
+
+        final QueryResourceLimits queryResourceLimits;
+        {
+
+            String s = getInitParameter(ConfigParams.QUERY_RESOURCE_LIMITS);
+
+            if (s == null)
+                s = ConfigParams.DEFAULT_QUERY_RESOURCE_LIMITS;
+
+            try {
+
+                queryResourceLimits = QueryResourceLimits.parse(s);
+
+            } catch (IllegalArgumentException ex) {
+
+                throw new RuntimeException(ConfigParams.QUERY_RESOURCE_LIMITS
+                        + " : " + ex.getMessage(), ex);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.QUERY_RESOURCE_LIMITS + "="
+                        + queryResourceLimits);
+
+        }
+
+        final Map<String, QueryResourceLimits> namespaceQueryResourceLimits = new LinkedHashMap<String, QueryResourceLimits>();
+        {
+
+            String s = getInitParameter(ConfigParams.NAMESPACE_QUERY_RESOURCE_LIMITS);
+
+            if (s == null)
+                s = ConfigParams.DEFAULT_NAMESPACE_QUERY_RESOURCE_LIMITS;
+
+            for (String entry : s.split(";")) {
+
+                entry = entry.trim();
+
+                if (entry.length() == 0)
+                    continue;
+
+                final int pos = entry.indexOf(':');
+
+                if (pos <= 0) {
+
+                    throw new RuntimeException(
+                            ConfigParams.NAMESPACE_QUERY_RESOURCE_LIMITS
+                                    + " : Expecting namespace:limits, not: "
+                                    + entry);
+
+                }
+
+                try {
+
+                    namespaceQueryResourceLimits.put(entry.substring(0, pos)
+                            .trim(), QueryResourceLimits.parse(entry
+                            .substring(pos + 1)));
+
+                } catch (IllegalArgumentException ex) {
+
+                    throw new RuntimeException(
+                            ConfigParams.NAMESPACE_QUERY_RESOURCE_LIMITS
+                                    + " : " + ex.getMessage(), ex);
+
+                }
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.NAMESPACE_QUERY_RESOURCE_LIMITS + "="
+                        + namespaceQueryResourceLimits);
+
+        }
+
+        final boolean asyncQueryResponse;
+        {
+
+            final String s = getInitParameter(ConfigParams.ASYNC_QUERY_RESPONSE);
+
+            asyncQueryResponse = s == null ? ConfigParams.DEFAULT_ASYNC_QUERY_RESPONSE
+                    : Boolean.valueOf(s);
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.ASYNC_QUERY_RESPONSE + "="
+                        + asyncQueryResponse);
+
+        }
+
+        final long cursorTimeout;
+        {
+
+            final String s = getInitParameter(ConfigParams.CURSOR_TIMEOUT);
+
+            cursorTimeout = s == null ? ConfigParams.DEFAULT_CURSOR_TIMEOUT
+                    : Long.valueOf(s);
+
+            if (cursorTimeout <= 0) {
+
+                throw new RuntimeException(ConfigParams.CURSOR_TIMEOUT
+                        + " : Must be positive, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.CURSOR_TIMEOUT + "=" + cursorTimeout);
+
+        }
+
+        final int maxCursors;
+        {
+
+            final String s = getInitParameter(ConfigParams.MAX_CURSORS);
+
+            maxCursors = s == null ? ConfigParams.DEFAULT_MAX_CURSORS
+                    : Integer.valueOf(s);
+
+            if (maxCursors <= 0) {
+
+                throw new RuntimeException(ConfigParams.MAX_CURSORS
+                        + " : Must be positive, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.MAX_CURSORS + "=" + maxCursors);
+
+        }
+
+        final long cursorMaxMemory;
+        {
+
+            final String s = getInitParameter(ConfigParams.CURSOR_MAX_MEMORY);
+
+            cursorMaxMemory = s == null ? ConfigParams.DEFAULT_CURSOR_MAX_MEMORY
+                    : Long.valueOf(s);
+
+            if (cursorMaxMemory <= 0) {
+
+                throw new RuntimeException(ConfigParams.CURSOR_MAX_MEMORY
+                        + " : Must be positive, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.CURSOR_MAX_MEMORY + "=" + cursorMaxMemory);
+
+        }
+
+        final int maxPreparedQueries;
+        {
+
+            final String s = getInitParameter(ConfigParams.MAX_PREPARED_QUERIES);
+
+            maxPreparedQueries = s == null ? ConfigParams.DEFAULT_MAX_PREPARED_QUERIES
+                    : Integer.valueOf(s);
+
+            if (maxPreparedQueries <= 0) {
+
+                throw new RuntimeException(ConfigParams.MAX_PREPARED_QUERIES
+                        + " : Must be positive, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.MAX_PREPARED_QUERIES + "="
+                        + maxPreparedQueries);
+
+        }
+
+        final int maxStandingQueries;
+        {
+
+            final String s = getInitParameter(ConfigParams.MAX_STANDING_QUERIES);
+
+            maxStandingQueries = s == null ? ConfigParams.DEFAULT_MAX_STANDING_QUERIES
+                    : Integer.valueOf(s);
+
+            if (maxStandingQueries <= 0) {
+
+                throw new RuntimeException(ConfigParams.MAX_STANDING_QUERIES
+                        + " : Must be positive, not: " + s);
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info(ConfigParams.MAX_STANDING_QUERIES + "="
+                        + maxStandingQueries);
+
+        }
+
         final long warmupTimeoutMillis;
         {
 
@@ -440,9 +734,25 @@ public class BigdataRDFServletContextListener implements
 
         }
 
-        final SparqlEndpointConfig config = new SparqlEndpointConfig(namespace,
-                timestamp, queryThreadPoolSize, describeEachNamedGraph,
-                readOnly, queryTimeout);
+        final SparqlEndpointConfig config = SparqlEndpointConfig
+                .builder(namespace, timestamp)//
+                .queryThreadPoolSize(queryThreadPoolSize)//
+                .describeEachNamedGraph(describeEachNamedGraph)//
+                .readOnly(readOnly)//
+                .queryTimeout(queryTimeout)//
+                .parsedQueryCacheCapacity(parsedQueryCacheCapacity)//
+                .queryQueueCapacity(queryQueueCapacity)//
+                .namespaceQueryConcurrency(namespaceQueryConcurrency)//
+                .namespaceQueryWeights(namespaceQueryWeights)//
+                .asyncQueryResponse(asyncQueryResponse)//
+                .cursorTimeout(cursorTimeout)//
+                .maxCursors(maxCursors)//
+                .cursorMaxMemory(cursorMaxMemory)//
+                .queryResourceLimits(queryResourceLimits)//
+                .namespaceQueryResourceLimits(namespaceQueryResourceLimits)//
+                .maxPreparedQueries(maxPreparedQueries)//
+                .maxStandingQueries(maxStandingQueries)//
+                .build();
 
         rdfContext = new BigdataRDFContext(config, indexManager);
 
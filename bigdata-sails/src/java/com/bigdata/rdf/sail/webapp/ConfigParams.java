@@ -25,7 +25,10 @@ package com.bigdata.rdf.sail.webapp;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import com.bigdata.bop.engine.QueryResourceLimitException;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.sparql.ParsedQueryCache;
 import com.bigdata.rdf.sparql.ast.service.ServiceFactory;
 
 /**
@@ -133,6 +136,167 @@ public interface ConfigParams {
 
     final long DEFAULT_QUERY_TIMEOUT = 0L;
 
+    /**
+     * A comma delimited list of <code>name=value</code> pairs specifying the
+     * resource limits for each query (optional). A query which exceeds any of
+     * these limits is cancelled with a {@link QueryResourceLimitException}.
+     * The limits are <code>maxSolutions</code>, <code>maxCpuTime</code>
+     * (milliseconds), <code>maxAllocationVolume</code> (bytes allocated on the
+     * JVM heap, including garbage, not the live heap) and
+     * <code>maxNativeMemory</code> (bytes). For example:
+     * 
+     * <pre>
+     * maxSolutions=1000000,maxCpuTime=60000
+     * </pre>
+     * 
+     * Limits which are not given are not enforced.
+     * 
+     * @see QueryResourceLimits
+     */
+    final String QUERY_RESOURCE_LIMITS = "queryResourceLimits";
+
+    final String DEFAULT_QUERY_RESOURCE_LIMITS = "";
+
+    /**
+     * A semicolon delimited list of <code>namespace:limits</code> entries
+     * giving resource limits for the queries against specific namespaces
+     * (optional), where <code>limits</code> has the same form as
+     * {@link #QUERY_RESOURCE_LIMITS}. The limits for a namespace replace the
+     * corresponding {@link #QUERY_RESOURCE_LIMITS}. For example:
+     * 
+     * <pre>
+     * kb:maxSolutions=1000000;public:maxSolutions=10000,maxCpuTime=5000
+     * </pre>
+     * 
+     * @see QueryResourceLimits
+     */
+    final String NAMESPACE_QUERY_RESOURCE_LIMITS = "namespaceQueryResourceLimits";
+
+    final String DEFAULT_NAMESPACE_QUERY_RESOURCE_LIMITS = "";
+
+    /**
+     * The maximum #of parsed SPARQL queries which will be cached for reuse
+     * -or- ZERO (0) to disable the parsed query cache. Queries which differ
+     * only in white space and comments share the same cache entry.
+     * 
+     * @see ParsedQueryCache
+     */
+    final String PARSED_QUERY_CACHE_CAPACITY = "parsedQueryCacheCapacity";
+
+    final int DEFAULT_PARSED_QUERY_CACHE_CAPACITY = 0;
+
+    /**
+     * The maximum #of SPARQL QUERY and UPDATE requests which may be waiting
+     * for a thread in the {@link #QUERY_THREAD_POOL_SIZE query thread pool}
+     * -or- ZERO (0) for no limit (default
+     * {@value #DEFAULT_QUERY_QUEUE_CAPACITY}). Requests which would exceed
+     * this limit are refused with <code>503 Service Unavailable</code> and a
+     * <code>Retry-After</code> header.
+     * 
+     * @see QueryScheduler
+     */
+    final String QUERY_QUEUE_CAPACITY = "queryQueueCapacity";
+
+    final int DEFAULT_QUERY_QUEUE_CAPACITY = 0;
+
+    /**
+     * The maximum #of SPARQL QUERY and UPDATE requests which may execute
+     * concurrently against any single namespace -or- ZERO (0) for no limit
+     * other than the size of the query thread pool (default
+     * {@value #DEFAULT_NAMESPACE_QUERY_CONCURRENCY}).
+     * 
+     * @see QueryScheduler
+     */
+    final String NAMESPACE_QUERY_CONCURRENCY = "namespaceQueryConcurrency";
+
+    final int DEFAULT_NAMESPACE_QUERY_CONCURRENCY = 0;
+
+    /**
+     * A comma delimited list of <code>namespace=weight</code> pairs giving the
+     * share of the query thread pool for each namespace when there is
+     * contention (optional). Namespaces which are not listed have a weight of
+     * ONE (1).
+     * 
+     * @see QueryScheduler
+     */
+    final String NAMESPACE_QUERY_WEIGHTS = "namespaceQueryWeights";
+
+    final String DEFAULT_NAMESPACE_QUERY_WEIGHTS = "";
+
+    /**
+     * When <code>true</code>, SPARQL QUERY results are streamed to the client
+     * using the Servlet 3.1 asynchronous and non-blocking I/O APIs (default
+     * {@value #DEFAULT_ASYNC_QUERY_RESPONSE}). The servlet container thread
+     * is released as soon as the query is running and the results are written
+     * from a bounded buffer as the client is able to accept them. This does
+     * not apply to EXPLAIN requests.
+     * 
+     * @see AsyncQueryResponse
+     */
+    final String ASYNC_QUERY_RESPONSE = "asyncQueryResponse";
+
+    final boolean DEFAULT_ASYNC_QUERY_RESPONSE = false;
+
+    /**
+     * The #of milliseconds after which a server-side query cursor which has
+     * not been accessed is closed and its memory released (default
+     * {@value #DEFAULT_CURSOR_TIMEOUT}).
+     * 
+     * @see QueryCursorManager
+     */
+    final String CURSOR_TIMEOUT = "cursorTimeout";
+
+    final long DEFAULT_CURSOR_TIMEOUT = 5 * 60 * 1000L;
+
+    /**
+     * The maximum #of server-side query cursors which may be open at the same
+     * time (default {@value #DEFAULT_MAX_CURSORS}). Requests to open a cursor
+     * beyond this limit are refused with <code>503 Service Unavailable</code>.
+     * 
+     * @see QueryCursorManager
+     */
+    final String MAX_CURSORS = "maxCursors";
+
+    final int DEFAULT_MAX_CURSORS = 100;
+
+    /**
+     * The maximum #of bytes of native memory which may be used by the
+     * server-side query cursors (default {@value #DEFAULT_CURSOR_MAX_MEMORY}).
+     * The memory is allocated in whole buffers from the
+     * {@link com.bigdata.io.DirectBufferPool}, so the effective limit is
+     * rounded up to a multiple of the buffer capacity. A cursor whose solutions
+     * would exceed this limit is closed and the request is refused with
+     * <code>503 Service Unavailable</code>.
+     * 
+     * @see QueryCursorManager
+     */
+    final String CURSOR_MAX_MEMORY = "cursorMaxMemory";
+
+    final long DEFAULT_CURSOR_MAX_MEMORY = 256 * 1024 * 1024L;
+
+    /**
+     * The maximum #of server-side prepared queries which are retained (default
+     * {@value #DEFAULT_MAX_PREPARED_QUERIES}). When this limit is reached, the
+     * least recently used prepared query is discarded.
+     * 
+     * @see PreparedQueryManager
+     */
+    final String MAX_PREPARED_QUERIES = "maxPreparedQueries";
+
+    final int DEFAULT_MAX_PREPARED_QUERIES = 1000;
+
+    /**
+     * The maximum #of standing queries which may be registered at the same
+     * time (default {@value #DEFAULT_MAX_STANDING_QUERIES}). Requests to
+     * register a standing query beyond this limit are refused with
+     * <code>503 Service Unavailable</code>.
+     * 
+     * @see StandingQueryManager
+     */
+    final String MAX_STANDING_QUERIES = "maxStandingQueries";
+
+    final int DEFAULT_MAX_STANDING_QUERIES = 100;
+
     /**
     * When non-zero, this specifies the timeout (milliseconds) for a warmup
     * period when the NSS starts up (warmup is disabled when this is ZERO).
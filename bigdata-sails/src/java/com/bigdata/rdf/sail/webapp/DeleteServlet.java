@@ -306,7 +306,8 @@ public class DeleteServlet extends BigdataRDFServlet {
                         queryTask);
 
                   // Submit query for evaluation.
-                  context.queryService.execute(ft);
+                  context.queryScheduler.execute(namespace,
+                          req.getRemoteAddr(), ft);
 
                   // Reads on the statements produced by the query.
                   final InputStream is = newPipedInputStream(os);
@@ -466,7 +467,8 @@ public class DeleteServlet extends BigdataRDFServlet {
                final FutureTask<Void> ft = new FutureTask<Void>(queryTask);
 
                // Submit query for evaluation.
-               context.queryService.execute(ft);
+               context.queryScheduler.execute(namespace,
+                       req.getRemoteAddr(), ft);
 
                // Reads on the statements produced by the query.
                final InputStream is = newPipedInputStream(os);
@@ -23,11 +23,14 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 package com.bigdata.rdf.sail.webapp;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
@@ -49,6 +52,7 @@ import com.bigdata.journal.ITx;
 import com.bigdata.rdf.sail.BigdataSail.BigdataSailConnection;
 import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
 import com.bigdata.rdf.sail.webapp.client.MiniMime;
+import com.bigdata.rdf.store.AbstractTripleStore;
 
 /**
  * Handler for INSERT operations.
@@ -64,6 +68,23 @@ public class InsertServlet extends BigdataRDFServlet {
     
     static private final transient Logger log = Logger.getLogger(InsertServlet.class); 
 
+    /**
+     * The name of the URL query parameter which requests a streaming INSERT.
+     * The request body is parsed concurrently with the writes on the database
+     * and the writes are committed periodically rather than once at the end
+     * of the request.
+     * 
+     * @see StreamingInsert
+     */
+    static final transient String ATTR_STREAM = "stream";
+
+    /**
+     * The name of the URL query parameter which specifies the #of statements
+     * written between commits for a streaming INSERT (default
+     * {@value StreamingInsert#DEFAULT_COMMIT_EVERY}).
+     */
+    static final transient String ATTR_COMMIT_EVERY = "commitEvery";
+
     public InsertServlet() {
         
     }
@@ -198,6 +219,15 @@ public class InsertServlet extends BigdataRDFServlet {
             }
         }
 
+        if (req.getParameter(ATTR_STREAM) != null) {
+
+            doStreamingInsert(req, resp, baseURI, defaultContext,
+                    rdfParserFactory);
+
+            return;
+
+        }
+
         try {
             
             submitApiTask(
@@ -216,6 +246,117 @@ public class InsertServlet extends BigdataRDFServlet {
 
     }
 
+    /**
+     * Streaming INSERT of the request body. The request body is parsed while a
+     * {@link StreamingInsert.WriterTask} writes the statements onto the
+     * database.
+     * 
+     * @see StreamingInsert
+     */
+    private void doStreamingInsert(final HttpServletRequest req,
+            final HttpServletResponse resp, final String baseURI,
+            final Resource[] defaultContext,
+            final RDFParserFactory rdfParserFactory) throws IOException {
+
+        final String namespace = getNamespace(req);
+
+        final long commitEvery;
+        try {
+            final String s = req.getParameter(ATTR_COMMIT_EVERY);
+            commitEvery = s == null ? StreamingInsert.DEFAULT_COMMIT_EVERY
+                    : Long.parseLong(s);
+            if (commitEvery <= 0)
+                throw new NumberFormatException();
+        } catch (NumberFormatException ex) {
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    ATTR_COMMIT_EVERY + " must be a positive integer");
+            return;
+        }
+
+        /*
+         * Note: The parser uses the value factory for the KB so the writer does
+         * not need to convert the parsed values.
+         */
+        final AbstractTripleStore tripleStore = (AbstractTripleStore) getIndexManager()
+                .getResourceLocator().locate(namespace, ITx.READ_COMMITTED);
+
+        if (tripleStore == null) {
+
+            buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                    "Not found: namespace=" + namespace);
+
+            return;
+
+        }
+
+        final StreamingInsert ingest = new StreamingInsert(namespace,
+                commitEvery);
+
+        final RDFParser rdfParser = rdfParserFactory.getParser();
+
+        rdfParser.setValueFactory(tripleStore.getValueFactory());
+
+        rdfParser.setVerifyData(true);
+
+        rdfParser.setStopAtFirstError(true);
+
+        rdfParser.setDatatypeHandling(RDFParser.DatatypeHandling.IGNORE);
+
+        rdfParser.setRDFHandler(ingest.newParserHandler());
+
+        final InputStream is = req.getInputStream();
+
+        /*
+         * Note: The parser runs on another thread since submitApiTask() awaits
+         * the Future of the writer.
+         */
+        final FutureTask<Void> parserFuture = new FutureTask<Void>(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            rdfParser.parse(is, baseURI);
+                        } catch (Throwable t) {
+                            // Halt the writer.
+                            ingest.abort(t);
+                            throw new RuntimeException(t);
+                        }
+                        return null;
+                    }
+                });
+
+        final BigdataRDFContext context = getBigdataRDFContext();
+
+        context.addStreamingInsert(ingest);
+
+        try {
+
+            getIndexManager().getExecutorService().execute(parserFuture);
+
+            // Run the writer (which writes the response).
+            submitApiTask(
+                    ingest.new WriterTask(req, resp, ITx.UNISOLATED,
+                            defaultContext)).get();
+
+        } catch (Throwable t) {
+
+            BigdataRDFServlet.launderThrowable(t, resp,
+                    "INSERT-STREAM: baseURI=" + baseURI + ", "
+                            + BigdataRDFContext.CONTEXT_URI + "="
+                            + Arrays.toString(defaultContext) + ", "
+                            + ingest);
+
+        } finally {
+
+            // Halt the parser if it is still running.
+            parserFuture.cancel(true/* mayInterruptIfRunning */);
+
+            context.removeStreamingInsert(ingest);
+
+        }
+
+    }
+
     /**
 	 * 
 	 * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan
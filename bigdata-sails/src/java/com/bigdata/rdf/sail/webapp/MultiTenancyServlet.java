@@ -46,6 +46,7 @@ import com.bigdata.rdf.properties.PropertiesParser;
 import com.bigdata.rdf.properties.PropertiesParserFactory;
 import com.bigdata.rdf.properties.PropertiesParserRegistry;
 import com.bigdata.rdf.sail.BigdataSail;
+import com.bigdata.rdf.sail.sparql.ParsedQueryCache;
 import com.bigdata.rdf.sail.webapp.client.ConnectOptions;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.rdf.task.AbstractApiTask;
@@ -379,6 +380,24 @@ public class MultiTenancyServlet extends BigdataRDFServlet {
 
             submitApiTask(new RestApiDestroyKBTask(req, resp, namespace)).get();
 
+            final ParsedQueryCache parsedQueryCache = getBigdataRDFContext()
+                    .getParsedQueryCache();
+
+            if (parsedQueryCache != null) {
+
+                // Discard any parsed queries for the destroyed KB.
+                parsedQueryCache.invalidate(namespace);
+
+            }
+
+            // Discard any prepared queries for the destroyed KB.
+            getBigdataRDFContext().getPreparedQueryManager().invalidate(
+                    namespace);
+
+            // Cancel any standing queries for the destroyed KB.
+            getBigdataRDFContext().getStandingQueryManager().cancelAll(
+                    namespace);
+
         } catch (Throwable e) {
 
             launderThrowable(e, resp, "DELETE NAMESPACE: namespace="+namespace);
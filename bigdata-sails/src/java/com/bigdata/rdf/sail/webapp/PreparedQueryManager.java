@@ -0,0 +1,712 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.MalformedQueryException;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IVariable;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.rdf.sail.sparql.Bigdata2ASTSPARQLParser;
+import com.bigdata.rdf.sail.sparql.ParsedQueryCache;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Server-side prepared SPARQL queries.
+ * <p>
+ * A query is registered once for a namespace together with the declared
+ * parameters which it accepts and is identified thereafter by an opaque
+ * handle. Each execution sends only the handle and the values for the
+ * parameters. The values are validated against the declared parameters and
+ * are given to the query as bindings, exactly as for the <code>$name</code>
+ * bindings of an ad hoc query. Since the values are never spliced into the
+ * text of the query, a value can not change the structure of the query.
+ * <p>
+ * The parsed AST (with its RDF Values resolved against the lexicon) is
+ * retained as a template and each execution is given a deep copy of that
+ * template, so the query is not parsed again. As for the
+ * {@link ParsedQueryCache}, the template is only retained if it does not
+ * depend on the state of the database and it is tied to the UUID of the
+ * TERM2ID index of the KB instance against which it was parsed. The optimized
+ * AST and the query plan are NOT retained. The optimizer specializes the plan
+ * for the bound values (and for the range counts of the access paths), so the
+ * plan is recomputed for each execution.
+ * <p>
+ * At most a configured #of prepared queries are retained. When that limit is
+ * reached, the least recently used prepared query is discarded. Clients which
+ * receive a <code>404 Not Found</code> for a handle should prepare the query
+ * again. Prepared queries are local to the service on which they were
+ * prepared.
+ * 
+ * @see ConfigParams#MAX_PREPARED_QUERIES
+ */
+public class PreparedQueryManager {
+
+    private static final transient Logger log = Logger
+            .getLogger(PreparedQueryManager.class);
+
+    /**
+     * The response header giving the handle for a prepared query.
+     */
+    public static final String HTTP_HEADER_PREPARED_QUERY = "X-BIGDATA-PREPARED-QUERY";
+
+    /**
+     * The maximum #of prepared queries.
+     */
+    private final int maxPreparedQueries;
+
+    /**
+     * LRU map from the handle onto the prepared query.
+     */
+    private final LinkedHashMap<String, PreparedQuery> queries;
+
+    /**
+     * The #of queries which were prepared.
+     */
+    private final AtomicLong nprepared = new AtomicLong();
+
+    /**
+     * The #of executions of prepared queries.
+     */
+    private final AtomicLong nexecuted = new AtomicLong();
+
+    /**
+     * The #of executions for which the query had to be parsed again because
+     * the parsed AST could not be reused.
+     */
+    private final AtomicLong nreparsed = new AtomicLong();
+
+    /**
+     * The #of prepared queries which were discarded to make room for new
+     * ones.
+     */
+    private final AtomicLong nevicted = new AtomicLong();
+
+    /**
+     * @param maxPreparedQueries
+     *            The maximum #of prepared queries to retain.
+     */
+    public PreparedQueryManager(final int maxPreparedQueries) {
+
+        if (maxPreparedQueries <= 0)
+            throw new IllegalArgumentException();
+
+        this.maxPreparedQueries = maxPreparedQueries;
+
+        this.queries = new LinkedHashMap<String, PreparedQuery>(16, .75f,
+                true/* accessOrder */) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, PreparedQuery> eldest) {
+
+                if (size() > PreparedQueryManager.this.maxPreparedQueries) {
+
+                    if (log.isInfoEnabled())
+                        log.info("Evicted: " + eldest.getValue());
+
+                    nevicted.incrementAndGet();
+
+                    return true;
+
+                }
+
+                return false;
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Prepare a query.
+     * 
+     * @param tripleStore
+     *            The KB instance against which the query will be run.
+     * @param queryStr
+     *            The query.
+     * @param baseURI
+     *            The base URI.
+     * @param params
+     *            The declarations of the parameters of the query (optional).
+     *            Each declaration has the form <code>name[:type]</code> (see
+     *            {@link Parameter#parse(String)}).
+     * 
+     * @return The prepared query.
+     * 
+     * @throws MalformedQueryException
+     *             if the query could not be parsed.
+     * @throws IllegalArgumentException
+     *             if a parameter declaration is malformed, is repeated, or
+     *             does not name a variable of the query.
+     */
+    public PreparedQuery prepare(final AbstractTripleStore tripleStore,
+            final String queryStr, final String baseURI, final String[] params)
+            throws MalformedQueryException {
+
+        final ASTContainer ast = new Bigdata2ASTSPARQLParser(tripleStore)
+                .parseQuery2(queryStr, baseURI);
+
+        final Map<String, Parameter> decls = new LinkedHashMap<String, Parameter>();
+
+        if (params != null) {
+
+            final Iterator<IVariable<?>> itr = BOpUtility
+                    .getSpannedVariables(ast.getOriginalAST());
+
+            final Set<String> vars = new HashSet<String>();
+
+            while (itr.hasNext()) {
+
+                vars.add(itr.next().getName());
+
+            }
+
+            for (String s : params) {
+
+                final Parameter p = Parameter.parse(s);
+
+                if (!vars.contains(p.name))
+                    throw new IllegalArgumentException(
+                            "Not a variable of the query: " + p.name);
+
+                if (decls.put(p.name, p) != null)
+                    throw new IllegalArgumentException(
+                            "Parameter declared more than once: " + p.name);
+
+            }
+
+        }
+
+        final PreparedQuery query = new PreparedQuery(
+                tripleStore.getNamespace(), queryStr, baseURI,
+                Collections.unmodifiableMap(decls));
+
+        query.setTemplate(ast, getTerm2IdUUID(tripleStore));
+
+        synchronized (queries) {
+
+            queries.put(query.handle, query);
+
+        }
+
+        nprepared.incrementAndGet();
+
+        if (log.isInfoEnabled())
+            log.info("Prepared: " + query);
+
+        return query;
+
+    }
+
+    /**
+     * Return the prepared query.
+     * 
+     * @param handle
+     *            The handle for the prepared query.
+     * 
+     * @return The prepared query -or- <code>null</code> if there is no such
+     *         prepared query (it was closed or discarded).
+     */
+    public PreparedQuery getPreparedQuery(final String handle) {
+
+        synchronized (queries) {
+
+            return queries.get(handle);
+
+        }
+
+    }
+
+    /**
+     * Discard a prepared query.
+     * 
+     * @param handle
+     *            The handle for the prepared query.
+     * 
+     * @return <code>true</code> iff there was such a prepared query.
+     */
+    public boolean closePreparedQuery(final String handle) {
+
+        synchronized (queries) {
+
+            return queries.remove(handle) != null;
+
+        }
+
+    }
+
+    /**
+     * Discard all prepared queries for the namespace. This must be invoked
+     * when a KB instance is destroyed.
+     * 
+     * @param namespace
+     *            The namespace of the KB instance.
+     */
+    public void invalidate(final String namespace) {
+
+        synchronized (queries) {
+
+            final Iterator<PreparedQuery> itr = queries.values().iterator();
+
+            while (itr.hasNext()) {
+
+                if (itr.next().namespace.equals(namespace)) {
+
+                    itr.remove();
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * The #of prepared queries.
+     */
+    public int getPreparedQueryCount() {
+
+        synchronized (queries) {
+
+            return queries.size();
+
+        }
+
+    }
+
+    /**
+     * Return the performance counters for the prepared queries.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counters = new CounterSet();
+
+        counters.addCounter("count", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(getPreparedQueryCount());
+            }
+        });
+
+        counters.addCounter("preparedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nprepared.get());
+            }
+        });
+
+        counters.addCounter("executedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nexecuted.get());
+            }
+        });
+
+        counters.addCounter("reparsedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nreparsed.get());
+            }
+        });
+
+        counters.addCounter("evictedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nevicted.get());
+            }
+        });
+
+        return counters;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getName() + "{maxPreparedQueries="
+                + maxPreparedQueries + ",size=" + getPreparedQueryCount()
+                + ",nprepared=" + nprepared + ",nexecuted=" + nexecuted
+                + ",nreparsed=" + nreparsed + ",nevicted=" + nevicted + "}";
+
+    }
+
+    private static UUID getTerm2IdUUID(final AbstractTripleStore tripleStore) {
+
+        return tripleStore.getLexiconRelation().getTerm2IdIndex()
+                .getIndexMetadata().getIndexUUID();
+
+    }
+
+    /**
+     * A declared parameter of a prepared query.
+     */
+    public static class Parameter {
+
+        /**
+         * The type of a parameter which accepts an IRI.
+         */
+        public static final String TYPE_URI = "uri";
+
+        /**
+         * The type of a parameter which accepts any literal.
+         */
+        public static final String TYPE_LITERAL = "literal";
+
+        /**
+         * The name of the variable.
+         */
+        public final String name;
+
+        /**
+         * The declared type of the parameter -or- <code>null</code> if any
+         * RDF Value is accepted. This is {@link #TYPE_URI},
+         * {@link #TYPE_LITERAL}, or the IRI of a datatype.
+         */
+        public final String type;
+
+        /**
+         * The datatype iff the parameter accepts only literals having that
+         * datatype.
+         */
+        private final URI datatype;
+
+        private Parameter(final String name, final String type) {
+
+            this.name = name;
+
+            this.type = type;
+
+            this.datatype = type == null || TYPE_URI.equals(type)
+                    || TYPE_LITERAL.equals(type) ? null : new URIImpl(type);
+
+        }
+
+        /**
+         * Parse a parameter declaration. The declaration has the form
+         * <code>name[:type]</code> where the name is the name of a variable of
+         * the query (optionally prefixed by <code>?</code> or <code>$</code>
+         * ) and the type is one of:
+         * <dl>
+         * <dt>(none)</dt>
+         * <dd>Any RDF Value.</dd>
+         * <dt>{@value #TYPE_URI}</dt>
+         * <dd>An IRI.</dd>
+         * <dt>{@value #TYPE_LITERAL}</dt>
+         * <dd>Any literal.</dd>
+         * <dt><code>&lt;datatypeIRI&gt;</code></dt>
+         * <dd>A literal having that datatype. A plain literal is accepted and
+         * given the datatype. The lexical form is checked for the XML Schema
+         * datatypes.</dd>
+         * </dl>
+         * For example, <code>age:&lt;http://www.w3.org/2001/XMLSchema#int&gt;</code>.
+         * 
+         * @throws IllegalArgumentException
+         *             if the declaration is malformed.
+         */
+        public static Parameter parse(final String s) {
+
+            final int pos = s.indexOf(':');
+
+            String name = (pos == -1 ? s : s.substring(0, pos)).trim();
+
+            if (name.startsWith("?") || name.startsWith("$"))
+                name = name.substring(1);
+
+            if (name.length() == 0)
+                throw new IllegalArgumentException(
+                        "Parameter name is required: " + s);
+
+            if (pos == -1)
+                return new Parameter(name, null/* type */);
+
+            final String type = s.substring(pos + 1).trim();
+
+            if (TYPE_URI.equals(type) || TYPE_LITERAL.equals(type))
+                return new Parameter(name, type);
+
+            if (type.length() > 2 && type.startsWith("<")
+                    && type.endsWith(">"))
+                return new Parameter(name, type.substring(1,
+                        type.length() - 1));
+
+            throw new IllegalArgumentException("Bad parameter type: " + s);
+
+        }
+
+        /**
+         * Check a value against the declared type of the parameter.
+         * 
+         * @return The value to be bound (a plain literal given for a datatype
+         *         parameter is returned with that datatype).
+         * 
+         * @throws IllegalArgumentException
+         *             if the value is not of the declared type.
+         */
+        public Value check(final Value v) {
+
+            if (type == null)
+                return v;
+
+            if (TYPE_URI.equals(type)) {
+
+                if (!(v instanceof URI))
+                    throw new IllegalArgumentException("Parameter " + name
+                            + " requires an IRI, not: " + v);
+
+                return v;
+
+            }
+
+            if (!(v instanceof Literal))
+                throw new IllegalArgumentException("Parameter " + name
+                        + " requires a literal, not: " + v);
+
+            if (datatype == null)
+                return v;
+
+            Literal lit = (Literal) v;
+
+            if (lit.getDatatype() == null && lit.getLanguage() == null) {
+
+                lit = new LiteralImpl(lit.getLabel(), datatype);
+
+            } else if (!datatype.equals(lit.getDatatype())) {
+
+                throw new IllegalArgumentException("Parameter " + name
+                        + " requires a literal of datatype " + datatype
+                        + ", not: " + v);
+
+            }
+
+            if (XMLDatatypeUtil.isBuiltInDatatype(datatype)
+                    && !XMLDatatypeUtil.isValidValue(lit.getLabel(), datatype))
+                throw new IllegalArgumentException("Parameter " + name
+                        + " : Invalid value for " + datatype + " : "
+                        + lit.getLabel());
+
+            return lit;
+
+        }
+
+        @Override
+        public String toString() {
+
+            return type == null ? name : name + ":"
+                    + (datatype == null ? type : "<" + type + ">");
+
+        }
+
+    }
+
+    /**
+     * A prepared query.
+     */
+    public class PreparedQuery {
+
+        /**
+         * The handle for the prepared query.
+         */
+        public final String handle = UUID.randomUUID().toString();
+
+        /**
+         * The namespace of the KB instance against which the query was
+         * prepared.
+         */
+        public final String namespace;
+
+        /**
+         * The query.
+         */
+        public final String queryStr;
+
+        /**
+         * The base URI.
+         */
+        public final String baseURI;
+
+        /**
+         * The declared parameters, by name (immutable).
+         */
+        public final Map<String, Parameter> params;
+
+        /**
+         * The parsed AST -or- <code>null</code> if the parsed query may not be
+         * reused.
+         */
+        private ASTContainer template;
+
+        /**
+         * The UUID of the TERM2ID index against which the {@link #template}
+         * was resolved.
+         */
+        private UUID term2id;
+
+        private PreparedQuery(final String namespace, final String queryStr,
+                final String baseURI, final Map<String, Parameter> params) {
+
+            this.namespace = namespace;
+            this.queryStr = queryStr;
+            this.baseURI = baseURI;
+            this.params = params;
+
+        }
+
+        /**
+         * Retain a copy of the parsed AST iff it may be reused.
+         */
+        private synchronized void setTemplate(final ASTContainer ast,
+                final UUID term2id) {
+
+            if (ParsedQueryCache.isCacheable(ast.getOriginalAST())) {
+
+                this.template = ParsedQueryCache.copy(ast);
+
+                this.term2id = term2id;
+
+            }
+
+        }
+
+        /**
+         * Validate the values given for an execution of the prepared query.
+         * 
+         * @param values
+         *            The values, by parameter name.
+         * 
+         * @return The bindings for the query.
+         * 
+         * @throws IllegalArgumentException
+         *             unless there is a value of the declared type for each
+         *             declared parameter and no other values.
+         */
+        public Map<String, Value> bind(final Map<String, Value> values) {
+
+            for (String name : values.keySet()) {
+
+                if (!params.containsKey(name))
+                    throw new IllegalArgumentException(
+                            "Not a parameter of the prepared query: " + name);
+
+            }
+
+            final Map<String, Value> bindings = new LinkedHashMap<String, Value>();
+
+            for (Parameter p : params.values()) {
+
+                final Value v = values.get(p.name);
+
+                if (v == null)
+                    throw new IllegalArgumentException(
+                            "No value for parameter: " + p.name);
+
+                bindings.put(p.name, p.check(v));
+
+            }
+
+            return bindings;
+
+        }
+
+        /**
+         * Return a new {@link ASTContainer} for an execution of the prepared
+         * query. This is a copy of the parsed AST unless the query must be
+         * parsed again.
+         * 
+         * @param tripleStore
+         *            The KB view against which the query will be run.
+         * 
+         * @throws MalformedQueryException
+         */
+        public ASTContainer newASTContainer(
+                final AbstractTripleStore tripleStore)
+                throws MalformedQueryException {
+
+            final long begin = System.nanoTime();
+
+            final UUID uuid = getTerm2IdUUID(tripleStore);
+
+            nexecuted.incrementAndGet();
+
+            final ASTContainer t;
+            synchronized (this) {
+                t = template != null && uuid.equals(term2id) ? template : null;
+            }
+
+            if (t != null) {
+
+                final ASTContainer ast = ParsedQueryCache.copy(t);
+
+                ast.setQueryParseTime(System.nanoTime() - begin);
+
+                return ast;
+
+            }
+
+            nreparsed.incrementAndGet();
+
+            final ASTContainer ast = new Bigdata2ASTSPARQLParser(tripleStore)
+                    .parseQuery2(queryStr, baseURI);
+
+            setTemplate(ast, uuid);
+
+            return ast;
+
+        }
+
+        @Override
+        public String toString() {
+
+            return getClass().getName() + "{handle=" + handle + ",namespace="
+                    + namespace + ",params=" + params.values() + ",query="
+                    + queryStr + "}";
+
+        }
+
+    }
+
+}
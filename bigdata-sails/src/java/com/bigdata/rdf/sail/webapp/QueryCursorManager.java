@@ -0,0 +1,808 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandler;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.impl.MapBindingSet;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.solutions.SolutionSetStream;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.io.DirectBufferPool;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rwstore.sector.MemStore;
+import com.bigdata.rwstore.sector.MemoryManager;
+import com.bigdata.rwstore.sector.MemoryManagerOutOfMemory;
+import com.bigdata.stream.Stream.StreamIndexMetadata;
+import com.bigdata.util.InnerCause;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * Server-side cursors for paging through the solutions of a SPARQL SELECT
+ * query.
+ * <p>
+ * The query is evaluated exactly once. Its solutions are encoded (as
+ * {@link IV}s together with their cached RDF {@link Value}s) onto a
+ * {@link SolutionSetStream} backed by a {@link MemStore} allocation context
+ * on the native heap. Each page is then decoded from that stream. Since all
+ * pages are read from the same materialized result, the pages are mutually
+ * consistent regardless of the writes which are committed while the client
+ * is paging through the cursor, and no read lock needs to be held against the
+ * database once the cursor is open.
+ * <p>
+ * The stream is read sequentially. The cursor remembers its position, so
+ * requesting the pages in order costs only the decode of the solutions on
+ * each page. Requesting an earlier page rewinds the cursor to the start of the
+ * stream.
+ * <p>
+ * A cursor which has not been accessed for longer than the configured timeout
+ * is closed and its memory is released. Expired cursors are reaped when
+ * cursors are opened or accessed, so there is no background thread.
+ * <p>
+ * The native memory used by all cursors is bounded. A query whose solutions
+ * would exceed the remaining memory is refused and its partial cursor is
+ * closed.
+ * 
+ * @see ConfigParams#CURSOR_TIMEOUT
+ * @see ConfigParams#MAX_CURSORS
+ * @see ConfigParams#CURSOR_MAX_MEMORY
+ */
+public class QueryCursorManager {
+
+    private static final transient Logger log = Logger
+            .getLogger(QueryCursorManager.class);
+
+    /**
+     * The response header giving the token for the cursor.
+     */
+    public static final String HTTP_HEADER_CURSOR = "X-BIGDATA-CURSOR";
+
+    /**
+     * The response header giving the total #of solutions in the cursor.
+     */
+    public static final String HTTP_HEADER_CURSOR_SIZE = "X-BIGDATA-CURSOR-SIZE";
+
+    /**
+     * The response header giving the offset of the first solution on the page.
+     */
+    public static final String HTTP_HEADER_CURSOR_OFFSET = "X-BIGDATA-CURSOR-OFFSET";
+
+    /**
+     * The #of solutions on a page when the page size is not specified.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * The #of solutions in each chunk written onto the stream.
+     */
+    private static final int CHUNK_SIZE = 100;
+
+    /**
+     * The cursor timeout in milliseconds.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * The maximum #of open cursors.
+     */
+    private final int maxCursors;
+
+    /**
+     * One permit for each cursor which may be opened. A permit is acquired
+     * before a cursor is created and released when that cursor is closed.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The maximum #of bytes of native memory used by the cursors.
+     */
+    private final long maxMemory;
+
+    /**
+     * The native memory from which the cursors are allocated.
+     */
+    private final MemoryManager mmgr;
+
+    /**
+     * The open cursors.
+     */
+    private final ConcurrentHashMap<String, QueryCursor> cursors = new ConcurrentHashMap<String, QueryCursor>();
+
+    /**
+     * The #of cursors which were opened.
+     */
+    private final AtomicLong nopened = new AtomicLong();
+
+    /**
+     * The #of cursors which were closed because they were not accessed within
+     * the timeout.
+     */
+    private final AtomicLong nexpired = new AtomicLong();
+
+    /**
+     * 
+     * @param timeoutMillis
+     *            The #of milliseconds after which a cursor which has not been
+     *            accessed will be closed.
+     * @param maxCursors
+     *            The maximum #of open cursors.
+     * @param maxMemory
+     *            The maximum #of bytes of native memory used by the cursors.
+     *            This is rounded up to a multiple of the buffer capacity of
+     *            the {@link DirectBufferPool}.
+     */
+    public QueryCursorManager(final long timeoutMillis, final int maxCursors,
+            final long maxMemory) {
+
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException();
+
+        if (maxCursors <= 0)
+            throw new IllegalArgumentException();
+
+        if (maxMemory <= 0)
+            throw new IllegalArgumentException();
+
+        this.timeoutMillis = timeoutMillis;
+
+        this.maxCursors = maxCursors;
+
+        this.permits = new Semaphore(maxCursors);
+
+        this.maxMemory = maxMemory;
+
+        final DirectBufferPool pool = DirectBufferPool.INSTANCE;
+
+        final long sectors = (maxMemory + pool.getBufferCapacity() - 1)
+                / pool.getBufferCapacity();
+
+        this.mmgr = new MemoryManager(pool,
+                (int) Math.min(Integer.MAX_VALUE, sectors), false/* blocks */,
+                null/* properties */);
+
+    }
+
+    /**
+     * Drain the solutions from a query into a new cursor. The caller remains
+     * responsible for closing the query result.
+     * 
+     * @param namespace
+     *            The namespace of the KB against which the query was run.
+     * @param vf
+     *            The value factory for that KB.
+     * @param result
+     *            The solutions.
+     * 
+     * @return The cursor.
+     * 
+     * @throws QueryRejectedException
+     *             if the maximum #of cursors are already open or if the
+     *             solutions would exceed the memory available to the cursors.
+     */
+    public QueryCursor newCursor(final String namespace,
+            final BigdataValueFactory vf, final TupleQueryResult result)
+            throws QueryEvaluationException {
+
+        reap();
+
+        if (!permits.tryAcquire()) {
+
+            throw new QueryRejectedException("Too many open cursors: "
+                    + cursors.size(), getRetryAfterSeconds());
+
+        }
+
+        final QueryCursor cursor;
+        try {
+
+            cursor = new QueryCursor(namespace, result.getBindingNames(),
+                    new MemStore(mmgr.createAllocationContext()));
+
+        } catch (RuntimeException ex) {
+
+            permits.release();
+
+            throw ex;
+
+        }
+
+        try {
+
+            cursor.stream.put(new SolutionChunkIterator(vf, result));
+
+        } catch (RuntimeException ex) {
+
+            // Releases the memory and the permit.
+            cursor.close();
+
+            if (InnerCause.isInnerCause(ex, MemoryManagerOutOfMemory.class)) {
+
+                throw new QueryRejectedException(
+                        "Solutions exceed the memory available to cursors: maxMemory="
+                                + maxMemory, getRetryAfterSeconds());
+
+            }
+
+            // Unwrap the query evaluation exception.
+            if (ex.getCause() instanceof QueryEvaluationException)
+                throw (QueryEvaluationException) ex.getCause();
+
+            throw ex;
+
+        }
+
+        cursor.size = cursor.stream.rangeCount();
+
+        cursors.put(cursor.token, cursor);
+
+        nopened.incrementAndGet();
+
+        if (log.isInfoEnabled())
+            log.info("Opened: " + cursor);
+
+        return cursor;
+
+    }
+
+    /**
+     * The suggested delay before a refused request is retried. Cursors are
+     * released no later than the timeout.
+     */
+    private int getRetryAfterSeconds() {
+
+        return (int) Math.max(1L, timeoutMillis / 1000);
+
+    }
+
+    /**
+     * Return the cursor.
+     * 
+     * @param token
+     *            The token for the cursor.
+     * 
+     * @return The cursor -or- <code>null</code> if there is no such cursor
+     *         (it was closed or it expired).
+     */
+    public QueryCursor getCursor(final String token) {
+
+        reap();
+
+        final QueryCursor cursor = cursors.get(token);
+
+        if (cursor != null) {
+
+            cursor.lastAccessTime = System.currentTimeMillis();
+
+        }
+
+        return cursor;
+
+    }
+
+    /**
+     * Close the cursor, releasing its memory.
+     * 
+     * @param token
+     *            The token for the cursor.
+     * 
+     * @return <code>true</code> iff the cursor was open.
+     */
+    public boolean closeCursor(final String token) {
+
+        final QueryCursor cursor = cursors.remove(token);
+
+        if (cursor == null)
+            return false;
+
+        cursor.close();
+
+        return true;
+
+    }
+
+    /**
+     * Close any cursors which have not been accessed within the timeout.
+     */
+    void reap() {
+
+        final long now = System.currentTimeMillis();
+
+        final Iterator<QueryCursor> itr = cursors.values().iterator();
+
+        while (itr.hasNext()) {
+
+            final QueryCursor cursor = itr.next();
+
+            if (now - cursor.lastAccessTime > timeoutMillis) {
+
+                if (cursors.remove(cursor.token, cursor)) {
+
+                    if (log.isInfoEnabled())
+                        log.info("Expired: " + cursor);
+
+                    cursor.close();
+
+                    nexpired.incrementAndGet();
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Close all cursors and release the native memory.
+     */
+    void shutdownNow() {
+
+        for (String token : cursors.keySet()) {
+
+            closeCursor(token);
+
+        }
+
+        mmgr.close();
+
+    }
+
+    /**
+     * The #of open cursors.
+     */
+    public int getCursorCount() {
+
+        return cursors.size();
+
+    }
+
+    /**
+     * Return the performance counters for the cursors.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counters = new CounterSet();
+
+        counters.addCounter("openCount", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(getCursorCount());
+            }
+        });
+
+        counters.addCounter("openedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nopened.get());
+            }
+        });
+
+        counters.addCounter("expiredCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nexpired.get());
+            }
+        });
+
+        counters.addCounter("userBytes", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(mmgr.getUserBytes());
+            }
+        });
+
+        return counters;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getName() + "{timeout=" + timeoutMillis
+                + ",maxCursors=" + maxCursors + ",maxMemory=" + maxMemory
+                + ",ncursors=" + cursors.size()
+                + ",nopened=" + nopened + ",nexpired=" + nexpired + "}";
+
+    }
+
+    /**
+     * The materialized solutions for a query.
+     */
+    public class QueryCursor {
+
+        /**
+         * The token used by the client to address the cursor.
+         */
+        public final String token;
+
+        /**
+         * The namespace of the KB against which the query was run.
+         */
+        public final String namespace;
+
+        /**
+         * The projected variables.
+         */
+        private final List<String> bindingNames;
+
+        /**
+         * The backing store for the solutions.
+         */
+        private final MemStore store;
+
+        /**
+         * The encoded solutions.
+         */
+        private final SolutionSetStream stream;
+
+        /**
+         * The #of solutions.
+         */
+        private long size;
+
+        /**
+         * The last time the cursor was accessed.
+         */
+        private volatile long lastAccessTime;
+
+        /*
+         * The read position (guarded by [this]).
+         */
+        private ICloseableIterator<IBindingSet[]> itr;
+        private IBindingSet[] chunk;
+        private int chunkIndex;
+        private long position;
+        private boolean closed;
+
+        private QueryCursor(final String namespace,
+                final List<String> bindingNames, final MemStore store) {
+
+            this.token = UUID.randomUUID().toString();
+
+            this.namespace = namespace;
+
+            this.bindingNames = Collections
+                    .unmodifiableList(new ArrayList<String>(bindingNames));
+
+            this.store = store;
+
+            this.stream = SolutionSetStream.create(store,
+                    new StreamIndexMetadata(token, UUID.randomUUID()));
+
+            this.lastAccessTime = System.currentTimeMillis();
+
+        }
+
+        /**
+         * The projected variables.
+         */
+        public List<String> getBindingNames() {
+
+            return bindingNames;
+
+        }
+
+        /**
+         * The #of solutions.
+         */
+        public long size() {
+
+            return size;
+
+        }
+
+        /**
+         * The offset of the next solution which will be visited by
+         * {@link #writePage(long, int, TupleQueryResultHandler)}.
+         */
+        synchronized public long getPosition() {
+
+            return position;
+
+        }
+
+        /**
+         * Write a page of solutions.
+         * 
+         * @param offset
+         *            The offset of the first solution on the page.
+         * @param pageSize
+         *            The maximum #of solutions on the page.
+         * @param handler
+         *            The solutions are written onto this handler, including
+         *            the start and end of the result.
+         * 
+         * @return The #of solutions written.
+         */
+        synchronized public int writePage(final long offset,
+                final int pageSize, final TupleQueryResultHandler handler)
+                throws TupleQueryResultHandlerException {
+
+            if (offset < 0 || pageSize < 0)
+                throw new IllegalArgumentException();
+
+            if (closed)
+                throw new IllegalStateException("Cursor is closed: " + token);
+
+            if (itr == null || offset < position) {
+
+                // Rewind.
+                closeIterator();
+
+                itr = stream.get();
+
+                position = 0;
+
+            }
+
+            // Skip to the offset.
+            while (position < offset && nextSolution() != null) {
+                position++;
+            }
+
+            handler.startQueryResult(bindingNames);
+
+            int n = 0;
+
+            IBindingSet bset;
+            while (n < pageSize && (bset = nextSolution()) != null) {
+
+                handler.handleSolution(toBindingSet(bset));
+
+                position++;
+
+                n++;
+
+            }
+
+            handler.endQueryResult();
+
+            return n;
+
+        }
+
+        /**
+         * Return the next decoded solution -or- <code>null</code> if the
+         * solutions are exhausted.
+         */
+        private IBindingSet nextSolution() {
+
+            while (chunk == null || chunkIndex == chunk.length) {
+
+                if (!itr.hasNext())
+                    return null;
+
+                chunk = itr.next();
+
+                chunkIndex = 0;
+
+            }
+
+            return chunk[chunkIndex++];
+
+        }
+
+        /**
+         * Convert a decoded solution into an openrdf {@link BindingSet} using
+         * the cached RDF {@link Value}s.
+         */
+        private BindingSet toBindingSet(final IBindingSet bset) {
+
+            final MapBindingSet out = new MapBindingSet(bindingNames.size());
+
+            for (String name : bindingNames) {
+
+                final IConstant<?> c = bset.get(Var.var(name));
+
+                if (c == null)
+                    continue;
+
+                out.addBinding(name, ((IV<?, ?>) c.get()).getValue());
+
+            }
+
+            return out;
+
+        }
+
+        private void closeIterator() {
+
+            if (itr != null) {
+
+                itr.close();
+
+                itr = null;
+
+            }
+
+            chunk = null;
+
+            chunkIndex = 0;
+
+        }
+
+        synchronized private void close() {
+
+            if (closed)
+                return;
+
+            closed = true;
+
+            closeIterator();
+
+            // Release the allocation context.
+            store.close();
+
+            permits.release();
+
+        }
+
+        @Override
+        public String toString() {
+
+            return getClass().getName() + "{token=" + token + ",namespace="
+                    + namespace + ",size=" + size + "}";
+
+        }
+
+    }
+
+    /**
+     * Visits the solutions from a {@link TupleQueryResult} in chunks of
+     * {@link IBindingSet}s whose {@link IV}s have their RDF {@link Value}s
+     * cached so they will be written onto the stream together with the
+     * {@link IV}s. A value which is not in the lexicon (for example, one which
+     * was computed by the query) is represented by a mock {@link IV}.
+     */
+    private static class SolutionChunkIterator implements
+            ICloseableIterator<IBindingSet[]> {
+
+        private final BigdataValueFactory vf;
+
+        private final TupleQueryResult src;
+
+        public SolutionChunkIterator(final BigdataValueFactory vf,
+                final TupleQueryResult src) {
+
+            this.vf = vf;
+
+            this.src = src;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            try {
+                return src.hasNext();
+            } catch (QueryEvaluationException e) {
+                throw new RuntimeException(e);
+            }
+
+        }
+
+        @Override
+        public IBindingSet[] next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final List<IBindingSet> chunk = new ArrayList<IBindingSet>(
+                    CHUNK_SIZE);
+
+            try {
+
+                while (chunk.size() < CHUNK_SIZE && src.hasNext()) {
+
+                    chunk.add(toBindingSet(src.next()));
+
+                }
+
+            } catch (QueryEvaluationException e) {
+
+                throw new RuntimeException(e);
+
+            }
+
+            return chunk.toArray(new IBindingSet[chunk.size()]);
+
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private IBindingSet toBindingSet(final BindingSet src) {
+
+            final ListBindingSet bset = new ListBindingSet();
+
+            for (String name : src.getBindingNames()) {
+
+                final Value v = src.getValue(name);
+
+                if (v == null)
+                    continue;
+
+                final BigdataValue value = vf.asValue(v);
+
+                IV iv = value.getIV();
+
+                if (iv == null) {
+
+                    iv = TermId.mockIV(VTE.valueOf(value));
+
+                }
+
+                iv.setValue(value);
+
+                bset.set((IVariable) Var.var(name), new Constant<IV>(iv));
+
+            }
+
+            return bset;
+
+        }
+
+        @Override
+        public void remove() {
+
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public void close() {
+
+            // NOP - the caller closes the query result.
+
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Well-known exception thrown by the {@link QueryScheduler} when a request can
+ * not be admitted because the queue of waiting requests is saturated. This is
+ * reported to the client as <code>503 Service Unavailable</code> with a
+ * <code>Retry-After</code> header by
+ * {@link BigdataRDFServlet#launderThrowable(Throwable, javax.servlet.http.HttpServletResponse, String)}
+ * .
+ */
+public class QueryRejectedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The #of seconds after which the client may retry the request.
+     */
+    public final int retryAfterSeconds;
+
+    /**
+     * 
+     * @param msg
+     *            The message.
+     * @param retryAfterSeconds
+     *            The #of seconds after which the client may retry the
+     *            request.
+     */
+    public QueryRejectedException(final String msg, final int retryAfterSeconds) {
+
+        super(msg);
+
+        this.retryAfterSeconds = retryAfterSeconds;
+
+    }
+
+}
@@ -0,0 +1,693 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+
+/**
+ * Admission control and weighted fair scheduling for the SPARQL QUERY and
+ * UPDATE requests which are executed by the {@link BigdataRDFContext},
+ * including the queries which open a cursor and the queries of a batch.
+ * <p>
+ * Requests are queued by namespace and, within a namespace, by client. When a
+ * thread becomes available, the next request is taken from the namespace with
+ * the least virtual time and, within that namespace, from the client with the
+ * least virtual time. Each request is charged to its namespace and client in
+ * proportion to its cost divided by the weight of the namespace. A request is
+ * charged an estimated cost (a moving average of the service time of the
+ * requests recently executed against the same namespace) when it is started
+ * and the estimate is corrected when the request is done. This prevents a
+ * namespace issuing expensive analytic queries from starving the other
+ * namespaces, which continue to see their cheap queries scheduled promptly.
+ * <p>
+ * The #of requests which may execute concurrently against a single namespace
+ * may be bounded. When the #of waiting requests would exceed the configured
+ * capacity, the request is rejected with a {@link QueryRejectedException}
+ * whose <code>Retry-After</code> estimate is based on the current backlog and
+ * the average service time.
+ * 
+ * @see ConfigParams#QUERY_QUEUE_CAPACITY
+ * @see ConfigParams#NAMESPACE_QUERY_CONCURRENCY
+ * @see ConfigParams#NAMESPACE_QUERY_WEIGHTS
+ */
+public class QueryScheduler {
+
+    private static final transient Logger log = Logger
+            .getLogger(QueryScheduler.class);
+
+    /**
+     * The weight of the moving average of the service time given to the most
+     * recent observation.
+     */
+    private static final double ALPHA = 0.1;
+
+    /**
+     * The service on which the requests are executed.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum #of requests which will execute concurrently.
+     */
+    private final int maxRunning;
+
+    /**
+     * The maximum #of waiting requests -or- ZERO (0) if there is no limit.
+     */
+    private final int queueCapacity;
+
+    /**
+     * The maximum #of requests which will execute concurrently for a given
+     * namespace -or- ZERO (0) if there is no limit.
+     */
+    private final int namespaceConcurrency;
+
+    /**
+     * The weights for the namespaces. Namespaces which are not in this map
+     * have a weight of ONE (1).
+     */
+    private final Map<String, Integer> weights;
+
+    /**
+     * The namespaces having running or waiting requests (guarded by
+     * <code>this</code>).
+     */
+    private final Map<String, NamespaceQueue> namespaces = new LinkedHashMap<String, NamespaceQueue>();
+
+    /**
+     * The service time estimates for the namespaces (guarded by
+     * <code>this</code>). Unlike the {@link NamespaceQueue}s, these are
+     * retained when a namespace becomes idle so the next request for that
+     * namespace is charged a realistic cost rather than starting from zero.
+     */
+    private final Map<String, ServiceTimeEstimate> estimates = new HashMap<String, ServiceTimeEstimate>();
+
+    /**
+     * The virtual time of the most recently started request. Namespaces and
+     * clients which become active start from this virtual time so they can
+     * not claim the service for the period during which they were idle.
+     */
+    private double virtualTime = 0d;
+
+    /**
+     * The #of waiting requests.
+     */
+    private int nwaiting = 0;
+
+    /**
+     * The #of running requests.
+     */
+    private int nrunning = 0;
+
+    /**
+     * The moving average of the service time (nanoseconds) over all
+     * namespaces.
+     */
+    private double avgServiceNanos = 0d;
+
+    /**
+     * The #of requests which were rejected.
+     */
+    private long nrejected = 0L;
+
+    /**
+     * 
+     * @param executor
+     *            The service on which the requests will be executed.
+     * @param maxRunning
+     *            The maximum #of requests which will execute concurrently -or-
+     *            ZERO (0) if there is no limit.
+     * @param queueCapacity
+     *            The maximum #of waiting requests -or- ZERO (0) if there is no
+     *            limit.
+     * @param namespaceConcurrency
+     *            The maximum #of requests which will execute concurrently for
+     *            a given namespace -or- ZERO (0) if there is no limit.
+     * @param weights
+     *            The weights for the namespaces (optional). Namespaces which
+     *            are not in this map have a weight of ONE (1).
+     */
+    public QueryScheduler(final Executor executor, final int maxRunning,
+            final int queueCapacity, final int namespaceConcurrency,
+            final Map<String, Integer> weights) {
+
+        if (executor == null)
+            throw new IllegalArgumentException();
+
+        if (maxRunning < 0)
+            throw new IllegalArgumentException();
+
+        if (queueCapacity < 0)
+            throw new IllegalArgumentException();
+
+        if (namespaceConcurrency < 0)
+            throw new IllegalArgumentException();
+
+        this.executor = executor;
+
+        this.maxRunning = maxRunning == 0 ? Integer.MAX_VALUE : maxRunning;
+
+        this.queueCapacity = queueCapacity;
+
+        this.namespaceConcurrency = namespaceConcurrency;
+
+        this.weights = weights == null ? Collections
+                .<String, Integer> emptyMap() : weights;
+
+    }
+
+    /**
+     * Submit a request for eventual execution.
+     * 
+     * @param namespace
+     *            The namespace against which the request will run.
+     * @param client
+     *            An identifier for the client (typically its address).
+     * @param task
+     *            The request. If the task is a {@link Future} it will be
+     *            cancelled if the scheduler is shutdown before it runs.
+     * 
+     * @throws QueryRejectedException
+     *             if the request can not be admitted because too many
+     *             requests are already waiting.
+     */
+    public void execute(final String namespace, final String client,
+            final Runnable task) {
+
+        if (namespace == null)
+            throw new IllegalArgumentException();
+
+        if (task == null)
+            throw new IllegalArgumentException();
+
+        synchronized (this) {
+
+            NamespaceQueue nsq = namespaces.get(namespace);
+
+            if (nsq == null) {
+
+                final Integer weight = weights.get(namespace);
+
+                ServiceTimeEstimate est = estimates.get(namespace);
+
+                if (est == null) {
+
+                    est = new ServiceTimeEstimate();
+
+                    estimates.put(namespace, est);
+
+                }
+
+                nsq = new NamespaceQueue(namespace, weight == null ? 1
+                        : weight.intValue(), virtualTime, est);
+
+                namespaces.put(namespace, nsq);
+
+            }
+
+            final String clientKey = client == null ? "" : client;
+
+            ClientQueue cq = nsq.clients.get(clientKey);
+
+            if (cq == null) {
+
+                cq = new ClientQueue(clientKey, nsq.clientVirtualTime);
+
+                nsq.clients.put(clientKey, cq);
+
+            }
+
+            cq.tasks.add(task);
+
+            nsq.nwaiting++;
+
+            nwaiting++;
+
+            dispatch();
+
+            if (queueCapacity != 0 && nwaiting > queueCapacity
+                    && cq.tasks.peekLast() == task) {
+
+                /*
+                 * The request could not be started and the queue is
+                 * saturated.
+                 */
+
+                cq.tasks.removeLast();
+
+                nsq.nwaiting--;
+
+                nwaiting--;
+
+                nrejected++;
+
+                if (cq.tasks.isEmpty())
+                    nsq.clients.remove(clientKey);
+
+                if (nsq.isIdle())
+                    namespaces.remove(namespace);
+
+                throw new QueryRejectedException("Queue is saturated: namespace="
+                        + namespace + ", nwaiting=" + nwaiting + ", nrunning="
+                        + nrunning, getRetryAfterSeconds());
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Start waiting requests until there are no more threads or no more
+     * requests which are eligible to run.
+     */
+    private void dispatch() {
+
+        assert Thread.holdsLock(this);
+
+        while (nrunning < maxRunning && nwaiting > 0) {
+
+            // Choose the eligible namespace with the least virtual time.
+            NamespaceQueue nsq = null;
+
+            for (NamespaceQueue t : namespaces.values()) {
+
+                if (t.nwaiting == 0)
+                    continue;
+
+                if (namespaceConcurrency != 0
+                        && t.nrunning >= namespaceConcurrency)
+                    continue;
+
+                if (nsq == null || t.virtualTime < nsq.virtualTime)
+                    nsq = t;
+
+            }
+
+            if (nsq == null) {
+
+                // Nothing is eligible to run.
+                return;
+
+            }
+
+            // Choose the client with the least virtual time.
+            ClientQueue cq = null;
+
+            for (ClientQueue t : nsq.clients.values()) {
+
+                if (t.tasks.isEmpty())
+                    continue;
+
+                if (cq == null || t.virtualTime < cq.virtualTime)
+                    cq = t;
+
+            }
+
+            final Runnable task = cq.tasks.removeFirst();
+
+            nsq.nwaiting--;
+
+            nwaiting--;
+
+            nsq.nrunning++;
+
+            nrunning++;
+
+            virtualTime = Math.max(virtualTime, nsq.virtualTime);
+
+            nsq.clientVirtualTime = Math.max(nsq.clientVirtualTime,
+                    cq.virtualTime);
+
+            // Charge the estimated cost.
+            final double estimate = nsq.estimate.avgServiceNanos;
+
+            nsq.virtualTime += estimate / nsq.weight;
+
+            cq.virtualTime += estimate;
+
+            try {
+
+                executor.execute(new ScheduledTask(nsq, cq, task, estimate));
+
+            } catch (RejectedExecutionException ex) {
+
+                // The executor service was shutdown.
+                log.warn("Could not run task: " + ex);
+
+                release(nsq, cq, estimate, 0L/* elapsed */);
+
+                if (task instanceof Future)
+                    ((Future<?>) task).cancel(true/* mayInterruptIfRunning */);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Release the thread for a request and start any waiting requests.
+     */
+    synchronized private void done(final NamespaceQueue nsq,
+            final ClientQueue cq, final double estimate, final long elapsed) {
+
+        release(nsq, cq, estimate, elapsed);
+
+        dispatch();
+
+    }
+
+    /**
+     * Correct the charge for the request and update the moving averages.
+     */
+    private void release(final NamespaceQueue nsq, final ClientQueue cq,
+            final double estimate, final long elapsed) {
+
+        assert Thread.holdsLock(this);
+
+        nsq.nrunning--;
+
+        nrunning--;
+
+        nsq.virtualTime += (elapsed - estimate) / nsq.weight;
+
+        cq.virtualTime += (elapsed - estimate);
+
+        nsq.estimate.update(elapsed);
+
+        avgServiceNanos = (1 - ALPHA) * avgServiceNanos + ALPHA * elapsed;
+
+        if (cq.tasks.isEmpty() && nsq.clients.get(cq.client) == cq)
+            nsq.clients.remove(cq.client);
+
+        if (nsq.isIdle() && namespaces.get(nsq.namespace) == nsq) {
+
+            /*
+             * Note: The virtual time of an idle namespace is not retained.
+             * It is restarted from the scheduler's virtual time when the
+             * namespace becomes active again. The service time estimate is
+             * retained.
+             */
+            namespaces.remove(nsq.namespace);
+
+        }
+
+    }
+
+    /**
+     * Return an estimate of the #of seconds until a request would be able to
+     * start (at least one).
+     */
+    synchronized int getRetryAfterSeconds() {
+
+        final int nthreads = maxRunning == Integer.MAX_VALUE ? 1 : maxRunning;
+
+        final double nanos = (nwaiting + 1) * avgServiceNanos / nthreads;
+
+        return (int) Math.max(1L, (long) Math.ceil(nanos / 1e9));
+
+    }
+
+    /**
+     * Return the moving average of the service time (nanoseconds) of the
+     * requests executed against the namespace -or- ZERO (0) if no request
+     * has been executed against that namespace.
+     */
+    synchronized double getServiceTimeEstimate(final String namespace) {
+
+        final ServiceTimeEstimate est = estimates.get(namespace);
+
+        return est == null ? 0d : est.avgServiceNanos;
+
+    }
+
+    /**
+     * Cancel all waiting requests which are {@link Future}s.
+     */
+    void shutdownNow() {
+
+        final LinkedList<Runnable> cancelled = new LinkedList<Runnable>();
+
+        synchronized (this) {
+
+            for (NamespaceQueue nsq : namespaces.values()) {
+
+                for (ClientQueue cq : nsq.clients.values()) {
+
+                    cancelled.addAll(cq.tasks);
+
+                    nsq.nwaiting -= cq.tasks.size();
+
+                    nwaiting -= cq.tasks.size();
+
+                    cq.tasks.clear();
+
+                }
+
+            }
+
+            final Iterator<NamespaceQueue> itr = namespaces.values()
+                    .iterator();
+
+            while (itr.hasNext()) {
+
+                if (itr.next().isIdle())
+                    itr.remove();
+
+            }
+
+        }
+
+        for (Runnable task : cancelled) {
+
+            if (task instanceof Future)
+                ((Future<?>) task).cancel(true/* mayInterruptIfRunning */);
+
+        }
+
+    }
+
+    /**
+     * The #of waiting requests.
+     */
+    synchronized public int getWaitingCount() {
+
+        return nwaiting;
+
+    }
+
+    /**
+     * The #of running requests.
+     */
+    synchronized public int getRunningCount() {
+
+        return nrunning;
+
+    }
+
+    /**
+     * The #of requests which were rejected.
+     */
+    synchronized public long getRejectedCount() {
+
+        return nrejected;
+
+    }
+
+    /**
+     * Return the performance counters for the scheduler.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counters = new CounterSet();
+
+        counters.addCounter("waitingCount", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(getWaitingCount());
+            }
+        });
+
+        counters.addCounter("runningCount", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(getRunningCount());
+            }
+        });
+
+        counters.addCounter("rejectedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(getRejectedCount());
+            }
+        });
+
+        return counters;
+
+    }
+
+    @Override
+    synchronized public String toString() {
+
+        return getClass().getName() + "{maxRunning=" + maxRunning
+                + ",queueCapacity=" + queueCapacity + ",namespaceConcurrency="
+                + namespaceConcurrency + ",nwaiting=" + nwaiting
+                + ",nrunning=" + nrunning + ",nrejected=" + nrejected + "}";
+
+    }
+
+    /**
+     * Runs a request and reports its service time to the scheduler.
+     */
+    private class ScheduledTask implements Runnable {
+
+        private final NamespaceQueue nsq;
+        private final ClientQueue cq;
+        private final Runnable task;
+        private final double estimate;
+
+        ScheduledTask(final NamespaceQueue nsq, final ClientQueue cq,
+                final Runnable task, final double estimate) {
+            this.nsq = nsq;
+            this.cq = cq;
+            this.task = task;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public void run() {
+
+            final long begin = System.nanoTime();
+
+            try {
+
+                task.run();
+
+            } finally {
+
+                done(nsq, cq, estimate, System.nanoTime() - begin);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * The requests waiting for a namespace.
+     */
+    private static class NamespaceQueue {
+
+        final String namespace;
+
+        final int weight;
+
+        /**
+         * The waiting requests by client.
+         */
+        final Map<String, ClientQueue> clients = new LinkedHashMap<String, ClientQueue>();
+
+        double virtualTime;
+
+        /**
+         * The virtual time of the most recently started request for this
+         * namespace as charged to its client.
+         */
+        double clientVirtualTime = 0d;
+
+        /**
+         * The service time estimate for the namespace.
+         */
+        final ServiceTimeEstimate estimate;
+
+        int nwaiting = 0;
+
+        int nrunning = 0;
+
+        NamespaceQueue(final String namespace, final int weight,
+                final double virtualTime, final ServiceTimeEstimate estimate) {
+            this.namespace = namespace;
+            this.weight = weight;
+            this.virtualTime = virtualTime;
+            this.estimate = estimate;
+        }
+
+        boolean isIdle() {
+            return nwaiting == 0 && nrunning == 0;
+        }
+
+    }
+
+    /**
+     * The moving average of the service time of the requests executed against
+     * some namespace.
+     */
+    private static class ServiceTimeEstimate {
+
+        double avgServiceNanos = 0d;
+
+        long ndone = 0L;
+
+        void update(final long elapsed) {
+            avgServiceNanos = ndone == 0 ? elapsed : (1 - ALPHA)
+                    * avgServiceNanos + ALPHA * elapsed;
+            ndone++;
+        }
+
+    }
+
+    /**
+     * The requests waiting for a client of some namespace.
+     */
+    private static class ClientQueue {
+
+        final String client;
+
+        final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+        double virtualTime;
+
+        ClientQueue(final String client, final double virtualTime) {
+            this.client = client;
+            this.virtualTime = virtualTime;
+        }
+
+    }
+
+}
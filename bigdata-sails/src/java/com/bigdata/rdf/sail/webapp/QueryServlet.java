@@ -31,10 +31,13 @@ import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
@@ -51,7 +54,15 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultWriterRegistry;
+import org.openrdf.query.resultio.sparqljson.SPARQLBooleanJSONWriter;
+import org.openrdf.query.resultio.sparqljson.SPARQLResultsJSONWriter;
 import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailQuery;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.RDFWriterRegistry;
@@ -65,6 +76,7 @@ import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.engine.QueryLog;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.bop.engine.StaticAnalysisStat;
 import com.bigdata.bop.engine.StaticAnalysisStats;
 import com.bigdata.bop.fed.QueryEngineFactory;
@@ -73,12 +85,18 @@ import com.bigdata.journal.ITransactionService;
 import com.bigdata.journal.ITx;
 import com.bigdata.journal.TimestampUtility;
 import com.bigdata.mdi.PartitionLocator;
+import com.bigdata.rdf.model.BigdataValueFactory;
 import com.bigdata.rdf.sail.BigdataSail;
+import com.bigdata.rdf.sail.BigdataSailBooleanQuery;
 import com.bigdata.rdf.sail.BigdataSailQuery;
 import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import com.bigdata.rdf.sail.BigdataSailTupleQuery;
 import com.bigdata.rdf.sail.sparql.Bigdata2ASTSPARQLParser;
 import com.bigdata.rdf.sail.sparql.ast.SimpleNode;
 import com.bigdata.rdf.sail.webapp.BigdataRDFContext.AbstractQueryTask;
+import com.bigdata.rdf.sail.webapp.QueryCursorManager.QueryCursor;
+import com.bigdata.rdf.sail.webapp.PreparedQueryManager.PreparedQuery;
+import com.bigdata.rdf.sail.webapp.StandingQueryManager.StandingQuery;
 import com.bigdata.rdf.sail.webapp.BigdataRDFContext.RunningQuery;
 import com.bigdata.rdf.sail.webapp.BigdataRDFContext.UpdateTask;
 import com.bigdata.rdf.sail.webapp.client.ConnectOptions;
@@ -203,6 +221,86 @@ public class QueryServlet extends BigdataRDFServlet {
     *      transactions in the REST API</a>
     */
     static final transient String ATTR_TIMESTAMP = "timestamp";
+
+    /**
+     * The name of the URL query parameter which requests a server-side cursor.
+     * When given together with a SPARQL SELECT {@value #ATTR_QUERY}, the query
+     * is evaluated once, its solutions are retained by the server, and the
+     * first page is returned together with the token for the cursor in the
+     * {@value QueryCursorManager#HTTP_HEADER_CURSOR} response header. When
+     * given the token of an open cursor, the next page is returned. A DELETE
+     * request with the token closes the cursor.
+     * 
+     * @see QueryCursorManager
+     */
+    static final transient String ATTR_CURSOR = "cursor";
+
+    /**
+     * The name of the URL query parameter which specifies the offset of the
+     * first solution of the requested page of a cursor (default is the next
+     * solution after the last page that was returned).
+     */
+    static final transient String ATTR_OFFSET = "offset";
+
+    /**
+     * The name of the URL query parameter which specifies the maximum #of
+     * solutions on a page of a cursor (default
+     * {@value QueryCursorManager#DEFAULT_PAGE_SIZE}).
+     */
+    static final transient String ATTR_PAGE_SIZE = "pageSize";
+
+    /**
+     * The name of the URL query parameter which requests that the SPARQL
+     * SELECT and ASK queries given by the (repeated) {@value #ATTR_QUERY}
+     * parameter are evaluated in one round trip. The queries are evaluated in
+     * the given order against the same commit point and the response is a
+     * JSON array whose elements are the SPARQL JSON results for each query.
+     */
+    static final transient String ATTR_BATCH = "batch";
+
+    /**
+     * The name of the URL query parameter which requests that the SPARQL
+     * {@value #ATTR_QUERY} is prepared on the server for later execution. The
+     * (repeated) {@value #ATTR_PARAM} parameter declares the parameters of the
+     * query. The handle for the prepared query is returned as the response
+     * entity and in the {@value PreparedQueryManager#HTTP_HEADER_PREPARED_QUERY}
+     * response header.
+     * 
+     * @see PreparedQueryManager
+     */
+    static final transient String ATTR_PREPARE = "prepare";
+
+    /**
+     * The name of the URL query parameter which declares a parameter of a
+     * query which is being prepared using the syntax <code>name[:type]</code>.
+     * 
+     * @see PreparedQueryManager.Parameter#parse(String)
+     */
+    static final transient String ATTR_PARAM = "param";
+
+    /**
+     * The name of the URL query parameter giving the handle of a prepared
+     * query. A GET or POST request runs the prepared query using the values
+     * given by the <code>$name</code> parameters. A DELETE request discards
+     * the prepared query.
+     * 
+     * @see PreparedQueryManager
+     */
+    static final transient String ATTR_PREPARED = "prepared";
+
+    /**
+     * The name of the URL query parameter which registers the SPARQL SELECT
+     * {@value #ATTR_QUERY} as a standing query. The response is a stream of
+     * Server-Sent Events, each of which reports the solutions added to and
+     * removed from the result by a commit. The identifier of the standing
+     * query is given by the
+     * {@value StandingQueryManager#HTTP_HEADER_STANDING_QUERY} response
+     * header. A DELETE request with that identifier cancels the standing
+     * query.
+     * 
+     * @see StandingQueryManager
+     */
+    static final transient String ATTR_STANDING_QUERY = "standingQuery";
     
 //    /**
 //     * The name of the request attribute for the {@link AbstractQueryTask}.
@@ -228,6 +326,31 @@ public class QueryServlet extends BigdataRDFServlet {
             // SPARQL 1.1 UPDATE.
             doSparqlUpdate(req, resp);
             
+        } else if (req.getParameter(ATTR_CURSOR) != null) {
+
+            // Open a cursor or read the next page.
+            doCursor(req, resp);
+
+        } else if (req.getParameter(ATTR_BATCH) != null) {
+
+            // A batch of SELECT and ASK queries.
+            doBatchQuery(req, resp);
+
+        } else if (req.getParameter(ATTR_STANDING_QUERY) != null) {
+
+            // Register a standing query.
+            doStandingQuery(req, resp);
+
+        } else if (req.getParameter(ATTR_PREPARE) != null) {
+
+            // Prepare a query.
+            doPrepareQuery(req, resp);
+
+        } else if (req.getParameter(ATTR_PREPARED) != null) {
+
+            // Run a prepared query.
+            doPreparedQuery(req, resp);
+
         } else if (RESTServlet.hasMimeType(req, MIME_SPARQL_UPDATE)) {
             // SPARQL 1.1 UPDATE, see trac 711 for bug report motivating this case
             doSparqlUpdate(req, resp);
@@ -273,7 +396,19 @@ public class QueryServlet extends BigdataRDFServlet {
     protected void doGet(final HttpServletRequest req,
             final HttpServletResponse resp) throws IOException {
 
-        if (req.getParameter(ATTR_QUERY) != null) {
+        if (req.getParameter(ATTR_CURSOR) != null) {
+
+            doCursor(req, resp);
+
+        } else if (req.getParameter(ATTR_PREPARED) != null) {
+
+            doPreparedQuery(req, resp);
+
+        } else if (req.getParameter(ATTR_STANDING_QUERY) != null) {
+
+            doStandingQuery(req, resp);
+
+        } else if (req.getParameter(ATTR_QUERY) != null) {
             
             doSparqlQuery(req, resp);
             
@@ -546,7 +681,8 @@ public class QueryServlet extends BigdataRDFServlet {
 					 * Note: UPDATEs currently contend with QUERYs against the
 					 * same thread pool.
 					 */
-					context.queryService.execute(ft);
+					context.queryScheduler.execute(namespace,
+							req.getRemoteAddr(), ft);
 
 					// Wait for the Future.
 					ft.get();
@@ -645,193 +781,1267 @@ public class QueryServlet extends BigdataRDFServlet {
 
    }
 
-	/**
-     * Helper task for the SPARQL QUERY.
+    /**
+     * Open a server-side cursor for a SPARQL SELECT query and return its first
+     * page -or- return a page from an open cursor.
      * 
-     * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+     * @see #ATTR_CURSOR
      */
-    static class SparqlQueryTask extends AbstractRestApiTask<Void> {
+    private void doCursor(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
 
-		private final String queryStr;
-		private final BigdataRDFContext context;
-		private final boolean includeInferred;
-		private final Map<String, Value> bindings;
+        if (!isReadable(getServletContext(), req, resp)) {
+            // HA Quorum in use, but quorum is not met.
+            return;
+        }
 
-      public SparqlQueryTask(final HttpServletRequest req,
-            final HttpServletResponse resp, final String namespace,
-            final long timestamp, final String queryStr,
-            final boolean includeInferred, Map<String, Value> bindings,
-            final BigdataRDFContext context) {
+        final String queryStr = req.getParameter(ATTR_QUERY);
 
-         super(req, resp, namespace, timestamp);
+        final String token = req.getParameter(ATTR_CURSOR);
 
-         if (queryStr == null)
-            throw new IllegalArgumentException();
-         if (context == null)
-            throw new IllegalArgumentException();
+        final long offset;
+        final int pageSize;
+        try {
+            final String s1 = req.getParameter(ATTR_OFFSET);
+            final String s2 = req.getParameter(ATTR_PAGE_SIZE);
+            offset = s1 == null ? -1L : Long.parseLong(s1);
+            pageSize = s2 == null ? QueryCursorManager.DEFAULT_PAGE_SIZE
+                    : Integer.parseInt(s2);
+            if ((s1 != null && offset < 0) || pageSize <= 0)
+                throw new NumberFormatException();
+        } catch (NumberFormatException ex) {
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    ATTR_OFFSET + " and " + ATTR_PAGE_SIZE
+                            + " must be positive integers");
+            return;
+        }
 
-         this.queryStr = queryStr;
-         this.context = context;
-         this.includeInferred = includeInferred;
-         this.bindings = bindings;
-         
-      }
-        
-        @Override
-        final public boolean isReadOnly() {
-            return true;
+        // Conneg for the SPARQL results format.
+        final TupleQueryResultFormat format;
+        {
+            final List<String> acceptHeaders = Collections.list(req
+                    .getHeaders(ConnectOptions.ACCEPT_HEADER));
+            format = new ConnegUtil(
+                    ConnegUtil.getMimeTypeForQueryParameterQueryRequest(
+                            req.getParameter(OUTPUT_FORMAT_QUERY_PARAMETER),
+                            acceptHeaders.toArray(new String[acceptHeaders
+                                    .size()])))
+                    .getTupleQueryResultFormat(TupleQueryResultFormat.SPARQL);
         }
 
-        @Override
-        public Void call() throws Exception {
-            
-			BigdataSailRepositoryConnection conn = null;
-			try {
+        final QueryCursorManager cursorManager = getBigdataRDFContext()
+                .getQueryCursorManager();
 
-				conn = getQueryConnection();
+        if (queryStr == null) {
 
-				{
-					/*
-					 * Setup task to execute the query. The task is executed on
-					 * a thread pool. This bounds the possible concurrency of
-					 * query execution (as opposed to queries accepted for
-					 * eventual execution).
-					 * 
-					 * Note: If the client closes the connection, then the
-					 * response's InputStream will be closed and the task will
-					 * terminate rather than running on in the background with a
-					 * disconnected client.
-					 */
+            /*
+             * Read a page from an open cursor.
+             */
 
-					final OutputStream os = resp.getOutputStream();
+            final QueryCursor cursor = cursorManager.getCursor(token);
 
-					/*
-					 * Attempt to construct a task which we can use to evaluate
-					 * the query.
-					 */
+            if (cursor == null
+                    || !cursor.namespace.equals(getNamespace(req))) {
 
-					final AbstractQueryTask queryTask = context.getQueryTask(
-							conn, namespace, timestamp, queryStr, includeInferred, bindings,
-							null/* acceptOverride */, req, resp, os);
+                buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                        "Cursor not found: " + token);
 
-					// /*
-					// * Test the cache.
-					// */
-					// {
-					//
-					// req.setAttribute(ATTR_QUERY_TASK, queryTask);
-					//
-					// doCache(req, resp);
-					//
-					// if (resp.isCommitted()) {
-					// // Answered by the cache.
-					// return;
-					// }
-					//
-					// }
+                return;
 
-					final FutureTask<Void> ft = new FutureTask<Void>(queryTask);
+            }
 
-					if (log.isTraceEnabled())
-						log.trace("Will run query: " + queryStr);
+            try {
 
-					/*
-					 * Setup the response headers.
-					 */
+                writeCursorPage(resp, cursor, offset, pageSize, format);
 
-					resp.setStatus(HTTP_OK);
+            } catch (Throwable t) {
 
-					if (queryTask.explain) {
+                launderThrowable(t, resp, "CURSOR: " + token);
 
-						/*
-						 * Send back an explanation of the query execution, not
-						 * the query results.
-						 */
+            }
 
-						resp.setContentType(BigdataServlet.MIME_TEXT_HTML);
-						final Writer w = new OutputStreamWriter(os,
-								queryTask.charset);
-						try {
-							// Begin executing the query (asynchronous)
-							context.queryService.execute(ft);
-							// Send an explanation instead of the query results.
-							explainQuery(queryStr, queryTask, ft, w);
-						} finally {
-							w.flush();
-							w.close();
-							os.flush();
-							os.close();
-						}
+            return;
 
-					} else {
+        }
 
-						/*
-						 * Send back the query results.
-						 */
+        final Map<String, Value> bindings = parseBindings(req, resp);
+        if (bindings == null) {
+            // There was a problem with the bindings. An error response was
+            // already committed.
+            return;
+        }
 
-						resp.setContentType(queryTask.mimeType);
+        final boolean includeInferred = getBooleanValue(req, INCLUDE_INFERRED,
+                true/* default */);
 
-						if (queryTask.charset != null) {
+        try {
 
-							// Note: Binary encodings do not specify charset.
-							resp.setCharacterEncoding(queryTask.charset.name());
+            submitApiTask(
+                    new OpenCursorTask(req, resp, getNamespace(req),
+                            getTimestamp(req), queryStr, includeInferred,
+                            bindings, getConfig(getServletContext()).queryTimeout,
+                            getConfig(getServletContext())
+                                    .getQueryResourceLimits(getNamespace(req)),
+                            getBigdataRDFContext().getQueryScheduler(),
+                            cursorManager, offset, pageSize, format))
+                    .get();
 
-						}
+        } catch (Throwable t) {
 
-						if (isAttachment(queryTask.mimeType)) {
-							/*
-							 * Mark this as an attachment (rather than inline).
-							 * This is just a hint to the user agent. How the
-							 * user agent handles this hint is up to it.
-							 */
-							resp.setHeader("Content-disposition",
-									"attachment; filename=query"
-											+ queryTask.queryId + "."
-											+ queryTask.fileExt);
-						}
+            launderThrowable(t, resp, "CURSOR: queryStr=" + queryStr);
 
-						if (TimestampUtility.isCommitTime(queryTask.timestamp)) {
+        }
 
-							/*
-							 * A read against a commit time or a read-only tx.
-							 * Such results SHOULD be cached because the data
-							 * from which the response was constructed have
-							 * snapshot isolation. (Note: It is possible that
-							 * the commit point against which the query reads
-							 * will be aged out of database and that the query
-							 * would therefore fail if it were retried. This can
-							 * happen with the RWStore or in scale-out.)
-							 * 
-							 * Note: READ_COMMITTED requests SHOULD NOT be
-							 * cached. Such requests will read against then
-							 * current committed state of the database each time
-							 * they are processed.
-							 * 
-							 * Note: UNISOLATED queries SHOULD NOT be cached.
-							 * Such operations will read on (and write on) the
-							 * then current state of the unisolated indices on
-							 * the database each time they are processed. The
-							 * results of such operations could be different
-							 * with each request.
-							 * 
-							 * Note: Full read-write transaction requests SHOULD
-							 * NOT be cached unless they are queries and the
-							 * transaction scope is limited to the request
-							 * (rather than running across multiple requests).
-							 */
+    }
 
-							resp.addHeader("Cache-Control", "public");
+    /**
+     * Evaluate a batch of SPARQL SELECT and ASK queries in one round trip.
+     * 
+     * @see #ATTR_BATCH
+     */
+    private void doBatchQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
 
-							// to disable caching.
-							// r.addHeader("Cache-Control", "no-cache");
+        if (!isReadable(getServletContext(), req, resp)) {
+            // HA Quorum in use, but quorum is not met.
+            return;
+        }
 
-						}
+        final String[] queries = req.getParameterValues(ATTR_QUERY);
 
-						// Begin executing the query (asynchronous)
-						context.queryService.execute(ft);
+        if (queries == null || queries.length == 0) {
+
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    "Required parameter not found: " + ATTR_QUERY);
 
-						// Wait for the Future.
-						ft.get();
+            return;
+
+        }
+
+        final Map<String, Value> bindings = parseBindings(req, resp);
+        if (bindings == null) {
+            // There was a problem with the bindings. An error response was
+            // already committed.
+            return;
+        }
+
+        final boolean includeInferred = getBooleanValue(req, INCLUDE_INFERRED,
+                true/* default */);
+
+        try {
+
+            submitApiTask(
+                    new BatchQueryTask(req, resp, getNamespace(req),
+                            getTimestamp(req), queries, includeInferred,
+                            bindings, getConfig(getServletContext()).queryTimeout,
+                            getConfig(getServletContext())
+                                    .getQueryResourceLimits(getNamespace(req)),
+                            getBigdataRDFContext().getQueryScheduler()))
+                    .get();
+
+        } catch (Throwable t) {
+
+            launderThrowable(t, resp, "BATCH: nqueries=" + queries.length);
+
+        }
+
+    }
+
+    /**
+     * Prepare a SPARQL query for later execution.
+     * 
+     * @see #ATTR_PREPARE
+     */
+    private void doPrepareQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        if (!isReadable(getServletContext(), req, resp)) {
+            // HA Quorum in use, but quorum is not met.
+            return;
+        }
+
+        final String queryStr = getQueryString(req);
+
+        if (queryStr == null) {
+
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    "Required parameter not found: " + ATTR_QUERY);
+
+            return;
+
+        }
+
+        String baseURI = req.getParameter(BigdataRDFContext.BASE_URI);
+        if (baseURI == null) {
+            baseURI = req.getRequestURL().toString();
+        }
+
+        try {
+
+            submitApiTask(
+                    new PrepareQueryTask(req, resp, getNamespace(req),
+                            getTimestamp(req), queryStr, baseURI,
+                            req.getParameterValues(ATTR_PARAM),
+                            getBigdataRDFContext().getPreparedQueryManager()))
+                    .get();
+
+        } catch (Throwable t) {
+
+            launderThrowable(t, resp, "PREPARE: queryStr=" + queryStr);
+
+        }
+
+    }
+
+    /**
+     * Run a prepared SPARQL query.
+     * 
+     * @see #ATTR_PREPARED
+     */
+    private void doPreparedQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        if (!isReadable(getServletContext(), req, resp)) {
+            // HA Quorum in use, but quorum is not met.
+            return;
+        }
+
+        final String handle = req.getParameter(ATTR_PREPARED);
+
+        final String namespace = getNamespace(req);
+
+        final PreparedQuery preparedQuery = getBigdataRDFContext()
+                .getPreparedQueryManager().getPreparedQuery(handle);
+
+        if (preparedQuery == null || !preparedQuery.namespace.equals(namespace)) {
+
+            buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                    "Prepared query not found: " + handle);
+
+            return;
+
+        }
+
+        final Map<String, Value> values = parseBindings(req, resp);
+        if (values == null) {
+            // There was a problem with the bindings. An error response was
+            // already committed.
+            return;
+        }
+
+        final Map<String, Value> bindings;
+        try {
+            bindings = preparedQuery.bind(values);
+        } catch (IllegalArgumentException ex) {
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    ex.getMessage());
+            return;
+        }
+
+        final boolean includeInferred = getBooleanValue(req, INCLUDE_INFERRED,
+                true/* default */);
+
+        try {
+
+            submitApiTask(
+                    new SparqlQueryTask(req, resp, namespace,
+                            getTimestamp(req), preparedQuery, includeInferred,
+                            bindings, getBigdataRDFContext())).get();
+
+        } catch (Throwable t) {
+
+            launderThrowable(t, resp, "PREPARED: " + preparedQuery);
+
+        }
+
+    }
+
+    /**
+     * Discard a prepared query.
+     * 
+     * @see #ATTR_PREPARED
+     */
+    void doClosePreparedQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        final String handle = req.getParameter(ATTR_PREPARED);
+
+        if (getBigdataRDFContext().getPreparedQueryManager()
+                .closePreparedQuery(handle)) {
+
+            buildAndCommitResponse(resp, HTTP_OK, MIME_TEXT_PLAIN, "");
+
+        } else {
+
+            buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                    "Prepared query not found: " + handle);
+
+        }
+
+    }
+
+    /**
+     * Register a standing query and write the deltas for its result onto the
+     * response until the standing query is cancelled or the client goes away.
+     * <p>
+     * Note: The stream is written using the asynchronous servlet APIs so it
+     * does not hold a thread of the servlet container.
+     * 
+     * @see #ATTR_STANDING_QUERY
+     * @see StandingQueryResponse
+     */
+    private void doStandingQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        if (!isReadable(getServletContext(), req, resp)) {
+            // HA Quorum in use, but quorum is not met.
+            return;
+        }
+
+        final String queryStr = getQueryString(req);
+
+        if (queryStr == null) {
+
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    "Required parameter not found: " + ATTR_QUERY);
+
+            return;
+
+        }
+
+        if (!req.isAsyncSupported()) {
+
+            buildAndCommitResponse(resp, HTTP_NOTIMPLEMENTED, MIME_TEXT_PLAIN,
+                    "Standing queries require asynchronous requests");
+
+            return;
+
+        }
+
+        String baseURI = req.getParameter(BigdataRDFContext.BASE_URI);
+        if (baseURI == null) {
+            baseURI = req.getRequestURL().toString();
+        }
+
+        try {
+
+            submitApiTask(
+                    new StandingQueryTask(req, resp, getNamespace(req),
+                            getTimestamp(req), queryStr, baseURI,
+                            getConfig(getServletContext()).queryTimeout,
+                            getConfig(getServletContext())
+                                    .getQueryResourceLimits(getNamespace(req)),
+                            getBigdataRDFContext().getQueryScheduler(),
+                            getBigdataRDFContext().getStandingQueryManager()))
+                    .get();
+
+        } catch (Throwable t) {
+
+            launderThrowable(t, resp, "STANDING QUERY: queryStr=" + queryStr);
+
+        }
+
+    }
+
+    /**
+     * Register a standing query and start its stream. The initial result is
+     * evaluated on the {@link QueryScheduler} and written onto the stream
+     * once the request has been released by this task.
+     */
+    private static class StandingQueryTask extends AbstractRestApiTask<Void> {
+
+        private final String queryStr;
+        private final String baseURI;
+        private final long queryTimeout;
+        private final QueryResourceLimits queryResourceLimits;
+        private final QueryScheduler queryScheduler;
+        private final StandingQueryManager standingQueryManager;
+
+        public StandingQueryTask(final HttpServletRequest req,
+                final HttpServletResponse resp, final String namespace,
+                final long timestamp, final String queryStr,
+                final String baseURI, final long queryTimeout,
+                final QueryResourceLimits queryResourceLimits,
+                final QueryScheduler queryScheduler,
+                final StandingQueryManager standingQueryManager) {
+
+            super(req, resp, namespace, timestamp);
+
+            this.queryStr = queryStr;
+            this.baseURI = baseURI;
+            this.queryTimeout = queryTimeout;
+            this.queryResourceLimits = queryResourceLimits;
+            this.queryScheduler = queryScheduler;
+            this.standingQueryManager = standingQueryManager;
+
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final StandingQuery q;
+            try {
+
+                q = standingQueryManager.newStandingQuery(getNamespace(),
+                        queryStr, baseURI);
+
+            } catch (IllegalArgumentException ex) {
+
+                buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                        ex.getMessage());
+
+                return null;
+
+            }
+
+            if (q == null) {
+
+                buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                        "Not found: namespace=" + getNamespace());
+
+                return null;
+
+            }
+
+            final FutureTask<Void> ft = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    standingQueryManager.start(q, queryTimeout,
+                            queryResourceLimits);
+                }
+            }, null/* result */) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        // The scheduler was shutdown before the task ran.
+                        standingQueryManager.close(q, "Cancelled");
+                    }
+                }
+            };
+
+            try {
+
+                // Note: A rejection is reported before the stream is started.
+                queryScheduler.execute(getNamespace(), req.getRemoteAddr(), ft);
+
+            } catch (RuntimeException ex) {
+
+                standingQueryManager.close(q, ex.toString());
+
+                throw ex;
+
+            }
+
+            try {
+
+                resp.setStatus(HTTP_OK);
+
+                resp.setContentType(StandingQueryManager.MIME_EVENT_STREAM);
+
+                resp.setCharacterEncoding("UTF-8");
+
+                resp.setHeader("Cache-Control", "no-cache");
+
+                resp.setHeader(StandingQueryManager.HTTP_HEADER_STANDING_QUERY,
+                        q.id);
+
+                new StandingQueryResponse(req, resp, standingQueryManager, q)
+                        .start();
+
+            } catch (Exception ex) {
+
+                ft.cancel(true/* mayInterruptIfRunning */);
+
+                standingQueryManager.close(q, ex.toString());
+
+                throw ex;
+
+            }
+
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Cancel a standing query.
+     * 
+     * @see #ATTR_STANDING_QUERY
+     */
+    void doCancelStandingQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        final String id = req.getParameter(ATTR_STANDING_QUERY);
+
+        final StandingQueryManager standingQueryManager = getBigdataRDFContext()
+                .getStandingQueryManager();
+
+        final StandingQuery q = id == null ? null : standingQueryManager
+                .getStandingQuery(id);
+
+        if (q != null && q.namespace.equals(getNamespace(req))
+                && standingQueryManager.cancel(id)) {
+
+            buildAndCommitResponse(resp, HTTP_OK, MIME_TEXT_PLAIN, "");
+
+        } else {
+
+            buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                    "Standing query not found: " + id);
+
+        }
+
+    }
+
+    /**
+     * Close a server-side cursor.
+     * 
+     * @see #ATTR_CURSOR
+     */
+    void doCloseCursor(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        final String token = req.getParameter(ATTR_CURSOR);
+
+        if (getBigdataRDFContext().getQueryCursorManager().closeCursor(token)) {
+
+            buildAndCommitResponse(resp, HTTP_OK, MIME_TEXT_PLAIN, "");
+
+        } else {
+
+            buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                    "Cursor not found: " + token);
+
+        }
+
+    }
+
+    /**
+     * Run a task on the {@link QueryScheduler} and wait for its outcome. This
+     * subjects the task to the same admission control and fair scheduling as
+     * a SPARQL QUERY.
+     * 
+     * @throws QueryRejectedException
+     *             if the task is not admitted.
+     */
+    private static <T> T runScheduled(final QueryScheduler queryScheduler,
+            final String namespace, final HttpServletRequest req,
+            final Callable<T> task) throws InterruptedException,
+            ExecutionException {
+
+        final FutureTask<T> ft = new FutureTask<T>(task);
+
+        queryScheduler.execute(namespace, req.getRemoteAddr(), ft);
+
+        try {
+
+            return ft.get();
+
+        } finally {
+
+            // Interrupted while waiting.
+            ft.cancel(true/* mayInterruptIfRunning */);
+
+        }
+
+    }
+
+    /**
+     * Write a page from a cursor.
+     * 
+     * @param offset
+     *            The offset of the first solution on the page -or- <code>-1</code>
+     *            to continue from the current position of the cursor.
+     */
+    private static void writeCursorPage(final HttpServletResponse resp,
+            final QueryCursor cursor, final long offset, final int pageSize,
+            final TupleQueryResultFormat format) throws IOException,
+            TupleQueryResultHandlerException {
+
+        /*
+         * Note: The position and the page are not atomic with respect to a
+         * concurrent request for the same cursor when the offset is not
+         * specified. Clients which share a cursor should specify the offset.
+         */
+        final long first = offset == -1L ? cursor.getPosition() : offset;
+
+        resp.setStatus(HTTP_OK);
+
+        resp.setHeader(QueryCursorManager.HTTP_HEADER_CURSOR, cursor.token);
+
+        resp.setHeader(QueryCursorManager.HTTP_HEADER_CURSOR_SIZE,
+                Long.toString(cursor.size()));
+
+        resp.setHeader(QueryCursorManager.HTTP_HEADER_CURSOR_OFFSET,
+                Long.toString(first));
+
+        resp.setContentType(format.getDefaultMIMEType());
+
+        if (format.hasCharset()) {
+
+            resp.setCharacterEncoding(format.getCharset().name());
+
+        }
+
+        final OutputStream os = resp.getOutputStream();
+
+        try {
+
+            cursor.writePage(first, pageSize, TupleQueryResultWriterRegistry
+                    .getInstance().get(format).getWriter(os));
+
+            os.flush();
+
+        } finally {
+
+            os.close();
+
+        }
+
+    }
+
+    /**
+     * Helper task to evaluate a SPARQL SELECT query into a new server-side
+     * cursor and return the first page.
+     */
+    private static class OpenCursorTask extends AbstractRestApiTask<Void> {
+
+        private final String queryStr;
+        private final boolean includeInferred;
+        private final Map<String, Value> bindings;
+        private final long queryTimeout;
+        private final QueryResourceLimits queryResourceLimits;
+        private final QueryScheduler queryScheduler;
+        private final QueryCursorManager cursorManager;
+        private final long offset;
+        private final int pageSize;
+        private final TupleQueryResultFormat format;
+
+        public OpenCursorTask(final HttpServletRequest req,
+                final HttpServletResponse resp, final String namespace,
+                final long timestamp, final String queryStr,
+                final boolean includeInferred,
+                final Map<String, Value> bindings, final long queryTimeout,
+                final QueryResourceLimits queryResourceLimits,
+                final QueryScheduler queryScheduler,
+                final QueryCursorManager cursorManager, final long offset,
+                final int pageSize, final TupleQueryResultFormat format) {
+
+            super(req, resp, namespace, timestamp);
+
+            this.queryStr = queryStr;
+            this.includeInferred = includeInferred;
+            this.bindings = bindings;
+            this.queryTimeout = queryTimeout;
+            this.queryResourceLimits = queryResourceLimits;
+            this.queryScheduler = queryScheduler;
+            this.cursorManager = cursorManager;
+            this.offset = offset;
+            this.pageSize = pageSize;
+            this.format = format;
+
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            BigdataSailRepositoryConnection conn = null;
+            try {
+
+                conn = getQueryConnection();
+
+                final SailQuery query = conn.prepareQuery(QueryLanguage.SPARQL,
+                        queryStr, req.getRequestURL().toString());
+
+                if (!(query instanceof BigdataSailTupleQuery)) {
+
+                    buildAndCommitResponse(resp, HTTP_BADREQUEST,
+                            MIME_TEXT_PLAIN,
+                            "Cursors are only supported for SELECT queries");
+
+                    return null;
+
+                }
+
+                final BigdataSailTupleQuery tupleQuery = (BigdataSailTupleQuery) query;
+
+                if (queryTimeout > 0) {
+
+                    tupleQuery.getASTContainer().getOriginalAST()
+                            .setTimeout(queryTimeout);
+
+                }
+
+                if (!queryResourceLimits.isUnlimited()) {
+
+                    tupleQuery.getASTContainer().getOriginalAST()
+                            .setResourceLimits(queryResourceLimits);
+
+                }
+
+                tupleQuery.setIncludeInferred(includeInferred);
+
+                for (Map.Entry<String, Value> e : bindings.entrySet()) {
+
+                    tupleQuery.setBinding(e.getKey(), e.getValue());
+
+                }
+
+                final BigdataValueFactory valueFactory = conn.getTripleStore()
+                        .getValueFactory();
+
+                // Evaluate the query into the cursor.
+                final QueryCursor cursor = runScheduled(queryScheduler,
+                        getNamespace(), req, new Callable<QueryCursor>() {
+                            @Override
+                            public QueryCursor call() throws Exception {
+                                final TupleQueryResult result = tupleQuery
+                                        .evaluate();
+                                try {
+                                    return cursorManager.newCursor(
+                                            getNamespace(), valueFactory,
+                                            result);
+                                } finally {
+                                    result.close();
+                                }
+                            }
+                        });
+
+                writeCursorPage(resp, cursor, offset, pageSize, format);
+
+                return null;
+
+            } finally {
+
+                if (conn != null) {
+
+                    conn.close();
+
+                }
+
+            }
+
+        }
+
+    } // OpenCursorTask
+
+    /**
+     * Helper task to evaluate a batch of SPARQL SELECT and ASK queries. All
+     * queries are prepared before the response is started so a query which
+     * can not be parsed or which is not a SELECT or ASK query fails the batch
+     * with a single error response.
+     */
+    private static class BatchQueryTask extends AbstractRestApiTask<Void> {
+
+        private final String[] queries;
+        private final boolean includeInferred;
+        private final Map<String, Value> bindings;
+        private final long queryTimeout;
+        private final QueryResourceLimits queryResourceLimits;
+        private final QueryScheduler queryScheduler;
+
+        public BatchQueryTask(final HttpServletRequest req,
+                final HttpServletResponse resp, final String namespace,
+                final long timestamp, final String[] queries,
+                final boolean includeInferred,
+                final Map<String, Value> bindings, final long queryTimeout,
+                final QueryResourceLimits queryResourceLimits,
+                final QueryScheduler queryScheduler) {
+
+            super(req, resp, namespace, timestamp);
+
+            this.queries = queries;
+            this.includeInferred = includeInferred;
+            this.bindings = bindings;
+            this.queryTimeout = queryTimeout;
+            this.queryResourceLimits = queryResourceLimits;
+            this.queryScheduler = queryScheduler;
+
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            BigdataSailRepositoryConnection conn = null;
+            try {
+
+                conn = getQueryConnection();
+
+                final SailQuery[] prepared = new SailQuery[queries.length];
+
+                for (int i = 0; i < queries.length; i++) {
+
+                    final SailQuery query = conn.prepareQuery(
+                            QueryLanguage.SPARQL, queries[i], req
+                                    .getRequestURL().toString());
+
+                    if (!(query instanceof BigdataSailTupleQuery)
+                            && !(query instanceof BigdataSailBooleanQuery)) {
+
+                        buildAndCommitResponse(resp, HTTP_BADREQUEST,
+                                MIME_TEXT_PLAIN,
+                                "Batches may only contain SELECT and ASK queries: index="
+                                        + i);
+
+                        return null;
+
+                    }
+
+                    if (queryTimeout > 0) {
+
+                        ((BigdataSailQuery) query).getASTContainer()
+                                .getOriginalAST().setTimeout(queryTimeout);
+
+                    }
+
+                    if (!queryResourceLimits.isUnlimited()) {
+
+                        ((BigdataSailQuery) query).getASTContainer()
+                                .getOriginalAST()
+                                .setResourceLimits(queryResourceLimits);
+
+                    }
+
+                    query.setIncludeInferred(includeInferred);
+
+                    for (Map.Entry<String, Value> e : bindings.entrySet()) {
+
+                        query.setBinding(e.getKey(), e.getValue());
+
+                    }
+
+                    prepared[i] = query;
+
+                }
+
+                // Evaluate the batch.
+                runScheduled(queryScheduler, getNamespace(), req,
+                        new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                writeBatch(prepared);
+                                return null;
+                            }
+                        });
+
+                return null;
+
+            } finally {
+
+                if (conn != null) {
+
+                    conn.close();
+
+                }
+
+            }
+
+        }
+
+        /**
+         * Evaluate the prepared queries, writing their results onto the
+         * response.
+         */
+        private void writeBatch(final SailQuery[] prepared) throws Exception {
+
+            resp.setStatus(HTTP_OK);
+
+            resp.setContentType(MIME_JSON);
+
+            resp.setCharacterEncoding("UTF-8");
+
+            final OutputStream os = resp.getOutputStream();
+
+            try {
+
+                os.write('[');
+
+                for (int i = 0; i < prepared.length; i++) {
+
+                    if (i > 0)
+                        os.write(',');
+
+                    if (prepared[i] instanceof BigdataSailTupleQuery) {
+
+                        ((BigdataSailTupleQuery) prepared[i])
+                                .evaluate(new SPARQLResultsJSONWriter(os));
+
+                    } else {
+
+                        new SPARQLBooleanJSONWriter(os)
+                                .write(((BigdataSailBooleanQuery) prepared[i])
+                                        .evaluate());
+
+                    }
+
+                }
+
+                os.write(']');
+
+                os.flush();
+
+            } finally {
+
+                os.close();
+
+            }
+
+        }
+
+    } // BatchQueryTask
+
+    /**
+     * Helper task to prepare a SPARQL query. The query is parsed against the
+     * KB view for the request and the handle for the prepared query is
+     * returned.
+     */
+    private static class PrepareQueryTask extends AbstractRestApiTask<Void> {
+
+        private final String queryStr;
+        private final String baseURI;
+        private final String[] params;
+        private final PreparedQueryManager preparedQueryManager;
+
+        public PrepareQueryTask(final HttpServletRequest req,
+                final HttpServletResponse resp, final String namespace,
+                final long timestamp, final String queryStr,
+                final String baseURI, final String[] params,
+                final PreparedQueryManager preparedQueryManager) {
+
+            super(req, resp, namespace, timestamp);
+
+            this.queryStr = queryStr;
+            this.baseURI = baseURI;
+            this.params = params;
+            this.preparedQueryManager = preparedQueryManager;
+
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            BigdataSailRepositoryConnection conn = null;
+            try {
+
+                conn = getQueryConnection();
+
+                final PreparedQuery preparedQuery;
+                try {
+
+                    preparedQuery = preparedQueryManager.prepare(
+                            conn.getTripleStore(), queryStr, baseURI, params);
+
+                } catch (IllegalArgumentException ex) {
+
+                    buildAndCommitResponse(resp, HTTP_BADREQUEST,
+                            MIME_TEXT_PLAIN, ex.getMessage());
+
+                    return null;
+
+                }
+
+                resp.setHeader(PreparedQueryManager.HTTP_HEADER_PREPARED_QUERY,
+                        preparedQuery.handle);
+
+                buildAndCommitResponse(resp, HTTP_OK, MIME_TEXT_PLAIN,
+                        preparedQuery.handle);
+
+                return null;
+
+            } finally {
+
+                if (conn != null) {
+
+                    conn.close();
+
+                }
+
+            }
+
+        }
+
+    } // PrepareQueryTask
+
+	/**
+     * Helper task for the SPARQL QUERY.
+     * 
+     * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
+     */
+    static class SparqlQueryTask extends AbstractRestApiTask<Void> {
+
+		private final String queryStr;
+		private final BigdataRDFContext context;
+		private final boolean includeInferred;
+		private final Map<String, Value> bindings;
+		private final PreparedQuery preparedQuery;
+
+      public SparqlQueryTask(final HttpServletRequest req,
+            final HttpServletResponse resp, final String namespace,
+            final long timestamp, final String queryStr,
+            final boolean includeInferred, Map<String, Value> bindings,
+            final BigdataRDFContext context) {
+
+         this(req, resp, namespace, timestamp, queryStr, null/* preparedQuery */,
+               includeInferred, bindings, context);
+
+      }
+
+      /**
+       * Run a prepared query. The query is not parsed again unless the parsed
+       * query can not be reused.
+       */
+      public SparqlQueryTask(final HttpServletRequest req,
+            final HttpServletResponse resp, final String namespace,
+            final long timestamp, final PreparedQuery preparedQuery,
+            final boolean includeInferred, Map<String, Value> bindings,
+            final BigdataRDFContext context) {
+
+         this(req, resp, namespace, timestamp, preparedQuery.queryStr,
+               preparedQuery, includeInferred, bindings, context);
+
+      }
+
+      private SparqlQueryTask(final HttpServletRequest req,
+            final HttpServletResponse resp, final String namespace,
+            final long timestamp, final String queryStr,
+            final PreparedQuery preparedQuery, final boolean includeInferred,
+            Map<String, Value> bindings, final BigdataRDFContext context) {
+
+         super(req, resp, namespace, timestamp);
+
+         if (queryStr == null)
+            throw new IllegalArgumentException();
+         if (context == null)
+            throw new IllegalArgumentException();
+
+         this.queryStr = queryStr;
+         this.preparedQuery = preparedQuery;
+         this.context = context;
+         this.includeInferred = includeInferred;
+         this.bindings = bindings;
+         
+      }
+        
+        @Override
+        final public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            
+			BigdataSailRepositoryConnection conn = null;
+			try {
+
+				conn = getQueryConnection();
+
+				{
+					/*
+					 * Setup task to execute the query. The task is executed on
+					 * a thread pool. This bounds the possible concurrency of
+					 * query execution (as opposed to queries accepted for
+					 * eventual execution).
+					 * 
+					 * Note: If the client closes the connection, then the
+					 * response's InputStream will be closed and the task will
+					 * terminate rather than running on in the background with a
+					 * disconnected client.
+					 */
+
+					/*
+					 * When configured, the results are streamed to the client
+					 * using non-blocking I/O and this thread is released once
+					 * the query is running.
+					 */
+					final AsyncQueryResponse asyncResponse = context
+							.getConfig().asyncQueryResponse
+							&& req.isAsyncSupported()
+							&& req.getParameter(BigdataRDFContext.EXPLAIN) == null ? new AsyncQueryResponse(
+							req, resp) : null;
+
+					final OutputStream os = asyncResponse != null ? asyncResponse
+							: resp.getOutputStream();
+
+					/*
+					 * Attempt to construct a task which we can use to evaluate
+					 * the query.
+					 */
+
+					final AbstractQueryTask queryTask = preparedQuery == null ? context
+							.getQueryTask(conn, namespace, timestamp, queryStr,
+									includeInferred, bindings,
+									null/* acceptOverride */, req, resp, os)
+							: context.getQueryTask(conn, namespace, timestamp,
+									preparedQuery.newASTContainer(conn
+											.getTripleStore()),
+									preparedQuery.baseURI, includeInferred,
+									bindings, null/* acceptOverride */, req,
+									resp, os);
+
+					// /*
+					// * Test the cache.
+					// */
+					// {
+					//
+					// req.setAttribute(ATTR_QUERY_TASK, queryTask);
+					//
+					// doCache(req, resp);
+					//
+					// if (resp.isCommitted()) {
+					// // Answered by the cache.
+					// return;
+					// }
+					//
+					// }
+
+					final FutureTask<Void> ft = asyncResponse != null ? asyncResponse
+							.newFutureTask(queryTask, conn)
+							: new FutureTask<Void>(queryTask);
+
+					if (log.isTraceEnabled())
+						log.trace("Will run query: " + queryStr);
+
+					/*
+					 * Setup the response headers.
+					 */
+
+					resp.setStatus(HTTP_OK);
+
+					if (queryTask.explain) {
+
+						/*
+						 * Send back an explanation of the query execution, not
+						 * the query results.
+						 */
+
+						resp.setContentType(BigdataServlet.MIME_TEXT_HTML);
+						/*
+						 * Begin executing the query (asynchronous). This is
+						 * done before the response is committed so a request
+						 * which is not admitted can be reported to the client.
+						 */
+						context.queryScheduler.execute(namespace,
+								req.getRemoteAddr(), ft);
+						final Writer w = new OutputStreamWriter(os,
+								queryTask.charset);
+						try {
+							// Send an explanation instead of the query results.
+							explainQuery(queryStr, queryTask, ft, w);
+						} finally {
+							w.flush();
+							w.close();
+							os.flush();
+							os.close();
+						}
+
+					} else {
+
+						/*
+						 * Send back the query results.
+						 */
+
+						resp.setContentType(queryTask.mimeType);
+
+						if (queryTask.charset != null) {
+
+							// Note: Binary encodings do not specify charset.
+							resp.setCharacterEncoding(queryTask.charset.name());
+
+						}
+
+						if (isAttachment(queryTask.mimeType)) {
+							/*
+							 * Mark this as an attachment (rather than inline).
+							 * This is just a hint to the user agent. How the
+							 * user agent handles this hint is up to it.
+							 */
+							resp.setHeader("Content-disposition",
+									"attachment; filename=query"
+											+ queryTask.queryId + "."
+											+ queryTask.fileExt);
+						}
+
+						if (TimestampUtility.isCommitTime(queryTask.timestamp)) {
+
+							/*
+							 * A read against a commit time or a read-only tx.
+							 * Such results SHOULD be cached because the data
+							 * from which the response was constructed have
+							 * snapshot isolation. (Note: It is possible that
+							 * the commit point against which the query reads
+							 * will be aged out of database and that the query
+							 * would therefore fail if it were retried. This can
+							 * happen with the RWStore or in scale-out.)
+							 * 
+							 * Note: READ_COMMITTED requests SHOULD NOT be
+							 * cached. Such requests will read against then
+							 * current committed state of the database each time
+							 * they are processed.
+							 * 
+							 * Note: UNISOLATED queries SHOULD NOT be cached.
+							 * Such operations will read on (and write on) the
+							 * then current state of the unisolated indices on
+							 * the database each time they are processed. The
+							 * results of such operations could be different
+							 * with each request.
+							 * 
+							 * Note: Full read-write transaction requests SHOULD
+							 * NOT be cached unless they are queries and the
+							 * transaction scope is limited to the request
+							 * (rather than running across multiple requests).
+							 */
+
+							resp.addHeader("Cache-Control", "public");
+
+							// to disable caching.
+							// r.addHeader("Cache-Control", "no-cache");
+
+						}
+
+						// Begin executing the query (asynchronous)
+						context.queryScheduler.execute(namespace,
+								req.getRemoteAddr(), ft);
+
+						if (asyncResponse != null) {
+
+							// The connection is closed when the query is done.
+							conn = null;
+
+							try {
+								// Stream the results without blocking.
+								asyncResponse.start();
+							} catch (Throwable t) {
+								ft.cancel(true/* mayInterruptIfRunning */);
+								throw new RuntimeException(t);
+							}
+
+						} else {
+
+							// Wait for the Future.
+							ft.get();
+
+						}
 
 					}
 				}
@@ -239,6 +239,10 @@ public class RESTServlet extends BigdataRDFServlet {
                 || req.getParameter(QueryServlet.ATTR_HASSTMT) != null
                 || req.getParameter(QueryServlet.ATTR_GETSTMTS) != null
                 || req.getParameter(QueryServlet.ATTR_CONTEXTS) != null
+                || req.getParameter(QueryServlet.ATTR_CURSOR) != null
+                || req.getParameter(QueryServlet.ATTR_PREPARE) != null
+                || req.getParameter(QueryServlet.ATTR_PREPARED) != null
+                || req.getParameter(QueryServlet.ATTR_STANDING_QUERY) != null
                 // the two cases below were added to fix bug trac 711
                 || hasMimeType(req, BigdataRDFServlet.MIME_SPARQL_UPDATE)
                 || hasMimeType(req, BigdataRDFServlet.MIME_SPARQL_QUERY)
@@ -314,7 +318,8 @@ public class RESTServlet extends BigdataRDFServlet {
     }
 
     /**
-     * Delegate to the {@link DeleteServlet}.
+     * Close a server-side cursor, discard a prepared query, or delegate to the
+     * {@link DeleteServlet}.
      */
     @Override
     protected void doDelete(final HttpServletRequest req,
@@ -323,6 +328,33 @@ public class RESTServlet extends BigdataRDFServlet {
         if (log.isInfoEnabled())
             log.info(req.toString());
 
+        if (req.getParameter(QueryServlet.ATTR_CURSOR) != null) {
+
+            // Close a cursor.
+            m_queryServlet.doCloseCursor(req, resp);
+
+            return;
+
+        }
+
+        if (req.getParameter(QueryServlet.ATTR_PREPARED) != null) {
+
+            // Discard a prepared query.
+            m_queryServlet.doClosePreparedQuery(req, resp);
+
+            return;
+
+        }
+
+        if (req.getParameter(QueryServlet.ATTR_STANDING_QUERY) != null) {
+
+            // Cancel a standing query.
+            m_queryServlet.doCancelStandingQuery(req, resp);
+
+            return;
+
+        }
+
         m_deleteServlet.doDelete(req, resp);
 
     }
@@ -22,6 +22,12 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 */
 package com.bigdata.rdf.sail.webapp;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.bigdata.bop.engine.QueryResourceLimits;
+
 /**
  * Configuration object.
  * 
@@ -85,30 +91,353 @@ public class SparqlEndpointConfig {
      * @see ConfigParams#QUERY_TIMEOUT
      */
     final public long queryTimeout;
+
+    /**
+     * The maximum #of parsed queries which will be cached -or- ZERO (0) if the
+     * parsed query cache is disabled.
+     * 
+     * @see ConfigParams#PARSED_QUERY_CACHE_CAPACITY
+     */
+    final public int parsedQueryCacheCapacity;
+
+    /**
+     * The maximum #of waiting SPARQL QUERY and UPDATE requests -or- ZERO (0)
+     * for no limit.
+     * 
+     * @see ConfigParams#QUERY_QUEUE_CAPACITY
+     */
+    final public int queryQueueCapacity;
+
+    /**
+     * The maximum #of concurrent SPARQL QUERY and UPDATE requests for any
+     * single namespace -or- ZERO (0) for no limit.
+     * 
+     * @see ConfigParams#NAMESPACE_QUERY_CONCURRENCY
+     */
+    final public int namespaceQueryConcurrency;
+
+    /**
+     * The scheduling weights for the namespaces (never <code>null</code>).
+     * 
+     * @see ConfigParams#NAMESPACE_QUERY_WEIGHTS
+     */
+    final public Map<String, Integer> namespaceQueryWeights;
+
+    /**
+     * When <code>true</code>, SPARQL QUERY results are streamed to the client
+     * using asynchronous, non-blocking I/O.
+     * 
+     * @see ConfigParams#ASYNC_QUERY_RESPONSE
+     */
+    final public boolean asyncQueryResponse;
+
+    /**
+     * The #of milliseconds after which an idle query cursor is closed.
+     * 
+     * @see ConfigParams#CURSOR_TIMEOUT
+     */
+    final public long cursorTimeout;
+
+    /**
+     * The maximum #of open query cursors.
+     * 
+     * @see ConfigParams#MAX_CURSORS
+     */
+    final public int maxCursors;
+
+    /**
+     * The maximum #of bytes of native memory used by the query cursors.
+     * 
+     * @see ConfigParams#CURSOR_MAX_MEMORY
+     */
+    final public long cursorMaxMemory;
+
+    /**
+     * The default resource limits for each query (never <code>null</code>).
+     * 
+     * @see ConfigParams#QUERY_RESOURCE_LIMITS
+     */
+    final public QueryResourceLimits queryResourceLimits;
+
+    /**
+     * The resource limits for the queries against specific namespaces (never
+     * <code>null</code>).
+     * 
+     * @see ConfigParams#NAMESPACE_QUERY_RESOURCE_LIMITS
+     */
+    final public Map<String, QueryResourceLimits> namespaceQueryResourceLimits;
+
+    /**
+     * The maximum #of retained prepared queries.
+     * 
+     * @see ConfigParams#MAX_PREPARED_QUERIES
+     */
+    final public int maxPreparedQueries;
+
+    /**
+     * The maximum #of registered standing queries.
+     * 
+     * @see ConfigParams#MAX_STANDING_QUERIES
+     */
+    final public int maxStandingQueries;
     
-    public SparqlEndpointConfig(final String namespace, final long timestamp,
-            final int queryThreadPoolSize,
-            final boolean describeEachNamedGraph, final boolean readOnly,
-            final long queryTimeout) {
+    /**
+     * Create a configuration from a {@link Builder}.
+     * 
+     * @see #builder(String, long)
+     */
+    private SparqlEndpointConfig(final Builder b) {
+
+        if (b.namespace == null)
+            throw new IllegalArgumentException();
+
+        if (b.queryTimeout < 0L)
+            throw new IllegalArgumentException();
+
+        if (b.parsedQueryCacheCapacity < 0)
+            throw new IllegalArgumentException();
+
+        if (b.queryQueueCapacity < 0)
+            throw new IllegalArgumentException();
+
+        if (b.namespaceQueryConcurrency < 0)
+            throw new IllegalArgumentException();
 
-        if (namespace == null)
+        if (b.cursorTimeout <= 0L)
             throw new IllegalArgumentException();
 
-        if (queryTimeout < 0L)
+        if (b.maxCursors <= 0)
             throw new IllegalArgumentException();
 
-        this.namespace = namespace;
+        if (b.cursorMaxMemory <= 0L)
+            throw new IllegalArgumentException();
+
+        if (b.maxPreparedQueries <= 0)
+            throw new IllegalArgumentException();
+
+        if (b.maxStandingQueries <= 0)
+            throw new IllegalArgumentException();
+
+        this.namespace = b.namespace;
 
-        this.timestamp = timestamp;
+        this.timestamp = b.timestamp;
 
-        this.queryThreadPoolSize = queryThreadPoolSize;
+        this.queryThreadPoolSize = b.queryThreadPoolSize;
 
-        this.describeEachNamedGraph = describeEachNamedGraph;
+        this.describeEachNamedGraph = b.describeEachNamedGraph;
         
-        this.readOnly = readOnly;
+        this.readOnly = b.readOnly;
         
-        this.queryTimeout = queryTimeout;
+        this.queryTimeout = b.queryTimeout;
+
+        this.parsedQueryCacheCapacity = b.parsedQueryCacheCapacity;
+
+        this.queryQueueCapacity = b.queryQueueCapacity;
+
+        this.namespaceQueryConcurrency = b.namespaceQueryConcurrency;
+
+        this.namespaceQueryWeights = b.namespaceQueryWeights == null ? Collections
+                .<String, Integer> emptyMap() : Collections
+                .unmodifiableMap(new LinkedHashMap<String, Integer>(
+                        b.namespaceQueryWeights));
+
+        this.asyncQueryResponse = b.asyncQueryResponse;
+
+        this.cursorTimeout = b.cursorTimeout;
+
+        this.maxCursors = b.maxCursors;
+
+        this.cursorMaxMemory = b.cursorMaxMemory;
+
+        this.queryResourceLimits = b.queryResourceLimits == null ? QueryResourceLimits.NONE
+                : b.queryResourceLimits;
+
+        this.namespaceQueryResourceLimits = b.namespaceQueryResourceLimits == null ? Collections
+                .<String, QueryResourceLimits> emptyMap() : Collections
+                .unmodifiableMap(new LinkedHashMap<String, QueryResourceLimits>(
+                        b.namespaceQueryResourceLimits));
+
+        this.maxPreparedQueries = b.maxPreparedQueries;
+
+        this.maxStandingQueries = b.maxStandingQueries;
         
     }
 
+    /**
+     * Return a {@link Builder} for a configuration. Each option which is not
+     * explicitly set has the default declared by {@link ConfigParams}.
+     * 
+     * @param namespace
+     *            The default namespace.
+     * @param timestamp
+     *            The default timestamp used to query the default namespace.
+     */
+    public static Builder builder(final String namespace, final long timestamp) {
+
+        return new Builder(namespace, timestamp);
+
+    }
+
+    /**
+     * Builder for a {@link SparqlEndpointConfig}. The fields and their defaults
+     * are documented on {@link SparqlEndpointConfig} and {@link ConfigParams}.
+     */
+    public static class Builder {
+
+        private final String namespace;
+        private final long timestamp;
+        private int queryThreadPoolSize = ConfigParams.DEFAULT_QUERY_THREAD_POOL_SIZE;
+        private boolean describeEachNamedGraph = ConfigParams.DEFAULT_DESCRIBE_EACH_NAMED_GRAPH;
+        private boolean readOnly = ConfigParams.DEFAULT_READ_ONLY;
+        private long queryTimeout = ConfigParams.DEFAULT_QUERY_TIMEOUT;
+        private int parsedQueryCacheCapacity = ConfigParams.DEFAULT_PARSED_QUERY_CACHE_CAPACITY;
+        private int queryQueueCapacity = ConfigParams.DEFAULT_QUERY_QUEUE_CAPACITY;
+        private int namespaceQueryConcurrency = ConfigParams.DEFAULT_NAMESPACE_QUERY_CONCURRENCY;
+        private Map<String, Integer> namespaceQueryWeights = null;
+        private boolean asyncQueryResponse = ConfigParams.DEFAULT_ASYNC_QUERY_RESPONSE;
+        private long cursorTimeout = ConfigParams.DEFAULT_CURSOR_TIMEOUT;
+        private int maxCursors = ConfigParams.DEFAULT_MAX_CURSORS;
+        private long cursorMaxMemory = ConfigParams.DEFAULT_CURSOR_MAX_MEMORY;
+        private QueryResourceLimits queryResourceLimits = null;
+        private Map<String, QueryResourceLimits> namespaceQueryResourceLimits = null;
+        private int maxPreparedQueries = ConfigParams.DEFAULT_MAX_PREPARED_QUERIES;
+        private int maxStandingQueries = ConfigParams.DEFAULT_MAX_STANDING_QUERIES;
+
+        private Builder(final String namespace, final long timestamp) {
+
+            this.namespace = namespace;
+
+            this.timestamp = timestamp;
+
+        }
+
+        /** @see SparqlEndpointConfig#queryThreadPoolSize */
+        public Builder queryThreadPoolSize(final int v) {
+            this.queryThreadPoolSize = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#describeEachNamedGraph */
+        public Builder describeEachNamedGraph(final boolean v) {
+            this.describeEachNamedGraph = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#readOnly */
+        public Builder readOnly(final boolean v) {
+            this.readOnly = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#queryTimeout */
+        public Builder queryTimeout(final long v) {
+            this.queryTimeout = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#parsedQueryCacheCapacity */
+        public Builder parsedQueryCacheCapacity(final int v) {
+            this.parsedQueryCacheCapacity = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#queryQueueCapacity */
+        public Builder queryQueueCapacity(final int v) {
+            this.queryQueueCapacity = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#namespaceQueryConcurrency */
+        public Builder namespaceQueryConcurrency(final int v) {
+            this.namespaceQueryConcurrency = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#namespaceQueryWeights */
+        public Builder namespaceQueryWeights(final Map<String, Integer> v) {
+            this.namespaceQueryWeights = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#asyncQueryResponse */
+        public Builder asyncQueryResponse(final boolean v) {
+            this.asyncQueryResponse = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#cursorTimeout */
+        public Builder cursorTimeout(final long v) {
+            this.cursorTimeout = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#maxCursors */
+        public Builder maxCursors(final int v) {
+            this.maxCursors = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#cursorMaxMemory */
+        public Builder cursorMaxMemory(final long v) {
+            this.cursorMaxMemory = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#queryResourceLimits */
+        public Builder queryResourceLimits(final QueryResourceLimits v) {
+            this.queryResourceLimits = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#namespaceQueryResourceLimits */
+        public Builder namespaceQueryResourceLimits(
+                final Map<String, QueryResourceLimits> v) {
+            this.namespaceQueryResourceLimits = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#maxPreparedQueries */
+        public Builder maxPreparedQueries(final int v) {
+            this.maxPreparedQueries = v;
+            return this;
+        }
+
+        /** @see SparqlEndpointConfig#maxStandingQueries */
+        public Builder maxStandingQueries(final int v) {
+            this.maxStandingQueries = v;
+            return this;
+        }
+
+        /**
+         * Return the configuration.
+         * 
+         * @throws IllegalArgumentException
+         *             if an option has an illegal value.
+         */
+        public SparqlEndpointConfig build() {
+
+            return new SparqlEndpointConfig(this);
+
+        }
+
+    }
+
+    /**
+     * Return the resource limits for a query against the given namespace.
+     * 
+     * @param namespace
+     *            The namespace.
+     * 
+     * @return The resource limits (never <code>null</code>).
+     * 
+     * @see ConfigParams#QUERY_RESOURCE_LIMITS
+     * @see ConfigParams#NAMESPACE_QUERY_RESOURCE_LIMITS
+     */
+    public QueryResourceLimits getQueryResourceLimits(final String namespace) {
+
+        return queryResourceLimits.override(namespaceQueryResourceLimits
+                .get(namespace));
+
+    }
+
 }
@@ -0,0 +1,1979 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.URI;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.StatementPattern.Scope;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.resultio.sparqljson.SPARQLResultsJSONWriter;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.QueryResourceLimits;
+import com.bigdata.btree.ICheckpointProtocol;
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.journal.IJournal;
+import com.bigdata.rdf.changesets.ChangeAction;
+import com.bigdata.rdf.changesets.IChangeLog;
+import com.bigdata.rdf.changesets.IChangeRecord;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sail.BigdataSail.BigdataSailConnection;
+import com.bigdata.rdf.sail.sparql.Bigdata2ASTSPARQLParser;
+import com.bigdata.rdf.sail.sparql.ParsedQueryCache;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.BindingsClause;
+import com.bigdata.rdf.sparql.ast.FilterNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.GraphPatternGroup;
+import com.bigdata.rdf.sparql.ast.IGroupMemberNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.SubqueryFunctionNodeBase;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.eval.ASTEvalHelper;
+import com.bigdata.rdf.sparql.ast.eval.CustomServiceFactoryBase;
+import com.bigdata.rdf.sparql.ast.service.BigdataNativeServiceOptions;
+import com.bigdata.rdf.sparql.ast.service.IServiceOptions;
+import com.bigdata.rdf.sparql.ast.service.ServiceCall;
+import com.bigdata.rdf.sparql.ast.service.ServiceCallCreateParams;
+import com.bigdata.rdf.sparql.ast.service.ServiceRegistry;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.util.concurrent.DaemonThreadFactory;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * Standing SPARQL queries whose results are maintained incrementally as
+ * writes are committed against a namespace.
+ * <p>
+ * A standing query is registered once and its solutions are then reported to
+ * the client as a stream of deltas, each of which gives the solutions which
+ * were added to and removed from the result by a commit. The first delta
+ * reports the entire result as added solutions. Solutions are compared as
+ * distinct tuples of the projected variables, so the deltas have set
+ * semantics.
+ * <p>
+ * The deltas are computed from the {@link IChangeRecord}s reported by the
+ * {@link BigdataSailConnection} for each commit. An {@link IChangeLog} is
+ * attached to each connection which writes on a namespace having standing
+ * queries. When the write set is committed, the inserted and removed
+ * statements are used to seed the statement patterns of each standing query.
+ * The query is evaluated against the new commit point, constrained by the
+ * seeds for the inserted statements, and the solutions which were not present
+ * in the prior commit point are reported as added. Symmetrically, the query
+ * is evaluated against the prior commit point, constrained by the seeds for
+ * the removed statements, and the solutions which are no longer present are
+ * reported as removed. Since the query is monotone, every solution which was
+ * added (removed) must use at least one inserted (removed) statement, so
+ * only the solutions reachable from the change set are considered.
+ * <p>
+ * Only SELECT queries whose WHERE clause is a basic graph pattern together
+ * with FILTERs (without EXISTS or NOT EXISTS) may be registered. Solution
+ * modifiers, computed projections, a dataset and a VALUES clause are not
+ * supported. Neither are the functions whose value changes from one
+ * evaluation to the next, such as NOW() and RAND(), since the deltas could not
+ * be computed from the change sets.
+ * <p>
+ * Each standing query holds a read-only transaction on the commit point for
+ * which its last delta was reported. The delta is computed from the change
+ * set when the commit point before the change set is the same as the commit
+ * point of the standing query. Otherwise (the change set was too large to be
+ * buffered, or the standing query was registered after the connection was
+ * opened and did not observe a commit), the result is re-evaluated against
+ * both commit points and the difference is reported. The commit points are
+ * compared by the checkpoint address of the primary statement index, so
+ * commits against other namespaces do not cause any evaluation.
+ * <p>
+ * The result of a new standing query is evaluated by the caller, subject to
+ * the same admission control, timeout and resource limits as any other query,
+ * and is reported in chunks. The later deltas are computed by a single thread
+ * and are buffered for each standing query until they are written onto its
+ * stream by a {@link StandingQueryResponse}. A standing query whose client
+ * does not keep up with the deltas is closed.
+ *
+ * @see ConfigParams#MAX_STANDING_QUERIES
+ */
+public class StandingQueryManager {
+
+    private static final transient Logger log = Logger
+            .getLogger(StandingQueryManager.class);
+
+    /**
+     * The response header giving the identifier of the standing query.
+     */
+    public static final String HTTP_HEADER_STANDING_QUERY = "X-BIGDATA-STANDING-QUERY";
+
+    /**
+     * The MIME type of the stream of deltas (Server-Sent Events).
+     */
+    public static final String MIME_EVENT_STREAM = "text/event-stream";
+
+    /**
+     * The #of milliseconds between the keep alive messages written onto an
+     * idle stream. The commit point of the standing query is also checked
+     * against the last commit point at that time.
+     */
+    static final long KEEPALIVE_MILLIS = 10 * 1000L;
+
+    /**
+     * The maximum #of inserted (or removed) statements buffered for a commit.
+     * Larger change sets cause the result of each standing query on that
+     * namespace to be re-evaluated.
+     */
+    private static final int MAX_SEEDS = 10000;
+
+    /**
+     * The maximum #of deltas buffered for a standing query which have not
+     * been written onto its stream.
+     */
+    private static final int MAX_PENDING_EVENTS = 1000;
+
+    /**
+     * The maximum #of solutions in each delta which reports the result of a
+     * new standing query.
+     */
+    static final int MAX_EVENT_SOLUTIONS = 1000;
+
+    /**
+     * The keep alive message.
+     */
+    private static final String PING = ": ping\n\n";
+
+    /**
+     * The functions whose value is not determined by the data.
+     */
+    private static final Set<URI> NON_DETERMINISTIC = new HashSet<URI>(
+            Arrays.asList(FunctionRegistry.NOW, FunctionRegistry.RAND,
+                    FunctionRegistry.UUID, FunctionRegistry.STRUUID,
+                    FunctionRegistry.BNODE));
+
+    private final BigdataRDFContext context;
+
+    /**
+     * The maximum #of registered standing queries.
+     */
+    private final int maxStandingQueries;
+
+    /**
+     * One permit for each standing query which may be registered. A permit is
+     * acquired before a standing query is created and released when that
+     * standing query is closed.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The single thread on which the deltas are computed. This serializes the
+     * work for each standing query.
+     */
+    private final ScheduledExecutorService executorService;
+
+    /**
+     * The registered standing queries.
+     */
+    private final ConcurrentHashMap<String, StandingQuery> queries = new ConcurrentHashMap<String, StandingQuery>();
+
+    /**
+     * The standing queries whose initial result is being reported. These may
+     * be found and cancelled, but no deltas are computed for them until they
+     * are moved onto {@link #queries}.
+     */
+    private final ConcurrentHashMap<String, StandingQuery> starting = new ConcurrentHashMap<String, StandingQuery>();
+
+    /**
+     * The #of standing queries which were registered.
+     */
+    private final AtomicLong nregistered = new AtomicLong();
+
+    /**
+     * The #of commits which were processed.
+     */
+    private final AtomicLong ncommits = new AtomicLong();
+
+    /**
+     * The #of deltas which were computed from a change set.
+     */
+    private final AtomicLong nincremental = new AtomicLong();
+
+    /**
+     * The #of deltas which were computed by re-evaluating the result.
+     */
+    private final AtomicLong nreevaluated = new AtomicLong();
+
+    /**
+     * The #of deltas which were reported.
+     */
+    private final AtomicLong nevents = new AtomicLong();
+
+    /**
+     * The #of standing queries which were closed because their client did
+     * not keep up with the deltas.
+     */
+    private final AtomicLong noverflow = new AtomicLong();
+
+    /**
+     *
+     * @param context
+     *            The context for the SPARQL end point.
+     * @param maxStandingQueries
+     *            The maximum #of registered standing queries.
+     */
+    public StandingQueryManager(final BigdataRDFContext context,
+            final int maxStandingQueries) {
+
+        if (context == null)
+            throw new IllegalArgumentException();
+
+        if (maxStandingQueries <= 0)
+            throw new IllegalArgumentException();
+
+        this.context = context;
+
+        this.maxStandingQueries = maxStandingQueries;
+
+        this.permits = new Semaphore(maxStandingQueries);
+
+        this.executorService = Executors
+                .newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+                        getClass().getName() + ".executorService"));
+
+        this.executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    keepAlive();
+                } catch (Throwable t) {
+                    log.error(t, t);
+                }
+            }
+        }, KEEPALIVE_MILLIS, KEEPALIVE_MILLIS, TimeUnit.MILLISECONDS);
+
+        ChangeLogFactory.addManager(this);
+
+    }
+
+    /**
+     * Create a standing query. The query is validated against the last commit
+     * point, which becomes the commit point of the standing query. The
+     * standing query is registered by
+     * {@link #start(StandingQuery, long, QueryResourceLimits)}. The caller
+     * must {@link #close(StandingQuery, String)} the standing query if it is
+     * not started.
+     *
+     * @param namespace
+     *            The namespace of the KB.
+     * @param queryStr
+     *            The query.
+     * @param baseURI
+     *            The base URI for the query.
+     *
+     * @return The standing query -or- <code>null</code> if there is no such
+     *         namespace.
+     *
+     * @throws MalformedQueryException
+     *             if the query could not be parsed.
+     * @throws IllegalArgumentException
+     *             if the query is not supported as a standing query.
+     * @throws QueryRejectedException
+     *             if the maximum #of standing queries are already registered.
+     */
+    public StandingQuery newStandingQuery(final String namespace,
+            final String queryStr, final String baseURI) throws Exception {
+
+        if (!(getIndexManager() instanceof IJournal)) {
+
+            throw new UnsupportedOperationException(
+                    "Standing queries require a Journal");
+
+        }
+
+        if (!permits.tryAcquire()) {
+
+            throw new QueryRejectedException("Too many standing queries: "
+                    + queries.size(),
+                    (int) (KEEPALIVE_MILLIS / 1000));
+
+        }
+
+        final long commitTime = getIndexManager().getLastCommitTime();
+
+        final long tx = context.newTx(commitTime);
+
+        boolean ok = false;
+
+        try {
+
+            final AbstractTripleStore view = locate(namespace, tx);
+
+            if (view == null) {
+
+                return null;
+
+            }
+
+            final StandingQuery q = new StandingQuery(namespace, queryStr,
+                    baseURI, getTerm2IdUUID(view));
+
+            // Validate the query.
+            q.parse(view);
+
+            q.tx = tx;
+
+            q.addr = getCheckpointAddr(view);
+
+            q.commitTime = commitTime;
+
+            ok = true;
+
+            return q;
+
+        } finally {
+
+            if (!ok) {
+
+                context.abortTx(tx);
+
+                permits.release();
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Report the result of a new standing query and then register it. The
+     * result is reported as a series of deltas for the commit point of the
+     * standing query, each of which has at most {@link #MAX_EVENT_SOLUTIONS}
+     * added solutions. The caller blocks while the deltas are not being
+     * written onto the stream. If the result can not be evaluated, then the
+     * standing query is closed and the error is reported on its stream.
+     *
+     * @param q
+     *            The standing query.
+     * @param queryTimeout
+     *            The timeout for evaluating the result (milliseconds) -or-
+     *            ZERO (0L) if there is no timeout.
+     * @param limits
+     *            The resource limits for evaluating the result.
+     */
+    void start(final StandingQuery q, final long queryTimeout,
+            final QueryResourceLimits limits) {
+
+        synchronized (q) {
+
+            if (q.closed)
+                return;
+
+            starting.put(q.id, q);
+
+        }
+
+        try {
+
+            final AbstractTripleStore view = locate(q.namespace, q.tx);
+
+            final ParsedStandingQuery p = q.parse(view);
+
+            final ASTContainer ast = ParsedQueryCache.copy(p.ast);
+
+            final QueryRoot queryRoot = ast.getOriginalAST();
+
+            // Note: The solutions are compared as distinct tuples.
+            queryRoot.getProjection().setDistinct(true);
+
+            if (queryTimeout > 0)
+                queryRoot.setTimeout(queryTimeout);
+
+            if (!limits.isUnlimited())
+                queryRoot.setResourceLimits(limits);
+
+            final Set<List<IV<?, ?>>> removed = new HashSet<List<IV<?, ?>>>();
+
+            Set<List<IV<?, ?>>> added = new LinkedHashSet<List<IV<?, ?>>>();
+
+            int nreported = 0;
+
+            final ICloseableIterator<IBindingSet[]> itr = ASTEvalHelper
+                    .evaluateTupleQuery2(view, ast, new QueryBindingSet(),
+                            false/* materialize */);
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    for (IBindingSet bset : itr.next()) {
+
+                        added.add(toSolution(p.projected, bset));
+
+                        if (added.size() == MAX_EVENT_SOLUTIONS) {
+
+                            if (!q.put(toEvent(view, q.commitTime,
+                                    p.projected, added, removed)))
+                                return;
+
+                            added = new LinkedHashSet<List<IV<?, ?>>>();
+
+                            nreported++;
+
+                        }
+
+                    }
+
+                }
+
+            } finally {
+
+                itr.close();
+
+            }
+
+            // Note: An empty result is reported as an empty delta.
+            if (!added.isEmpty() || nreported == 0) {
+
+                if (!q.put(toEvent(view, q.commitTime, p.projected, added,
+                        removed)))
+                    return;
+
+            }
+
+            synchronized (q) {
+
+                if (q.closed)
+                    return;
+
+                queries.put(q.id, q);
+
+                starting.remove(q.id);
+
+            }
+
+            nregistered.incrementAndGet();
+
+            if (log.isInfoEnabled())
+                log.info("Registered: " + q);
+
+            /*
+             * Catch up with any commit which was processed before the
+             * standing query was visible.
+             */
+            refresh(q);
+
+        } catch (Throwable t) {
+
+            if (!q.closed)
+                log.error(q, t);
+
+            close(q, t.toString());
+
+        }
+
+    }
+
+    /**
+     * Return the standing query.
+     *
+     * @param id
+     *            The identifier of the standing query.
+     *
+     * @return The standing query -or- <code>null</code> if there is no such
+     *         standing query.
+     */
+    public StandingQuery getStandingQuery(final String id) {
+
+        if (id == null)
+            return null;
+
+        final StandingQuery q = queries.get(id);
+
+        return q != null ? q : starting.get(id);
+
+    }
+
+    /**
+     * Cancel a standing query. Its stream is closed.
+     *
+     * @param id
+     *            The identifier of the standing query.
+     *
+     * @return <code>true</code> iff the standing query was found.
+     */
+    public boolean cancel(final String id) {
+
+        if (id == null)
+            return false;
+
+        StandingQuery q = queries.remove(id);
+
+        if (q == null)
+            q = starting.remove(id);
+
+        if (q == null)
+            return false;
+
+        close(q, null/* error */);
+
+        if (log.isInfoEnabled())
+            log.info("Cancelled: " + q);
+
+        return true;
+
+    }
+
+    /**
+     * Cancel all standing queries for a namespace (the namespace is being
+     * destroyed).
+     *
+     * @param namespace
+     *            The namespace.
+     */
+    public void cancelAll(final String namespace) {
+
+        for (StandingQuery q : queries.values()) {
+
+            if (q.namespace.equals(namespace)) {
+
+                cancel(q.id);
+
+            }
+
+        }
+
+        for (StandingQuery q : starting.values()) {
+
+            if (q.namespace.equals(namespace)) {
+
+                cancel(q.id);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Check the commit point of a standing query against the last commit
+     * point and report any difference. This picks up the commits which were
+     * not observed through an {@link IChangeLog}.
+     */
+    private void refresh(final StandingQuery q) {
+
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                refreshNow(q);
+            }
+        });
+
+    }
+
+    /**
+     * Task for {@link #refresh(StandingQuery)}. This runs on the
+     * {@link #executorService}.
+     */
+    private void refreshNow(final StandingQuery q) {
+
+        if (q.closed)
+            return;
+
+        final long commitTime = getIndexManager().getLastCommitTime();
+
+        if (commitTime == q.commitTime)
+            return;
+
+        final long tx = context.newTx(commitTime);
+
+        try {
+
+            final AbstractTripleStore view = locate(q.namespace, tx);
+
+            if (view == null) {
+
+                // The namespace was destroyed.
+                close(q, "Namespace not found: " + q.namespace);
+
+                return;
+
+            }
+
+            update(q, null/* oldView */, view, commitTime, null/* seeds */);
+
+        } catch (Throwable t) {
+
+            close(q, t.getLocalizedMessage());
+
+            log.error(q, t);
+
+        } finally {
+
+            context.abortTx(tx);
+
+        }
+
+    }
+
+    /**
+     * Write a keep alive message onto the stream of each idle standing query
+     * and {@link #refresh(StandingQuery)} it. The keep alive messages let the
+     * container notice a client which went away. This runs on the
+     * {@link #executorService}.
+     */
+    private void keepAlive() {
+
+        for (StandingQuery q : queries.values()) {
+
+            q.ping();
+
+            refreshNow(q);
+
+        }
+
+    }
+
+    /**
+     * Cancel all standing queries and stop the thread on which the deltas are
+     * computed.
+     */
+    void shutdownNow() {
+
+        ChangeLogFactory.removeManager(this);
+
+        for (String id : queries.keySet()) {
+
+            cancel(id);
+
+        }
+
+        for (String id : starting.keySet()) {
+
+            cancel(id);
+
+        }
+
+        executorService.shutdownNow();
+
+    }
+
+    /**
+     * The #of registered standing queries.
+     */
+    public int getStandingQueryCount() {
+
+        return queries.size();
+
+    }
+
+    /**
+     * Return the performance counters for the standing queries.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counters = new CounterSet();
+
+        counters.addCounter("count", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(getStandingQueryCount());
+            }
+        });
+
+        counters.addCounter("registeredCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nregistered.get());
+            }
+        });
+
+        counters.addCounter("commitCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(ncommits.get());
+            }
+        });
+
+        counters.addCounter("incrementalCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nincremental.get());
+            }
+        });
+
+        counters.addCounter("reevaluatedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nreevaluated.get());
+            }
+        });
+
+        counters.addCounter("eventCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nevents.get());
+            }
+        });
+
+        counters.addCounter("overflowCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(noverflow.get());
+            }
+        });
+
+        return counters;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getName() + "{maxStandingQueries="
+                + maxStandingQueries + ",size=" + getStandingQueryCount()
+                + ",nregistered=" + nregistered + ",ncommits=" + ncommits
+                + ",nincremental=" + nincremental + ",nreevaluated="
+                + nreevaluated + ",nevents=" + nevents + ",noverflow="
+                + noverflow + "}";
+
+    }
+
+    private IIndexManager getIndexManager() {
+
+        return context.getIndexManager();
+
+    }
+
+    private AbstractTripleStore locate(final String namespace, final long tx) {
+
+        return (AbstractTripleStore) getIndexManager().getResourceLocator()
+                .locate(namespace, tx);
+
+    }
+
+    private static UUID getTerm2IdUUID(final AbstractTripleStore tripleStore) {
+
+        return tripleStore.getLexiconRelation().getTerm2IdIndex()
+                .getIndexMetadata().getIndexUUID();
+
+    }
+
+    /**
+     * The address of the checkpoint record of the primary statement index.
+     * This changes iff statements were written on the KB.
+     */
+    private static long getCheckpointAddr(final AbstractTripleStore view) {
+
+        return ((ICheckpointProtocol) view.getSPORelation().getPrimaryIndex())
+                .getCheckpoint().getCheckpointAddr();
+
+    }
+
+    /**
+     * Return <code>true</code> iff there is a standing query on the KB.
+     */
+    private boolean hasStandingQueries(final String namespace,
+            final UUID term2IdUUID) {
+
+        for (StandingQuery q : queries.values()) {
+
+            if (q.namespace.equals(namespace)
+                    && q.term2IdUUID.equals(term2IdUUID)) {
+
+                return true;
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    private void submit(final Runnable task) {
+
+        try {
+
+            executorService.execute(task);
+
+        } catch (RejectedExecutionException ex) {
+
+            // Shutdown.
+            if (log.isInfoEnabled())
+                log.info("Rejected: " + ex);
+
+        }
+
+    }
+
+    /**
+     * Close a standing query and release its transaction. If an error is
+     * given, then it is reported on the stream.
+     */
+    void close(final StandingQuery q, final String error) {
+
+        synchronized (q) {
+
+            if (q.closed)
+                return;
+
+            q.error = error;
+
+            q.closed = true;
+
+        }
+
+        queries.remove(q.id);
+
+        starting.remove(q.id);
+
+        permits.release();
+
+        // Note: The stream reports the close once the queue is empty.
+        q.events.clear();
+        q.wakeUp();
+
+        final Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                if (q.tx != 0L) {
+                    context.abortTx(q.tx);
+                    q.tx = 0L;
+                }
+            }
+        };
+
+        try {
+
+            executorService.execute(release);
+
+        } catch (RejectedExecutionException ex) {
+
+            release.run();
+
+        }
+
+    }
+
+    /**
+     * Process a commit against a namespace having standing queries.
+     *
+     * @param namespace
+     *            The namespace.
+     * @param term2IdUUID
+     *            Identifies the KB instance.
+     * @param oldTx
+     *            A read-only transaction on the commit point before the
+     *            change set. This is released by this method.
+     * @param commitTime
+     *            The commit time for the change set.
+     * @param seeds
+     *            The change set -or- <code>null</code> if it was not buffered.
+     */
+    private void commit(final String namespace, final UUID term2IdUUID,
+            final long oldTx, final long commitTime, final ChangeSet seeds) {
+
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                final long newTx = context.newTx(commitTime);
+                try {
+                    final AbstractTripleStore oldView = locate(namespace, oldTx);
+                    final AbstractTripleStore newView = locate(namespace, newTx);
+                    if (oldView == null || newView == null)
+                        return;
+                    ncommits.incrementAndGet();
+                    for (StandingQuery q : queries.values()) {
+                        if (q.closed || !q.namespace.equals(namespace)
+                                || !q.term2IdUUID.equals(term2IdUUID))
+                            continue;
+                        try {
+                            update(q, oldView, newView, commitTime, seeds);
+                        } catch (Throwable t) {
+                            close(q, t.getLocalizedMessage());
+                            log.error(q, t);
+                        }
+                    }
+                } finally {
+                    context.abortTx(oldTx);
+                    context.abortTx(newTx);
+                }
+            }
+        });
+
+    }
+
+    /**
+     * Bring a standing query up to date with a commit point and report the
+     * delta. This runs on the {@link #executorService}.
+     *
+     * @param q
+     *            The standing query.
+     * @param oldView
+     *            The view of the commit point before the change set -or-
+     *            <code>null</code> if there is no change set.
+     * @param newView
+     *            The view of the commit point to report.
+     * @param commitTime
+     *            The commit time of that commit point.
+     * @param seeds
+     *            The change set -or- <code>null</code> if the result must be
+     *            re-evaluated.
+     */
+    private void update(final StandingQuery q,
+            final AbstractTripleStore oldView,
+            final AbstractTripleStore newView, final long commitTime,
+            final ChangeSet seeds) throws Exception {
+
+        if (commitTime <= q.commitTime) {
+
+            // Already reported.
+            return;
+
+        }
+
+        final long newAddr = getCheckpointAddr(newView);
+
+        if (newAddr != q.addr) {
+
+            // Note: Parsed against the new view to resolve any new terms.
+            final ParsedStandingQuery p = q.parse(newView);
+
+            final Set<List<IV<?, ?>>> added;
+            final Set<List<IV<?, ?>>> removed;
+
+            if (seeds != null && oldView != null
+                    && getCheckpointAddr(oldView) == q.addr) {
+
+                /*
+                 * The change set takes the standing query from its commit
+                 * point to the new commit point.
+                 */
+
+                added = delta(p, newView, oldView, seeds.inserted);
+
+                removed = delta(p, oldView, newView, seeds.removed);
+
+                nincremental.incrementAndGet();
+
+            } else {
+
+                /*
+                 * Re-evaluate the result against the commit point of the
+                 * standing query and the new commit point.
+                 */
+
+                final AbstractTripleStore lastView = locate(q.namespace, q.tx);
+
+                final Set<List<IV<?, ?>>> before = evaluate(lastView, p,
+                        null/* vars */, null/* rows */);
+
+                final Set<List<IV<?, ?>>> after = evaluate(newView, p,
+                        null/* vars */, null/* rows */);
+
+                added = new HashSet<List<IV<?, ?>>>(after);
+
+                added.removeAll(before);
+
+                removed = before;
+
+                removed.removeAll(after);
+
+                nreevaluated.incrementAndGet();
+
+            }
+
+            if (!added.isEmpty() || !removed.isEmpty()) {
+
+                if (!q.offer(toEvent(newView, commitTime, p.projected, added,
+                        removed))) {
+
+                    noverflow.incrementAndGet();
+
+                    close(q, "Too many pending deltas");
+
+                    return;
+
+                }
+
+            }
+
+        }
+
+        // Move the standing query to the new commit point.
+        final long tx = context.newTx(commitTime);
+
+        synchronized (q) {
+
+            if (q.closed) {
+
+                context.abortTx(tx);
+
+                return;
+
+            }
+
+            context.abortTx(q.tx);
+
+            q.tx = tx;
+
+            q.addr = newAddr;
+
+            q.commitTime = commitTime;
+
+        }
+
+    }
+
+    /**
+     * Return the solutions which are in the result for one commit point but
+     * not in the result for the other commit point, considering only the
+     * solutions which use at least one of the given statements.
+     *
+     * @param p
+     *            The query.
+     * @param view
+     *            The commit point containing the statements.
+     * @param otherView
+     *            The other commit point.
+     * @param stmts
+     *            The inserted (removed) statements.
+     */
+    private Set<List<IV<?, ?>>> delta(final ParsedStandingQuery p,
+            final AbstractTripleStore view,
+            final AbstractTripleStore otherView, final List<ISPO> stmts)
+            throws QueryEvaluationException {
+
+        final Set<List<IV<?, ?>>> rows = p.seed(stmts);
+
+        if (rows.isEmpty())
+            return new HashSet<List<IV<?, ?>>>();
+
+        // The candidate solutions.
+        final Set<List<IV<?, ?>>> candidates = evaluate(view, p,
+                p.patternVars, rows);
+
+        if (candidates.isEmpty())
+            return candidates;
+
+        // The candidates which are present in the other commit point.
+        final Set<List<IV<?, ?>>> present = evaluate(otherView, p,
+                new LinkedHashSet<IVariable<?>>(Arrays.asList(p.projected)),
+                candidates);
+
+        candidates.removeAll(present);
+
+        return candidates;
+
+    }
+
+    /**
+     * Evaluate a query and return its distinct solutions.
+     *
+     * @param view
+     *            The view against which the query will be evaluated.
+     * @param p
+     *            The query.
+     * @param vars
+     *            The variables for the VALUES clause (optional).
+     * @param rows
+     *            The rows of the VALUES clause (optional). A
+     *            <code>null</code> element is an UNDEF.
+     *
+     * @return The distinct solutions, each of which is a tuple of the
+     *         projected variables.
+     */
+    private static Set<List<IV<?, ?>>> evaluate(
+            final AbstractTripleStore view, final ParsedStandingQuery p,
+            final LinkedHashSet<IVariable<?>> vars,
+            final Set<List<IV<?, ?>>> rows) throws QueryEvaluationException {
+
+        final ASTContainer ast = ParsedQueryCache.copy(p.ast);
+
+        if (rows != null) {
+
+            final List<IBindingSet> bindingSets = new ArrayList<IBindingSet>(
+                    rows.size());
+
+            for (List<IV<?, ?>> row : rows) {
+
+                final IBindingSet bset = new ListBindingSet();
+
+                int i = 0;
+
+                for (IVariable<?> var : vars) {
+
+                    final IV<?, ?> iv = row.get(i++);
+
+                    if (iv != null)
+                        bset.set(var, new Constant<IV<?, ?>>(iv));
+
+                }
+
+                bindingSets.add(bset);
+
+            }
+
+            ast.getOriginalAST().setBindingsClause(
+                    new BindingsClause(vars, bindingSets));
+
+        }
+
+        final Set<List<IV<?, ?>>> solutions = new HashSet<List<IV<?, ?>>>();
+
+        final ICloseableIterator<IBindingSet[]> itr = ASTEvalHelper
+                .evaluateTupleQuery2(view, ast, new QueryBindingSet(), false/* materialize */);
+
+        try {
+
+            while (itr.hasNext()) {
+
+                for (IBindingSet bset : itr.next()) {
+
+                    solutions.add(toSolution(p.projected, bset));
+
+                }
+
+            }
+
+        } finally {
+
+            itr.close();
+
+        }
+
+        return solutions;
+
+    }
+
+    /**
+     * Return a solution as a tuple of the projected variables.
+     */
+    private static List<IV<?, ?>> toSolution(final IVariable<?>[] projected,
+            final IBindingSet bset) {
+
+        final List<IV<?, ?>> solution = new ArrayList<IV<?, ?>>(
+                projected.length);
+
+        for (IVariable<?> var : projected) {
+
+            final IConstant<?> c = bset.get(var);
+
+            solution.add(c == null ? null : (IV<?, ?>) c.get());
+
+        }
+
+        return solution;
+
+    }
+
+    /**
+     * Format a delta as a Server-Sent Event. The data is a JSON object whose
+     * <code>added</code> and <code>removed</code> members are SPARQL JSON
+     * results.
+     */
+    private String toEvent(final AbstractTripleStore view,
+            final long commitTime, final IVariable<?>[] projected,
+            final Set<List<IV<?, ?>>> added, final Set<List<IV<?, ?>>> removed)
+            throws Exception {
+
+        final Collection<IV<?, ?>> ivs = new HashSet<IV<?, ?>>();
+
+        for (List<IV<?, ?>> solution : added)
+            for (IV<?, ?> iv : solution)
+                if (iv != null)
+                    ivs.add(iv);
+
+        for (List<IV<?, ?>> solution : removed)
+            for (IV<?, ?> iv : solution)
+                if (iv != null)
+                    ivs.add(iv);
+
+        final Map<IV<?, ?>, BigdataValue> terms = view.getLexiconRelation()
+                .getTerms(ivs);
+
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append("event: delta\ndata: {\"commitTime\":").append(commitTime);
+
+        sb.append(",\"added\":");
+
+        toJSON(projected, added, terms, sb);
+
+        sb.append(",\"removed\":");
+
+        toJSON(projected, removed, terms, sb);
+
+        sb.append("}\n\n");
+
+        nevents.incrementAndGet();
+
+        return sb.toString();
+
+    }
+
+    private static void toJSON(final IVariable<?>[] projected,
+            final Set<List<IV<?, ?>>> solutions,
+            final Map<IV<?, ?>, BigdataValue> terms, final StringBuilder sb)
+            throws Exception {
+
+        final List<String> names = new ArrayList<String>(projected.length);
+
+        for (IVariable<?> var : projected)
+            names.add(var.getName());
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        final SPARQLResultsJSONWriter w = new SPARQLResultsJSONWriter(baos);
+
+        w.startQueryResult(names);
+
+        for (List<IV<?, ?>> solution : solutions) {
+
+            final MapBindingSet bset = new MapBindingSet();
+
+            for (int i = 0; i < projected.length; i++) {
+
+                final IV<?, ?> iv = solution.get(i);
+
+                if (iv != null)
+                    bset.addBinding(names.get(i), terms.get(iv));
+
+            }
+
+            w.handleSolution(bset);
+
+        }
+
+        w.endQueryResult();
+
+        /*
+         * Note: Line breaks within RDF Values are escaped, so the only line
+         * breaks are layout and the result fits onto one data line.
+         */
+        final String s = baos.toString("UTF-8");
+
+        for (int i = 0; i < s.length(); i++) {
+
+            final char c = s.charAt(i);
+
+            if (c != '\n' && c != '\r')
+                sb.append(c);
+
+        }
+
+    }
+
+    /**
+     * A registered standing query.
+     */
+    public class StandingQuery {
+
+        /**
+         * The identifier for the standing query.
+         */
+        public final String id;
+
+        /**
+         * The namespace of the KB.
+         */
+        public final String namespace;
+
+        private final String queryStr;
+
+        private final String baseURI;
+
+        /**
+         * The UUID of the TERM2ID index of the KB instance.
+         */
+        private final UUID term2IdUUID;
+
+        /**
+         * The deltas which have not been written onto the stream.
+         */
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<String>(
+                MAX_PENDING_EVENTS);
+
+        /**
+         * The read-only transaction on the commit point for which the last
+         * delta was reported. This is only changed by the
+         * {@link StandingQueryManager#executorService}.
+         */
+        private volatile long tx;
+
+        /**
+         * The checkpoint address of the primary statement index for that
+         * commit point.
+         */
+        private volatile long addr;
+
+        /**
+         * The commit time of that commit point.
+         */
+        private volatile long commitTime;
+
+        private volatile boolean closed = false;
+
+        private volatile String error = null;
+
+        /**
+         * The stream on which the deltas are written (once attached).
+         */
+        private volatile StandingQueryResponse stream = null;
+
+        StandingQuery(final String namespace, final String queryStr,
+                final String baseURI, final UUID term2IdUUID) {
+
+            this.id = UUID.randomUUID().toString();
+            this.namespace = namespace;
+            this.queryStr = queryStr;
+            this.baseURI = baseURI;
+            this.term2IdUUID = term2IdUUID;
+
+        }
+
+        /**
+         * Attach the stream on which the deltas will be written.
+         */
+        void attach(final StandingQueryResponse stream) {
+
+            this.stream = stream;
+
+        }
+
+        /**
+         * Return the next event to be written onto the stream.
+         *
+         * @return The event -or- <code>null</code> if there is no such event.
+         */
+        String nextEvent() {
+
+            return events.poll();
+
+        }
+
+        /**
+         * <code>true</code> iff the standing query was cancelled or failed.
+         */
+        public boolean isClosed() {
+
+            return closed;
+
+        }
+
+        /**
+         * The reason why the standing query was closed -or- <code>null</code>
+         * if it was cancelled.
+         */
+        public String getError() {
+
+            return error;
+
+        }
+
+        /**
+         * Queue an event without waiting.
+         *
+         * @return <code>false</code> iff there are too many pending events.
+         */
+        private boolean offer(final String event) {
+
+            if (!events.offer(event))
+                return false;
+
+            wakeUp();
+
+            return true;
+
+        }
+
+        /**
+         * Queue an event, waiting while there are too many pending events.
+         *
+         * @return <code>false</code> iff the standing query was closed.
+         */
+        private boolean put(final String event) throws InterruptedException {
+
+            while (!closed) {
+
+                if (events.offer(event, KEEPALIVE_MILLIS,
+                        TimeUnit.MILLISECONDS)) {
+
+                    wakeUp();
+
+                    return true;
+
+                }
+
+            }
+
+            return false;
+
+        }
+
+        /**
+         * Queue a keep alive message if there are no pending events.
+         */
+        private void ping() {
+
+            if (events.isEmpty())
+                offer(PING);
+
+        }
+
+        /**
+         * Notify the stream that there is an event or that the standing query
+         * was closed.
+         */
+        private void wakeUp() {
+
+            final StandingQueryResponse s = stream;
+
+            if (s != null)
+                s.wakeUp();
+
+        }
+
+        /**
+         * Parse the query against a view of the KB.
+         *
+         * @throws IllegalArgumentException
+         *             if the query is not supported as a standing query.
+         */
+        private ParsedStandingQuery parse(final AbstractTripleStore view)
+                throws MalformedQueryException {
+
+            return new ParsedStandingQuery(new Bigdata2ASTSPARQLParser(view)
+                    .parseQuery2(queryStr, baseURI));
+
+        }
+
+        @Override
+        public String toString() {
+
+            return getClass().getName() + "{id=" + id + ",namespace="
+                    + namespace + ",commitTime=" + commitTime + ",closed="
+                    + closed + ",query=" + queryStr + "}";
+
+        }
+
+    }
+
+    /**
+     * A standing query parsed against a view of the KB.
+     */
+    private static class ParsedStandingQuery {
+
+        final ASTContainer ast;
+
+        /**
+         * The statement patterns of the WHERE clause.
+         */
+        final List<StatementPatternNode> patterns = new LinkedList<StatementPatternNode>();
+
+        /**
+         * The variables of the statement patterns.
+         */
+        final LinkedHashSet<IVariable<?>> patternVars = new LinkedHashSet<IVariable<?>>();
+
+        /**
+         * The projected variables.
+         */
+        final IVariable<?>[] projected;
+
+        /**
+         * @throws IllegalArgumentException
+         *             if the query is not supported as a standing query.
+         */
+        ParsedStandingQuery(final ASTContainer ast) {
+
+            this.ast = ast;
+
+            final QueryRoot queryRoot = ast.getOriginalAST();
+
+            if (queryRoot.getQueryType() != QueryType.SELECT)
+                throw new IllegalArgumentException(
+                        "Standing query must be a SELECT query");
+
+            if (queryRoot.getDataset() != null
+                    || queryRoot.getNamedSubqueries() != null
+                    || queryRoot.getBindingsClause() != null
+                    || queryRoot.getGroupBy() != null
+                    || queryRoot.getHaving() != null
+                    || queryRoot.getOrderBy() != null
+                    || queryRoot.getSlice() != null)
+                throw new IllegalArgumentException(
+                        "Standing query may not use a dataset, VALUES or solution modifiers");
+
+            final GraphPatternGroup<?> whereClause = queryRoot
+                    .getWhereClause();
+
+            if (!(whereClause instanceof JoinGroupNode)
+                    || ((JoinGroupNode) whereClause).isOptional()
+                    || ((JoinGroupNode) whereClause).isMinus())
+                throw new IllegalArgumentException(
+                        "Standing query must be a basic graph pattern");
+
+            for (IGroupMemberNode child : whereClause) {
+
+                if (child instanceof StatementPatternNode) {
+
+                    final StatementPatternNode sp = (StatementPatternNode) child;
+
+                    if (sp.isOptional() || sp.sid() != null)
+                        throw new IllegalArgumentException(
+                                "Standing query must be a basic graph pattern: "
+                                        + sp);
+
+                    patterns.add(sp);
+
+                    for (int i = 0; i < 4; i++) {
+
+                        final TermNode t = i == 3 ? contextTerm(sp) : sp
+                                .get(i);
+
+                        if (t != null && t.isVariable())
+                            patternVars.add((IVariable<?>) t
+                                    .getValueExpression());
+
+                    }
+
+                } else if (child instanceof FilterNode) {
+
+                    final Iterator<BOp> itr = BOpUtility
+                            .preOrderIteratorWithAnnotations((BOp) child);
+
+                    while (itr.hasNext()) {
+
+                        final BOp op = itr.next();
+
+                        if (op instanceof SubqueryFunctionNodeBase)
+                            throw new IllegalArgumentException(
+                                    "Standing query may not use EXISTS or NOT EXISTS");
+
+                        if (op instanceof FunctionNode
+                                && NON_DETERMINISTIC.contains(((FunctionNode) op)
+                                        .getFunctionURI()))
+                            throw new IllegalArgumentException(
+                                    "Standing query may not use a non-deterministic function: "
+                                            + ((FunctionNode) op)
+                                                    .getFunctionURI());
+
+                    }
+
+                } else {
+
+                    throw new IllegalArgumentException(
+                            "Standing query must be a basic graph pattern: "
+                                    + child);
+
+                }
+
+            }
+
+            if (patterns.isEmpty())
+                throw new IllegalArgumentException(
+                        "Standing query must have a statement pattern");
+
+            final ProjectionNode projection = queryRoot.getProjection();
+
+            if (projection.isWildcard()) {
+
+                projected = patternVars.toArray(new IVariable<?>[patternVars
+                        .size()]);
+
+            } else {
+
+                if (!projection.getAssignmentProjections().isEmpty())
+                    throw new IllegalArgumentException(
+                            "Standing query may not project value expressions");
+
+                projected = projection.getProjectionVars();
+
+            }
+
+        }
+
+        /**
+         * Return the context position of a statement pattern iff it is
+         * matched against the named graphs.
+         */
+        private static TermNode contextTerm(final StatementPatternNode sp) {
+
+            return sp.getScope() == Scope.NAMED_CONTEXTS ? sp.c() : null;
+
+        }
+
+        /**
+         * Return the distinct bindings for {@link #patternVars} under which
+         * some statement pattern matches one of the given statements.
+         */
+        Set<List<IV<?, ?>>> seed(final List<ISPO> stmts) {
+
+            final Set<List<IV<?, ?>>> rows = new LinkedHashSet<List<IV<?, ?>>>();
+
+            final List<IVariable<?>> vars = new ArrayList<IVariable<?>>(
+                    patternVars);
+
+            for (StatementPatternNode sp : patterns) {
+
+                for (ISPO spo : stmts) {
+
+                    final IV<?, ?>[] row = new IV<?, ?>[vars.size()];
+
+                    boolean match = true;
+
+                    for (int i = 0; i < 4 && match; i++) {
+
+                        final TermNode t = i == 3 ? contextTerm(sp) : sp
+                                .get(i);
+
+                        if (t == null)
+                            continue;
+
+                        final IV<?, ?> iv = spo.get(i);
+
+                        final IVariableOrConstant<?> ve = t
+                                .getValueExpression();
+
+                        if (ve.isConstant()) {
+
+                            match = ve.get().equals(iv);
+
+                        } else {
+
+                            final int j = vars.indexOf(ve);
+
+                            if (row[j] == null) {
+
+                                row[j] = iv;
+
+                            } else {
+
+                                // The same variable in two positions.
+                                match = row[j].equals(iv);
+
+                            }
+
+                        }
+
+                    }
+
+                    if (match)
+                        rows.add(Arrays.asList(row));
+
+                }
+
+            }
+
+            return rows;
+
+        }
+
+    }
+
+    /**
+     * The statements inserted and removed by a commit.
+     */
+    private static class ChangeSet {
+
+        final List<ISPO> inserted = new ArrayList<ISPO>();
+
+        final List<ISPO> removed = new ArrayList<ISPO>();
+
+    }
+
+    /**
+     * Collects the change set for a connection which writes on a namespace
+     * having standing queries.
+     */
+    private class ChangeLog implements IChangeLog {
+
+        private final String namespace;
+
+        private final UUID term2IdUUID;
+
+        private ChangeSet changeSet = new ChangeSet();
+
+        /**
+         * Set when the change set is too large to be buffered.
+         */
+        private boolean overflow = false;
+
+        /**
+         * A read-only transaction on the commit point before the change set
+         * -or- zero.
+         */
+        private long oldTx = 0L;
+
+        ChangeLog(final String namespace, final UUID term2IdUUID) {
+
+            this.namespace = namespace;
+
+            this.term2IdUUID = term2IdUUID;
+
+        }
+
+        @Override
+        public void changeEvent(final IChangeRecord record) {
+
+            if (overflow)
+                return;
+
+            final List<ISPO> stmts;
+
+            if (record.getChangeAction() == ChangeAction.INSERTED) {
+
+                stmts = changeSet.inserted;
+
+            } else if (record.getChangeAction() == ChangeAction.REMOVED) {
+
+                stmts = changeSet.removed;
+
+            } else {
+
+                // The statement type changed (no effect on the solutions).
+                return;
+
+            }
+
+            if (stmts.size() >= MAX_SEEDS) {
+
+                overflow = true;
+
+                changeSet = new ChangeSet();
+
+                return;
+
+            }
+
+            stmts.add(record.getStatement());
+
+        }
+
+        @Override
+        public void transactionBegin() {
+
+            reset();
+
+        }
+
+        @Override
+        public void transactionPrepare() {
+
+            if (oldTx != 0L) {
+
+                context.abortTx(oldTx);
+
+                oldTx = 0L;
+
+            }
+
+            final long lastCommitTime = getIndexManager().getLastCommitTime();
+
+            if (lastCommitTime != 0L)
+                oldTx = context.newTx(lastCommitTime);
+
+        }
+
+        @Override
+        public void transactionCommited(final long commitTime) {
+
+            if (oldTx == 0L || commitTime == 0L) {
+
+                // Nothing was committed (or the commit is deferred).
+                reset();
+
+                return;
+
+            }
+
+            commit(namespace, term2IdUUID, oldTx, commitTime,
+                    overflow ? null : changeSet);
+
+            // Note: The transaction is now owned by the commit task.
+            oldTx = 0L;
+
+            reset();
+
+        }
+
+        @Override
+        public void transactionAborted() {
+
+            reset();
+
+        }
+
+        @Override
+        public void close() {
+
+            reset();
+
+        }
+
+        private void reset() {
+
+            if (oldTx != 0L) {
+
+                context.abortTx(oldTx);
+
+                oldTx = 0L;
+
+            }
+
+            changeSet = new ChangeSet();
+
+            overflow = false;
+
+        }
+
+    }
+
+    /**
+     * Attaches a {@link ChangeLog} to each connection which writes on a
+     * namespace having standing queries. A single instance is registered with
+     * the {@link ServiceRegistry} for all {@link StandingQueryManager}s in the
+     * JVM. It is not exposed as a SERVICE. The KB instance is identified by
+     * the UUID of its TERM2ID index so the change logs of a
+     * {@link StandingQueryManager} are only attached to the connections for
+     * its own journal.
+     */
+    private static class ChangeLogFactory extends CustomServiceFactoryBase {
+
+        private static final CopyOnWriteArraySet<StandingQueryManager> managers = new CopyOnWriteArraySet<StandingQueryManager>();
+
+        private static boolean registered = false;
+
+        static synchronized void addManager(final StandingQueryManager manager) {
+
+            if (!registered) {
+
+                ServiceRegistry.getInstance().addCustomService(
+                        new ChangeLogFactory());
+
+                registered = true;
+
+            }
+
+            managers.add(manager);
+
+        }
+
+        static void removeManager(final StandingQueryManager manager) {
+
+            managers.remove(manager);
+
+        }
+
+        @Override
+        public IServiceOptions getServiceOptions() {
+
+            return new BigdataNativeServiceOptions();
+
+        }
+
+        /**
+         * Note: This is not invoked since the factory is not registered for a
+         * service URI.
+         */
+        @Override
+        public ServiceCall<?> create(final ServiceCallCreateParams params) {
+
+            throw new UnsupportedOperationException("Not a SERVICE");
+
+        }
+
+        @Override
+        public void startConnection(final BigdataSailConnection conn) {
+
+            if (managers.isEmpty())
+                return;
+
+            final AbstractTripleStore tripleStore = conn.getTripleStore();
+
+            final String namespace = tripleStore.getNamespace();
+
+            UUID term2IdUUID = null;
+
+            for (StandingQueryManager manager : managers) {
+
+                if (manager.queries.isEmpty())
+                    continue;
+
+                if (term2IdUUID == null)
+                    term2IdUUID = getTerm2IdUUID(tripleStore);
+
+                if (manager.hasStandingQueries(namespace, term2IdUUID)) {
+
+                    conn.addChangeLog(manager.new ChangeLog(namespace,
+                            term2IdUUID));
+
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,294 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.rdf.sail.webapp.StandingQueryManager.StandingQuery;
+
+/**
+ * Writes the deltas for a {@link StandingQuery} onto the response using the
+ * Servlet 3.1 asynchronous and non-blocking I/O APIs. The servlet container
+ * thread is released once the stream has been started, so an open stream does
+ * not hold a thread. The events are written when the container reports that
+ * the stream can accept data without blocking.
+ * <p>
+ * The request is completed once the standing query is closed and its close
+ * (or error) event has been written. If the client goes away, the standing
+ * query is closed.
+ * 
+ * @see AsyncQueryResponse
+ */
+class StandingQueryResponse implements WriteListener, AsyncListener {
+
+    private static final transient Logger log = Logger
+            .getLogger(StandingQueryResponse.class);
+
+    private final HttpServletRequest req;
+
+    private final HttpServletResponse resp;
+
+    private final StandingQueryManager manager;
+
+    private final StandingQuery q;
+
+    /**
+     * The event which has not yet been written to the client.
+     */
+    private byte[] pending = null;
+
+    /**
+     * Set once the close (or error) event has been queued.
+     */
+    private boolean terminated = false;
+
+    /**
+     * Set when the asynchronous request has been started.
+     */
+    private AsyncContext asyncContext;
+
+    private ServletOutputStream sos;
+
+    /**
+     * Set once the asynchronous request has been completed.
+     */
+    private boolean completed = false;
+
+    StandingQueryResponse(final HttpServletRequest req,
+            final HttpServletResponse resp, final StandingQueryManager manager,
+            final StandingQuery q) {
+
+        if (req == null)
+            throw new IllegalArgumentException();
+
+        if (resp == null)
+            throw new IllegalArgumentException();
+
+        if (manager == null)
+            throw new IllegalArgumentException();
+
+        if (q == null)
+            throw new IllegalArgumentException();
+
+        this.req = req;
+
+        this.resp = resp;
+
+        this.manager = manager;
+
+        this.q = q;
+
+    }
+
+    /**
+     * Start the asynchronous request. The caller's thread is released and the
+     * events are written onto the response as the client is able to accept
+     * them.
+     * 
+     * @throws IllegalStateException
+     *             if the request does not support asynchronous operations.
+     */
+    synchronized void start() throws IOException {
+
+        asyncContext = req.startAsync(req, resp);
+
+        // Note: The stream is open until the standing query is closed.
+        asyncContext.setTimeout(0L);
+
+        asyncContext.addListener(this);
+
+        sos = resp.getOutputStream();
+
+        // Commit the response headers.
+        pending = (": " + q.id + "\n\n").getBytes("UTF-8");
+
+        q.attach(this);
+
+        // Note: The container will invoke onWritePossible().
+        sos.setWriteListener(this);
+
+    }
+
+    /**
+     * Notify the stream that there is an event or that the standing query was
+     * closed.
+     */
+    synchronized void wakeUp() {
+
+        drain();
+
+    }
+
+    /**
+     * Write the pending events onto the response for so long as it can
+     * accept data without blocking. The request is completed once the
+     * standing query is closed and its close event has been written.
+     */
+    private void drain() {
+
+        assert Thread.holdsLock(this);
+
+        if (sos == null || completed)
+            return;
+
+        try {
+
+            while (sos.isReady()) {
+
+                if (pending == null) {
+
+                    if (terminated) {
+
+                        completed = true;
+
+                        asyncContext.complete();
+
+                        return;
+
+                    }
+
+                    final String event = q.nextEvent();
+
+                    if (event != null) {
+
+                        pending = event.getBytes("UTF-8");
+
+                    } else if (q.isClosed()) {
+
+                        final String error = q.getError();
+
+                        final String s = error == null ? "event: close\ndata: "
+                                + q.id : "event: error\ndata: "
+                                + error.replaceAll("[\r\n]+", " ");
+
+                        pending = (s + "\n\n").getBytes("UTF-8");
+
+                        terminated = true;
+
+                    } else {
+
+                        return;
+
+                    }
+
+                }
+
+                sos.write(pending);
+
+                pending = null;
+
+                if (sos.isReady())
+                    sos.flush();
+
+            }
+
+        } catch (IOException ex) {
+
+            onError(ex);
+
+        }
+
+    }
+
+    /*
+     * WriteListener (invoked by the container).
+     */
+
+    @Override
+    synchronized public void onWritePossible() throws IOException {
+
+        drain();
+
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+
+        synchronized (this) {
+
+            if (completed)
+                return;
+
+            if (log.isInfoEnabled())
+                log.info("Stream closed: " + q + " : " + t);
+
+            completed = true;
+
+            pending = null;
+
+            if (asyncContext != null)
+                asyncContext.complete();
+
+        }
+
+        // Note: Outside of the lock since close() wakes up this stream.
+        manager.close(q, null/* error */);
+
+    }
+
+    /*
+     * AsyncListener (invoked by the container).
+     */
+
+    @Override
+    public void onComplete(final AsyncEvent event) {
+
+        // NOP
+
+    }
+
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+
+        onError(event.getThrowable() == null ? new IOException("Timeout")
+                : event.getThrowable());
+
+    }
+
+    @Override
+    public void onError(final AsyncEvent event) {
+
+        onError(event.getThrowable());
+
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+
+        // NOP
+
+    }
+
+}
@@ -25,6 +25,7 @@ package com.bigdata.rdf.sail.webapp;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -58,14 +59,18 @@ import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.engine.QueryLog;
+import com.bigdata.bop.engine.QueryResourceLimits;
 import com.bigdata.bop.fed.QueryEngineFactory;
 import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.OneShotInstrument;
 import com.bigdata.ha.HAGlue;
 import com.bigdata.ha.QuorumService;
 import com.bigdata.journal.AbstractJournal;
 import com.bigdata.journal.DumpJournal;
 import com.bigdata.journal.IIndexManager;
+import com.bigdata.journal.IRootBlockView;
 import com.bigdata.journal.Journal;
+import com.bigdata.journal.Journal.IJournalCounters;
 import com.bigdata.quorum.Quorum;
 import com.bigdata.rdf.sail.QueryCancellationHelper;
 import com.bigdata.rdf.sail.model.JsonHelper;
@@ -77,6 +82,7 @@ import com.bigdata.rdf.sail.webapp.BigdataRDFContext.UpdateTask;
 import com.bigdata.rdf.sail.webapp.QueryServlet.SparqlQueryTask;
 import com.bigdata.rdf.sail.webapp.QueryServlet.SparqlUpdateTask;
 import com.bigdata.rdf.sail.webapp.client.ConnectOptions;
+import com.bigdata.rdf.sail.webapp.lbs.policy.counters.QueryEngineLBSPolicy;
 import com.bigdata.rdf.sparql.ast.ASTContainer;
 import com.bigdata.rdf.sparql.ast.QueryHints;
 import com.bigdata.rdf.sparql.ast.QueryRoot;
@@ -218,6 +224,15 @@ public class StatusServlet extends BigdataRDFServlet {
      * Request basic server health information.
      */
     static final String HEALTH = "health";
+
+    /**
+     * Request a compact report of the query workload on this service (running
+     * and waiting queries, recent query latency percentiles, and the commit
+     * point of the journal). The report is a {@link CounterSet} in XML. This
+     * is polled by the {@link QueryEngineLBSPolicy} to route read requests
+     * away from busy services. This option is exclusive of other parameters.
+     */
+    public static final String QUERY_LOAD = "queryLoad";
     
     /**
      * Handles CANCEL requests (terminate a running query).
@@ -463,6 +478,13 @@ public class StatusServlet extends BigdataRDFServlet {
             return;
         }
 
+      if (req.getParameter(QUERY_LOAD) != null) {
+
+         doQueryLoad(req, resp);
+
+         return;
+      }
+
       if (req.getParameter(HEALTH) != null) {
 
          new HAStatusServletUtil(getIndexManager()).doHealthStatus(req, resp);
@@ -786,6 +808,35 @@ public class StatusServlet extends BigdataRDFServlet {
 
                 }
 
+                // Admission control and scheduling for the NSS queries.
+                counterSet.makePath("queryScheduler").attach(
+                        getBigdataRDFContext().getQueryScheduler()
+                                .getCounters());
+
+                // Server-side cursors for paging through query results.
+                counterSet.makePath("queryCursors").attach(
+                        getBigdataRDFContext().getQueryCursorManager()
+                                .getCounters());
+
+                // Server-side prepared queries.
+                counterSet.makePath("preparedQueries").attach(
+                        getBigdataRDFContext().getPreparedQueryManager()
+                                .getCounters());
+
+                // Standing queries with incremental result deltas.
+                counterSet.makePath("standingQueries").attach(
+                        getBigdataRDFContext().getStandingQueryManager()
+                                .getCounters());
+
+                // Progress of the active streaming INSERT requests.
+                for (StreamingInsert ingest : getBigdataRDFContext()
+                        .getStreamingInserts()) {
+
+                    counterSet.makePath("streamingInserts/" + ingest.getUUID())
+                            .attach(ingest.getCounters());
+
+                }
+
                 // @SuppressWarnings("rawtypes")
                 // final Iterator<ICounter> itr = counterSet
                 // .getCounters(null/* filter */);
@@ -1202,6 +1253,11 @@ public class StatusServlet extends BigdataRDFServlet {
             final String chunksOut = stats == null ? NA : Long
                     .toString(stats.chunksOut.get());
 
+            // Resources consumed by the query.
+            final AbstractRunningQuery arq = (AbstractRunningQuery) q;
+
+            final QueryResourceLimits limits = arq.getResourceLimits();
+
             current.node("p")
                     //
                     .text("solutions=").node("span").attr("class", "solutions")
@@ -1215,7 +1271,21 @@ public class StatusServlet extends BigdataRDFServlet {
                     //
                     .text(", elapsed=").node("span").attr("class", "elapsed")
                        .text("" + elapsedMillis).close()
-                    .text("ms, ")
+                    .text("ms")
+                    //
+                    .text(", cpuTime=").node("span").attr("class", "cpu-time")
+                       .text("" + arq.getCpuTime()).close()
+                    .text("ms")
+                    //
+                    .text(", allocatedBytes=").node("span").attr("class", "allocated-bytes")
+                       .text("" + arq.getAllocatedBytes()).close()
+                    //
+                    .text(", nativeMemory=").node("span").attr("class", "native-memory")
+                       .text("" + arq.getNativeMemoryBytes()).close()
+                    //
+                    .text(", limits=").node("span").attr("class", "resource-limits")
+                       .text(limits.isUnlimited() ? NA : limits.toString()).close()
+                    .text(", ")
                     //
                     .node("a").attr("href", detailsURL)
                     .attr("class",  "details-url")
@@ -1442,6 +1512,57 @@ public class StatusServlet extends BigdataRDFServlet {
 	 * @see <a href="http://trac.blazegraph.com/ticket/1082" > Add ability to dump
 	 *      threads to status page </a>
 	 */
+    /**
+     * Write a compact report of the query workload on this service.
+     * 
+     * @see #QUERY_LOAD
+     */
+    private void doQueryLoad(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        final IIndexManager indexManager = getIndexManager();
+
+        final CounterSet counterSet = new CounterSet();
+
+        final QueryEngine queryEngine = QueryEngineFactory
+                .getQueryController(indexManager);
+
+        // Running queries and recent query latency.
+        counterSet.makePath(IJournalCounters.queryEngine).attach(
+                queryEngine.getCounters());
+
+        // Running and waiting NSS queries.
+        counterSet.makePath("queryScheduler").attach(
+                getBigdataRDFContext().getQueryScheduler().getCounters());
+
+        if (indexManager instanceof AbstractJournal) {
+
+            // The current commit point (used to compute the commit lag).
+            final IRootBlockView rb = ((AbstractJournal) indexManager)
+                    .getRootBlockView();
+
+            final CounterSet tmp = counterSet.makePath("Journal");
+
+            tmp.addCounter("commitCounter", new OneShotInstrument<Long>(rb
+                    .getCommitCounter()));
+
+            tmp.addCounter("lastCommitTime", new OneShotInstrument<Long>(rb
+                    .getLastCommitTime()));
+
+        }
+
+        final StringWriter w = new StringWriter();
+
+        counterSet.asXML(w, null/* filter */);
+
+        // The report is polled and must not be cached.
+        resp.addHeader("Cache-Control", "no-cache");
+
+        buildAndCommitResponse(resp, HTTP_OK, MIME_APPLICATION_XML,
+                w.toString());
+
+    }
+
 	private static void doThreadDump(final HttpServletRequest req,
 			final HttpServletResponse resp) throws IOException {
 
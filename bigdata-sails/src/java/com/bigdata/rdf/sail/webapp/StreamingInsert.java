@@ -0,0 +1,496 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.Instrument;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import com.bigdata.rdf.sail.webapp.InsertServlet.AddStatementHandler;
+
+/**
+ * A streaming INSERT. The request body is parsed into chunks of statements
+ * which are handed off through a bounded queue to a writer task running
+ * against the unisolated connection. Parsing therefore
+ * overlaps term resolution and index writes, which are performed by the
+ * {@link com.bigdata.rdf.rio.StatementBuffer} of the connection (the lexicon
+ * and statement indices are each written in parallel when the buffer is
+ * flushed). When the queue is full the parser blocks and stops reading the
+ * request body, so the client sees TCP flow control rather than an unbounded
+ * buffer on the server.
+ * <p>
+ * The writer commits each time the configured #of statements have been
+ * written since the last commit, so a continuous stream becomes visible to
+ * readers as it is ingested and the size of the write set is bounded. A
+ * failure rolls back to the last commit point. The progress of each active
+ * stream is reported by the {@link StatusServlet}.
+ * 
+ * @see InsertServlet#ATTR_STREAM
+ */
+public class StreamingInsert {
+
+    private static final transient Logger log = Logger
+            .getLogger(StreamingInsert.class);
+
+    /**
+     * The #of statements in each chunk handed off to the writer.
+     */
+    static final int CHUNK_SIZE = 10000;
+
+    /**
+     * The #of chunks which may be buffered between the parser and the writer.
+     */
+    static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * The default #of statements written between commits.
+     */
+    static final long DEFAULT_COMMIT_EVERY = 100000L;
+
+    /**
+     * Marks the end of the stream.
+     */
+    private static final Statement[] EOS = new Statement[0];
+
+    /**
+     * Marks a stream which was aborted by the parser.
+     */
+    private static final Statement[] ABORT = new Statement[0];
+
+    /**
+     * The identifier for this stream.
+     */
+    private final UUID uuid = UUID.randomUUID();
+
+    /**
+     * The namespace of the target KB.
+     */
+    private final String namespace;
+
+    /**
+     * The #of statements written between commits.
+     */
+    private final long commitEvery;
+
+    /**
+     * The time at which the stream was started.
+     */
+    private final long begin = System.currentTimeMillis();
+
+    /**
+     * The chunks of statements waiting for the writer.
+     */
+    private final BlockingQueue<Statement[]> queue = new ArrayBlockingQueue<Statement[]>(
+            QUEUE_CAPACITY);
+
+    /**
+     * The #of statements parsed.
+     */
+    private final AtomicLong nparsed = new AtomicLong();
+
+    /**
+     * The #of statements written (and the #of statements modified).
+     */
+    private final AtomicLong nwritten = new AtomicLong();
+
+    /**
+     * The #of commits.
+     */
+    private final AtomicLong ncommits = new AtomicLong();
+
+    /**
+     * The #of milliseconds the parser was blocked because the writer was
+     * behind.
+     */
+    private final AtomicLong blockedMillis = new AtomicLong();
+
+    /**
+     * Set when the writer is done. The parser halts if the writer is done
+     * before the end of the stream.
+     */
+    private volatile boolean writerDone = false;
+
+    /**
+     * The cause when the stream was aborted by the parser.
+     */
+    private volatile Throwable parserCause = null;
+
+    /**
+     * 
+     * @param namespace
+     *            The namespace of the target KB.
+     * @param commitEvery
+     *            The #of statements written between commits.
+     */
+    StreamingInsert(final String namespace, final long commitEvery) {
+
+        if (namespace == null)
+            throw new IllegalArgumentException();
+
+        if (commitEvery <= 0)
+            throw new IllegalArgumentException();
+
+        this.namespace = namespace;
+
+        this.commitEvery = commitEvery;
+
+    }
+
+    /**
+     * The identifier for this stream.
+     */
+    public UUID getUUID() {
+
+        return uuid;
+
+    }
+
+    /**
+     * Return an {@link org.openrdf.rio.RDFHandler} which hands off the parsed
+     * statements to the writer. The parser blocks while the queue is full.
+     */
+    RDFHandlerBase newParserHandler() {
+
+        return new RDFHandlerBase() {
+
+            private Statement[] chunk = new Statement[CHUNK_SIZE];
+            private int n = 0;
+
+            @Override
+            public void handleStatement(final Statement stmt)
+                    throws RDFHandlerException {
+
+                chunk[n++] = stmt;
+
+                if (n == CHUNK_SIZE) {
+
+                    handOff(chunk);
+
+                    chunk = new Statement[CHUNK_SIZE];
+
+                    n = 0;
+
+                }
+
+            }
+
+            @Override
+            public void endRDF() throws RDFHandlerException {
+
+                if (n > 0) {
+
+                    final Statement[] a = new Statement[n];
+
+                    System.arraycopy(chunk, 0, a, 0, n);
+
+                    handOff(a);
+
+                }
+
+                handOff(EOS);
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Notify the writer that the stream was aborted by the parser. The writer
+     * will roll back any writes since the last commit.
+     * 
+     * @param cause
+     *            The reason the parser failed.
+     */
+    void abort(final Throwable cause) {
+
+        parserCause = cause;
+
+        queue.clear();
+
+        queue.offer(ABORT);
+
+    }
+
+    /**
+     * Hand off a chunk to the writer, blocking while the queue is full.
+     * 
+     * @throws RDFHandlerException
+     *             if the writer is done (it failed) or the thread is
+     *             interrupted.
+     */
+    private void handOff(final Statement[] chunk) throws RDFHandlerException {
+
+        final long t0 = System.currentTimeMillis();
+
+        try {
+
+            while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+
+                if (writerDone) {
+
+                    throw new RDFHandlerException("Writer is done: " + this);
+
+                }
+
+            }
+
+        } catch (InterruptedException ex) {
+
+            throw new RDFHandlerException(ex);
+
+        } finally {
+
+            blockedMillis.addAndGet(System.currentTimeMillis() - t0);
+
+        }
+
+        if (chunk != EOS)
+            nparsed.addAndGet(chunk.length);
+
+    }
+
+    /**
+     * Return the counters reporting the progress of this stream.
+     */
+    public CounterSet getCounters() {
+
+        final CounterSet counters = new CounterSet();
+
+        counters.addCounter("namespace", new Instrument<String>() {
+            @Override
+            public void sample() {
+                setValue(namespace);
+            }
+        });
+
+        counters.addCounter("parsedCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nparsed.get());
+            }
+        });
+
+        counters.addCounter("writtenCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(nwritten.get());
+            }
+        });
+
+        counters.addCounter("commitCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(ncommits.get());
+            }
+        });
+
+        counters.addCounter("queueSize", new Instrument<Integer>() {
+            @Override
+            public void sample() {
+                setValue(queue.size());
+            }
+        });
+
+        counters.addCounter("parserBlockedMillis", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(blockedMillis.get());
+            }
+        });
+
+        counters.addCounter("elapsedMillis", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(System.currentTimeMillis() - begin);
+            }
+        });
+
+        return counters;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getName() + "{uuid=" + uuid + ",namespace="
+                + namespace + ",nparsed=" + nparsed + ",nwritten=" + nwritten
+                + ",ncommits=" + ncommits + "}";
+
+    }
+
+    /**
+     * Task writes the chunks of statements from the queue onto the unisolated
+     * connection, committing every {@link StreamingInsert#commitEvery}
+     * statements.
+     */
+    class WriterTask extends AbstractRestApiTask<Void> {
+
+        private final Resource[] defaultContext;
+
+        /**
+         * 
+         * @param defaultContext
+         *            The context(s) for triples without an explicit named
+         *            graph when the KB instance is operating in a quads mode.
+         */
+        public WriterTask(final HttpServletRequest req,
+                final HttpServletResponse resp, final long timestamp,
+                final Resource[] defaultContext) {
+
+            super(req, resp, StreamingInsert.this.namespace, timestamp);
+
+            this.defaultContext = defaultContext;
+
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return false;
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final AtomicLong nmodified = new AtomicLong(0L);
+
+            BigdataSailRepositoryConnection conn = null;
+            boolean success = false;
+            try {
+
+                conn = getConnection();
+
+                final AddStatementHandler handler = new AddStatementHandler(
+                        conn.getSailConnection(), nmodified, defaultContext);
+
+                long lastCommit = 0L;
+
+                while (true) {
+
+                    final Statement[] chunk = queue.take();
+
+                    if (chunk == EOS)
+                        break;
+
+                    if (chunk == ABORT)
+                        throw new RuntimeException("Aborted by parser: "
+                                + StreamingInsert.this, parserCause);
+
+                    for (Statement stmt : chunk) {
+
+                        handler.handleStatement(stmt);
+
+                    }
+
+                    nwritten.set(nmodified.get());
+
+                    if (nmodified.get() - lastCommit >= commitEvery) {
+
+                        conn.commit();
+
+                        ncommits.incrementAndGet();
+
+                        lastCommit = nmodified.get();
+
+                        if (log.isInfoEnabled())
+                            log.info("Commit: " + StreamingInsert.this);
+
+                    }
+
+                }
+
+                conn.commit();
+
+                ncommits.incrementAndGet();
+
+                success = true;
+
+                reportProgress(System.currentTimeMillis() - begin);
+
+                return (Void) null;
+
+            } finally {
+
+                writerDone = true;
+
+                if (conn != null) {
+
+                    if (!success)
+                        conn.rollback();
+
+                    conn.close();
+
+                }
+
+            }
+
+        }
+
+        /**
+         * Reports the mutation count, commit count and elapsed time.
+         */
+        private void reportProgress(final long elapsed) throws Exception {
+
+            if (log.isInfoEnabled())
+                log.info("Done: " + StreamingInsert.this + ", elapsed="
+                        + elapsed);
+
+            final StringWriter w = new StringWriter();
+
+            final XMLBuilder t = new XMLBuilder(w);
+
+            t.root("data").attr("modified", nwritten.get())
+                    .attr("commits", ncommits.get())
+                    .attr("milliseconds", elapsed).close();
+
+            resp.setStatus(HttpServletResponse.SC_OK);
+
+            resp.setContentType(BigdataServlet.MIME_APPLICATION_XML);
+
+            final Writer writer = resp.getWriter();
+
+            writer.write(w.toString());
+
+        }
+
+    }
+
+}
@@ -409,7 +409,8 @@ public class UpdateServlet extends BigdataRDFServlet {
 									queryTask);
 
 							// Submit query for evaluation.
-							context.queryService.execute(ft);
+							context.queryScheduler.execute(namespace,
+									req.getRemoteAddr(), ft);
 
 							// Reads on the statements produced by the query.
 							final InputStream is = newPipedInputStream(os);
@@ -628,7 +629,8 @@ public class UpdateServlet extends BigdataRDFServlet {
                   final FutureTask<Void> ft = new FutureTask<Void>(queryTask);
 
                   // Submit query for evaluation.
-                  context.queryService.execute(ft);
+                  context.queryScheduler.execute(namespace,
+                          req.getRemoteAddr(), ft);
 
                   // Reads on the statements produced by the query.
                   final InputStream is = newPipedInputStream(os);
@@ -210,7 +210,7 @@ public class CountersLBSPolicy extends AbstractHostLBSPolicy {
 
     }
 
-    private HttpClient getClientConnectionManager() {
+    protected HttpClient getClientConnectionManager() {
 
         final Journal journal = getJournal();
 
@@ -269,6 +269,24 @@ public class CountersLBSPolicy extends AbstractHostLBSPolicy {
         // Used to defeat the httpd cache on /counters.
         o.addRequestParam("uniqueId", Integer.toString(uniqueId));
 
+        return readCounterSet(cm, hostname, o);
+
+    }
+
+    /**
+     * Do an HTTP GET to the remote service and return the {@link CounterSet}
+     * encoded as XML in the response.
+     * 
+     * @param cm
+     * @param hostname
+     * @param o
+     *            The connection options.
+     * @return
+     * @throws Exception
+     */
+    static protected CounterSet readCounterSet(final HttpClient cm,
+            final String hostname, final ConnectOptions o) throws Exception {
+
         boolean didDrainEntity = false;
         JettyResponseListener response = null;
         try {
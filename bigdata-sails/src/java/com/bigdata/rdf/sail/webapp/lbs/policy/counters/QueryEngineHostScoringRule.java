@@ -0,0 +1,105 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.sail.webapp.lbs.policy.counters;
+
+import com.bigdata.counters.ICounterSet;
+import com.bigdata.journal.Journal.IJournalCounters;
+import com.bigdata.rdf.sail.webapp.lbs.IHostMetrics;
+import com.bigdata.rdf.sail.webapp.lbs.IHostScoringRule;
+
+/**
+ * Best effort computation of a workload score based on the live query engine
+ * metrics reported by a service (see {@link QueryEngineLBSPolicy}) defined as
+ * follows:
+ * 
+ * <pre>
+ * (1d + running + waiting) * (1d + latency / 1000d) * (1d + commitLag)
+ * </pre>
+ * 
+ * where <code>running</code> is the #of queries running on the query engine,
+ * <code>waiting</code> is the #of queries waiting for the query service,
+ * <code>latency</code> is the 95th percentile of the elapsed time (millis) of
+ * the recently completed queries, and <code>commitLag</code> is the #of commit
+ * points by which the service trails the most current service.
+ * <p>
+ * The factors are multiplied so a service which is behind on its commits is
+ * strongly discounted even if it is otherwise idle. Each factor is at least
+ * ONE (1) so an idle service still receives a share of the requests. If a
+ * metric is not available for a host, then it is treated as ZERO (0).
+ */
+public class QueryEngineHostScoringRule implements IHostScoringRule {
+
+    /**
+     * The #of queries running on the query engine.
+     */
+    public static final String RUNNING_QUERY_COUNT = IJournalCounters.queryEngine
+            + ICounterSet.pathSeparator + "runningQueryCount";
+
+    /**
+     * The #of queries waiting for the query service.
+     */
+    public static final String WAITING_QUERY_COUNT = "queryScheduler"
+            + ICounterSet.pathSeparator + "waitingCount";
+
+    /**
+     * The 95th percentile of the elapsed time (millis) of the recently
+     * completed queries.
+     */
+    public static final String QUERY_LATENCY = IJournalCounters.queryEngine
+            + ICounterSet.pathSeparator + "queryLatencyP95";
+
+    /**
+     * The #of commit points by which the service trails the most current
+     * service (computed by the {@link QueryEngineLBSPolicy}).
+     */
+    public static final String COMMIT_LAG = "Journal"
+            + ICounterSet.pathSeparator + "commitLag";
+
+    @Override
+    public String[] getMetricNames() {
+
+        return new String[] { RUNNING_QUERY_COUNT, WAITING_QUERY_COUNT,
+                QUERY_LATENCY, COMMIT_LAG };
+
+    }
+
+    @Override
+    public double getScore(final IHostMetrics metrics) {
+
+        final double running = metrics.getNumeric(RUNNING_QUERY_COUNT, 0d);
+
+        final double waiting = metrics.getNumeric(WAITING_QUERY_COUNT, 0d);
+
+        final double latency = metrics.getNumeric(QUERY_LATENCY, 0d);
+
+        final double commitLag = metrics.getNumeric(COMMIT_LAG, 0d);
+
+        final double hostScore = (1d + running + waiting)
+                * (1d + latency / 1000d) * (1d + commitLag);
+
+        return hostScore;
+
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.sail.webapp.lbs.policy.counters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.client.HttpClient;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.ICounter;
+import com.bigdata.counters.ICounterNode;
+import com.bigdata.counters.OneShotInstrument;
+import com.bigdata.rdf.sail.webapp.StatusServlet;
+import com.bigdata.rdf.sail.webapp.client.ConnectOptions;
+import com.bigdata.rdf.sail.webapp.lbs.IHALoadBalancerPolicy;
+import com.bigdata.rdf.sail.webapp.lbs.IHostMetrics;
+import com.bigdata.rdf.sail.webapp.lbs.IHostScoringRule;
+import com.bigdata.rdf.sail.webapp.lbs.ServiceScore;
+
+/**
+ * Stochastically proxy the request to the services based on their query
+ * workload.
+ * <p>
+ * This {@link IHALoadBalancerPolicy} periodically polls each service using
+ * {@link StatusServlet#QUERY_LOAD}. That request returns a small
+ * {@link CounterSet} reporting the #of running queries on the query engine,
+ * the #of queries waiting for the query service, the recent query latency
+ * percentiles, and the commit point of the service. Unlike the
+ * {@link CountersLBSPolicy}, this does not depend on the platform statistics
+ * and the response is only a few hundred bytes.
+ * <p>
+ * The commit lag of each service is computed as the difference between its
+ * commit counter and the greatest commit counter reported by any service. A
+ * follower which is still applying a large commit will trail the leader and
+ * its reads will be routed to the other services until it catches up.
+ * 
+ * @see QueryEngineHostScoringRule
+ */
+public class QueryEngineLBSPolicy extends CountersLBSPolicy {
+
+    private static final Logger log = Logger
+            .getLogger(QueryEngineLBSPolicy.class);
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The commit counter reported by a service.
+     */
+    static final String COMMIT_COUNTER = "Journal/commitCounter";
+
+    /**
+     * The most recent host metrics for each host running a service of interest.
+     */
+    private final ConcurrentHashMap<String/* hostname */, IHostMetrics> hostMetricsMap = new ConcurrentHashMap<String, IHostMetrics>();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation issues HTTP requests to obtain the current query
+     * workload for each host on which a service is known to be running.
+     */
+    @Override
+    protected Map<String, IHostMetrics> getHostReportForKnownServices(
+            final IHostScoringRule scoringRule,
+            final ServiceScore[] serviceScores) {
+
+        final HttpClient cm = getClientConnectionManager();
+
+        // The query workload reported by each host.
+        final Map<String/* hostname */, CounterSet> reports = new LinkedHashMap<String, CounterSet>();
+
+        for (ServiceScore serviceScore : serviceScores) {
+
+            if (serviceScore == null) // should never be null.
+                continue;
+
+            final String hostname = serviceScore.getHostname();
+
+            if (hostname == null) // should never be null.
+                continue;
+
+            final String baseRequestURI = getServiceScoreForHostname(hostname)
+                    .getRequestURI();
+
+            try {
+
+                reports.put(hostname,
+                        doQueryLoadRequest(cm, hostname, baseRequestURI));
+
+            } catch (Exception ex) {
+
+                log.error(ex, ex);
+
+            }
+
+        }
+
+        // Annotate each report with its commit lag.
+        addCommitLag(reports);
+
+        for (Map.Entry<String, CounterSet> e : reports.entrySet()) {
+
+            hostMetricsMap.put(e.getKey(), new CounterSetHostMetricsWrapper(
+                    e.getValue()));
+
+        }
+
+        return hostMetricsMap;
+
+    }
+
+    /**
+     * Add a {@link QueryEngineHostScoringRule#COMMIT_LAG} counter to each
+     * report. The commit lag is the #of commit points by which the service
+     * trails the most current service. Nothing is added to a report which
+     * does not include the commit counter for the service.
+     * 
+     * @param reports
+     *            The query workload reported by each host.
+     */
+    static void addCommitLag(final Map<String, CounterSet> reports) {
+
+        long maxCommitCounter = -1L;
+
+        for (CounterSet counterSet : reports.values()) {
+
+            maxCommitCounter = Math.max(maxCommitCounter,
+                    getCommitCounter(counterSet));
+
+        }
+
+        for (CounterSet counterSet : reports.values()) {
+
+            final long commitCounter = getCommitCounter(counterSet);
+
+            if (commitCounter == -1L)
+                continue;
+
+            counterSet.makePath("Journal").addCounter(
+                    "commitLag",
+                    new OneShotInstrument<Long>(maxCommitCounter
+                            - commitCounter));
+
+        }
+
+    }
+
+    /**
+     * Return the commit counter reported by a service -or- <code>-1L</code> if
+     * the commit counter was not reported.
+     */
+    @SuppressWarnings("rawtypes")
+    private static long getCommitCounter(final CounterSet counterSet) {
+
+        final ICounterNode c = counterSet.getPath(COMMIT_COUNTER);
+
+        if (c == null || !c.isCounter())
+            return -1L;
+
+        return ((Number) ((ICounter) c).getValue()).longValue();
+
+    }
+
+    /**
+     * Do an HTTP GET to the remote service and return its query workload.
+     * 
+     * @param cm
+     * @param hostname
+     * @param baseRequestURI
+     * @return
+     * @throws Exception
+     */
+    private static CounterSet doQueryLoadRequest(final HttpClient cm,
+            final String hostname, final String baseRequestURI)
+            throws Exception {
+
+        final String uriStr = baseRequestURI + "/status";
+
+        final ConnectOptions o = new ConnectOptions(uriStr);
+
+        o.setAcceptHeader(ConnectOptions.MIME_APPLICATION_XML);
+
+        o.method = "GET";
+
+        o.addRequestParam(StatusServlet.QUERY_LOAD);
+
+        return readCounterSet(cm, hostname, o);
+
+    }
+
+    @Override
+    protected String getDefaultScoringRule() {
+
+        return QueryEngineHostScoringRule.class.getName();
+
+    }
+
+}
@@ -102,6 +102,9 @@ public class TestAll_AST extends TestCase {
         // Test suite for the VIRTUAL GRAPHS extension.
         suite.addTestSuite(TestVirtualGraphs.class);
 
+        // Test suite for the cache of parsed queries.
+        suite.addTestSuite(TestParsedQueryCache.class);
+
         // TODO Test suite for property paths.
 
         /*
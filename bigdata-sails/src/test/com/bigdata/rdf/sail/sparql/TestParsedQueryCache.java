@@ -0,0 +1,206 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.sail.sparql;
+
+import org.openrdf.query.MalformedQueryException;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+
+/**
+ * Test suite for the {@link ParsedQueryCache}.
+ */
+public class TestParsedQueryCache extends AbstractBigdataExprBuilderTestCase {
+
+    public TestParsedQueryCache() {
+    }
+
+    public TestParsedQueryCache(String name) {
+        super(name);
+    }
+
+    /**
+     * Unit test for the normalization of the query string. White space and
+     * comments are collapsed except within string literals and IRIs.
+     */
+    public void test_normalize() {
+
+        assertEquals("SELECT * WHERE { ?s ?p ?o }",
+                ParsedQueryCache.normalize("  SELECT *\n\tWHERE {\r\n ?s  ?p ?o }\n"));
+
+        assertEquals("SELECT * WHERE { ?s ?p ?o }",
+                ParsedQueryCache.normalize("SELECT * # comment\nWHERE { ?s ?p ?o } # trailing comment"));
+
+        // Note: white space and '#' are preserved within string literals.
+        assertEquals("SELECT * WHERE { ?s ?p \"a  # b\" }",
+                ParsedQueryCache.normalize("SELECT * WHERE { ?s ?p \"a  # b\" }"));
+
+        assertEquals("SELECT * WHERE { ?s ?p 'it\\'s  # x' }",
+                ParsedQueryCache.normalize("SELECT * WHERE { ?s ?p 'it\\'s  # x' }"));
+
+        assertEquals("SELECT * WHERE { ?s ?p \"\"\"a\n  \"b\" \"\"\" }",
+                ParsedQueryCache.normalize("SELECT * WHERE { ?s ?p \"\"\"a\n  \"b\" \"\"\" }"));
+
+        // Note: '#' is preserved within IRIs.
+        assertEquals("SELECT * WHERE { ?s <http://example.org/a#b> ?o }",
+                ParsedQueryCache.normalize("SELECT * WHERE { ?s <http://example.org/a#b>  ?o }"));
+
+        // Note: '<' is an operator when it does not start an IRI.
+        assertEquals("SELECT * WHERE { ?s ?p ?o FILTER(?o < 5) }",
+                ParsedQueryCache.normalize("SELECT * WHERE { ?s ?p ?o FILTER(?o   <   5) } # x < y"));
+
+    }
+
+    /**
+     * Unit test verifies that a query whose RDF Values are known to the
+     * lexicon is cached, that queries which differ only in their layout share
+     * the cache entry, and that each caller is given its own copy of the AST.
+     */
+    public void test_cacheHit() throws MalformedQueryException {
+
+        final BigdataURI p = valueFactory.createURI("http://example.org/p");
+
+        tripleStore.addTerms(new BigdataValue[] { p });
+
+        final ParsedQueryCache cache = new ParsedQueryCache(10/* capacity */);
+
+        final String query1 = "SELECT ?s WHERE { ?s <http://example.org/p> ?o }";
+
+        final String query2 = "SELECT ?s\nWHERE {\n  ?s <http://example.org/p> ?o # comment\n}";
+
+        final ASTContainer ast1 = cache.parseQuery(tripleStore, query1, baseURI);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+
+        final ASTContainer ast2 = cache.parseQuery(tripleStore, query2, baseURI);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+
+        assertNotSame(ast1, ast2);
+        assertNotSame(ast1.getOriginalAST(), ast2.getOriginalAST());
+        assertEquals(ast1.getOriginalAST(), ast2.getOriginalAST());
+
+        // The query string is the one given by the caller.
+        assertEquals(query2, ast2.getQueryString());
+
+        // Modify the AST given to the caller.
+        final StatementPatternNode sp2 = BOpUtility.visitAll(
+                ast2.getOriginalAST(), StatementPatternNode.class).next();
+        sp2.setQueryHint(QueryHints.OPTIMIZER, "None");
+        ((JoinGroupNode) ast2.getOriginalAST().getWhereClause())
+                .addChild(new JoinGroupNode());
+
+        // The cached AST was not modified.
+        final ASTContainer ast3 = cache.parseQuery(tripleStore, query1, baseURI);
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(ast1.getOriginalAST(), ast3.getOriginalAST());
+
+        final StatementPatternNode sp3 = BOpUtility.visitAll(
+                ast3.getOriginalAST(), StatementPatternNode.class).next();
+        assertNull(sp3.getQueryHint(QueryHints.OPTIMIZER));
+
+    }
+
+    /**
+     * Unit test verifies that a query using an RDF Value which is not known
+     * to the lexicon is not cached (the Value is assigned a mock IV which
+     * would be stale once the Value is added to the lexicon).
+     */
+    public void test_unknownValue_notCached() throws MalformedQueryException {
+
+        final ParsedQueryCache cache = new ParsedQueryCache(10/* capacity */);
+
+        final String query = "SELECT ?s WHERE { ?s <http://example.org/unknown> ?o }";
+
+        cache.parseQuery(tripleStore, query, baseURI);
+        cache.parseQuery(tripleStore, query, baseURI);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.size());
+
+    }
+
+    /**
+     * Unit test verifies that a query with a dataset declaration is not
+     * cached.
+     */
+    public void test_dataset_notCached() throws MalformedQueryException {
+
+        final BigdataURI p = valueFactory.createURI("http://example.org/p");
+
+        final BigdataURI g = valueFactory.createURI("http://example.org/g");
+
+        tripleStore.addTerms(new BigdataValue[] { p, g });
+
+        final ParsedQueryCache cache = new ParsedQueryCache(10/* capacity */);
+
+        final String query = "SELECT ?s FROM <http://example.org/g> WHERE { ?s <http://example.org/p> ?o }";
+
+        cache.parseQuery(tripleStore, query, baseURI);
+
+        assertEquals(0, cache.size());
+
+    }
+
+    /**
+     * Unit test for LRU eviction and for the invalidation of a namespace.
+     */
+    public void test_evictionAndInvalidate() throws MalformedQueryException {
+
+        final ParsedQueryCache cache = new ParsedQueryCache(2/* capacity */);
+
+        cache.parseQuery(tripleStore, "SELECT ?s WHERE { ?s ?p 1 }", baseURI);
+        cache.parseQuery(tripleStore, "SELECT ?s WHERE { ?s ?p 2 }", baseURI);
+        cache.parseQuery(tripleStore, "SELECT ?s WHERE { ?s ?p 3 }", baseURI);
+
+        assertEquals(2, cache.size());
+
+        // The least recently used entry was evicted.
+        cache.parseQuery(tripleStore, "SELECT ?s WHERE { ?s ?p 1 }", baseURI);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+
+        cache.invalidate("someOtherNamespace");
+
+        assertEquals(2, cache.size());
+
+        cache.invalidate(tripleStore.getNamespace());
+
+        assertEquals(0, cache.size());
+
+    }
+
+}
@@ -229,6 +229,18 @@ public abstract class AbstractTestNanoSparqlClient<S extends IIndexManager> exte
 		return testMode;
 	}
 
+	/**
+	 * Hook for a test suite to specify additional init parameters for the
+	 * {@link NanoSparqlServer} started by {@link #newFixture(String)}. The
+	 * default implementation does nothing.
+	 * 
+	 * @param initParams
+	 *            The init parameters.
+	 */
+	protected void addInitParams(final Map<String, String> initParams) {
+
+	}
+
 	protected Server newFixture(final String lnamespace) throws Exception {
 
 	   final IIndexManager indexManager = getIndexManager();
@@ -254,6 +266,8 @@ public abstract class AbstractTestNanoSparqlClient<S extends IIndexManager> exte
 
             initParams.put(ConfigParams.CREATE, "false");
             
+            addInitParams(initParams);
+
         }
         // Start server for that kb instance.
         final Server fixture = NanoSparqlServer.newInstance(0/* port */,
@@ -59,6 +59,9 @@ public class TestAll extends TestCase {
 
         // Test suite of NSS startup behavior and overrides.
         suite.addTestSuite(TestNanoSparqlServer.class);
+
+        // Admission control and scheduling for SPARQL requests.
+        suite.addTestSuite(TestQueryScheduler.class);
 //
 //        /*
 //         * WebApp Client.
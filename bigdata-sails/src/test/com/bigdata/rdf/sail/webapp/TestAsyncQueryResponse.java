@@ -0,0 +1,209 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.GraphQueryResult;
+import org.openrdf.query.TupleQueryResult;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository.AddOp;
+
+/**
+ * Test suite for streaming SPARQL QUERY results using asynchronous,
+ * non-blocking I/O ({@link ConfigParams#ASYNC_QUERY_RESPONSE}). The result
+ * sets are large enough that the bounded buffer of the
+ * {@link AsyncQueryResponse} fills up and the query must wait on the client.
+ * 
+ * @param <S>
+ */
+public class TestAsyncQueryResponse<S extends IIndexManager> extends
+        AbstractTestNanoSparqlClient<S> {
+
+    public TestAsyncQueryResponse() {
+    }
+
+    public TestAsyncQueryResponse(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+
+        return ProxySuiteHelper.suiteWhenStandalone(TestAsyncQueryResponse.class,
+                "test.*", TestMode.triples);
+
+    }
+
+    /**
+     * The #of statements in the KB.
+     */
+    private static final int N = 5000;
+
+    @Override
+    protected void addInitParams(final Map<String, String> initParams) {
+
+        initParams.put(ConfigParams.ASYNC_QUERY_RESPONSE, "true");
+
+    }
+
+    /**
+     * Load {@link #N} statements, each having a large literal.
+     */
+    private RemoteRepository loadData() throws Exception {
+
+        final RemoteRepository repo = m_repo;
+
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 200; i++)
+            sb.append('x');
+
+        final List<Statement> stmts = new LinkedList<Statement>();
+
+        for (int i = 0; i < N; i++) {
+
+            stmts.add(vf.createStatement(
+                    vf.createURI("http://www.bigdata.com/s" + i),
+                    vf.createURI("http://www.bigdata.com/p"),
+                    vf.createLiteral(sb.toString() + i)));
+
+        }
+
+        assertEquals(N, repo.add(new AddOp(stmts)));
+
+        return repo;
+
+    }
+
+    /**
+     * A SELECT query whose results are larger than the buffer.
+     */
+    public void test_select() throws Exception {
+
+        final RemoteRepository repo = loadData();
+
+        final TupleQueryResult result = repo.prepareTupleQuery(
+                "SELECT * { ?s <http://www.bigdata.com/p> ?o }").evaluate();
+
+        try {
+
+            int n = 0;
+
+            while (result.hasNext()) {
+
+                result.next();
+
+                n++;
+
+            }
+
+            assertEquals(N, n);
+
+        } finally {
+
+            result.close();
+
+        }
+
+        // The server is still usable.
+        assertTrue(repo.prepareBooleanQuery("ASK { ?s ?p ?o }").evaluate());
+
+    }
+
+    /**
+     * A CONSTRUCT query whose results are larger than the buffer.
+     */
+    public void test_construct() throws Exception {
+
+        final RemoteRepository repo = loadData();
+
+        final GraphQueryResult result = repo.prepareGraphQuery(
+                "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o . FILTER (?p = <http://www.bigdata.com/p>) }").evaluate();
+
+        try {
+
+            int n = 0;
+
+            while (result.hasNext()) {
+
+                result.next();
+
+                n++;
+
+            }
+
+            assertEquals(N, n);
+
+        } finally {
+
+            result.close();
+
+        }
+
+    }
+
+    /**
+     * The client closes the result before it has been fully consumed. The
+     * query is cancelled and the server continues to accept new requests.
+     */
+    public void test_clientCloses() throws Exception {
+
+        final RemoteRepository repo = loadData();
+
+        for (int i = 0; i < 3; i++) {
+
+            final TupleQueryResult result = repo.prepareTupleQuery(
+                    "SELECT * { ?s <http://www.bigdata.com/p> ?o }").evaluate();
+
+            try {
+
+                assertTrue(result.hasNext());
+
+                result.next();
+
+            } finally {
+
+                result.close();
+
+            }
+
+        }
+
+        assertTrue(repo.prepareBooleanQuery("ASK { ?s ?p ?o }").evaluate());
+
+    }
+
+}
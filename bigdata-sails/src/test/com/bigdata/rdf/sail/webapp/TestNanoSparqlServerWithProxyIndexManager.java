@@ -256,6 +256,7 @@ public class TestNanoSparqlServerWithProxyIndexManager<S extends IIndexManager>
          // Jetty)
          suite.addTestSuite(Test_REST_Structure.class);
          suite.addTestSuite(Test_REST_ASK.class);
+         suite.addTestSuite(Test_REST_BATCH.class);
          suite.addTestSuite(Test_REST_DESCRIBE.class);
          suite.addTestSuite(Test_REST_ESTCARD.class);
          if(BigdataStatics.runKnownBadTests) {// FIXME Restore for BLZG-1195
@@ -279,6 +280,11 @@ public class TestNanoSparqlServerWithProxyIndexManager<S extends IIndexManager>
          suite.addTestSuite(Test_REST_DELETE_WITH_BODY.class);
          suite.addTestSuite(TestNanoSparqlClient.class);
          suite.addTestSuite(TestMultiTenancyAPI.class); // Multi-tenancy API.
+         suite.addTestSuite(TestAsyncQueryResponse.class); // Streaming query results using non-blocking I/O.
+         suite.addTestSuite(TestQueryCursor.class); // Server-side cursors for paging through query results.
+         suite.addTestSuite(TestStreamingInsert.class); // Streaming INSERT with backpressure.
+         suite.addTestSuite(TestPreparedQuery.class); // Server-side prepared queries.
+         suite.addTestSuite(TestStandingQuery.class); // Standing queries with incremental result deltas.
 
          // Transaction management API.
          suite.addTestSuite(Test_REST_TX_API.class);
@@ -0,0 +1,528 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import junit.framework.Test;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.resultio.BooleanQueryResultFormat;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository.AddOp;
+
+/**
+ * Test suite for server-side prepared queries ({@link PreparedQueryManager}).
+ * 
+ * @param <S>
+ */
+public class TestPreparedQuery<S extends IIndexManager> extends
+        AbstractTestNanoSparqlClient<S> {
+
+    public TestPreparedQuery() {
+    }
+
+    public TestPreparedQuery(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+
+        return ProxySuiteHelper.suiteWhenStandalone(TestPreparedQuery.class,
+                "test.*", TestMode.triples);
+
+    }
+
+    /**
+     * The maximum #of retained prepared queries.
+     */
+    private static final int MAX_PREPARED_QUERIES = 2;
+
+    private static final String XSD_INT = "http://www.w3.org/2001/XMLSchema#int";
+
+    private static final String QUERY = "SELECT ?s { ?s <http://www.bigdata.com/p> ?o }";
+
+    private String sparqlEndpointURL;
+
+    @Override
+    protected void addInitParams(final Map<String, String> initParams) {
+
+        initParams.put(ConfigParams.MAX_PREPARED_QUERIES,
+                Integer.toString(MAX_PREPARED_QUERIES));
+
+    }
+
+    @Override
+    public void setUp() throws Exception {
+
+        super.setUp();
+
+        sparqlEndpointURL = m_serviceURL + "/sparql";
+
+    }
+
+    /**
+     * Load statements for subjects <code>[first:first+n)</code>.
+     */
+    private RemoteRepository loadData(final int first, final int n)
+            throws Exception {
+
+        final RemoteRepository repo = m_repo;
+
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+        final List<Statement> stmts = new LinkedList<Statement>();
+
+        for (int i = first; i < first + n; i++) {
+
+            stmts.add(vf.createStatement(
+                    vf.createURI("http://www.bigdata.com/s" + i),
+                    vf.createURI("http://www.bigdata.com/p"),
+                    vf.createLiteral(i)));
+
+        }
+
+        assertEquals(n, repo.add(new AddOp(stmts)));
+
+        return repo;
+
+    }
+
+    /**
+     * POST a form to the SPARQL endpoint.
+     * 
+     * @param form
+     *            The URL encoded form.
+     */
+    private HttpURLConnection post(final String form, final String accept)
+            throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                sparqlEndpointURL).openConnection();
+
+        conn.setRequestMethod("POST");
+
+        conn.setDoOutput(true);
+
+        conn.setRequestProperty("Content-Type",
+                "application/x-www-form-urlencoded");
+
+        if (accept != null)
+            conn.setRequestProperty("Accept", accept);
+
+        final OutputStream os = conn.getOutputStream();
+
+        try {
+
+            os.write(form.getBytes("UTF-8"));
+
+        } finally {
+
+            os.close();
+
+        }
+
+        return conn;
+
+    }
+
+    private static String encode(final String s) throws Exception {
+
+        return URLEncoder.encode(s, "UTF-8");
+
+    }
+
+    /**
+     * Prepare a query.
+     * 
+     * @return The handle -or- <code>null</code> if the request failed.
+     */
+    private String prepare(final String query, final String... params)
+            throws Exception {
+
+        final StringBuilder form = new StringBuilder("prepare&query="
+                + encode(query));
+
+        for (String p : params) {
+
+            form.append("&param=").append(encode(p));
+
+        }
+
+        final HttpURLConnection conn = post(form.toString(), null/* accept */);
+
+        try {
+
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+                return null;
+
+            final String handle = conn
+                    .getHeaderField(PreparedQueryManager.HTTP_HEADER_PREPARED_QUERY);
+
+            assertNotNull(handle);
+
+            return handle;
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * Run a prepared query (GET).
+     * 
+     * @param args
+     *            Alternating parameter names and values (N-Triples).
+     */
+    private HttpURLConnection execute(final String handle,
+            final String accept, final String... args) throws Exception {
+
+        final StringBuilder url = new StringBuilder(sparqlEndpointURL
+                + "?prepared=" + handle);
+
+        for (int i = 0; i < args.length; i += 2) {
+
+            url.append("&$").append(args[i]).append('=')
+                    .append(encode(args[i + 1]));
+
+        }
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                url.toString()).openConnection();
+
+        conn.setRequestProperty("Accept", accept);
+
+        return conn;
+
+    }
+
+    /**
+     * Run a prepared SELECT query.
+     * 
+     * @return The solutions -or- <code>null</code> if the request failed.
+     */
+    private List<BindingSet> select(final String handle, final String... args)
+            throws Exception {
+
+        final HttpURLConnection conn = execute(handle,
+                TupleQueryResultFormat.SPARQL.getDefaultMIMEType(), args);
+
+        try {
+
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+                return null;
+
+            final List<BindingSet> solutions = new LinkedList<BindingSet>();
+
+            final InputStream is = conn.getInputStream();
+
+            try {
+
+                final TupleQueryResult result = QueryResultIO.parse(is,
+                        TupleQueryResultFormat.SPARQL);
+
+                while (result.hasNext()) {
+
+                    solutions.add(result.next());
+
+                }
+
+                result.close();
+
+            } finally {
+
+                is.close();
+
+            }
+
+            return solutions;
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * Return the HTTP status code for running a prepared query.
+     */
+    private int status(final String handle, final String... args)
+            throws Exception {
+
+        final HttpURLConnection conn = execute(handle,
+                TupleQueryResultFormat.SPARQL.getDefaultMIMEType(), args);
+
+        try {
+
+            return conn.getResponseCode();
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * Discard a prepared query (DELETE).
+     * 
+     * @return The HTTP status code.
+     */
+    private int close(final String handle) throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                sparqlEndpointURL + "?prepared=" + handle).openConnection();
+
+        conn.setRequestMethod("DELETE");
+
+        try {
+
+            return conn.getResponseCode();
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * A prepared query is run many times with different values for its
+     * parameter. A plain literal is given the declared datatype.
+     */
+    public void test_prepareAndRun() throws Exception {
+
+        loadData(0, 10);
+
+        final String handle = prepare(QUERY, "o:<" + XSD_INT + ">");
+
+        assertNotNull(handle);
+
+        for (int i = 0; i < 10; i++) {
+
+            final List<BindingSet> solutions = select(handle, "o", "\"" + i
+                    + "\"^^<" + XSD_INT + ">");
+
+            assertEquals(1, solutions.size());
+
+            assertEquals("http://www.bigdata.com/s" + i, solutions.get(0)
+                    .getValue("s").stringValue());
+
+        }
+
+        // A plain literal is given the declared datatype.
+        final List<BindingSet> solutions = select(handle, "o", "\"3\"");
+        assertEquals(1, solutions.size());
+        assertEquals("http://www.bigdata.com/s3", solutions.get(0)
+                .getValue("s").stringValue());
+
+        // No solutions for a value which does not appear in the data.
+        assertEquals(0, select(handle, "o", "\"42\"").size());
+
+        // The prepared query may also be run with POST.
+        final HttpURLConnection conn = post("prepared=" + handle + "&"
+                + encode("$o") + "=" + encode("\"7\""),
+                TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, conn.getResponseCode());
+        } finally {
+            conn.disconnect();
+        }
+
+    }
+
+    /**
+     * The values are bound to the declared parameters and are checked against
+     * the declared types. A value can not change the structure of the query.
+     */
+    public void test_parameterValidation() throws Exception {
+
+        loadData(0, 10);
+
+        final String handle = prepare(QUERY, "o:<" + XSD_INT + ">");
+
+        final String handle2 = prepare(QUERY, "?s:uri");
+
+        // Missing value.
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, status(handle));
+
+        // Not a declared parameter.
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status(handle, "o", "\"1\"", "s", "<http://www.bigdata.com/s1>"));
+
+        // Wrong datatype.
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status(handle, "o", "\"1.5\"^^<http://www.w3.org/2001/XMLSchema#decimal>"));
+
+        // Not a valid lexical form for the datatype.
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status(handle, "o", "\"1 } UNION { ?s ?p ?o\""));
+
+        // Literal for an IRI parameter.
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status(handle2, "s", "\"s1\""));
+
+        assertEquals(1, select(handle2, "s", "<http://www.bigdata.com/s1>")
+                .size());
+
+        // An untyped parameter accepts any value, but only as a value.
+        final String handle3 = prepare(QUERY, "o");
+
+        assertEquals(0,
+                select(handle3, "o", "\"1 } UNION { ?s ?p ?o\"").size());
+
+        // Declared parameters must be variables of the query.
+        assertNull(prepare(QUERY, "x"));
+
+        // Malformed declarations.
+        assertNull(prepare(QUERY, "o:int"));
+        assertNull(prepare(QUERY, "o", "o:uri"));
+
+        // Malformed query.
+        assertNull(prepare("SELECT ?s { ?s ", "s"));
+
+        // Unknown handle.
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, status(UUID
+                .randomUUID().toString()));
+
+    }
+
+    /**
+     * A prepared ASK query.
+     */
+    public void test_ask() throws Exception {
+
+        loadData(0, 10);
+
+        final String handle = prepare("ASK { ?s <http://www.bigdata.com/p> ?o }",
+                "s:uri");
+
+        final HttpURLConnection conn1 = execute(handle,
+                BooleanQueryResultFormat.SPARQL.getDefaultMIMEType(), "s",
+                "<http://www.bigdata.com/s1>");
+
+        final HttpURLConnection conn2 = execute(handle,
+                BooleanQueryResultFormat.SPARQL.getDefaultMIMEType(), "s",
+                "<http://www.bigdata.com/s100>");
+
+        try {
+
+            assertTrue(QueryResultIO.parse(conn1.getInputStream(),
+                    BooleanQueryResultFormat.SPARQL));
+
+            assertFalse(QueryResultIO.parse(conn2.getInputStream(),
+                    BooleanQueryResultFormat.SPARQL));
+
+        } finally {
+
+            conn1.disconnect();
+
+            conn2.disconnect();
+
+        }
+
+    }
+
+    /**
+     * A prepared query which uses an RDF Value which was not yet known to the
+     * lexicon sees that Value once it is added.
+     */
+    public void test_unknownValue() throws Exception {
+
+        loadData(0, 10);
+
+        // A prepared query need not declare any parameters.
+        final String handle = prepare("SELECT ?o { <http://www.bigdata.com/s100> ?p ?o }");
+
+        assertEquals(0, select(handle).size());
+
+        loadData(100, 1);
+
+        assertEquals(1, select(handle).size());
+
+    }
+
+    /**
+     * Prepared queries may be discarded and the least recently used prepared
+     * query is discarded when the limit is reached.
+     */
+    public void test_closeAndEvict() throws Exception {
+
+        loadData(0, 10);
+
+        final String[] handles = new String[MAX_PREPARED_QUERIES + 1];
+
+        for (int i = 0; i < handles.length; i++) {
+
+            handles[i] = prepare(QUERY, "o");
+
+            assertNotNull(handles[i]);
+
+        }
+
+        // The first prepared query was discarded.
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                status(handles[0], "o", "\"1\"^^<" + XSD_INT + ">"));
+
+        for (int i = 1; i < handles.length; i++) {
+
+            assertEquals(1, select(handles[i], "o", "\"1\"^^<" + XSD_INT + ">")
+                    .size());
+
+            assertEquals(HttpURLConnection.HTTP_OK, close(handles[i]));
+
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                    status(handles[i], "o", "\"1\"^^<" + XSD_INT + ">"));
+
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, close(handles[i]));
+
+        }
+
+    }
+
+}
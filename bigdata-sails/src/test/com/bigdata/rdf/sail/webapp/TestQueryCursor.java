@@ -0,0 +1,494 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import junit.framework.Test;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository.AddOp;
+
+/**
+ * Test suite for server-side query cursors ({@link QueryCursorManager}).
+ * 
+ * @param <S>
+ */
+public class TestQueryCursor<S extends IIndexManager> extends
+        AbstractTestNanoSparqlClient<S> {
+
+    public TestQueryCursor() {
+    }
+
+    public TestQueryCursor(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+
+        return ProxySuiteHelper.suiteWhenStandalone(TestQueryCursor.class,
+                "test.*", TestMode.triples);
+
+    }
+
+    /**
+     * The #of statements in the KB.
+     */
+    private static final int N = 2500;
+
+    /**
+     * The cursor timeout (milliseconds).
+     */
+    private static final long TIMEOUT = 2000;
+
+    /**
+     * The maximum #of open cursors.
+     */
+    private static final int MAX_CURSORS = 3;
+
+    /**
+     * The native memory available to the cursors (rounded up to one buffer).
+     */
+    private static final long MAX_MEMORY = 1L;
+
+    private static final String QUERY = "SELECT ?s ?o { ?s <http://www.bigdata.com/p> ?o } ORDER BY ?s";
+
+    private String sparqlEndpointURL;
+
+    @Override
+    protected void addInitParams(final Map<String, String> initParams) {
+
+        initParams.put(ConfigParams.CURSOR_TIMEOUT, Long.toString(TIMEOUT));
+
+        initParams.put(ConfigParams.MAX_CURSORS,
+                Integer.toString(MAX_CURSORS));
+
+        initParams.put(ConfigParams.CURSOR_MAX_MEMORY,
+                Long.toString(MAX_MEMORY));
+
+    }
+
+    @Override
+    public void setUp() throws Exception {
+
+        super.setUp();
+
+        sparqlEndpointURL = m_serviceURL + "/sparql";
+
+    }
+
+    /**
+     * Load statements for subjects <code>[first:first+n)</code>.
+     */
+    private RemoteRepository loadData(final int first, final int n)
+            throws Exception {
+
+        final RemoteRepository repo = m_repo;
+
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+        final List<Statement> stmts = new LinkedList<Statement>();
+
+        for (int i = first; i < first + n; i++) {
+
+            stmts.add(vf.createStatement(
+                    vf.createURI("http://www.bigdata.com/s" + i),
+                    vf.createURI("http://www.bigdata.com/p"),
+                    vf.createLiteral(i)));
+
+        }
+
+        assertEquals(n, repo.add(new AddOp(stmts)));
+
+        return repo;
+
+    }
+
+    /**
+     * A page from a cursor.
+     */
+    private static class Page {
+
+        final int status;
+        final String token;
+        final long size;
+        final long offset;
+        final List<BindingSet> solutions = new LinkedList<BindingSet>();
+
+        Page(final HttpURLConnection conn) throws Exception {
+
+            status = conn.getResponseCode();
+
+            token = conn.getHeaderField(QueryCursorManager.HTTP_HEADER_CURSOR);
+
+            final String size = conn
+                    .getHeaderField(QueryCursorManager.HTTP_HEADER_CURSOR_SIZE);
+
+            final String offset = conn
+                    .getHeaderField(QueryCursorManager.HTTP_HEADER_CURSOR_OFFSET);
+
+            this.size = size == null ? -1L : Long.parseLong(size);
+
+            this.offset = offset == null ? -1L : Long.parseLong(offset);
+
+            if (status == HttpURLConnection.HTTP_OK) {
+
+                final InputStream is = conn.getInputStream();
+
+                try {
+
+                    final TupleQueryResult result = QueryResultIO.parse(is,
+                            TupleQueryResultFormat.SPARQL);
+
+                    while (result.hasNext()) {
+
+                        solutions.add(result.next());
+
+                    }
+
+                    result.close();
+
+                } finally {
+
+                    is.close();
+
+                }
+
+            }
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * Open a cursor (POST).
+     */
+    private Page openCursor(final String query, final int pageSize)
+            throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                sparqlEndpointURL).openConnection();
+
+        conn.setRequestMethod("POST");
+
+        conn.setDoOutput(true);
+
+        conn.setRequestProperty("Content-Type",
+                "application/x-www-form-urlencoded");
+
+        conn.setRequestProperty("Accept", TupleQueryResultFormat.SPARQL
+                .getDefaultMIMEType());
+
+        final OutputStream os = conn.getOutputStream();
+
+        try {
+
+            os.write(("query=" + URLEncoder.encode(query, "UTF-8")
+                    + "&cursor&pageSize=" + pageSize).getBytes("UTF-8"));
+
+        } finally {
+
+            os.close();
+
+        }
+
+        return new Page(conn);
+
+    }
+
+    /**
+     * Read a page from a cursor (GET).
+     * 
+     * @param offset
+     *            The offset -or- <code>-1</code> to continue from the current
+     *            position.
+     */
+    private Page getPage(final String token, final long offset,
+            final int pageSize) throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                sparqlEndpointURL + "?cursor=" + token + "&pageSize="
+                        + pageSize + (offset == -1L ? "" : "&offset=" + offset))
+                .openConnection();
+
+        conn.setRequestProperty("Accept", TupleQueryResultFormat.SPARQL
+                .getDefaultMIMEType());
+
+        return new Page(conn);
+
+    }
+
+    /**
+     * Close a cursor (DELETE).
+     * 
+     * @return The HTTP status code.
+     */
+    private int closeCursor(final String token) throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                sparqlEndpointURL + "?cursor=" + token).openConnection();
+
+        conn.setRequestMethod("DELETE");
+
+        try {
+
+            return conn.getResponseCode();
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * Page through a cursor. The pages are not affected by writes committed
+     * after the cursor was opened. Reading an earlier page rewinds the cursor.
+     */
+    public void test_pages() throws Exception {
+
+        final RemoteRepository repo = loadData(0, N);
+
+        final Page page0 = openCursor(QUERY, 1000);
+
+        assertEquals(HttpURLConnection.HTTP_OK, page0.status);
+        assertNotNull(page0.token);
+        assertEquals(N, page0.size);
+        assertEquals(0L, page0.offset);
+        assertEquals(1000, page0.solutions.size());
+
+        // Writes after the cursor was opened are not visible.
+        loadData(N, 100);
+
+        assertEquals(N + 100, countSolutions(repo));
+
+        final Page page1 = getPage(page0.token, -1L/* next */, 1000);
+        assertEquals(HttpURLConnection.HTTP_OK, page1.status);
+        assertEquals(1000L, page1.offset);
+        assertEquals(1000, page1.solutions.size());
+
+        final Page page2 = getPage(page0.token, -1L/* next */, 1000);
+        assertEquals(2000L, page2.offset);
+        assertEquals(N - 2000, page2.solutions.size());
+
+        final Page page3 = getPage(page0.token, -1L/* next */, 1000);
+        assertEquals(HttpURLConnection.HTTP_OK, page3.status);
+        assertEquals((long) N, page3.offset);
+        assertEquals(0, page3.solutions.size());
+
+        // Rewind.
+        final Page again = getPage(page0.token, 990L, 20);
+        assertEquals(20, again.solutions.size());
+        assertEquals(page0.solutions.get(990), again.solutions.get(0));
+        assertEquals(page1.solutions.get(9), again.solutions.get(19));
+
+        // The solutions are distinct and ordered.
+        final List<BindingSet> all = new LinkedList<BindingSet>();
+        all.addAll(page0.solutions);
+        all.addAll(page1.solutions);
+        all.addAll(page2.solutions);
+        assertEquals(N, new HashSet<BindingSet>(all).size());
+
+        // Close the cursor.
+        assertEquals(HttpURLConnection.HTTP_OK, closeCursor(page0.token));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                getPage(page0.token, -1L, 10).status);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                closeCursor(page0.token));
+
+    }
+
+    private static int countSolutions(final RemoteRepository repo)
+            throws Exception {
+
+        final TupleQueryResult result = repo.prepareTupleQuery(QUERY)
+                .evaluate();
+
+        try {
+
+            int n = 0;
+
+            while (result.hasNext()) {
+
+                result.next();
+
+                n++;
+
+            }
+
+            return n;
+
+        } finally {
+
+            result.close();
+
+        }
+
+    }
+
+    /**
+     * Values which are computed by the query and variables which are not
+     * bound are preserved by the cursor.
+     */
+    public void test_computedValues() throws Exception {
+
+        loadData(0, 10);
+
+        final Page page = openCursor(
+                "SELECT ?s ?x ?str ?none { ?s <http://www.bigdata.com/p> ?o . "
+                        + "BIND(?o * 2 AS ?x) BIND(CONCAT(\"v\", STR(?o)) AS ?str) "
+                        + "OPTIONAL { ?s <http://www.bigdata.com/q> ?none } }",
+                100);
+
+        assertEquals(HttpURLConnection.HTTP_OK, page.status);
+        assertEquals(10, page.solutions.size());
+
+        for (BindingSet bset : page.solutions) {
+
+            final String s = bset.getValue("s").stringValue();
+
+            final int i = Integer.parseInt(s.substring(s.lastIndexOf('s') + 1));
+
+            assertEquals(2 * i, Integer.parseInt(bset.getValue("x")
+                    .stringValue()));
+
+            assertEquals("v" + i, bset.getValue("str").stringValue());
+
+            assertNull(bset.getValue("none"));
+
+        }
+
+        assertEquals(HttpURLConnection.HTTP_OK, closeCursor(page.token));
+
+    }
+
+    /**
+     * Cursors are only supported for SELECT.
+     */
+    public void test_notSelect() throws Exception {
+
+        loadData(0, 10);
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                openCursor("ASK { ?s ?p ?o }", 100).status);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                getPage(UUID.randomUUID().toString(), -1L, 10).status);
+
+    }
+
+    /**
+     * Idle cursors expire and the #of open cursors is bounded.
+     */
+    public void test_expireAndMaxCursors() throws Exception {
+
+        loadData(0, 10);
+
+        final String[] tokens = new String[MAX_CURSORS];
+
+        for (int i = 0; i < MAX_CURSORS; i++) {
+
+            final Page page = openCursor(QUERY, 1);
+
+            assertEquals(HttpURLConnection.HTTP_OK, page.status);
+
+            tokens[i] = page.token;
+
+        }
+
+        // Too many open cursors.
+        assertEquals(503, openCursor(QUERY, 1).status);
+
+        Thread.sleep(TIMEOUT + 500);
+
+        // The cursors have expired.
+        for (String token : tokens) {
+
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                    getPage(token, -1L, 1).status);
+
+        }
+
+        assertEquals(HttpURLConnection.HTTP_OK, openCursor(QUERY, 1).status);
+
+    }
+
+    /**
+     * A cursor whose solutions exceed the memory available to the cursors is
+     * refused and neither its memory nor its slot is retained.
+     */
+    public void test_maxMemory() throws Exception {
+
+        loadData(0, N);
+
+        /*
+         * Each solution carries a distinct literal of random UUIDs. These do
+         * not compress well, so the stream needs more than one buffer.
+         */
+        final StringBuilder sb = new StringBuilder("CONCAT(STR(?o)");
+
+        for (int i = 0; i < 64; i++) {
+
+            sb.append(", STRUUID()");
+
+        }
+
+        sb.append(")");
+
+        assertEquals(503, openCursor(
+                "SELECT ?s ?big { ?s <http://www.bigdata.com/p> ?o . BIND("
+                        + sb + " AS ?big) }", 1).status);
+
+        for (int i = 0; i < MAX_CURSORS; i++) {
+
+            assertEquals(HttpURLConnection.HTTP_OK,
+                    openCursor(QUERY, 1).status);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,362 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase2;
+
+/**
+ * Test suite for the {@link QueryScheduler}. The scheduled tasks are captured
+ * by an {@link Executor} and run by the test so the order in which they are
+ * started is deterministic.
+ */
+public class TestQueryScheduler extends TestCase2 {
+
+    public TestQueryScheduler() {
+    }
+
+    public TestQueryScheduler(final String name) {
+        super(name);
+    }
+
+    /**
+     * Captures the tasks started by the scheduler.
+     */
+    private static class CapturingExecutor implements Executor {
+
+        final LinkedList<Runnable> started = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(final Runnable command) {
+            started.add(command);
+        }
+
+        /**
+         * Run the oldest started task.
+         */
+        void runNext() {
+            started.removeFirst().run();
+        }
+
+    }
+
+    /**
+     * A task which records its name when it runs and then sleeps for some
+     * period.
+     */
+    private static class NamedTask implements Runnable {
+
+        private final String name;
+        private final List<String> order;
+        private final long sleepMillis;
+
+        NamedTask(final String name, final List<String> order,
+                final long sleepMillis) {
+            this.name = name;
+            this.order = order;
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * No more than the maximum #of tasks are started and the requests of a
+     * single client of a single namespace run in the order submitted.
+     */
+    public void test_maxRunning() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                2/* maxRunning */, 0/* queueCapacity */,
+                0/* namespaceConcurrency */, null/* weights */);
+
+        final List<String> order = new LinkedList<String>();
+
+        for (int i = 0; i < 5; i++) {
+
+            scheduler.execute("kb", "client", new NamedTask("t" + i, order, 0L));
+
+        }
+
+        assertEquals(2, executor.started.size());
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getWaitingCount());
+
+        while (!executor.started.isEmpty()) {
+
+            executor.runNext();
+
+        }
+
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getWaitingCount());
+
+        assertEquals("[t0, t1, t2, t3, t4]", order.toString());
+
+    }
+
+    /**
+     * Requests are rejected once the queue of waiting requests is saturated.
+     */
+    public void test_queueCapacity() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                1/* maxRunning */, 1/* queueCapacity */,
+                0/* namespaceConcurrency */, null/* weights */);
+
+        final List<String> order = new LinkedList<String>();
+
+        // Runs.
+        scheduler.execute("kb", "client", new NamedTask("t0", order, 0L));
+
+        // Waits.
+        scheduler.execute("kb", "client", new NamedTask("t1", order, 0L));
+
+        try {
+            scheduler.execute("kb", "client", new NamedTask("t2", order, 0L));
+            fail("Expecting: " + QueryRejectedException.class);
+        } catch (QueryRejectedException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+            assertTrue(ex.retryAfterSeconds >= 1);
+        }
+
+        assertEquals(1L, scheduler.getRejectedCount());
+        assertEquals(1, scheduler.getWaitingCount());
+
+        executor.runNext();
+
+        // There is room in the queue again.
+        scheduler.execute("kb", "client", new NamedTask("t3", order, 0L));
+
+        executor.runNext();
+        executor.runNext();
+
+        assertEquals("[t0, t1, t3]", order.toString());
+
+    }
+
+    /**
+     * A namespace which has consumed more service time yields to a namespace
+     * which has not.
+     */
+    public void test_fairness_namespaces() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                1/* maxRunning */, 0/* queueCapacity */,
+                0/* namespaceConcurrency */, null/* weights */);
+
+        final List<String> order = new LinkedList<String>();
+
+        scheduler.execute("heavy", "client", new NamedTask("h0", order, 20L));
+        scheduler.execute("heavy", "client", new NamedTask("h1", order, 20L));
+        scheduler.execute("heavy", "client", new NamedTask("h2", order, 20L));
+        scheduler.execute("light", "client", new NamedTask("l0", order, 0L));
+        scheduler.execute("light", "client", new NamedTask("l1", order, 0L));
+
+        while (!executor.started.isEmpty()) {
+
+            executor.runNext();
+
+        }
+
+        // The light namespace is not stuck behind the heavy namespace.
+        assertEquals("[h0, l0, l1, h1, h2]", order.toString());
+
+    }
+
+    /**
+     * A client which has consumed more service time yields to another client
+     * of the same namespace.
+     */
+    public void test_fairness_clients() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                1/* maxRunning */, 0/* queueCapacity */,
+                0/* namespaceConcurrency */, null/* weights */);
+
+        final List<String> order = new LinkedList<String>();
+
+        scheduler.execute("kb", "a", new NamedTask("a0", order, 20L));
+        scheduler.execute("kb", "a", new NamedTask("a1", order, 20L));
+        scheduler.execute("kb", "b", new NamedTask("b0", order, 0L));
+
+        while (!executor.started.isEmpty()) {
+
+            executor.runNext();
+
+        }
+
+        assertEquals("[a0, b0, a1]", order.toString());
+
+    }
+
+    /**
+     * The service time estimate for a namespace is retained when that
+     * namespace becomes idle and is charged to its next request.
+     */
+    public void test_estimateSurvivesIdleNamespace() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                2/* maxRunning */, 0/* queueCapacity */,
+                0/* namespaceConcurrency */, null/* weights */);
+
+        final List<String> order = new LinkedList<String>();
+
+        scheduler.execute("heavy", "client", new NamedTask("h0", order, 20L));
+
+        executor.runNext();
+
+        // The namespace is idle.
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getWaitingCount());
+
+        final double estimate = scheduler.getServiceTimeEstimate("heavy");
+
+        assertTrue(estimate >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertEquals(0d, scheduler.getServiceTimeEstimate("light"));
+
+        /*
+         * The next request for the heavy namespace is charged the retained
+         * estimate when it starts, so the light namespace is preferred for
+         * the next free thread while that request is still running.
+         */
+        scheduler.execute("other", "client", new NamedTask("o0", order, 0L));
+        scheduler.execute("heavy", "client", new NamedTask("h1", order, 0L));
+        scheduler.execute("heavy", "client", new NamedTask("h2", order, 0L));
+        scheduler.execute("light", "client", new NamedTask("l0", order, 0L));
+
+        assertEquals(2, executor.started.size());
+
+        executor.runNext(); // o0
+        executor.runNext(); // h1
+        executor.runNext(); // l0 (not h2)
+        executor.runNext(); // h2
+
+        assertEquals("[h0, o0, h1, l0, h2]", order.toString());
+
+    }
+
+    /**
+     * The #of concurrent requests for a namespace may be bounded.
+     */
+    public void test_namespaceConcurrency() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                4/* maxRunning */, 0/* queueCapacity */,
+                1/* namespaceConcurrency */, null/* weights */);
+
+        final List<String> order = new LinkedList<String>();
+
+        scheduler.execute("a", "client", new NamedTask("a0", order, 0L));
+        scheduler.execute("a", "client", new NamedTask("a1", order, 0L));
+        scheduler.execute("b", "client", new NamedTask("b0", order, 0L));
+
+        // One request for each namespace.
+        assertEquals(2, executor.started.size());
+        assertEquals(1, scheduler.getWaitingCount());
+
+        executor.runNext();
+
+        // The next request for [a] was started.
+        assertEquals(2, executor.started.size());
+        assertEquals(0, scheduler.getWaitingCount());
+
+    }
+
+    /**
+     * Waiting requests are cancelled when the scheduler is shutdown.
+     */
+    public void test_shutdownNow() {
+
+        final CapturingExecutor executor = new CapturingExecutor();
+
+        final QueryScheduler scheduler = new QueryScheduler(executor,
+                1/* maxRunning */, 0/* queueCapacity */,
+                0/* namespaceConcurrency */, null/* weights */);
+
+        final FutureTask<Void> ft1 = new FutureTask<Void>(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        return null;
+                    }
+                });
+
+        final FutureTask<Void> ft2 = new FutureTask<Void>(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        return null;
+                    }
+                });
+
+        scheduler.execute("kb", "client", ft1);
+        scheduler.execute("kb", "client", ft2);
+
+        scheduler.shutdownNow();
+
+        assertFalse(ft1.isCancelled());
+        assertTrue(ft2.isCancelled());
+        assertEquals(0, scheduler.getWaitingCount());
+
+        executor.runNext();
+
+        assertTrue(ft1.isDone());
+        assertEquals(0, scheduler.getRunningCount());
+
+    }
+
+}
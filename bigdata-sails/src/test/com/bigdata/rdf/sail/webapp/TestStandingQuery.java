@@ -0,0 +1,723 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository.AddOp;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository.RemoveOp;
+
+/**
+ * Test suite for standing queries ({@link StandingQueryManager}).
+ * 
+ * @param <S>
+ */
+public class TestStandingQuery<S extends IIndexManager> extends
+        AbstractTestNanoSparqlClient<S> {
+
+    public TestStandingQuery() {
+    }
+
+    public TestStandingQuery(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+
+        return ProxySuiteHelper.suiteWhenStandalone(TestStandingQuery.class,
+                "test.*", TestMode.triples);
+
+    }
+
+    /**
+     * The maximum #of registered standing queries.
+     */
+    private static final int MAX_STANDING_QUERIES = 2;
+
+    /**
+     * The #of seconds to wait for an event.
+     */
+    private static final long TIMEOUT = 20;
+
+    private static final String NS = "http://www.bigdata.com/";
+
+    private static final String QUERY = "SELECT ?s { ?s <" + NS + "p> ?o }";
+
+    private String sparqlEndpointURL;
+
+    @Override
+    protected void addInitParams(final Map<String, String> initParams) {
+
+        initParams.put(ConfigParams.MAX_STANDING_QUERIES,
+                Integer.toString(MAX_STANDING_QUERIES));
+
+    }
+
+    @Override
+    public void setUp() throws Exception {
+
+        super.setUp();
+
+        sparqlEndpointURL = m_serviceURL + "/sparql";
+
+    }
+
+    private Statement stmt(final int s, final String p, final int o) {
+
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+        return vf.createStatement(vf.createURI(NS + "s" + s),
+                vf.createURI(NS + p), vf.createLiteral(o));
+
+    }
+
+    /**
+     * Add statements <code>(s_i, p, i)</code> for each given <code>i</code>.
+     */
+    private void add(final String p, final int... subjects) throws Exception {
+
+        for (int i : subjects) {
+
+            assertEquals(1, m_repo.add(
+                    new AddOp(Collections.singleton(stmt(i, p, i)))));
+
+        }
+
+    }
+
+    /**
+     * Remove the statements <code>(s_i, p, i)</code>.
+     */
+    private void remove(final String p, final int... subjects)
+            throws Exception {
+
+        for (int i : subjects) {
+
+            assertEquals(1, m_repo.remove(
+                    new RemoveOp(Collections.singleton(stmt(i, p, i)))));
+
+        }
+
+    }
+
+    private static String encode(final String s) throws Exception {
+
+        return URLEncoder.encode(s, "UTF-8");
+
+    }
+
+    private HttpURLConnection open(final String query) throws Exception {
+
+        return (HttpURLConnection) new URL(sparqlEndpointURL
+                + "?standingQuery&query=" + encode(query)).openConnection();
+
+    }
+
+    /**
+     * Return the HTTP status code for registering a standing query.
+     */
+    private int status(final String query) throws Exception {
+
+        final HttpURLConnection conn = open(query);
+
+        try {
+
+            return conn.getResponseCode();
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * Cancel a standing query (DELETE).
+     *
+     * @return The HTTP status code.
+     */
+    private int cancel(final String id) throws Exception {
+
+        return cancel(sparqlEndpointURL, id);
+
+    }
+
+    /**
+     * Cancel a standing query (DELETE) using the given SPARQL end point.
+     *
+     * @return The HTTP status code.
+     */
+    private int cancel(final String endpointURL, final String id)
+            throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                endpointURL + "?standingQuery=" + id).openConnection();
+
+        conn.setRequestMethod("DELETE");
+
+        try {
+
+            return conn.getResponseCode();
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    /**
+     * The client side of the stream of events for a standing query.
+     */
+    private class EventStream {
+
+        final HttpURLConnection conn;
+
+        final String id;
+
+        /**
+         * The events as <code>[event, data]</code>.
+         */
+        final BlockingQueue<String[]> events = new LinkedBlockingQueue<String[]>();
+
+        private final Thread reader;
+
+        EventStream(final String query) throws Exception {
+
+            conn = open(query);
+
+            assertEquals(HttpURLConnection.HTTP_OK, conn.getResponseCode());
+
+            assertEquals(StandingQueryManager.MIME_EVENT_STREAM, conn
+                    .getContentType().split(";")[0].trim());
+
+            id = conn.getHeaderField(StandingQueryManager.HTTP_HEADER_STANDING_QUERY);
+
+            assertNotNull(id);
+
+            final BufferedReader r = new BufferedReader(new InputStreamReader(
+                    conn.getInputStream(), "UTF-8"));
+
+            reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        String event = null, data = null, line;
+                        while ((line = r.readLine()) != null) {
+                            if (line.length() == 0) {
+                                if (event != null)
+                                    events.add(new String[] { event, data });
+                                event = data = null;
+                            } else if (line.startsWith("event: ")) {
+                                event = line.substring(7);
+                            } else if (line.startsWith("data: ")) {
+                                data = line.substring(6);
+                            }
+                        }
+                    } catch (IOException ex) {
+                        // Closed.
+                    }
+                }
+            };
+
+            reader.setDaemon(true);
+
+            reader.start();
+
+        }
+
+        /**
+         * Return the next event.
+         */
+        String[] next() throws InterruptedException {
+
+            final String[] e = events.poll(TIMEOUT, TimeUnit.SECONDS);
+
+            assertNotNull("No event", e);
+
+            return e;
+
+        }
+
+        /**
+         * Return the next delta as the subjects which were added and removed.
+         */
+        Delta nextDelta() throws Exception {
+
+            final String[] e = next();
+
+            assertEquals("delta", e[0]);
+
+            final String data = e[1];
+
+            final int i = data.indexOf(",\"added\":");
+
+            final int j = data.indexOf(",\"removed\":");
+
+            assertTrue(data, data.startsWith("{\"commitTime\":") && i > 0
+                    && j > i && data.endsWith("}"));
+
+            return new Delta(subjects(data.substring(i + 9, j)),
+                    subjects(data.substring(j + 11, data.length() - 1)));
+
+        }
+
+        /**
+         * Cancel the standing query (if it is still registered) and wait until
+         * the server has closed the stream.
+         */
+        void close() throws Exception {
+
+            cancel(id);
+
+            reader.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    private static class Delta {
+
+        final Set<String> added;
+
+        final Set<String> removed;
+
+        Delta(final Set<String> added, final Set<String> removed) {
+
+            this.added = added;
+
+            this.removed = removed;
+
+        }
+
+    }
+
+    /**
+     * Return the bindings of <code>?s</code> (without the namespace) in
+     * SPARQL JSON results.
+     */
+    private static Set<String> subjects(final String json) throws Exception {
+
+        final Set<String> subjects = new HashSet<String>();
+
+        final TupleQueryResult result = QueryResultIO.parse(
+                new ByteArrayInputStream(json.getBytes("UTF-8")),
+                TupleQueryResultFormat.JSON);
+
+        try {
+
+            while (result.hasNext()) {
+
+                subjects.add(result.next().getValue("s").stringValue()
+                        .substring(NS.length()));
+
+            }
+
+        } finally {
+
+            result.close();
+
+        }
+
+        return subjects;
+
+    }
+
+    private static Set<String> set(final String... a) {
+
+        final Set<String> s = new HashSet<String>();
+
+        for (String x : a)
+            s.add(x);
+
+        return s;
+
+    }
+
+    /**
+     * The first delta is the result. Each commit which changes the result is
+     * reported as a delta. Commits which do not change the result are not
+     * reported.
+     */
+    public void test_standingQuery_deltas() throws Exception {
+
+        add("p", 0, 1, 2);
+
+        final EventStream stream = new EventStream(QUERY);
+
+        try {
+
+            Delta d = stream.nextDelta();
+            assertEquals(set("s0", "s1", "s2"), d.added);
+            assertEquals(set(), d.removed);
+
+            add("p", 3);
+            d = stream.nextDelta();
+            assertEquals(set("s3"), d.added);
+            assertEquals(set(), d.removed);
+
+            remove("p", 1);
+            d = stream.nextDelta();
+            assertEquals(set(), d.added);
+            assertEquals(set("s1"), d.removed);
+
+            // Does not change the result (not reported).
+            add("q", 5);
+
+            add("p", 4);
+            d = stream.nextDelta();
+            assertEquals(set("s4"), d.added);
+            assertEquals(set(), d.removed);
+
+        } finally {
+
+            stream.close();
+
+        }
+
+    }
+
+    /**
+     * A change set which is too large to be buffered causes the result to be
+     * re-evaluated. The delta is the same.
+     */
+    public void test_standingQuery_largeChangeSet() throws Exception {
+
+        add("p", 0);
+
+        final EventStream stream = new EventStream(QUERY);
+
+        try {
+
+            Delta d = stream.nextDelta();
+            assertEquals(set("s0"), d.added);
+
+            final int n = 12000;
+
+            final List<Statement> stmts = new ArrayList<Statement>(n);
+
+            for (int i = 1; i <= n; i++) {
+
+                stmts.add(stmt(i, "p", i));
+
+            }
+
+            assertEquals(n, m_repo.add(new AddOp(stmts)));
+
+            d = stream.nextDelta();
+            assertEquals(n, d.added.size());
+            assertFalse(d.added.contains("s0"));
+            assertTrue(d.added.contains("s" + n));
+            assertEquals(set(), d.removed);
+
+            remove("p", 0);
+            d = stream.nextDelta();
+            assertEquals(set(), d.added);
+            assertEquals(set("s0"), d.removed);
+
+        } finally {
+
+            stream.close();
+
+        }
+
+    }
+
+    /**
+     * A join with a FILTER. A solution is only reported once all of its
+     * statements are present and it satisfies the FILTER.
+     */
+    public void test_standingQuery_joinAndFilter() throws Exception {
+
+        final EventStream stream = new EventStream("SELECT ?s ?x { ?s <" + NS
+                + "p> ?o . ?s <" + NS + "q> ?x FILTER(?o > 5) }");
+
+        try {
+
+            // The initial result is empty.
+            Delta d = stream.nextDelta();
+            assertEquals(set(), d.added);
+            assertEquals(set(), d.removed);
+
+            // Not reported (no join).
+            add("p", 7);
+
+            add("q", 7);
+            d = stream.nextDelta();
+            assertEquals(set("s7"), d.added);
+            assertEquals(set(), d.removed);
+
+            // Not reported (rejected by the FILTER).
+            add("p", 2);
+            add("q", 2);
+
+            add("p", 8);
+            add("q", 8);
+            d = stream.nextDelta();
+            assertEquals(set("s8"), d.added);
+            assertEquals(set(), d.removed);
+
+            remove("q", 7);
+            d = stream.nextDelta();
+            assertEquals(set(), d.added);
+            assertEquals(set("s7"), d.removed);
+
+        } finally {
+
+            stream.close();
+
+        }
+
+    }
+
+    /**
+     * Queries which are not a basic graph pattern with FILTERs are refused.
+     */
+    public void test_standingQuery_unsupported() throws Exception {
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, status("ASK { ?s ?p ?o }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o OPTIONAL { ?o ?p2 ?o2 } }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o FILTER NOT EXISTS { ?o ?p ?s } }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o } ORDER BY ?s"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT (COUNT(*) AS ?n) { ?s ?p ?o }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p "));
+
+    }
+
+    /**
+     * Queries using a FILTER whose value changes each time it is evaluated
+     * are refused since the deltas would not be meaningful.
+     */
+    public void test_standingQuery_nonDeterministic() throws Exception {
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o FILTER(?o < NOW()) }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o FILTER(RAND() < 0.5) }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o FILTER(STR(?o) != STRUUID()) }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o FILTER(?o != UUID()) }"));
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                status("SELECT ?s { ?s ?p ?o FILTER(?o != BNODE()) }"));
+
+    }
+
+    /**
+     * A large initial result is reported as a series of deltas for the same
+     * commit point.
+     */
+    public void test_standingQuery_chunkedResult() throws Exception {
+
+        final int n = 2 * StandingQueryManager.MAX_EVENT_SOLUTIONS + 500;
+
+        final List<Statement> stmts = new ArrayList<Statement>(n);
+
+        for (int i = 0; i < n; i++) {
+
+            stmts.add(stmt(i, "p", i));
+
+        }
+
+        assertEquals(n, m_repo.add(new AddOp(stmts)));
+
+        final EventStream stream = new EventStream(QUERY);
+
+        try {
+
+            final Set<String> added = new HashSet<String>();
+
+            Delta d = stream.nextDelta();
+            assertEquals(StandingQueryManager.MAX_EVENT_SOLUTIONS,
+                    d.added.size());
+            added.addAll(d.added);
+
+            d = stream.nextDelta();
+            assertEquals(StandingQueryManager.MAX_EVENT_SOLUTIONS,
+                    d.added.size());
+            added.addAll(d.added);
+
+            d = stream.nextDelta();
+            assertEquals(500, d.added.size());
+            added.addAll(d.added);
+
+            assertEquals(n, added.size());
+
+            // The next commit is reported as one delta.
+            add("p", n);
+            d = stream.nextDelta();
+            assertEquals(set("s" + n), d.added);
+            assertEquals(set(), d.removed);
+
+        } finally {
+
+            stream.close();
+
+        }
+
+    }
+
+    /**
+     * A cancelled standing query closes its stream.
+     */
+    public void test_standingQuery_cancel() throws Exception {
+
+        final EventStream stream = new EventStream(QUERY);
+
+        try {
+
+            stream.nextDelta();
+
+            assertEquals(HttpURLConnection.HTTP_OK, cancel(stream.id));
+
+            assertEquals("close", stream.next()[0]);
+
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, cancel(stream.id));
+
+        } finally {
+
+            stream.close();
+
+        }
+
+    }
+
+    /**
+     * A standing query can only be cancelled through the namespace for which
+     * it was registered.
+     */
+    public void test_standingQuery_cancelOtherNamespace() throws Exception {
+
+        final EventStream stream = new EventStream(QUERY);
+
+        try {
+
+            stream.nextDelta();
+
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, cancel(m_serviceURL
+                    + "/namespace/other/sparql", stream.id));
+
+            // Still registered.
+            add("p", 1);
+            assertEquals(set("s1"), stream.nextDelta().added);
+
+            assertEquals(HttpURLConnection.HTTP_OK, cancel(stream.id));
+
+            assertEquals("close", stream.next()[0]);
+
+        } finally {
+
+            stream.close();
+
+        }
+
+    }
+
+    /**
+     * Standing queries beyond the configured maximum are refused.
+     */
+    public void test_standingQuery_maxStandingQueries() throws Exception {
+
+        final List<EventStream> streams = new ArrayList<EventStream>();
+
+        try {
+
+            for (int i = 0; i < MAX_STANDING_QUERIES; i++) {
+
+                final EventStream stream = new EventStream(QUERY);
+
+                streams.add(stream);
+
+                stream.nextDelta();
+
+            }
+
+            assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, status(QUERY));
+
+            assertEquals(HttpURLConnection.HTTP_OK, cancel(streams.get(0).id));
+
+            final EventStream stream = new EventStream(QUERY);
+
+            stream.nextDelta();
+
+            stream.close();
+
+        } finally {
+
+            for (EventStream stream : streams) {
+
+                stream.close();
+
+            }
+
+        }
+
+    }
+
+}
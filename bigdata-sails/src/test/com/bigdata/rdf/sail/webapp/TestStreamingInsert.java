@@ -0,0 +1,260 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import junit.framework.Test;
+
+import org.openrdf.query.TupleQueryResult;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.RemoteRepository;
+
+/**
+ * Test suite for the streaming INSERT ({@link StreamingInsert}).
+ * 
+ * @param <S>
+ */
+public class TestStreamingInsert<S extends IIndexManager> extends
+        AbstractTestNanoSparqlClient<S> {
+
+    public TestStreamingInsert() {
+    }
+
+    public TestStreamingInsert(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+
+        return ProxySuiteHelper.suiteWhenStandalone(TestStreamingInsert.class,
+                "test.*", TestMode.triples);
+
+    }
+
+    private String sparqlEndpointURL;
+
+    @Override
+    public void setUp() throws Exception {
+
+        super.setUp();
+
+        sparqlEndpointURL = m_serviceURL + "/sparql";
+
+    }
+
+    /**
+     * POST a chunked N-Triples request body for a streaming INSERT.
+     * 
+     * @param n
+     *            The #of statements.
+     * @param garbage
+     *            When <code>true</code>, the request body ends with a line
+     *            which can not be parsed.
+     * @param response
+     *            The response body is appended to this buffer.
+     * 
+     * @return The HTTP status code.
+     */
+    private int streamInsert(final int n, final long commitEvery,
+            final boolean garbage, final StringBuilder response)
+            throws Exception {
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(
+                sparqlEndpointURL + "?" + InsertServlet.ATTR_STREAM + "&"
+                        + InsertServlet.ATTR_COMMIT_EVERY + "=" + commitEvery)
+                .openConnection();
+
+        conn.setRequestMethod("POST");
+
+        conn.setDoOutput(true);
+
+        conn.setChunkedStreamingMode(8192);
+
+        conn.setRequestProperty("Content-Type", "text/plain"/* N-Triples */);
+
+        try {
+
+            final OutputStream os = conn.getOutputStream();
+
+            final Writer w = new OutputStreamWriter(os, "UTF-8");
+
+            for (int i = 0; i < n; i++) {
+
+                w.write("<http://www.bigdata.com/s" + i
+                        + "> <http://www.bigdata.com/p> \"" + i + "\" .\n");
+
+            }
+
+            if (garbage) {
+
+                w.write("this is not N-Triples\n");
+
+            }
+
+            w.close();
+
+        } catch (IOException ex) {
+
+            // The server may stop reading the request body on an error.
+
+        }
+
+        try {
+
+            final int status = conn.getResponseCode();
+
+            final InputStream is = status == HttpURLConnection.HTTP_OK ? conn
+                    .getInputStream() : conn.getErrorStream();
+
+            if (is != null) {
+
+                try {
+
+                    int ch;
+                    while ((ch = is.read()) != -1) {
+                        response.append((char) ch);
+                    }
+
+                } finally {
+
+                    is.close();
+
+                }
+
+            }
+
+            return status;
+
+        } finally {
+
+            conn.disconnect();
+
+        }
+
+    }
+
+    private long countStatements() throws Exception {
+
+        final RemoteRepository repo = m_repo;
+
+        final TupleQueryResult result = repo.prepareTupleQuery(
+                "SELECT (COUNT(*) AS ?n) { ?s <http://www.bigdata.com/p> ?o }")
+                .evaluate();
+
+        try {
+
+            return Long.parseLong(result.next().getValue("n").stringValue());
+
+        } finally {
+
+            result.close();
+
+        }
+
+    }
+
+    /**
+     * A streaming INSERT which spans several chunks and commits.
+     */
+    public void test_streamingInsert() throws Exception {
+
+        final int n = 2 * StreamingInsert.CHUNK_SIZE + 5000;
+
+        final StringBuilder response = new StringBuilder();
+
+        assertEquals(HttpURLConnection.HTTP_OK,
+                streamInsert(n, StreamingInsert.CHUNK_SIZE, false, response));
+
+        assertTrue(response.toString(),
+                response.indexOf("modified=\"" + n + "\"") != -1);
+
+        // Commit after each of the first two chunks and at the end.
+        assertTrue(response.toString(),
+                response.indexOf("commits=\"3\"") != -1);
+
+        assertEquals(n, countStatements());
+
+    }
+
+    /**
+     * An empty request body.
+     */
+    public void test_streamingInsert_empty() throws Exception {
+
+        final StringBuilder response = new StringBuilder();
+
+        assertEquals(HttpURLConnection.HTTP_OK,
+                streamInsert(0, StreamingInsert.CHUNK_SIZE, false, response));
+
+        assertTrue(response.toString(),
+                response.indexOf("modified=\"0\"") != -1);
+
+        assertEquals(0, countStatements());
+
+    }
+
+    /**
+     * A parse error fails the request and rolls back the writes since the last
+     * commit point.
+     */
+    public void test_streamingInsert_parseError() throws Exception {
+
+        final int n = StreamingInsert.CHUNK_SIZE + 5000;
+
+        assertFalse(HttpURLConnection.HTTP_OK == streamInsert(n,
+                StreamingInsert.CHUNK_SIZE, true/* garbage */,
+                new StringBuilder()));
+
+        /*
+         * Either nothing was committed or only the first chunk was committed,
+         * depending on whether the writer had taken the first chunk before the
+         * parse error.
+         */
+        final long count = countStatements();
+
+        assertTrue("count=" + count, count == 0
+                || count == StreamingInsert.CHUNK_SIZE);
+
+    }
+
+    /**
+     * The commit interval must be positive.
+     */
+    public void test_streamingInsert_badCommitEvery() throws Exception {
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, streamInsert(10,
+                0L/* commitEvery */, false, new StringBuilder()));
+
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.sail.webapp;
+
+import junit.framework.Test;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.BatchQueryResult;
+import com.bigdata.rdf.sail.webapp.client.HttpException;
+
+/**
+ * Proxied test suite for a batch of SELECT and ASK queries evaluated in one
+ * round trip.
+ *
+ * @param <S>
+ */
+public class Test_REST_BATCH<S extends IIndexManager> extends
+		AbstractTestNanoSparqlClient<S> {
+
+	public Test_REST_BATCH() {
+
+	}
+
+	public Test_REST_BATCH(final String name) {
+
+		super(name);
+
+	}
+
+	public static Test suite() {
+
+		return ProxySuiteHelper.suiteWhenStandalone(Test_REST_BATCH.class,
+                "test.*", TestMode.quads
+                );
+       
+	}
+
+	/**
+	 * A batch mixing SELECT and ASK queries reports the results in the order
+	 * of the queries.
+	 */
+	public void test_BATCH() throws Exception {
+
+		doInsertbyURL("POST", packagePath + "test_estcard.ttl");
+
+		final BatchQueryResult result = m_repo.batchQuery(//
+				"SELECT (COUNT(*) AS ?n) { ?s ?p ?o }",//
+				"ASK { <http://www.bigdata.com/Mike> ?p ?o }",//
+				"ASK { <http://www.bigdata.com/Nobody> ?p ?o }",//
+				"SELECT ?s { ?s <http://www.w3.org/2000/01/rdf-schema#label> \"Bryan\" }"//
+				);
+
+		assertEquals(4, result.size());
+
+		{
+			assertFalse(result.isBooleanResult(0));
+			final TupleQueryResult r = result.getTupleQueryResult(0);
+			try {
+				assertTrue(r.hasNext());
+				assertEquals(7, Integer.parseInt(r.next().getValue("n")
+						.stringValue()));
+				assertFalse(r.hasNext());
+			} finally {
+				r.close();
+			}
+		}
+
+		assertTrue(result.isBooleanResult(1));
+		assertTrue(result.getBooleanResult(1));
+
+		assertTrue(result.isBooleanResult(2));
+		assertFalse(result.getBooleanResult(2));
+
+		{
+			final TupleQueryResult r = result.getTupleQueryResult(3);
+			try {
+				assertTrue(r.hasNext());
+				final BindingSet bset = r.next();
+				assertEquals("http://www.bigdata.com/Bryan", bset
+						.getValue("s").stringValue());
+				assertFalse(r.hasNext());
+			} finally {
+				r.close();
+			}
+		}
+
+		try {
+			result.getBooleanResult(0);
+			fail("Expecting: " + IllegalStateException.class);
+		} catch (IllegalStateException ex) {
+			// ignore.
+		}
+
+	}
+
+	/**
+	 * A batch which is too large for the request URL is sent as a form
+	 * entity.
+	 */
+	public void test_BATCH_large() throws Exception {
+
+		doInsertbyURL("POST", packagePath + "test_estcard.ttl");
+
+		final String[] queries = new String[500];
+
+		for (int i = 0; i < queries.length; i++) {
+
+			queries[i] = "ASK { ?s ?p " + i + " }";
+
+		}
+
+		final BatchQueryResult result = m_repo.batchQuery(queries);
+
+		assertEquals(queries.length, result.size());
+
+		for (int i = 0; i < queries.length; i++) {
+
+			assertFalse(result.getBooleanResult(i));
+
+		}
+
+	}
+
+	/**
+	 * A batch which includes a query that is not a SELECT or ASK query is
+	 * rejected.
+	 */
+	public void test_BATCH_notSelectOrAsk() throws Exception {
+
+		try {
+			m_repo.batchQuery("ASK { ?s ?p ?o }",
+					"CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }");
+			fail("Expecting: " + HttpException.class);
+		} catch (HttpException ex) {
+			assertEquals(400, ex.getStatusCode());
+		}
+
+	}
+
+	/**
+	 * A batch which includes a query that can not be parsed is rejected.
+	 */
+	public void test_BATCH_badQuery() throws Exception {
+
+		try {
+			m_repo.batchQuery("ASK { ?s ?p ?o }", "SELEKT * { ?s ?p ?o }");
+			fail("Expecting: " + HttpException.class);
+		} catch (HttpException ex) {
+			assertEquals(400, ex.getStatusCode());
+		}
+
+	}
+
+}
@@ -220,6 +220,21 @@ public class Test_REST_Structure<S extends IIndexManager> extends
 
    }
 
+   /**
+    * The <code>/status</code> servlet reports the query workload used by the
+    * load balancer.
+    */
+   public void test_webapp_structure_status_queryLoad() throws Exception {
+
+      final String resp = doGET(m_serviceURL + "/status?"
+            + StatusServlet.QUERY_LOAD);
+
+      assertTrue(resp.contains("runningQueryCount"));
+      assertTrue(resp.contains("waitingCount"));
+      assertTrue(resp.contains("commitCounter"));
+
+   }
+
    /**
     * The <code>/counters</code> servlet responds.
     */
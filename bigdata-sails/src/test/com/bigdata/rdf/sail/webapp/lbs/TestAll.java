@@ -30,6 +30,8 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import com.bigdata.rdf.sail.webapp.lbs.policy.counters.TestQueryEngineLBSPolicy;
+
 /**
  * Test suite.
  * 
@@ -56,6 +58,8 @@ public class TestAll extends TestCase {
         final TestSuite suite = new TestSuite("LBS");
 
         suite.addTestSuite(TestAbstractHostLBSPolicy.class);
+
+        suite.addTestSuite(TestQueryEngineLBSPolicy.class);
         
         return suite;
 
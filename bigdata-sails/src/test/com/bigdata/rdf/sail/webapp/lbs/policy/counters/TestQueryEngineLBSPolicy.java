@@ -0,0 +1,204 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.sail.webapp.lbs.policy.counters;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.counters.CounterSet;
+import com.bigdata.counters.DefaultInstrumentFactory;
+import com.bigdata.counters.OneShotInstrument;
+import com.bigdata.rdf.sail.webapp.lbs.IHostMetrics;
+
+/**
+ * Test suite for the {@link QueryEngineLBSPolicy} and the
+ * {@link QueryEngineHostScoringRule}.
+ */
+public class TestQueryEngineLBSPolicy extends TestCase2 {
+
+    public TestQueryEngineLBSPolicy() {
+    }
+
+    public TestQueryEngineLBSPolicy(String name) {
+        super(name);
+    }
+
+    /**
+     * An idle service scores ONE (1) and a service without any metrics is
+     * scored as if it were idle.
+     */
+    public void test_score_idle() throws Exception {
+
+        final QueryEngineHostScoringRule rule = new QueryEngineHostScoringRule();
+
+        assertEquals(1d, rule.getScore(metrics(0, 0, 0, 0L)));
+
+        assertEquals(1d, rule.getScore(new CounterSetHostMetricsWrapper(
+                new CounterSet())));
+
+    }
+
+    /**
+     * Running queries, waiting queries, query latency and commit lag each
+     * increase the score (load) of a service.
+     */
+    public void test_score_ordering() throws Exception {
+
+        final QueryEngineHostScoringRule rule = new QueryEngineHostScoringRule();
+
+        final double idle = rule.getScore(metrics(0, 0, 0, 0L));
+
+        final double running = rule.getScore(metrics(4, 0, 0, 0L));
+
+        final double waiting = rule.getScore(metrics(4, 10, 0, 0L));
+
+        final double slow = rule.getScore(metrics(4, 10, 2000, 0L));
+
+        assertTrue(idle < running);
+        assertTrue(running < waiting);
+        assertTrue(waiting < slow);
+
+        // (1+4+10) * (1+2)
+        assertEquals(45d, slow);
+
+        // An idle service which trails by one commit is discounted.
+        final double lagging = rule.getScore(metrics(0, 0, 0, 1L));
+
+        assertEquals(2d, lagging);
+        assertTrue(idle < lagging);
+
+    }
+
+    /**
+     * The commit lag is computed against the most current service and is not
+     * reported for a service which did not report its commit counter.
+     */
+    public void test_commitLag() throws Exception {
+
+        final Map<String, CounterSet> reports = new LinkedHashMap<String, CounterSet>();
+
+        reports.put("H1", report(12L));
+        reports.put("H2", report(10L));
+        reports.put("H3", new CounterSet());
+
+        QueryEngineLBSPolicy.addCommitLag(reports);
+
+        final QueryEngineHostScoringRule rule = new QueryEngineHostScoringRule();
+
+        assertEquals(0L, (long) new CounterSetHostMetricsWrapper(
+                reports.get("H1")).getNumeric(
+                QueryEngineHostScoringRule.COMMIT_LAG, -1L));
+
+        assertEquals(2L, (long) new CounterSetHostMetricsWrapper(
+                reports.get("H2")).getNumeric(
+                QueryEngineHostScoringRule.COMMIT_LAG, -1L));
+
+        assertNull(new CounterSetHostMetricsWrapper(reports.get("H3"))
+                .getNumeric(QueryEngineHostScoringRule.COMMIT_LAG));
+
+        assertTrue(rule.getScore(new CounterSetHostMetricsWrapper(reports
+                .get("H1"))) < rule.getScore(new CounterSetHostMetricsWrapper(
+                reports.get("H2"))));
+
+    }
+
+    /**
+     * The metrics survive the XML round trip used to exchange them between
+     * the services.
+     */
+    public void test_xmlRoundTrip() throws Exception {
+
+        final CounterSet expected = report(7L);
+
+        expected.addCounter(QueryEngineHostScoringRule.RUNNING_QUERY_COUNT,
+                new OneShotInstrument<Long>(3L));
+
+        expected.addCounter(QueryEngineHostScoringRule.WAITING_QUERY_COUNT,
+                new OneShotInstrument<Integer>(5));
+
+        expected.addCounter(QueryEngineHostScoringRule.QUERY_LATENCY,
+                new OneShotInstrument<Long>(250L));
+
+        final StringWriter w = new StringWriter();
+
+        expected.asXML(w, null/* filter */);
+
+        final CounterSet actual = new CounterSet();
+
+        actual.readXML(new ByteArrayInputStream(w.toString().getBytes("UTF-8")),
+                DefaultInstrumentFactory.NO_OVERWRITE_60M, null/* filter */);
+
+        final IHostMetrics metrics = new CounterSetHostMetricsWrapper(actual);
+
+        assertEquals(3L, (long) metrics.getNumeric(
+                QueryEngineHostScoringRule.RUNNING_QUERY_COUNT, -1L));
+
+        assertEquals(5L, (long) metrics.getNumeric(
+                QueryEngineHostScoringRule.WAITING_QUERY_COUNT, -1L));
+
+        assertEquals(250L, (long) metrics.getNumeric(
+                QueryEngineHostScoringRule.QUERY_LATENCY, -1L));
+
+        assertEquals(7L, (long) metrics.getNumeric(
+                QueryEngineLBSPolicy.COMMIT_COUNTER, -1L));
+
+    }
+
+    private static CounterSet report(final long commitCounter) {
+
+        final CounterSet counterSet = new CounterSet();
+
+        counterSet.addCounter(QueryEngineLBSPolicy.COMMIT_COUNTER,
+                new OneShotInstrument<Long>(commitCounter));
+
+        return counterSet;
+
+    }
+
+    private static IHostMetrics metrics(final long running,
+            final int waiting, final long latency, final long commitLag) {
+
+        final CounterSet counterSet = new CounterSet();
+
+        counterSet.addCounter(QueryEngineHostScoringRule.RUNNING_QUERY_COUNT,
+                new OneShotInstrument<Long>(running));
+
+        counterSet.addCounter(QueryEngineHostScoringRule.WAITING_QUERY_COUNT,
+                new OneShotInstrument<Integer>(waiting));
+
+        counterSet.addCounter(QueryEngineHostScoringRule.QUERY_LATENCY,
+                new OneShotInstrument<Long>(latency));
+
+        counterSet.addCounter(QueryEngineHostScoringRule.COMMIT_LAG,
+                new OneShotInstrument<Long>(commitLag));
+
+        return new CounterSetHostMetricsWrapper(counterSet);
+
+    }
+
+}
@@ -104,6 +104,19 @@ abstract public class AbstractSubqueryOp extends PipelineOp {
 
 		int DEFAULT_MAX_PARALLEL_SUBQUERIES = Integer.MAX_VALUE;
 
+		/**
+		 * When <code>true</code>, the solutions produced by the subqueries are
+		 * discarded and each source solution is copied to the sink once all of
+		 * the subqueries have completed for that source solution (default
+		 * {@value #DEFAULT_BARRIER}). This may be used to evaluate subqueries
+		 * which are run for their side-effects (such as the named solution
+		 * sets produced by named subqueries) in parallel without multiplying
+		 * the source solutions by the number of subqueries.
+		 */
+		String BARRIER = AbstractSubqueryOp.class.getName() + ".barrier";
+
+		boolean DEFAULT_BARRIER = false;
+
     }
 
     /**
@@ -113,6 +126,13 @@ abstract public class AbstractSubqueryOp extends PipelineOp {
         return getProperty(Annotations.MAX_PARALLEL_SUBQUERIES,
                 Annotations.DEFAULT_MAX_PARALLEL_SUBQUERIES);
     }
+
+    /**
+     * @see Annotations#BARRIER
+     */
+    public boolean isBarrier() {
+        return getProperty(Annotations.BARRIER, Annotations.DEFAULT_BARRIER);
+    }
     
     /**
      * Deep copy constructor.
@@ -179,6 +199,7 @@ abstract public class AbstractSubqueryOp extends PipelineOp {
         private final BOp[] subqueries;
         private final BOpContext<IBindingSet> context;
         private final int nparallel;
+        private final boolean barrier;
         private final Executor executor;
 
         public ControllerTask(final AbstractSubqueryOp controllerOp,
@@ -200,6 +221,8 @@ abstract public class AbstractSubqueryOp extends PipelineOp {
             this.nparallel = controllerOp.getProperty(Annotations.MAX_PARALLEL_SUBQUERIES,
                     Annotations.DEFAULT_MAX_PARALLEL_SUBQUERIES);
 
+            this.barrier = controllerOp.isBarrier();
+
             this.executor = new LatchedExecutor(context.getIndexManager()
                     .getExecutorService(), nparallel);
             
@@ -304,6 +327,16 @@ abstract public class AbstractSubqueryOp extends PipelineOp {
                 for (FutureTask<IRunningQuery> ft : tasks)
                     ft.get();
 
+                if (barrier) {
+
+                    /*
+                     * All subqueries are done for this source solution, so
+                     * it may now flow downstream.
+                     */
+                    context.getSink().add(new IBindingSet[] { bset });
+
+                }
+
             } finally {
 
                 // Cancel any tasks which are still running.
@@ -363,16 +396,26 @@ abstract public class AbstractSubqueryOp extends PipelineOp {
                     // Iterator visiting the subquery solutions.
                     subquerySolutionItr = runningSubquery.iterator();
 
-                    // Copy solutions from the subquery to the query.
-                    BOpUtility.copy(//
-                            subquerySolutionItr, //
-                            parentContext.getSink(), //
-                            null, // sink2
-                            null, // merge solution (parent's source solution).
-                            null, // selectVars (subquery projection).
-                            null, // constraints
-                            null  // stats
-                            );
+                    if (barrier) {
+
+                        // Drain (and discard) the subquery solutions.
+                        while (subquerySolutionItr.hasNext())
+                            subquerySolutionItr.next();
+
+                    } else {
+
+                        // Copy solutions from the subquery to the query.
+                        BOpUtility.copy(//
+                                subquerySolutionItr, //
+                                parentContext.getSink(), //
+                                null, // sink2
+                                null, // merge solution (parent's source solution).
+                                null, // selectVars (subquery projection).
+                                null, // constraints
+                                null  // stats
+                                );
+
+                    }
 
                     // wait for the subquery.
                     runningSubquery.get();
@@ -246,35 +246,97 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
      */
     final private ICloseableIterator<IBindingSet[]> queryIterator;
 
-//    /**
-//     * The #of solutions delivered to the {@link #queryBuffer}.
-//     */
-//    public long getSolutionCount() {
-//
-//        if (queryBuffer != null) {
-//            
-//            ((BlockingBufferWithStats<?>) queryBuffer).getElementsAddedCount();
-//            
-//        }
-//
-//        return 0L;
-//        
-//    }
-//
-//    /**
-//     * The #of solution chunks delivered to the {@link #queryBuffer}.
-//     */
-//    public long getSolutionChunkCount() {
-//
-//        if (queryBuffer != null) {
-//            
-//            ((BlockingBufferWithStats<?>) queryBuffer).getChunksAddedCount();
-//            
-//        }
-//
-//        return 0L;
-//        
-//    }
+    /**
+     * The resource limits for the query (never <code>null</code>).
+     * 
+     * @see QueryEngine.Annotations#RESOURCE_LIMITS
+     */
+    final private QueryResourceLimits limits;
+
+    /**
+     * The #of solutions delivered to the {@link #queryBuffer} and ZERO (0)
+     * unless this is the query controller.
+     */
+    public long getSolutionCount() {
+
+        final BOpStats stats = statsMap == null ? null : statsMap.get(query
+                .getId());
+
+        return stats == null ? 0L : stats.unitsOut.get();
+
+    }
+
+    /**
+     * The CPU time (milliseconds) consumed by the operator tasks for the query
+     * which have finished. This is ZERO (0) unless this is the query
+     * controller.
+     * 
+     * @see BOpStats#cpuTime
+     */
+    public long getCpuTime() {
+
+        if (statsMap == null)
+            return 0L;
+
+        long nanos = 0L;
+
+        for (BOpStats stats : statsMap.values()) {
+
+            nanos += stats.cpuTime.get();
+
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+
+    }
+
+    /**
+     * The #of bytes allocated on the JVM heap by the operator tasks for the
+     * query which have finished. This is the allocation volume, not the live
+     * heap retained by the query. This is ZERO (0) unless this is the query
+     * controller.
+     * 
+     * @see BOpStats#allocatedBytes
+     */
+    public long getAllocatedBytes() {
+
+        if (statsMap == null)
+            return 0L;
+
+        long bytes = 0L;
+
+        for (BOpStats stats : statsMap.values()) {
+
+            bytes += stats.allocatedBytes.get();
+
+        }
+
+        return bytes;
+
+    }
+
+    /**
+     * The #of bytes of native memory currently allocated by the query on this
+     * node.
+     */
+    public long getNativeMemoryBytes() {
+
+        final IMemoryManager memoryManager = this.memoryManager.get();
+
+        return memoryManager == null ? 0L : memoryManager.getUserBytes();
+
+    }
+
+    /**
+     * The resource limits for the query (never <code>null</code>).
+     * 
+     * @see QueryEngine.Annotations#RESOURCE_LIMITS
+     */
+    public QueryResourceLimits getResourceLimits() {
+
+        return limits;
+
+    }
     
     /**
      * A lock guarding various state changes. This guards changes to the
@@ -388,6 +450,60 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
         
     }
 
+    /**
+     * If the query has exceeded any of its {@link QueryResourceLimits}, then
+     * halt the query with a {@link QueryResourceLimitException}.
+     */
+    final protected void checkResourceLimits() {
+
+        if (!controller || limits.isUnlimited() || isDone()) {
+
+            return;
+
+        }
+
+        long maxValue, value;
+        QueryResourceLimitException ex = null;
+
+        if ((maxValue = limits.getMaxSolutions()) != 0L
+                && (value = getSolutionCount()) > maxValue) {
+
+            ex = new QueryResourceLimitException(
+                    QueryResourceLimits.MAX_SOLUTIONS, maxValue, value);
+
+        } else if ((maxValue = limits.getMaxNativeMemory()) != 0L
+                && (value = getNativeMemoryBytes()) > maxValue) {
+
+            ex = new QueryResourceLimitException(
+                    QueryResourceLimits.MAX_NATIVE_MEMORY, maxValue, value);
+
+        } else if ((maxValue = limits.getMaxCpuTime()) != 0L
+                && (value = getCpuTime()) > maxValue) {
+
+            ex = new QueryResourceLimitException(
+                    QueryResourceLimits.MAX_CPU_TIME, maxValue, value);
+
+        } else if ((maxValue = limits.getMaxAllocationVolume()) != 0L
+                && (value = getAllocatedBytes()) > maxValue) {
+
+            ex = new QueryResourceLimitException(
+                    QueryResourceLimits.MAX_ALLOCATION_VOLUME, maxValue, value);
+
+        }
+
+        if (ex != null) {
+
+            if (log.isInfoEnabled())
+                log.info("queryId=" + queryId + " : " + ex.getMessage());
+
+            queryEngine.counters.queryResourceLimitCount.increment();
+
+            halt(ex);
+
+        }
+
+    }
+
     @Override
     final public long getDeadline() {
 
@@ -602,6 +718,10 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
         
         this.bopIndex = BOpUtility.getIndex(query);
 
+        this.limits = query.getProperty(
+                QueryEngine.Annotations.RESOURCE_LIMITS,
+                QueryResourceLimits.NONE);
+
         /*
          * Setup the BOpStats object for each pipeline operator in the query.
          */
@@ -869,6 +989,9 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
                 // + " : stats=" + tmp);
             }
 
+            // halt the query if it has exceeded any resource limits.
+            checkResourceLimits();
+
             switch (runState.haltOp(msg)) {
             case Running:
             case RunningLastPass:
@@ -1408,6 +1531,7 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
                 // track elapsed run time of done queries.
                 final long elapsed = getElapsed();
                 queryEngine.counters.elapsedMillis.add(elapsed);
+                queryEngine.counters.addRecentElapsed(elapsed);
 //                if (c != null)
 //                    c.elapsedMillis.add(elapsed);
                 if (future.getCause() != null) {
@@ -1677,6 +1801,8 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
      * 
      * @see QueryHints#DEFAULT_ANALYTIC_MAX_MEMORY_PER_QUERY
      * 
+     * @see QueryResourceLimits#MAX_NATIVE_MEMORY
+     * 
      * @see <a href="http://jira.blazegraph.com/browse/BLZG-42" > Per query
      *      memory limit for analytic query mode. </a>
      */
@@ -1691,6 +1817,12 @@ abstract public class AbstractRunningQuery implements IRunningQuery {
             // Ignore illegal values.
             maxMemoryBytesPerQuery = 0L;
         }
+        if (limits.getMaxNativeMemory() != 0L
+                && (maxMemoryBytesPerQuery == 0L || //
+                limits.getMaxNativeMemory() < maxMemoryBytesPerQuery)) {
+            // A tighter limit was specified for this query.
+            maxMemoryBytesPerQuery = limits.getMaxNativeMemory();
+        }
 
         final boolean blocking;
         final int nsectors;
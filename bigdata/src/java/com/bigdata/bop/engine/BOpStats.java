@@ -121,6 +121,20 @@ public class BOpStats implements Serializable {
      */
     final public CAT mutationCount = new CAT();
 
+    /**
+     * The CPU time (nanoseconds) consumed by the evaluation of the operator.
+     * This is ZERO (0) if the JVM does not support the measurement of the
+     * thread CPU time.
+     */
+    final public CAT cpuTime = new CAT();
+
+    /**
+     * The #of bytes allocated on the JVM heap by the evaluation of the
+     * operator. This is ZERO (0) if the JVM does not support the measurement
+     * of the thread allocated bytes.
+     */
+    final public CAT allocatedBytes = new CAT();
+
     /**
      * Constructor.
      * <p>
@@ -155,6 +169,8 @@ public class BOpStats implements Serializable {
         chunksOut.add(o.chunksOut.get());
         typeErrors.add(o.typeErrors.get());
         mutationCount.add(o.mutationCount.get());
+        cpuTime.add(o.cpuTime.get());
+        allocatedBytes.add(o.allocatedBytes.get());
     }
     
     @Override
@@ -169,6 +185,8 @@ public class BOpStats implements Serializable {
         sb.append(",unitsOut=" + unitsOut.get());
         sb.append(",typeErrors=" + typeErrors.get());
         sb.append(",mutationCount=" + mutationCount.get());
+        sb.append(",cpuTime=" + cpuTime.get());
+        sb.append(",allocatedBytes=" + allocatedBytes.get());
         toString(sb); // extension hook
         sb.append("}");
         return sb.toString();
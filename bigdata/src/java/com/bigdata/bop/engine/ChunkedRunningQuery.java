@@ -890,6 +890,10 @@ public class ChunkedRunningQuery extends AbstractRunningQuery {
                  * Run the operator task.
                  */
                 final long begin = System.currentTimeMillis();
+                final long beginCpuTime = ThreadResourceUsage
+                        .getCurrentThreadCpuTime();
+                final long beginAllocatedBytes = ThreadResourceUsage
+                        .getCurrentThreadAllocatedBytes();
                 try {
                     c.operatorStartCount.increment();
                     c.operatorActiveCount.increment();
@@ -904,8 +908,22 @@ public class ChunkedRunningQuery extends AbstractRunningQuery {
                 } finally {
                     c.operatorHaltCount.increment();
                     c.operatorActiveCount.decrement();
-                    t.context.getStats().elapsed.add(System.currentTimeMillis()
-                            - begin);
+                    final BOpStats stats = t.context.getStats();
+                    stats.elapsed.add(System.currentTimeMillis() - begin);
+                    // resources consumed by the operator task.
+                    if (beginCpuTime != -1L) {
+                        final long cpuTime = ThreadResourceUsage
+                                .getCurrentThreadCpuTime() - beginCpuTime;
+                        stats.cpuTime.add(cpuTime);
+                        c.operatorCpuTime.add(cpuTime);
+                    }
+                    if (beginAllocatedBytes != -1L) {
+                        final long allocatedBytes = ThreadResourceUsage
+                                .getCurrentThreadAllocatedBytes()
+                                - beginAllocatedBytes;
+                        stats.allocatedBytes.add(allocatedBytes);
+                        c.operatorAllocatedBytes.add(allocatedBytes);
+                    }
                 }
 
                 // Notify query controller that operator task did run.
@@ -73,6 +73,7 @@ import com.bigdata.journal.IIndexManager;
 import com.bigdata.journal.Journal;
 import com.bigdata.rawstore.IRawStore;
 import com.bigdata.rdf.sail.webapp.client.HttpClientConfigurator;
+import com.bigdata.rdf.sparql.ast.cache.SolutionCache;
 import com.bigdata.resources.IndexManager;
 import com.bigdata.service.IBigdataFederation;
 import com.bigdata.service.IDataService;
@@ -255,6 +256,15 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
 //        String DEFAULT_RUNNING_QUERY_CLASS = StandaloneChainedRunningQuery.class.getName();
         String DEFAULT_RUNNING_QUERY_CLASS = ChunkedRunningQuery.class.getName();
 
+        /**
+         * The {@link QueryResourceLimits} for the query (optional). This is
+         * only interpreted for the top-level query plan. A query which exceeds
+         * any of those limits is halted with a
+         * {@link QueryResourceLimitException}.
+         */
+        String RESOURCE_LIMITS = QueryEngine.class.getName()
+                + ".resourceLimits";
+
     }
 
     /**
@@ -879,6 +889,22 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
 
     }
     
+    /**
+     * Halt any running queries which have exceeded their resource limits.
+     * 
+     * @see Annotations#RESOURCE_LIMITS
+     */
+    static private void checkResourceLimits(
+            final ConcurrentHashMap<UUID, AbstractRunningQuery> runningQueries) {
+
+        for (AbstractRunningQuery q : runningQueries.values()) {
+
+            q.checkResourceLimits();
+
+        }
+
+    }
+
     /**
      * 
      * @param localIndexManager
@@ -907,7 +933,7 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
     public void init() {
 
         final FutureTask<Void> ft = new FutureTaskMon<Void>(new QueryEngineTask(
-                priorityQueue, deadlineQueue), (Void) null);
+                priorityQueue, deadlineQueue, runningQueries), (Void) null);
 
         if (engineFuture.compareAndSet(null/* expect */, ft)) {
         
@@ -1004,10 +1030,12 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         
         final private BlockingQueue<AbstractRunningQuery> priorityQueue;
         final private PriorityBlockingQueue<QueryDeadline> deadlineQueue;
+        final private ConcurrentHashMap<UUID, AbstractRunningQuery> runningQueries;
 
         public QueryEngineTask(
                 final BlockingQueue<AbstractRunningQuery> priorityQueue,
-                final PriorityBlockingQueue<QueryDeadline> deadlineQueue) {
+                final PriorityBlockingQueue<QueryDeadline> deadlineQueue,
+                final ConcurrentHashMap<UUID, AbstractRunningQuery> runningQueries) {
 
             if (priorityQueue == null)
                 throw new IllegalArgumentException();
@@ -1015,10 +1043,15 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
             if (deadlineQueue == null)
                 throw new IllegalArgumentException();
 
+            if (runningQueries == null)
+                throw new IllegalArgumentException();
+
             this.priorityQueue = priorityQueue;
             
             this.deadlineQueue = deadlineQueue;
 
+            this.runningQueries = runningQueries;
+
         }
         
         @Override
@@ -1049,6 +1082,12 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
                              * queue.poll().
                              */
                             checkDeadlines(now, deadlineQueue);
+                            /*
+                             * Check for queries which have exceeded their
+                             * resource limits (in addition to the check when
+                             * each operator task halts).
+                             */
+                            checkResourceLimits(runningQueries);
                             mark = now;
                             remaining = deadline;
                         }
@@ -1196,6 +1235,9 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         priorityQueue.clear();
         deadlineQueue.clear();
 
+        // release the native memory of the solution cache (if any).
+        SolutionCache.closeInstance(this);
+
         // clear references.
         engineFuture.set(null);
         engineService.set(null);
@@ -1260,6 +1302,9 @@ public class QueryEngine implements IQueryPeer, IQueryClient, ICounterSetAccess
         priorityQueue.clear();
         deadlineQueue.clear();
 
+        // release the native memory of the solution cache (if any).
+        SolutionCache.closeInstance(this);
+
         // clear references.
         engineFuture.set(null);
         engineService.set(null);
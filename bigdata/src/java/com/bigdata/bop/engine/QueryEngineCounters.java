@@ -27,6 +27,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.bop.engine;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import com.bigdata.counters.CAT;
 import com.bigdata.counters.CounterSet;
 import com.bigdata.counters.ICounterSetAccess;
@@ -107,6 +110,98 @@ public class QueryEngineCounters implements ICounterSetAccess {
      */
     protected final CAT deadlineQueueSize = new CAT();
 
+    /**
+     * The CPU time (nanoseconds) consumed by operator evaluation tasks (chunk
+     * tasks).
+     */
+    protected final CAT operatorCpuTime = new CAT();
+
+    /**
+     * The #of bytes allocated on the JVM heap by operator evaluation tasks
+     * (chunk tasks).
+     */
+    protected final CAT operatorAllocatedBytes = new CAT();
+
+    /**
+     * The #of queries which were halted because they exceeded their
+     * {@link QueryResourceLimits}.
+     */
+    protected final CAT queryResourceLimitCount = new CAT();
+
+    /**
+     * The #of recently completed queries whose elapsed time is retained in
+     * order to report the recent query latency percentiles.
+     */
+    static private final int LATENCY_WINDOW = 1000;
+
+    /**
+     * A ring buffer of the elapsed time (millis) of the most recently
+     * completed queries (guarded by <code>this</code>).
+     */
+    private final long[] recentElapsed = new long[LATENCY_WINDOW];
+
+    /**
+     * The #of valid entries in {@link #recentElapsed} (guarded by
+     * <code>this</code>).
+     */
+    private int nrecent = 0;
+
+    /**
+     * The index of the next entry to be written in {@link #recentElapsed}
+     * (guarded by <code>this</code>).
+     */
+    private int nextRecent = 0;
+
+    /**
+     * Record the elapsed time of a completed query for the recent query
+     * latency percentiles.
+     * 
+     * @param elapsed
+     *            The elapsed time (millis) of the query.
+     */
+    synchronized public void addRecentElapsed(final long elapsed) {
+
+        recentElapsed[nextRecent] = elapsed;
+
+        nextRecent = (nextRecent + 1) % LATENCY_WINDOW;
+
+        if (nrecent < LATENCY_WINDOW)
+            nrecent++;
+
+    }
+
+    /**
+     * Return the given percentile of the elapsed time (millis) of the most
+     * recently completed queries.
+     * 
+     * @param p
+     *            The percentile in <code>(0:1]</code>.
+     * 
+     * @return The elapsed time at that percentile -or- ZERO (0) if no queries
+     *         have completed.
+     */
+    public long getRecentLatencyPercentile(final double p) {
+
+        if (p <= 0d || p > 1d)
+            throw new IllegalArgumentException();
+
+        final long[] a;
+        synchronized (this) {
+            a = Arrays.copyOf(recentElapsed, nrecent);
+        }
+
+        if (a.length == 0)
+            return 0L;
+
+        Arrays.sort(a);
+
+        // nearest rank.
+        final int rank = (int) Math.ceil(p * a.length);
+
+        return a[Math.max(0, rank - 1)];
+
+    }
+
     @Override
     public CounterSet getCounters() {
 
@@ -128,6 +223,36 @@ public class QueryEngineCounters implements ICounterSetAccess {
             }
         });
 
+        // #of queries currently running on this server.
+        root.addCounter("runningQueryCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(queryStartCount.get() - queryDoneCount.get());
+            }
+        });
+
+        // recent query latency percentiles (millis) on this server.
+        root.addCounter("queryLatencyP50", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(getRecentLatencyPercentile(.50d));
+            }
+        });
+
+        root.addCounter("queryLatencyP95", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(getRecentLatencyPercentile(.95d));
+            }
+        });
+
+        root.addCounter("queryLatencyP99", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(getRecentLatencyPercentile(.99d));
+            }
+        });
+
         // #of queries with abnormal termination on this server.
         root.addCounter("queryErrorCount", new Instrument<Long>() {
             @Override
@@ -214,6 +339,30 @@ public class QueryEngineCounters implements ICounterSetAccess {
             }
         });
 
+        // CPU time (millis) consumed by operator evaluation tasks.
+        root.addCounter("operatorCpuTime", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(TimeUnit.NANOSECONDS.toMillis(operatorCpuTime.get()));
+            }
+        });
+
+        // #of bytes allocated on the JVM heap by operator evaluation tasks.
+        root.addCounter("operatorAllocatedBytes", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(operatorAllocatedBytes.get());
+            }
+        });
+
+        // #of queries halted for exceeding their resource limits.
+        root.addCounter("queryResourceLimitCount", new Instrument<Long>() {
+            @Override
+            public void sample() {
+                setValue(queryResourceLimitCount.get());
+            }
+        });
+
         return root;
 
     }
@@ -0,0 +1,77 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.engine;
+
+/**
+ * Exception thrown if a query is halted because it exceeded one of its
+ * {@link QueryResourceLimits}.
+ */
+public class QueryResourceLimitException extends RuntimeException {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of the limit which was exceeded.
+     * 
+     * @see QueryResourceLimits
+     */
+    public final String limit;
+
+    /**
+     * The configured value of that limit.
+     */
+    public final long maxValue;
+
+    /**
+     * The value which was observed for the query.
+     */
+    public final long value;
+
+    /**
+     * @param limit
+     *            The name of the limit which was exceeded.
+     * @param maxValue
+     *            The configured value of that limit.
+     * @param value
+     *            The value which was observed for the query.
+     */
+    public QueryResourceLimitException(final String limit,
+            final long maxValue, final long value) {
+
+        super("Query exceeded resource limit: " + limit + "=" + maxValue
+                + ", actual=" + value);
+
+        this.limit = limit;
+
+        this.maxValue = maxValue;
+
+        this.value = value;
+
+    }
+
+}
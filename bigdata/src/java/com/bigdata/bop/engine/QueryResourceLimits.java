@@ -0,0 +1,288 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.engine;
+
+import java.io.Serializable;
+
+/**
+ * Per-query resource limits. A query which exceeds any of these limits is
+ * halted with a {@link QueryResourceLimitException}. A limit of ZERO (0L)
+ * means that no limit is imposed for that resource.
+ * <p>
+ * The limits are attached to the top-level query plan using
+ * {@link QueryEngine.Annotations#RESOURCE_LIMITS} and are checked by the query
+ * controller each time an operator task halts and periodically while the query
+ * is running. The CPU time and the JVM heap allocation volume are only visible
+ * once an operator task has finished, so a single long running operator task
+ * can overshoot those limits. The native memory limit is also imposed on the
+ * {@link com.bigdata.rwstore.sector.IMemoryManager} for the query, so native
+ * memory allocations beyond that limit fail immediately.
+ */
+public class QueryResourceLimits implements Serializable {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum #of bytes of native memory which may be allocated by the
+     * query.
+     */
+    public static final String MAX_NATIVE_MEMORY = "maxNativeMemory";
+
+    /**
+     * The maximum #of bytes which may be allocated on the JVM heap by the
+     * operator tasks for the query. This is a budget on the allocation volume
+     * (the sum of all allocations made by the threads running those operator
+     * tasks, including objects which have since become garbage), not on the
+     * live heap retained by the query. Use {@link #MAX_NATIVE_MEMORY} and
+     * {@link #MAX_SOLUTIONS} to bound what the query retains.
+     * 
+     * @see ThreadResourceUsage#getCurrentThreadAllocatedBytes()
+     */
+    public static final String MAX_ALLOCATION_VOLUME = "maxAllocationVolume";
+
+    /**
+     * The maximum CPU time (milliseconds) which may be consumed by the
+     * operator tasks for the query.
+     */
+    public static final String MAX_CPU_TIME = "maxCpuTime";
+
+    /**
+     * The maximum #of solutions which may be produced by the query.
+     */
+    public static final String MAX_SOLUTIONS = "maxSolutions";
+
+    /**
+     * An instance which does not impose any limits.
+     */
+    public static final QueryResourceLimits NONE = new QueryResourceLimits(
+            0L, 0L, 0L, 0L);
+
+    private final long maxNativeMemory;
+    private final long maxAllocationVolume;
+    private final long maxCpuTime;
+    private final long maxSolutions;
+
+    /**
+     * 
+     * @param maxNativeMemory
+     *            The maximum #of bytes of native memory for the query.
+     * @param maxAllocationVolume
+     *            The maximum #of bytes allocated on the JVM heap for the
+     *            query (allocation volume, not live heap).
+     * @param maxCpuTime
+     *            The maximum CPU time (milliseconds) for the query.
+     * @param maxSolutions
+     *            The maximum #of solutions produced by the query.
+     * 
+     * @throws IllegalArgumentException
+     *             if any limit is negative.
+     */
+    public QueryResourceLimits(final long maxNativeMemory,
+            final long maxAllocationVolume, final long maxCpuTime,
+            final long maxSolutions) {
+
+        if (maxNativeMemory < 0L)
+            throw new IllegalArgumentException(MAX_NATIVE_MEMORY);
+
+        if (maxAllocationVolume < 0L)
+            throw new IllegalArgumentException(MAX_ALLOCATION_VOLUME);
+
+        if (maxCpuTime < 0L)
+            throw new IllegalArgumentException(MAX_CPU_TIME);
+
+        if (maxSolutions < 0L)
+            throw new IllegalArgumentException(MAX_SOLUTIONS);
+
+        this.maxNativeMemory = maxNativeMemory;
+        this.maxAllocationVolume = maxAllocationVolume;
+        this.maxCpuTime = maxCpuTime;
+        this.maxSolutions = maxSolutions;
+
+    }
+
+    /**
+     * @see #MAX_NATIVE_MEMORY
+     */
+    public long getMaxNativeMemory() {
+        return maxNativeMemory;
+    }
+
+    /**
+     * @see #MAX_ALLOCATION_VOLUME
+     */
+    public long getMaxAllocationVolume() {
+        return maxAllocationVolume;
+    }
+
+    /**
+     * @see #MAX_CPU_TIME
+     */
+    public long getMaxCpuTime() {
+        return maxCpuTime;
+    }
+
+    /**
+     * @see #MAX_SOLUTIONS
+     */
+    public long getMaxSolutions() {
+        return maxSolutions;
+    }
+
+    /**
+     * Return <code>true</code> iff no limits are imposed.
+     */
+    public boolean isUnlimited() {
+
+        return maxNativeMemory == 0L && maxAllocationVolume == 0L
+                && maxCpuTime == 0L && maxSolutions == 0L;
+
+    }
+
+    /**
+     * Return a new instance in which each limit given by the caller replaces
+     * the corresponding limit of this instance.
+     * 
+     * @param o
+     *            The overrides (optional). Only the non-zero limits are
+     *            applied.
+     */
+    public QueryResourceLimits override(final QueryResourceLimits o) {
+
+        if (o == null)
+            return this;
+
+        return new QueryResourceLimits(//
+                o.maxNativeMemory != 0L ? o.maxNativeMemory : maxNativeMemory,//
+                o.maxAllocationVolume != 0L ? o.maxAllocationVolume : maxAllocationVolume,//
+                o.maxCpuTime != 0L ? o.maxCpuTime : maxCpuTime,//
+                o.maxSolutions != 0L ? o.maxSolutions : maxSolutions//
+        );
+
+    }
+
+    /**
+     * Parse a comma delimited list of <code>name=value</code> pairs, e.g.,
+     * <code>maxSolutions=1000000,maxCpuTime=60000</code>. Limits which are not
+     * given are ZERO (no limit).
+     * 
+     * @param s
+     *            The string (may be empty).
+     * 
+     * @throws IllegalArgumentException
+     *             if a pair can not be parsed or names an unknown limit.
+     */
+    public static QueryResourceLimits parse(final String s) {
+
+        long maxNativeMemory = 0L, maxAllocationVolume = 0L, maxCpuTime = 0L, maxSolutions = 0L;
+
+        for (String pair : s.split(",")) {
+
+            pair = pair.trim();
+
+            if (pair.length() == 0)
+                continue;
+
+            final int pos = pair.indexOf('=');
+
+            if (pos == -1)
+                throw new IllegalArgumentException(
+                        "Expecting name=value, not: " + pair);
+
+            final String name = pair.substring(0, pos).trim();
+
+            final long value;
+            try {
+                value = Long.valueOf(pair.substring(pos + 1).trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(
+                        "Expecting name=value, not: " + pair);
+            }
+
+            if (MAX_NATIVE_MEMORY.equals(name)) {
+                maxNativeMemory = value;
+            } else if (MAX_ALLOCATION_VOLUME.equals(name)) {
+                maxAllocationVolume = value;
+            } else if (MAX_CPU_TIME.equals(name)) {
+                maxCpuTime = value;
+            } else if (MAX_SOLUTIONS.equals(name)) {
+                maxSolutions = value;
+            } else {
+                throw new IllegalArgumentException("Unknown limit: " + name);
+            }
+
+        }
+
+        return new QueryResourceLimits(maxNativeMemory, maxAllocationVolume,
+                maxCpuTime, maxSolutions);
+
+    }
+
+    /**
+     * Return the limits in the form accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+
+        return MAX_NATIVE_MEMORY + "=" + maxNativeMemory + ","
+                + MAX_ALLOCATION_VOLUME + "=" + maxAllocationVolume + ","
+                + MAX_CPU_TIME + "=" + maxCpuTime + "," + MAX_SOLUTIONS + "="
+                + maxSolutions;
+
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+        if (this == o)
+            return true;
+
+        if (!(o instanceof QueryResourceLimits))
+            return false;
+
+        final QueryResourceLimits t = (QueryResourceLimits) o;
+
+        return maxNativeMemory == t.maxNativeMemory
+                && maxAllocationVolume == t.maxAllocationVolume
+                && maxCpuTime == t.maxCpuTime
+                && maxSolutions == t.maxSolutions;
+
+    }
+
+    @Override
+    public int hashCode() {
+
+        long h = maxNativeMemory;
+        h = 31 * h + maxAllocationVolume;
+        h = 31 * h + maxCpuTime;
+        h = 31 * h + maxSolutions;
+
+        return (int) (h ^ (h >>> 32));
+
+    }
+
+}
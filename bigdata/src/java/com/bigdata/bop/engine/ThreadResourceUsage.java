@@ -0,0 +1,121 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reports the CPU time and the JVM heap allocations of the current thread.
+ * These are used to account for the resources consumed by the operator tasks
+ * of a query.
+ * <p>
+ * Note: The heap allocations are only available on JVMs which implement
+ * <code>com.sun.management.ThreadMXBean</code>. The CPU time is only available
+ * if the JVM supports and has enabled the thread CPU time measurement. Both
+ * methods report <code>-1L</code> when the measurement is not available.
+ */
+public class ThreadResourceUsage {
+
+    private static final transient Logger log = Logger
+            .getLogger(ThreadResourceUsage.class);
+
+    private static final ThreadMXBean threadMXBean;
+
+    /**
+     * <code>true</code> iff the thread CPU time may be measured.
+     */
+    private static final boolean cpuTimeSupported;
+
+    /**
+     * <code>true</code> iff the thread allocated bytes may be measured.
+     */
+    private static final boolean allocatedBytesSupported;
+
+    static {
+
+        ThreadMXBean bean = null;
+        boolean cpuTime = false;
+        boolean allocatedBytes = false;
+
+        try {
+
+            bean = ManagementFactory.getThreadMXBean();
+
+            cpuTime = bean.isCurrentThreadCpuTimeSupported()
+                    && bean.isThreadCpuTimeEnabled();
+
+            allocatedBytes = bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean)
+                            .isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) bean)
+                            .isThreadAllocatedMemoryEnabled();
+
+        } catch (Throwable t) {
+
+            log.warn("Thread resource usage not available: " + t);
+
+        }
+
+        threadMXBean = bean;
+        cpuTimeSupported = cpuTime;
+        allocatedBytesSupported = allocatedBytes;
+
+    }
+
+    private ThreadResourceUsage() {
+        // NOP
+    }
+
+    /**
+     * The CPU time (nanoseconds) of the current thread -or- <code>-1L</code>
+     * if this is not supported.
+     */
+    public static long getCurrentThreadCpuTime() {
+
+        if (!cpuTimeSupported)
+            return -1L;
+
+        return threadMXBean.getCurrentThreadCpuTime();
+
+    }
+
+    /**
+     * The #of bytes allocated on the JVM heap by the current thread -or-
+     * <code>-1L</code> if this is not supported.
+     */
+    public static long getCurrentThreadAllocatedBytes() {
+
+        if (!allocatedBytesSupported)
+            return -1L;
+
+        return ((com.sun.management.ThreadMXBean) threadMXBean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+
+    }
+
+}
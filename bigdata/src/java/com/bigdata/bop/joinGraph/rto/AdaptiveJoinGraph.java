@@ -0,0 +1,593 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.joinGraph.rto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpRTO;
+import com.bigdata.relation.IRelation;
+import com.bigdata.relation.accesspath.IAccessPath;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A checkpoint in a statically ordered join plan. The operator is placed
+ * after the leading joins of a join group and carries the remaining joins of
+ * that group as the vertices of a {@link JoinGraph}. The operator uses
+ * at-once evaluation, so it observes the actual cardinality of the
+ * intermediate result produced by the leading joins before any of the
+ * remaining joins are run. When that cardinality is within a
+ * {@link Annotations#RATIO} of the {@link Annotations#ESTIMATED_CARDINALITY}
+ * used by the static optimizer, the remaining joins are run in the static
+ * order. Otherwise the remaining joins are reordered using the fan-out of each
+ * access path as bound by a sample of the intermediate solutions and the
+ * intermediate solutions are flooded into the re-optimized join path.
+ * <p>
+ * Unlike the {@link JoinGraph}, this operator does not sample the join graph
+ * using cutoff joins. The re-optimization is a cheap greedy ordering based on
+ * fast range counts, so it is only worth while when the static estimate was
+ * badly wrong. The price of the checkpoint is that the intermediate result is
+ * buffered on the Java heap rather than pipelined into the remaining joins.
+ * That buffer is bounded by {@link Annotations#MAX_BUFFERED_SOLUTIONS}. If the
+ * leading joins produce more solutions than that, the checkpoint gives up and
+ * the remaining joins are run in the static order on successive blocks of the
+ * intermediate result.
+ */
+public class AdaptiveJoinGraph extends JoinGraph {
+
+    private static final transient Logger log = Logger
+            .getLogger(AdaptiveJoinGraph.class);
+
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends JoinGraph.Annotations {
+
+        /**
+         * The cardinality of the intermediate result flowing into this
+         * operator as estimated by the static optimizer (required).
+         */
+        String ESTIMATED_CARDINALITY = AdaptiveJoinGraph.class.getName()
+                + ".estimatedCardinality";
+
+        /**
+         * The remaining joins are reordered when the observed cardinality of
+         * the intermediate result differs from the
+         * {@link #ESTIMATED_CARDINALITY} by more than this factor (in either
+         * direction).
+         */
+        String RATIO = AdaptiveJoinGraph.class.getName() + ".ratio";
+
+        double DEFAULT_RATIO = 10d;
+
+        /**
+         * The maximum #of intermediate solutions that will be used to
+         * estimate the fan-out of the remaining access paths when the joins
+         * are reordered.
+         */
+        String SAMPLE_SIZE = AdaptiveJoinGraph.class.getName()
+                + ".sampleSize";
+
+        int DEFAULT_SAMPLE_SIZE = 100;
+
+        /**
+         * The maximum #of intermediate solutions which will be buffered on
+         * the Java heap at the checkpoint. When the leading joins produce more
+         * solutions than this, the remaining joins are run in the static order
+         * without observing the cardinality of the intermediate result.
+         */
+        String MAX_BUFFERED_SOLUTIONS = AdaptiveJoinGraph.class.getName()
+                + ".maxBufferedSolutions";
+
+        int DEFAULT_MAX_BUFFERED_SOLUTIONS = 100000;
+
+    }
+
+    /**
+     * {@link IQueryAttributes} names for the {@link AdaptiveJoinGraph}.
+     */
+    public interface Attributes extends JoinGraph.Attributes {
+
+        /**
+         * The observed cardinality of the intermediate result (output).
+         */
+        String OBSERVED_CARDINALITY = AdaptiveJoinGraph.class.getName()
+                + ".observedCardinality";
+
+        /**
+         * The bopIds of the vertices in the order in which they were
+         * executed (output).
+         */
+        String JOIN_ORDER = AdaptiveJoinGraph.class.getName() + ".joinOrder";
+
+    }
+
+    /**
+     * @see Annotations#ESTIMATED_CARDINALITY
+     */
+    public long getEstimatedCardinality() {
+
+        return (Long) getRequiredProperty(Annotations.ESTIMATED_CARDINALITY);
+
+    }
+
+    /**
+     * @see Annotations#RATIO
+     */
+    public double getRatio() {
+
+        return getProperty(Annotations.RATIO, Annotations.DEFAULT_RATIO);
+
+    }
+
+    /**
+     * @see Annotations#SAMPLE_SIZE
+     */
+    public int getSampleSize() {
+
+        return getProperty(Annotations.SAMPLE_SIZE,
+                Annotations.DEFAULT_SAMPLE_SIZE);
+
+    }
+
+    /**
+     * @see Annotations#MAX_BUFFERED_SOLUTIONS
+     */
+    public int getMaxBufferedSolutions() {
+
+        return getProperty(Annotations.MAX_BUFFERED_SOLUTIONS,
+                Annotations.DEFAULT_MAX_BUFFERED_SOLUTIONS);
+
+    }
+
+    /**
+     * Return the observed cardinality of the intermediate result -or-
+     * <code>null</code> if the operator has not been evaluated or if the
+     * intermediate result exceeded {@link Annotations#MAX_BUFFERED_SOLUTIONS}.
+     * 
+     * @see Attributes#OBSERVED_CARDINALITY
+     */
+    public Long getObservedCardinality(final IRunningQuery q) {
+
+        return (Long) q.getAttributes().get(
+                getId() + "-" + Attributes.OBSERVED_CARDINALITY);
+
+    }
+
+    /**
+     * Return the bopIds of the vertices in the order in which they were
+     * executed -or- <code>null</code> if the operator has not been evaluated.
+     * 
+     * @see Attributes#JOIN_ORDER
+     */
+    public int[] getJoinOrder(final IRunningQuery q) {
+
+        return (int[]) q.getAttributes().get(
+                getId() + "-" + Attributes.JOIN_ORDER);
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public AdaptiveJoinGraph(final AdaptiveJoinGraph op) {
+
+        super(op);
+
+    }
+
+    public AdaptiveJoinGraph(final BOp[] args, final NV... anns) {
+
+        this(args, NV.asMap(anns));
+
+    }
+
+    public AdaptiveJoinGraph(final BOp[] args, final Map<String, Object> anns) {
+
+        super(args, anns);
+
+        if (!isAtOnceEvaluation())
+            throw new IllegalArgumentException(Annotations.PIPELINED + "="
+                    + isPipelinedEvaluation());
+
+        assertMaxParallelOne();
+
+        getRequiredProperty(Annotations.ESTIMATED_CARDINALITY);
+
+        if (getRatio() < 1d)
+            throw new IllegalArgumentException(Annotations.RATIO);
+
+        if (getSampleSize() <= 0)
+            throw new IllegalArgumentException(Annotations.SAMPLE_SIZE);
+
+        if (getMaxBufferedSolutions() <= 0)
+            throw new IllegalArgumentException(
+                    Annotations.MAX_BUFFERED_SOLUTIONS);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new AdaptiveJoinGraphTask(context));
+
+    }
+
+    /**
+     * Return <code>true</code> iff the observed cardinality is within the
+     * given ratio of the estimated cardinality.
+     */
+    static boolean isWithinRatio(final long observed, final long estimated,
+            final double ratio) {
+
+        if (estimated < 0L) {
+
+            // No estimate, so there is nothing to correct.
+            return true;
+
+        }
+
+        return observed <= estimated * ratio && observed * ratio >= estimated;
+
+    }
+
+    /**
+     * Evaluation of an {@link AdaptiveJoinGraph}.
+     */
+    private class AdaptiveJoinGraphTask implements Callable<Void> {
+
+        private final BOpContext<IBindingSet> context;
+
+        AdaptiveJoinGraphTask(final BOpContext<IBindingSet> context) {
+
+            if (context == null)
+                throw new IllegalArgumentException();
+
+            this.context = context;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final IRunningQuery q = context.getRunningQuery();
+
+            final ICloseableIterator<IBindingSet[]> source = context
+                    .getSource();
+
+            final int maxBuffered = getMaxBufferedSolutions();
+
+            // Materialize the intermediate result (at-once evaluation).
+            final List<IBindingSet> buffer = new ArrayList<IBindingSet>();
+
+            if (!fill(source, context.getStats(), buffer, maxBuffered)) {
+
+                /*
+                 * The intermediate result is too large to buffer. Run the
+                 * remaining joins in the static order on each block of the
+                 * intermediate result.
+                 */
+
+                log.warn("Intermediate result exceeds maxBufferedSolutions="
+                        + maxBuffered + ": joins will not be reordered.");
+
+                final IPredicate<?>[] preds = getVertices();
+
+                q.getAttributes().put(getId() + "-" + Attributes.JOIN_ORDER,
+                        getIds(preds));
+
+                final PipelineOp queryOp = AST2BOpRTO.compileJoinGraph(
+                        q.getQueryEngine(), AdaptiveJoinGraph.this, preds);
+
+                setQueryPlan(q, queryOp);
+
+                boolean exhausted = false;
+
+                while (!buffer.isEmpty()) {
+
+                    runSubquery(context, queryOp,
+                            buffer.toArray(new IBindingSet[buffer.size()]));
+
+                    buffer.clear();
+
+                    if (!exhausted) {
+
+                        exhausted = fill(source, context.getStats(), buffer,
+                                maxBuffered);
+
+                    }
+
+                }
+
+                return null;
+
+            }
+
+            final IBindingSet[] bindingSets = buffer
+                    .toArray(new IBindingSet[buffer.size()]);
+
+            final long observed = bindingSets.length;
+
+            q.getAttributes().put(
+                    getId() + "-" + Attributes.OBSERVED_CARDINALITY, observed);
+
+            if (observed == 0L) {
+
+                // Nothing to join.
+                return null;
+
+            }
+
+            final long estimated = getEstimatedCardinality();
+
+            final IPredicate<?>[] preds;
+
+            if (isWithinRatio(observed, estimated, getRatio())) {
+
+                // Keep the static join order.
+                preds = getVertices();
+
+            } else {
+
+                // Reorder the remaining joins.
+                preds = reorder(context, getVertices(), bindingSets,
+                        getSampleSize());
+
+                if (log.isInfoEnabled())
+                    log.info("Reordered joins: estimated=" + estimated
+                            + ", observed=" + observed + ", order="
+                            + Arrays.toString(getIds(preds)));
+
+            }
+
+            q.getAttributes().put(getId() + "-" + Attributes.JOIN_ORDER,
+                    getIds(preds));
+
+            final PipelineOp queryOp = AST2BOpRTO.compileJoinGraph(
+                    q.getQueryEngine(), AdaptiveJoinGraph.this, preds);
+
+            setQueryPlan(q, queryOp);
+
+            // Run the remaining joins, blocking until they are done.
+            runSubquery(context, queryOp, bindingSets);
+
+            return null;
+
+        }
+
+    } // class AdaptiveJoinGraphTask
+
+    /**
+     * Add chunks from the source to the buffer until the buffer holds at
+     * least the given #of solutions or the source is exhausted.
+     * 
+     * @return <code>true</code> iff the source is exhausted.
+     */
+    private static boolean fill(final Iterator<IBindingSet[]> source,
+            final BOpStats stats, final List<IBindingSet> buffer,
+            final int maxBuffered) {
+
+        while (buffer.size() < maxBuffered && source.hasNext()) {
+
+            final IBindingSet[] chunk = source.next();
+
+            stats.chunksIn.increment();
+            stats.unitsIn.add(chunk.length);
+
+            buffer.addAll(Arrays.asList(chunk));
+
+        }
+
+        return !source.hasNext();
+
+    }
+
+    private static int[] getIds(final IPredicate<?>[] preds) {
+
+        final int[] ids = new int[preds.length];
+
+        for (int i = 0; i < preds.length; i++) {
+
+            ids[i] = preds[i].getId();
+
+        }
+
+        return ids;
+
+    }
+
+    /**
+     * Greedily order the vertices. Each vertex is assigned the average fast
+     * range count of its access path as bound by a sample of the intermediate
+     * solutions. At each step, the vertex with the smallest fan-out is chosen
+     * from among those vertices which share a variable with the variables
+     * already bound (vertices which do not share a variable are only chosen
+     * when there is no alternative since they would produce a cross product).
+     * 
+     * @param context
+     *            The evaluation context.
+     * @param vertices
+     *            The vertices to be ordered.
+     * @param bindingSets
+     *            The intermediate solutions.
+     * @param sampleSize
+     *            The maximum #of intermediate solutions to sample.
+     * 
+     * @return The ordered vertices.
+     */
+    static IPredicate<?>[] reorder(final BOpContext<IBindingSet> context,
+            final IPredicate<?>[] vertices, final IBindingSet[] bindingSets,
+            final int sampleSize) {
+
+        // Take an evenly spaced sample of the intermediate solutions.
+        final int stride = Math.max(1, bindingSets.length / sampleSize);
+
+        final List<IBindingSet> sample = new LinkedList<IBindingSet>();
+
+        for (int i = 0; i < bindingSets.length && sample.size() < sampleSize; i += stride) {
+
+            sample.add(bindingSets[i]);
+
+        }
+
+        // The variables bound by the intermediate solutions.
+        final Set<IVariable<?>> bound = new LinkedHashSet<IVariable<?>>();
+
+        for (IBindingSet bs : sample) {
+
+            @SuppressWarnings("rawtypes")
+            final Iterator<IVariable> itr = bs.vars();
+
+            while (itr.hasNext()) {
+
+                bound.add(itr.next());
+
+            }
+
+        }
+
+        // The average fan-out of each vertex.
+        final Map<Integer, Double> fanOut = new LinkedHashMap<Integer, Double>();
+
+        for (IPredicate<?> v : vertices) {
+
+            fanOut.put(v.getId(), fanOut(context, v, sample));
+
+        }
+
+        final List<IPredicate<?>> remaining = new LinkedList<IPredicate<?>>(
+                Arrays.asList(vertices));
+
+        final IPredicate<?>[] order = new IPredicate<?>[vertices.length];
+
+        for (int n = 0; n < order.length; n++) {
+
+            IPredicate<?> best = null;
+
+            boolean bestShared = false;
+
+            for (IPredicate<?> v : remaining) {
+
+                final boolean shared = sharesVariable(v, bound);
+
+                if (best == null
+                        || (shared && !bestShared)
+                        || (shared == bestShared && fanOut.get(v.getId()) < fanOut
+                                .get(best.getId()))) {
+
+                    best = v;
+
+                    bestShared = shared;
+
+                }
+
+            }
+
+            remaining.remove(best);
+
+            order[n] = best;
+
+            final Iterator<IVariable<?>> itr = BOpUtility
+                    .getArgumentVariables(best);
+
+            while (itr.hasNext()) {
+
+                bound.add(itr.next());
+
+            }
+
+        }
+
+        return order;
+
+    }
+
+    /**
+     * Return the average fast range count of the access path for the vertex
+     * as bound by each of the sampled solutions.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static double fanOut(final BOpContext<IBindingSet> context,
+            final IPredicate<?> v, final List<IBindingSet> sample) {
+
+        long sum = 0L;
+
+        for (IBindingSet bs : sample) {
+
+            final IPredicate asBound = v.asBound(bs);
+
+            final IRelation relation = context.getRelation(asBound);
+
+            final IAccessPath ap = context.getAccessPath(relation, asBound);
+
+            sum += ap.rangeCount(false/* exact */);
+
+        }
+
+        return sum / (double) sample.size();
+
+    }
+
+    private static boolean sharesVariable(final IPredicate<?> v,
+            final Set<IVariable<?>> bound) {
+
+        final Iterator<IVariable<?>> itr = BOpUtility.getArgumentVariables(v);
+
+        while (itr.hasNext()) {
+
+            if (bound.contains(itr.next()))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+}
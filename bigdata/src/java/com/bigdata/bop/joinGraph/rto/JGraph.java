@@ -30,6 +30,7 @@ package com.bigdata.bop.joinGraph.rto;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -38,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -246,6 +248,23 @@ public class JGraph {
      * The kind of samples that will be taken when we sample a {@link Vertex}.
      */
     private final SampleType sampleType;
+
+    /**
+     * The time (milliseconds) by which sampling must be done -or-
+     * {@link Long#MAX_VALUE} if sampling is not bounded.
+     * 
+     * @see JoinGraph#getMaxSamplingMillis()
+     */
+    private volatile long samplingDeadline = Long.MAX_VALUE;
+
+    /**
+     * Return <code>true</code> iff the sampling budget has been used up.
+     */
+    private boolean isSamplingDeadlineExceeded() {
+
+        return System.currentTimeMillis() >= samplingDeadline;
+
+    }
     
     public List<Vertex> getVertices() {
         return Collections.unmodifiableList(Arrays.asList(V));
@@ -480,6 +499,19 @@ public class JGraph {
         if (edgeSamples == null)
             throw new IllegalArgumentException();
 
+        /*
+         * The maximum amount of time that may be spent sampling (0L means no
+         * limit). When this is exceeded, the best path found so far is
+         * selected and the remaining vertices are appended to that path by
+         * getPredicates(Path).
+         */
+        final long maxSamplingMillis = joinGraph.getMaxSamplingMillis();
+
+        final long beginMillis = System.currentTimeMillis();
+
+        samplingDeadline = maxSamplingMillis > 0L ? beginMillis
+                + maxSamplingMillis : Long.MAX_VALUE;
+
         // Setup the join graph.
         Path[] paths = round0(queryEngine, limit, nedges);
 
@@ -503,6 +535,16 @@ public class JGraph {
 
         while (paths.length > 0 && round < nvertices - 1) {
 
+            if (isSamplingDeadlineExceeded()) {
+
+                log.warn("Sampling budget exceeded: round=" + round
+                        + ", npaths=" + paths.length + ", maxSamplingMillis="
+                        + maxSamplingMillis);
+
+                break;
+
+            }
+
             /*
              * Resample the paths.
              * 
@@ -541,6 +583,13 @@ public class JGraph {
 
                 }
 
+                if (isSamplingDeadlineExceeded()) {
+
+                    // Do not resample again.
+                    break;
+
+                }
+
                 /*
                  * Show information about the paths and the paths that are
                  * experiencing cardinality underflow.
@@ -562,7 +611,21 @@ public class JGraph {
             /*
              * Extend the paths by one vertex.
              */
-            paths = expand(queryEngine, limit, round++, paths, edgeSamples);
+            final Path[] expanded = expand(queryEngine, limit, round++, paths,
+                    edgeSamples);
+
+            if (expanded.length == 0 && isSamplingDeadlineExceeded()) {
+
+                /*
+                 * The sampling budget ran out before any path was extended in
+                 * this round. Keep the paths from the previous round rather
+                 * than concluding that there are no solutions.
+                 */
+                break;
+
+            }
+
+            paths = expanded;
 
         }
 
@@ -653,6 +716,87 @@ public class JGraph {
 
     }
 
+    /**
+     * Return the {@link IPredicate}s for all vertices of the join graph in the
+     * evaluation order given by the {@link Path}. If the {@link Path} does not
+     * cover all vertices (because the sampling budget was exhausted before the
+     * path was fully explored), then the remaining vertices are appended to
+     * the path. At each step, a vertex which shares a variable with the
+     * vertices already in the path is preferred, and ties are broken by the
+     * estimated cardinality of the vertex sample.
+     * 
+     * @param p
+     *            The selected join path.
+     * 
+     * @return The {@link IPredicate}s in evaluation order.
+     */
+    public IPredicate<?>[] getPredicates(final Path p) {
+
+        if (p == null)
+            throw new IllegalArgumentException();
+
+        final List<IPredicate<?>> preds = new LinkedList<IPredicate<?>>(
+                Arrays.asList(p.getPredicates()));
+
+        final List<Vertex> remaining = new LinkedList<Vertex>();
+
+        for (Vertex v : V) {
+
+            if (!p.contains(v))
+                remaining.add(v);
+
+        }
+
+        while (!remaining.isEmpty()) {
+
+            Vertex best = null;
+            boolean bestCanJoin = false;
+
+            for (Vertex v : remaining) {
+
+                boolean canJoin = false;
+
+                for (IPredicate<?> pred : preds) {
+
+                    if (!BOpUtility.getSharedVars(pred, v.pred).isEmpty()) {
+                        canJoin = true;
+                        break;
+                    }
+
+                }
+
+                if (best == null || (canJoin && !bestCanJoin)
+                        || (canJoin == bestCanJoin && estCard(v) < estCard(best))) {
+
+                    best = v;
+                    bestCanJoin = canJoin;
+
+                }
+
+            }
+
+            preds.add(best.pred);
+
+            remaining.remove(best);
+
+        }
+
+        return preds.toArray(new IPredicate<?>[preds.size()]);
+
+    }
+
+    /**
+     * The estimated cardinality of a vertex (or {@link Long#MAX_VALUE} if the
+     * vertex has not been sampled).
+     */
+    private static long estCard(final Vertex v) {
+
+        final VertexSample sample = v.sample;
+
+        return sample == null ? Long.MAX_VALUE : sample.estCard;
+
+    }
+
     /**
      * Return a permutation vector which may be used to reorder the given
      * {@link IPredicate}[] into the evaluation order selected by the
@@ -939,37 +1083,68 @@ public class JGraph {
          * surviving paths to share a join path prefix, so do not re-sample a
          * given path prefix more than once per round.
          * 
-         * FIXME PARALLELIZE: Parallelize the re-sampling for the active paths.
-         * This step is responsible for deepening the samples on the non-pruned
-         * paths. There is a data race that can occur since the [edgeSamples]
-         * map can contain samples for the same sequence of edges in different
-         * paths. This is because two paths can shared a common prefix sequence
-         * of edges, e.g., [2, 4, 6, 7] and [2, 4, 6, 9] share the path prefix
-         * [2, 4, 6]. Therefore both inspection and update of the [edgeSamples]
-         * map MUST be synchronized. This code is single threaded since that
-         * synchronization mechanism has not yet been put into place. The
-         * obvious way to handle this is to use a memoization pattern for the
-         * [ids] key for the [edgeSamples] map. This will ensure that the
-         * threads that need to resample a given edge will coordinate with the
-         * first such thread doing the resampling and the other thread(s)
-         * blocking until the resampled edge is available.
+         * Note: The paths are re-sampled in parallel. Two paths can share a
+         * common prefix sequence of edges, e.g., [2, 4, 6, 7] and [2, 4, 6, 9]
+         * share the path prefix [2, 4, 6], so the [edgeSamples] map can be
+         * inspected and updated for the same path segment by different
+         * threads. Each path segment is therefore re-sampled while holding a
+         * lock for its [ids]. The first thread to reach a path segment does
+         * the re-sampling and the other thread(s) block until the re-sampled
+         * edge is available.
+         * 
+         * Note: The paths which share a path segment can have different sample
+         * limits. The segment is re-sampled at the largest of those limits so
+         * the sample does not depend on the order in which the threads reach
+         * that segment.
          */
         if (log.isDebugEnabled())
             log.debug("Re-sampling in-use path segments.");
 
-        // #of paths with cardinality estimate underflow.
-        int nunderflow = 0;
+        // The sample limit for each path segment.
+        final Map<PathIds, Integer> limits = new HashMap<PathIds, Integer>();
+
+        for (Path x : a) {
+
+            final int limit = x.getNewLimit(limitIn);
+
+            for (int segmentLength = 2; segmentLength <= x.vertices.length; segmentLength++) {
+
+                final PathIds ids = new PathIds(BOpUtility.getPredIds(x
+                        .getPathSegment(segmentLength)));
+
+                final Integer tmp = limits.get(ids);
+
+                if (tmp == null || tmp.intValue() < limit)
+                    limits.put(ids, limit);
+
+            }
+
+        }
+
+        // Note: We will write on this from parallel threads.
+        final Map<PathIds, EdgeSample> samples = Collections
+                .synchronizedMap(edgeSamples);
+
+        // A lock for each path segment which is re-sampled in this round.
+        final ConcurrentHashMap<PathIds, Object> locks = new ConcurrentHashMap<PathIds, Object>();
+
         final List<Callable<Boolean>> tasks = new LinkedList<Callable<Boolean>>();
         for (Path x : a) {
 
-            tasks.add(new ResamplePathTask(queryEngine, x, limitIn, edgeSamples));
+            tasks.add(new ResamplePathTask(queryEngine, x, limits, samples,
+                    locks));
 
         } // next Path [x].
 
-        // Execute in the caller's thread.
-        for (Callable<Boolean> task : tasks) {
+        // Re-sample the paths in parallel.
+        final List<Future<Boolean>> futures = queryEngine.getIndexManager()
+                .getExecutorService().invokeAll(tasks);
 
-            if (task.call()) {
+        // #of paths with cardinality estimate underflow.
+        int nunderflow = 0;
+        for (Future<Boolean> f : futures) {
+
+            if (f.get()) {
 
                 nunderflow++;
 
@@ -992,21 +1167,39 @@ public class JGraph {
         
         private final QueryEngine queryEngine;
         private final Path x;
-        private final int limitIn;
+        private final Map<PathIds, Integer> limits;
         private final Map<PathIds, EdgeSample> edgeSamples;
+        private final ConcurrentHashMap<PathIds, Object> locks;
         
         public ResamplePathTask(final QueryEngine queryEngine, final Path x,
-                final int limitIn, final Map<PathIds, EdgeSample> edgeSamples) {
+                final Map<PathIds, Integer> limits,
+                final Map<PathIds, EdgeSample> edgeSamples,
+                final ConcurrentHashMap<PathIds, Object> locks) {
             this.queryEngine = queryEngine;
             this.x = x;
-            this.limitIn = limitIn;
+            this.limits = limits;
             this.edgeSamples = edgeSamples;
+            this.locks = locks;
+        }
+
+        /**
+         * Return the lock for a path segment.
+         */
+        private Object lock(final PathIds ids) {
+            final Object lock = new Object();
+            final Object tmp = locks.putIfAbsent(ids, lock);
+            return tmp == null ? lock : tmp;
         }
         
         @Override
         public Boolean call() throws Exception {    
+            if (isSamplingDeadlineExceeded()) {
+                // The path keeps its sample from the last round.
+                return false;
+            }
             /*
-             * Get the new sample limit for the path.
+             * Note: The sample limit for each path segment is the largest new
+             * limit of the paths which share that segment.
              * 
              * TODO We only need to increase the sample limit starting at the
              * vertex where we have a cardinality underflow or variability in
@@ -1014,7 +1207,6 @@ public class JGraph {
              * round of expansion, which means that we are reading more data
              * than we really need to read.
              */
-            final int limit = x.getNewLimit(limitIn);
 
             // The cutoff join sample of the one step shorter path segment.
             EdgeSample priorEdgeSample = null;
@@ -1025,100 +1217,113 @@ public class JGraph {
                 final PathIds ids = new PathIds(BOpUtility.getPredIds(x
                         .getPathSegment(segmentLength)));
 
-                // Look for sample for this path in our cache.
-                EdgeSample edgeSample = edgeSamples.get(ids);
+                // The sample limit for this path segment.
+                final int limit = limits.get(ids);
 
-                if (edgeSample != null && edgeSample.limit < limit
-                        && !edgeSample.isExact()) {
-                    if (log.isTraceEnabled())
-                        log.trace("Will resample at higher limit: " + ids);
-                    // Time to resample this edge.
-                    edgeSamples.remove(ids);
-                    edgeSample = null;
-                }
-
-                if (priorEdgeSample == null) {
+                /*
+                 * Note: Another path may be re-sampling the same path segment
+                 * concurrently.
+                 */
+                synchronized (lock(ids)) {
 
-                    /*
-                     * This is the first edge in the path.
-                     * 
-                     * Test our local table of join path segment estimates to
-                     * see if we have already re-sampled that edge. If not, then
-                     * re-sample it now.
-                     */
+                    // Look for sample for this path in our cache.
+                    EdgeSample edgeSample = edgeSamples.get(ids);
 
-                    assert segmentLength == 2;
+                    if (edgeSample != null && edgeSample.limit < limit
+                            && !edgeSample.isExact()) {
+                        if (log.isTraceEnabled())
+                            log.trace("Will resample at higher limit: " + ids);
+                        // Time to resample this edge.
+                        edgeSamples.remove(ids);
+                        edgeSample = null;
+                    }
 
-                    if (edgeSample == null) {
+                    if (priorEdgeSample == null) {
 
                         /*
-                         * Re-sample the 1st edge in the join path, updating the
-                         * sample on the edge as a side-effect. The cutoff
-                         * sample is based on the vertex sample for the minimum
-                         * cardinality vertex.
+                         * This is the first edge in the path.
+                         * 
+                         * Test our local table of join path segment estimates
+                         * to see if we have already re-sampled that edge. If
+                         * not, then re-sample it now.
                          */
 
-                        edgeSample = AST2BOpRTO.cutoffJoin(//
-                                queryEngine, //
-                                joinGraph, //
-                                limit,//
-                                x.getPathSegment(2),// 1st edge.
-                                C,// constraints
-                                V.length == 2,// pathIsComplete
-                                x.vertices[0].sample// source sample.
-                                );
+                        assert segmentLength == 2;
 
-                        // Cache the sample.
-                        if (edgeSamples.put(ids, edgeSample) != null)
-                            throw new AssertionError();
+                        if (edgeSample == null) {
 
-                    }
+                            /*
+                             * Re-sample the 1st edge in the join path, updating
+                             * the sample on the edge as a side-effect. The
+                             * cutoff sample is based on the vertex sample for
+                             * the minimum cardinality vertex.
+                             */
 
-                    // Save sample. It will be used to re-sample the next edge.
-                    priorEdgeSample = edgeSample;
+                            edgeSample = AST2BOpRTO.cutoffJoin(//
+                                    queryEngine, //
+                                    joinGraph, //
+                                    limit,//
+                                    x.getPathSegment(2),// 1st edge.
+                                    C,// constraints
+                                    V.length == 2,// pathIsComplete
+                                    x.vertices[0].sample// source sample.
+                                    );
 
-                } else {
+                            // Cache the sample.
+                            if (edgeSamples.put(ids, edgeSample) != null)
+                                throw new AssertionError();
 
-                    /*
-                     * The path segment is at least 3 vertices long.
-                     */
-                    assert ids.length() >= 3;
+                        }
+
+                        // Save sample. It is used to re-sample the next edge.
+                        priorEdgeSample = edgeSample;
 
-                    if (edgeSample == null) {
+                    } else {
 
                         /*
-                         * This is some N-step edge in the path, where N is
-                         * greater than ONE (1). The source vertex is the vertex
-                         * which already appears in the prior edges of this join
-                         * path. The target vertex is the next vertex which is
-                         * visited by the join path. The sample passed in is the
-                         * prior edge sample -- that is, the sample from the
-                         * path segment without the target vertex. This is the
-                         * sample that we just updated when we visited the prior
-                         * edge of the path.
+                         * The path segment is at least 3 vertices long.
                          */
+                        assert ids.length() >= 3;
+
+                        if (edgeSample == null) {
+
+                            /*
+                             * This is some N-step edge in the path, where N is
+                             * greater than ONE (1). The source vertex is the
+                             * vertex which already appears in the prior edges
+                             * of this join path. The target vertex is the next
+                             * vertex which is visited by the join path. The
+                             * sample passed in is the prior edge sample -- that
+                             * is, the sample from the path segment without the
+                             * target vertex. This is the sample that we just
+                             * updated when we visited the prior edge of the
+                             * path.
+                             */
+
+                            edgeSample = AST2BOpRTO.cutoffJoin(//
+                                    queryEngine,//
+                                    joinGraph,//
+                                    limit,//
+                                    x.getPathSegment(ids.length()),//
+                                    C, // constraints
+                                    V.length == ids.length(), // pathIsComplete
+                                    priorEdgeSample//
+                                    );
+
+                            if (log.isTraceEnabled())
+                                log.trace("Resampled: " + ids + " : "
+                                        + edgeSample);
+
+                            if (edgeSamples.put(ids, edgeSample) != null)
+                                throw new AssertionError();
 
-                        edgeSample = AST2BOpRTO.cutoffJoin(//
-                                queryEngine,//
-                                joinGraph,//
-                                limit,//
-                                x.getPathSegment(ids.length()),//
-                                C, // constraints
-                                V.length == ids.length(), // pathIsComplete
-                                priorEdgeSample//
-                                );
-
-                        if (log.isTraceEnabled())
-                            log.trace("Resampled: " + ids + " : " + edgeSample);
+                        }
 
-                        if (edgeSamples.put(ids, edgeSample) != null)
-                            throw new AssertionError();
+                        // Save sample. It is used to re-sample the next edge.
+                        priorEdgeSample = edgeSample;
 
                     }
 
-                    // Save sample. It will be used to re-sample the next edge.
-                    priorEdgeSample = edgeSample;
-
                 }
 
             } // next path prefix in Path [x]
@@ -1320,9 +1525,21 @@ public class JGraph {
             // The new set of paths to be explored as extensions to this path.
             final List<Path> tmp = new LinkedList<Path>();
             
+            // Set if the sampling budget ran out before all vertices were
+            // considered.
+            boolean cutoff = false;
+
             // Consider all vertices.
             for (Vertex tVertex : V) {
 
+                if (isSamplingDeadlineExceeded()) {
+
+                    // Do not sample any more extensions of this path.
+                    cutoff = true;
+                    break;
+
+                }
+
                 // Figure out which vertices are already part of this path.
                 final boolean vFound = x.contains(tVertex);
 
@@ -1390,7 +1607,7 @@ public class JGraph {
 
             } // next target vertex.
 
-            if (tmp.isEmpty()) {
+            if (tmp.isEmpty() && !cutoff) {
 
                 /*
                  * No constrained joins were identified as extensions of this
@@ -37,6 +37,7 @@ import com.bigdata.bop.BOp;
 import com.bigdata.bop.BOpContext;
 import com.bigdata.bop.BOpUtility;
 import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
 import com.bigdata.bop.IConstraint;
 import com.bigdata.bop.IPredicate;
 import com.bigdata.bop.IQueryAttributes;
@@ -179,7 +180,33 @@ public class JoinGraph extends PipelineOp {
          * the selected join path.
          */
         String NT = JoinGraph.class.getName() + ".nt";
-        
+
+        /**
+         * The maximum #of milliseconds which the RTO may spend sampling the
+         * join graph (default {@value #DEFAULT_MAX_SAMPLING_MILLIS}). When
+         * this budget is exhausted, the RTO stops extending the join paths,
+         * selects the best join path found so far, and appends any remaining
+         * vertices to that join path. A value of ZERO (0) means that the time
+         * spent sampling is not bounded.
+         */
+        String MAX_SAMPLING_MILLIS = JoinGraph.class.getName()
+                + ".maxSamplingMillis";
+
+        long DEFAULT_MAX_SAMPLING_MILLIS = 0L;
+
+        /**
+         * When <code>true</code>, the join order selected by the RTO is cached
+         * in the {@link JoinOrderCache} and reused by any {@link JoinGraph}
+         * having the same {@link JoinGraph#getQueryShape() shape} rather than
+         * sampling the data again (default {@value #DEFAULT_REUSE_PLAN}). The
+         * cache is not persistent and the shape includes the constants, so a
+         * join order is only reused within the same JVM and for the same
+         * constants.
+         */
+        String REUSE_PLAN = JoinGraph.class.getName() + ".reusePlan";
+
+        boolean DEFAULT_REUSE_PLAN = false;
+
 	}
 
     /**
@@ -261,6 +288,104 @@ public class JoinGraph extends PipelineOp {
 
 	}
 
+	/**
+	 * @see Annotations#MAX_SAMPLING_MILLIS
+	 */
+	public long getMaxSamplingMillis() {
+
+		return getProperty(Annotations.MAX_SAMPLING_MILLIS,
+				Annotations.DEFAULT_MAX_SAMPLING_MILLIS);
+
+	}
+
+	/**
+	 * @see Annotations#REUSE_PLAN
+	 */
+	public boolean isReusePlan() {
+
+		return getProperty(Annotations.REUSE_PLAN,
+				Annotations.DEFAULT_REUSE_PLAN);
+
+	}
+
+	/**
+	 * Return a string which captures the shape of the join graph: the
+	 * namespace of the KB and the variables, constants and operators of the
+	 * vertices and constraints, in order. The annotations (including the
+	 * timestamp of the view and the bop identifiers) are ignored, so two
+	 * executions of the same query have the same shape.
+	 * 
+	 * @see Annotations#REUSE_PLAN
+	 */
+	public String getQueryShape() {
+
+		final StringBuilder sb = new StringBuilder();
+
+		final NT nt = (NT) getProperty(Annotations.NT);
+
+		if (nt != null)
+			sb.append(nt.getName());
+
+		for (IPredicate<?> pred : getVertices()) {
+
+			sb.append(';');
+
+			shape(pred, sb);
+
+		}
+
+		final IConstraint[] constraints = getConstraints();
+
+		if (constraints != null) {
+
+			for (IConstraint c : constraints) {
+
+				sb.append(';');
+
+				shape(c, sb);
+
+			}
+
+		}
+
+		return sb.toString();
+
+	}
+
+	private static void shape(final BOp op, final StringBuilder sb) {
+
+		if (op instanceof IVariable) {
+
+			sb.append('?').append(((IVariable<?>) op).getName());
+
+		} else if (op instanceof IConstant) {
+
+			sb.append(((IConstant<?>) op).get());
+
+		} else {
+
+			sb.append(op.getClass().getName()).append('(');
+
+			for (int i = 0; i < op.arity(); i++) {
+
+				if (i > 0)
+					sb.append(',');
+
+				final BOp arg = op.get(i);
+
+				if (arg == null)
+					sb.append("null");
+				else
+					shape(arg, sb);
+
+			}
+
+			sb.append(')');
+
+		}
+
+	}
+
 	/**
 	 * @see Annotations#SAMPLE_TYPE
 	 */
@@ -339,7 +464,7 @@ public class JoinGraph extends PipelineOp {
 
     }
 
-    private void setQueryPlan(final IRunningQuery q,
+    void setQueryPlan(final IRunningQuery q,
             final PipelineOp queryPlan) {
         
         q.getAttributes().put(getId() + "-" + Attributes.QUERY_PLAN, queryPlan);
@@ -455,6 +580,32 @@ public class JoinGraph extends PipelineOp {
                  * concurrent evaluation, just like MAX_PARALLEL.
                  */
                 
+                /*
+                 * Reuse the join order selected for a join graph having the
+                 * same shape (if enabled and available).
+                 */
+                final String shape = isReusePlan() ? getQueryShape() : null;
+
+                if (shape != null) {
+
+                    final IPredicate<?>[] preds = JoinOrderCache.INSTANCE
+                            .get(shape, getVertices());
+
+                    if (preds != null) {
+
+                        setQueryPlan(context.getRunningQuery(),
+                                AST2BOpRTO.compileJoinGraph(context
+                                        .getRunningQuery().getQueryEngine(),
+                                        JoinGraph.this, preds));
+
+                    }
+
+                }
+
+            }
+
+            if (getQueryPlan(context.getRunningQuery()) == null) {
+
                 // final long begin = System.nanoTime();
 
                 // Create the join graph.
@@ -508,12 +659,25 @@ public class JoinGraph extends PipelineOp {
                 //
                 // final long elapsed_queryOptimizer = mark - begin;
 
+                /*
+                 * The join order. This includes any vertices which were not
+                 * explored before the sampling budget was exhausted.
+                 */
+                final IPredicate<?>[] preds = g.getPredicates(path);
+
+                if (isReusePlan()) {
+
+                    JoinOrderCache.INSTANCE.put(getQueryShape(), getVertices(),
+                            preds);
+
+                }
+
                 /*
                  * Generate the query from the selected join path.
                  */
                 final PipelineOp queryOp = AST2BOpRTO.compileJoinGraph(context
                         .getRunningQuery().getQueryEngine(), JoinGraph.this,
-                        path);
+                        preds);
 
                 // Set attribute for the join path samples.
                 setQueryPlan(context.getRunningQuery(), queryOp);
@@ -555,9 +719,37 @@ public class JoinGraph extends PipelineOp {
         if(parentContext==null)
             throw new IllegalArgumentException();
         
+        // Fully materialize the upstream solutions.
+        final IBindingSet[] bindingSets = BOpUtility.toArray(
+                parentContext.getSource(), parentContext.getStats());
+
+        runSubquery(parentContext, queryOp, bindingSets);
+
+    }
+
+    /**
+     * Execute the selected join path against the given upstream solutions.
+     * 
+     * @param parentContext
+     *            The evaluation context of the operator.
+     * @param queryOp
+     *            The query plan for the join path.
+     * @param bindingSets
+     *            The upstream solutions (already materialized).
+     */
+    static void runSubquery(final BOpContext<IBindingSet> parentContext,
+            final PipelineOp queryOp, final IBindingSet[] bindingSets)
+            throws Exception {
+
+        if(parentContext==null)
+            throw new IllegalArgumentException();
+        
         if(queryOp==null)
             throw new IllegalArgumentException();
         
+        if(bindingSets==null)
+            throw new IllegalArgumentException();
+        
         final QueryEngine queryEngine = parentContext.getRunningQuery()
                 .getQueryEngine();
 
@@ -567,10 +759,6 @@ public class JoinGraph extends PipelineOp {
 
         ICloseableIterator<IBindingSet[]> subquerySolutionItr = null;
 
-        // Fully materialize the upstream solutions.
-        final IBindingSet[] bindingSets = BOpUtility.toArray(
-                parentContext.getSource(), parentContext.getStats());
-
         /*
          * Run on all available upstream solutions.
          * 
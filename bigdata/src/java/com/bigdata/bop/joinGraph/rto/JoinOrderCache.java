@@ -0,0 +1,248 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.joinGraph.rto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bigdata.bop.IPredicate;
+
+/**
+ * A bounded LRU cache of the join orders selected by the runtime query
+ * optimizer. The key is the shape of the {@link JoinGraph} (see
+ * {@link JoinGraph#getQueryShape()}) and the value is a permutation of the
+ * vertices of the {@link JoinGraph}. When {@link JoinGraph.Annotations#REUSE_PLAN}
+ * is specified, a {@link JoinGraph} having the same shape as a join graph
+ * which was already optimized will reuse the join order selected for that join
+ * graph rather than sampling the data again.
+ * <p>
+ * Note: A cached join order is not invalidated when the data changes. Use
+ * {@link #clear()} after a bulk load which changes the distribution of the
+ * data.
+ * <p>
+ * Note: The cache is held in memory, so the join orders are lost when the JVM
+ * is restarted and must be selected again by sampling.
+ * <p>
+ * Note: The shape includes the constants of the join graph since the best
+ * join order depends on their selectivity. A join order is therefore only
+ * reused by a query having the same constants, not by the same query with
+ * different constants.
+ */
+public class JoinOrderCache {
+
+    /**
+     * The default capacity of the {@link #INSTANCE} (default 1000). The
+     * default may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.bop.joinGraph.rto.JoinOrderCache.capacity
+     * </pre>
+     */
+    public static final int DEFAULT_CAPACITY = Integer.valueOf(System
+            .getProperty(JoinOrderCache.class.getName() + ".capacity", "1000"));
+
+    /**
+     * The instance shared by all queries in the JVM.
+     */
+    public static final JoinOrderCache INSTANCE = new JoinOrderCache(
+            DEFAULT_CAPACITY);
+
+    private final LinkedHashMap<String, int[]> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            The maximum #of cached join orders.
+     */
+    public JoinOrderCache(final int capacity) {
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+
+        this.cache = new LinkedHashMap<String, int[]>(16, .75f, true/* accessOrder */) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, int[]> eldest) {
+
+                return size() > capacity;
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Return the cached join order for the vertices of a join graph.
+     * 
+     * @param shape
+     *            The shape of the join graph.
+     * @param vertices
+     *            The vertices of the join graph.
+     * 
+     * @return The vertices in the cached join order -or- <code>null</code> if
+     *         there is no cached join order for that shape.
+     */
+    public IPredicate<?>[] get(final String shape,
+            final IPredicate<?>[] vertices) {
+
+        final int[] order;
+
+        synchronized (cache) {
+
+            order = cache.get(shape);
+
+        }
+
+        if (order == null || order.length != vertices.length) {
+
+            missCount.incrementAndGet();
+
+            return null;
+
+        }
+
+        hitCount.incrementAndGet();
+
+        final IPredicate<?>[] a = new IPredicate<?>[order.length];
+
+        for (int i = 0; i < order.length; i++) {
+
+            a[i] = vertices[order[i]];
+
+        }
+
+        return a;
+
+    }
+
+    /**
+     * Cache the join order for the vertices of a join graph.
+     * 
+     * @param shape
+     *            The shape of the join graph.
+     * @param vertices
+     *            The vertices of the join graph.
+     * @param preds
+     *            The vertices of the join graph in the selected join order.
+     */
+    public void put(final String shape, final IPredicate<?>[] vertices,
+            final IPredicate<?>[] preds) {
+
+        if (preds.length != vertices.length)
+            throw new IllegalArgumentException();
+
+        final int[] order = new int[preds.length];
+
+        for (int i = 0; i < preds.length; i++) {
+
+            order[i] = -1;
+
+            for (int j = 0; j < vertices.length; j++) {
+
+                if (vertices[j].getId() == preds[i].getId()) {
+
+                    order[i] = j;
+
+                    break;
+
+                }
+
+            }
+
+            if (order[i] == -1)
+                throw new IllegalArgumentException("Not a vertex: "
+                        + preds[i]);
+
+        }
+
+        synchronized (cache) {
+
+            cache.put(shape, order);
+
+        }
+
+    }
+
+    /**
+     * The #of cached join orders.
+     */
+    public int size() {
+
+        synchronized (cache) {
+
+            return cache.size();
+
+        }
+
+    }
+
+    /**
+     * Discard all cached join orders.
+     */
+    public void clear() {
+
+        synchronized (cache) {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * The #of join graphs for which a cached join order was used.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * The #of join graphs for which there was no cached join order.
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{size=" + size() + ",hits="
+                + getHitCount() + ",misses=" + getMissCount() + "}";
+
+    }
+
+}
@@ -65,6 +65,7 @@ import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedureConstructor;
 import com.bigdata.btree.proc.IKeyRangeIndexProcedure;
 import com.bigdata.btree.proc.IResultHandler;
 import com.bigdata.btree.proc.ISimpleIndexProcedure;
+import com.bigdata.btree.raba.IRaba;
 import com.bigdata.btree.view.FusedView;
 import com.bigdata.cache.HardReferenceQueue;
 import com.bigdata.cache.HardReferenceQueueWithBatchingUpdates;
@@ -2391,6 +2392,179 @@ abstract public class AbstractBTree implements IIndex, IAutoboxBTree,
 
     }
 
+    /**
+     * Batch point lookup for an ordered key array. This has the same semantics
+     * as invoking {@link #lookup(byte[])} for each key, but it is designed for
+     * keys which are presented in index order. Rather than descending from the
+     * root for each key, the path from the root to the current leaf is retained
+     * together with the right separator key of each child on that path. For
+     * each successive key we only re-descend from the lowest ancestor whose
+     * child no longer spans the key. When the keys are dense with respect to
+     * the index this turns a sequence of random probes into a near-sequential
+     * scan of the leaves (one key comparison is sufficient to decide that the
+     * next key lies in the same leaf).
+     * <p>
+     * Duplicate keys are permitted (they must be adjacent since the keys are
+     * ordered) and are resolved once. Keys which are out of order are still
+     * handled correctly, but they force a new descent from the root.
+     *
+     * @param fromIndex
+     *            The index of the first key to be resolved.
+     * @param toIndex
+     *            The index of the first key which will not be resolved.
+     * @param keys
+     *            The keys (ordered, unsigned byte[] comparison).
+     * @param vals
+     *            The values are written into this array at the same index as
+     *            the corresponding key. A <code>null</code> is written if there
+     *            is no entry under a key, if the entry is a deleted version, or
+     *            if the entry has a <code>null</code> value.
+     *
+     * @see #lookup(byte[])
+     */
+    public void lookup(final int fromIndex, final int toIndex,
+            final IRaba keys, final byte[][] vals) {
+
+        if (keys == null)
+            throw new IllegalArgumentException();
+
+        if (vals == null)
+            throw new IllegalArgumentException();
+
+        if (fromIndex < 0 || fromIndex > toIndex || toIndex > keys.size()
+                || toIndex > vals.length)
+            throw new IllegalArgumentException();
+
+        final BloomFilter filter = getBloomFilter();
+
+        final Tuple tuple = getLookupTuple();
+
+        /*
+         * The path from the root to the current leaf. nodes[d] is the node at
+         * depth d and rightSep[d] is the separator key to the right of the
+         * child of that node which was followed (null if the child is the
+         * right-most child of its node).
+         */
+        final int height = getHeight();
+        final Node[] nodes = new Node[height];
+        final byte[][] rightSep = new byte[height][];
+
+        // The current leaf (null until the first descent).
+        Leaf leaf = null;
+
+        // The previous key (used to detect duplicates and ordering).
+        byte[] lastKey = null;
+
+        for (int i = fromIndex; i < toIndex; i++) {
+
+            final byte[] key = keys.get(i);
+
+            if (key == null)
+                throw new IllegalArgumentException();
+
+            // conditional range check on the key.
+            assert rangeCheck(key, false);
+
+            // depth from which we need to (re-)descend (-1 iff leaf is valid).
+            int depth = -1;
+
+            if (leaf == null) {
+
+                depth = 0;
+
+            } else {
+
+                final int cmp = BytesUtil.compareBytes(key, lastKey);
+
+                if (cmp == 0) {
+
+                    // Duplicate key : reuse the previous result.
+                    vals[i] = vals[i - 1];
+
+                    continue;
+
+                } else if (cmp < 0) {
+
+                    // Out of order key : descend from the root.
+                    depth = 0;
+
+                } else {
+
+                    /*
+                     * Find the shallowest ancestor whose child does not span
+                     * the key. The right separators are non-decreasing as we
+                     * ascend, so we can stop as soon as we find a child whose
+                     * right separator is GT the key.
+                     */
+                    for (int d = height - 1; d >= 0; d--) {
+
+                        if (rightSep[d] == null)
+                            continue;
+
+                        if (BytesUtil.compareBytes(key, rightSep[d]) < 0)
+                            break;
+
+                        depth = d;
+
+                    }
+
+                }
+
+            }
+
+            lastKey = key;
+
+            if (filter != null && !filter.contains(key)) {
+
+                // rejected by the bloom filter.
+                vals[i] = null;
+
+                continue;
+
+            }
+
+            if (depth != -1) {
+
+                // (Re-)descend to the leaf spanning the key.
+                AbstractNode<?> node = depth == 0 ? getRoot() : nodes[depth];
+
+                while (!node.isLeaf()) {
+
+                    final Node n = (Node) node;
+
+                    touch(n);
+
+                    final int index = n.findChild(key);
+
+                    nodes[depth] = n;
+
+                    rightSep[depth] = index < n.getKeyCount() ? n.getKeys()
+                            .get(index) : null;
+
+                    node = n.getChild(index);
+
+                    depth++;
+
+                }
+
+                leaf = (Leaf) node;
+
+            }
+
+            final Tuple t = leaf.lookup(key, tuple);
+
+            if (filter != null && (t == null || t.isDeletedVersion())) {
+
+                filter.falsePos();
+
+            }
+
+            vals[i] = t == null || t.isDeletedVersion() ? null : t.getValue();
+
+        }
+
+    }
+
     @Override
     public boolean contains(Object key) {
         
@@ -27,6 +27,7 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.btree.proc;
 
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.btree.IIndex;
 import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBuffer;
 import com.bigdata.btree.raba.codec.IRabaCoder;
@@ -120,14 +121,29 @@ public class BatchLookup extends AbstractKeyArrayIndexProcedure<ResultBuffer> im
         final int n = getKeyCount();
         
         final byte[][] ret = new byte[n][];
-        
-        int i = 0;
-        
-        while (i < n) {
 
-            ret[i] = ndx.lookup(getKey(i));
+        if (ndx instanceof AbstractBTree) {
+
+            /*
+             * Merge-style batch lookup. The keys are normally presented in
+             * index order, in which case the descent path is reused between
+             * consecutive keys.
+             */
+
+            ((AbstractBTree) ndx).lookup(0/* fromIndex */, n/* toIndex */,
+                    getKeys(), ret);
+
+        } else {
+
+            int i = 0;
+
+            while (i < n) {
+
+                ret[i] = ndx.lookup(getKey(i));
+
+                i++;
 
-            i++;
+            }
 
         }
         
@@ -1415,7 +1415,7 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
         if (rangeCount == -1L) {
     
             // do query and cache the result.
-            return rangeCount = ndx.rangeCount(fromKey, toKey);
+            return rangeCount = historicalRangeCount(ndx, fromKey, toKey);
 
         } else {
             
@@ -1426,6 +1426,26 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
 
     }
     
+    /**
+     * Return the fast range count for the key range of a historical read. The
+     * default implementation reads through to the index. Subclasses MAY
+     * override this to share range counts across access paths reading on the
+     * same commit point.
+     * 
+     * @param ndx
+     *            The index.
+     * @param fromKey
+     *            The inclusive lower bound.
+     * @param toKey
+     *            The exclusive upper bound.
+     */
+    protected long historicalRangeCount(final IIndex ndx,
+            final byte[] fromKey, final byte[] toKey) {
+
+        return ndx.rangeCount(fromKey, toKey);
+
+    }
+
 //    @Override
 //    final public ITupleIterator<R> rangeIterator() {
 //
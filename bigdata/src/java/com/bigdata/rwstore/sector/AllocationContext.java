@@ -153,7 +153,8 @@ public class AllocationContext implements IAllocationContext, IMemoryManager {//
 	@Override
 	public long allocate(final ByteBuffer data) {
 
-		return allocate(data, true/* blocks */);
+		// Use the allocation policy of the memory manager.
+		return allocate(data, m_root.isBlocking());
 
 	}
 	
@@ -176,7 +177,8 @@ public class AllocationContext implements IAllocationContext, IMemoryManager {//
 	@Override
 	public long allocate(final int nbytes) {
 
-		return allocate(nbytes, true/*blocks*/);
+		// Use the allocation policy of the memory manager.
+		return allocate(nbytes, m_root.isBlocking());
 
 	}
 	
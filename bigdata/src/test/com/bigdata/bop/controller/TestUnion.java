@@ -336,4 +336,56 @@ public class TestUnion extends TestCase2 {
 
     }
 
+    /**
+     * Verifies that a {@link Union} with the
+     * {@link Union.Annotations#BARRIER} annotation runs its subqueries for
+     * their side effects and passes each source solution through exactly once
+     * (rather than once per subquery).
+     * 
+     * @throws Exception
+     */
+    public void test_union_barrier() throws Exception {
+
+        final int startId1 = 1;
+        final int startId2 = 2;
+        final int startId3 = 3;
+        final int unionId = 4;
+
+        final BOp[] subqueries = new BOp[3];
+        {
+            final int[] ids = new int[] { startId1, startId2, startId3 };
+            for (int i = 0; i < ids.length; i++) {
+                subqueries[i] = new StartOp(new BOp[] {}, NV.asMap(new NV[] {//
+                        new NV(StartOp.Annotations.BOP_ID, ids[i]),//
+                        new NV(StartOp.Annotations.EVALUATION_CONTEXT,
+                                BOpEvaluationContext.CONTROLLER),//
+                        }));
+            }
+        }
+
+        final BOp unionOp = new Union(new BOp[] {}, NV
+                .asMap(new NV[] {//
+                        new NV(Union.Annotations.BOP_ID, unionId),//
+                        new NV(Union.Annotations.SUBQUERIES, subqueries),//
+                        new NV(Union.Annotations.BARRIER, true),//
+                }));
+
+        final BOp query = unionOp;
+
+        final IBindingSet bset = new ListBindingSet();
+        bset.set(Var.var("x"), new Constant<String>("John"));
+
+        // the source solution is passed through once.
+        final IBindingSet[] expected = new IBindingSet[] {//
+                bset,
+        };
+
+        final IRunningQuery runningQuery = queryEngine.eval(query, bset);
+
+        // verify solutions.
+        AbstractQueryEngineTestCase.assertSameSolutionsAnyOrder(expected,
+                runningQuery);
+
+    }
+
 }
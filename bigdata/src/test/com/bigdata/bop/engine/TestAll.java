@@ -99,6 +99,9 @@ public class TestAll extends TestCase {
         // test suite for query deadline ordering semantics.
         suite.addTestSuite(TestQueryDeadlineOrder.class);
 
+        // test suite for per-query resource limits.
+        suite.addTestSuite(TestQueryResourceLimits.class);
+
         // test suite for query evaluation (basic JOINs).
         suite.addTestSuite(TestQueryEngine.class);
 
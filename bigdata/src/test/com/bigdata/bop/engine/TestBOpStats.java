@@ -157,6 +157,8 @@ public class TestBOpStats extends TestCase2 {
         expected.unitsOut.add(6);
         expected.typeErrors.add(8);
         expected.mutationCount.add(7);
+        expected.cpuTime.add(9);
+        expected.allocatedBytes.add(10);
 
         doSerializationTest(expected);
         
@@ -193,6 +195,11 @@ public class TestBOpStats extends TestCase2 {
         assertEquals("mutationCount", expected.mutationCount.get(),
                 actual.mutationCount.get());
 
+        assertEquals("cpuTime", expected.cpuTime.get(), actual.cpuTime.get());
+
+        assertEquals("allocatedBytes", expected.allocatedBytes.get(),
+                actual.allocatedBytes.get());
+
     }
 
 }
@@ -0,0 +1,294 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.engine;
+
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.bset.StartOp;
+import com.bigdata.bop.solutions.SliceOp;
+import com.bigdata.journal.BufferMode;
+import com.bigdata.journal.Journal;
+import com.bigdata.util.InnerCause;
+
+/**
+ * Test suite for {@link QueryResourceLimits} and their enforcement by the
+ * {@link QueryEngine}.
+ */
+public class TestQueryResourceLimits extends AbstractQueryEngineTestCase {
+
+    public TestQueryResourceLimits() {
+    }
+
+    public TestQueryResourceLimits(final String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties p = new Properties(super.getProperties());
+
+        p.setProperty(Journal.Options.BUFFER_MODE, BufferMode.Transient
+                .toString());
+
+        return p;
+
+    }
+
+    private Journal jnl;
+    private QueryEngine queryEngine;
+
+    @Override
+    public void setUp() throws Exception {
+
+        jnl = new Journal(getProperties());
+
+        queryEngine = new QueryEngine(jnl);
+
+        queryEngine.init();
+
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+
+        if (queryEngine != null) {
+            queryEngine.shutdownNow();
+            queryEngine = null;
+        }
+
+        if (jnl != null) {
+            jnl.destroy();
+            jnl = null;
+        }
+
+    }
+
+    public void test_parse() {
+
+        final QueryResourceLimits limits = QueryResourceLimits
+                .parse(" maxSolutions = 1000, maxCpuTime=60000 ");
+
+        assertEquals(1000L, limits.getMaxSolutions());
+        assertEquals(60000L, limits.getMaxCpuTime());
+        assertEquals(0L, limits.getMaxAllocationVolume());
+        assertEquals(0L, limits.getMaxNativeMemory());
+        assertFalse(limits.isUnlimited());
+
+        // round trip through toString().
+        assertEquals(limits, QueryResourceLimits.parse(limits.toString()));
+
+        assertTrue(QueryResourceLimits.parse("").isUnlimited());
+
+        assertEquals(QueryResourceLimits.NONE, QueryResourceLimits.parse(""));
+
+        assertEquals(1048576L,
+                QueryResourceLimits.parse("maxAllocationVolume=1048576")
+                        .getMaxAllocationVolume());
+
+    }
+
+    public void test_parse_errors() {
+
+        try {
+            QueryResourceLimits.parse("maxSolutions");
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            QueryResourceLimits.parse("maxWidgets=12");
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+        try {
+            QueryResourceLimits.parse("maxSolutions=-1");
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * The non-zero limits of the overrides replace the corresponding limits.
+     */
+    public void test_override() {
+
+        final QueryResourceLimits defaults = QueryResourceLimits
+                .parse("maxSolutions=1000,maxCpuTime=60000");
+
+        final QueryResourceLimits actual = defaults.override(QueryResourceLimits
+                .parse("maxSolutions=10,maxNativeMemory=1048576"));
+
+        assertEquals(QueryResourceLimits
+                .parse("maxSolutions=10,maxCpuTime=60000,maxNativeMemory=1048576"),
+                actual);
+
+        assertSame(defaults, defaults.override(null));
+
+    }
+
+    /**
+     * A query which does not exceed its limits runs normally and reports the
+     * resources which it consumed.
+     */
+    public void test_withinLimits() throws Exception {
+
+        final IRunningQuery runningQuery = queryEngine.eval(UUID.randomUUID(),
+                newQuery(QueryResourceLimits.parse("maxSolutions=4")),
+                null/* queryAttributes */, newSources());
+
+        assertSameSolutionsAnyOrder(newSource(), runningQuery);
+
+        runningQuery.get();
+
+        final AbstractRunningQuery q = (AbstractRunningQuery) runningQuery;
+
+        assertEquals(4L, q.getSolutionCount());
+        assertTrue(q.getCpuTime() >= 0L);
+        assertTrue(q.getAllocatedBytes() >= 0L);
+        assertEquals(0L, q.getNativeMemoryBytes());
+
+    }
+
+    /**
+     * A query which produces more solutions than its limit is halted with a
+     * {@link QueryResourceLimitException}.
+     */
+    public void test_maxSolutions() throws Exception {
+
+        final long before = queryEngine.counters.queryResourceLimitCount.get();
+
+        final IRunningQuery runningQuery = queryEngine.eval(UUID.randomUUID(),
+                newQuery(QueryResourceLimits.parse("maxSolutions=2")),
+                null/* queryAttributes */, newSources());
+
+        try {
+            runningQuery.get();
+            fail("Expecting: " + QueryResourceLimitException.class);
+        } catch (ExecutionException ex) {
+            if (!InnerCause.isInnerCause(ex,
+                    QueryResourceLimitException.class)) {
+                fail("Expecting: " + QueryResourceLimitException.class, ex);
+            }
+            final QueryResourceLimitException cause = (QueryResourceLimitException) InnerCause
+                    .getInnerCause(ex, QueryResourceLimitException.class);
+            assertEquals(QueryResourceLimits.MAX_SOLUTIONS, cause.limit);
+            assertEquals(2L, cause.maxValue);
+            assertTrue(cause.value > 2L);
+        }
+
+        assertEquals(before + 1,
+                queryEngine.counters.queryResourceLimitCount.get());
+
+    }
+
+    /**
+     * A {@link SliceOp} over four source chunks, each of which is processed by
+     * a separate operator task.
+     */
+    private PipelineOp newQuery(final QueryResourceLimits limits) {
+
+        final int startId = 1;
+        final int sliceId = 2;
+
+        final StartOp startOp = new StartOp(new BOp[] {}, NV.asMap(new NV[] {//
+                new NV(BOp.Annotations.BOP_ID, startId),//
+                new NV(PipelineOp.Annotations.CHUNK_CAPACITY, 1),//
+                new NV(PipelineOp.Annotations.MAX_MESSAGES_PER_TASK, 1),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                }));
+
+        return new SliceOp(new BOp[] { startOp }, NV.asMap(new NV[] { //
+                new NV(BOp.Annotations.BOP_ID, sliceId),//
+                new NV(SliceOp.Annotations.OFFSET, 0L),//
+                new NV(SliceOp.Annotations.LIMIT, Long.MAX_VALUE),//
+                new NV(PipelineOp.Annotations.MAX_MESSAGES_PER_TASK, 1),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(PipelineOp.Annotations.SHARED_STATE, true),//
+                new NV(PipelineOp.Annotations.REORDER_SOLUTIONS, false),//
+                new NV(QueryEngine.Annotations.RESOURCE_LIMITS, limits),//
+                }));
+
+    }
+
+    private IBindingSet[] newSource() {
+
+        final IVariable<?> x = Var.var("x");
+
+        final IBindingSet[] source = new IBindingSet[4];
+
+        for (int i = 0; i < source.length; i++) {
+
+            source[i] = new ListBindingSet(new IVariable<?>[] { x },
+                    new IConstant<?>[] { new Constant<Integer>(i) });
+
+        }
+
+        return source;
+
+    }
+
+    /**
+     * Each source solution in a chunk by itself.
+     */
+    private IBindingSet[][] newSources() {
+
+        final IBindingSet[] source = newSource();
+
+        final IBindingSet[][] sources = new IBindingSet[source.length][];
+
+        for (int i = 0; i < sources.length; i++) {
+
+            sources[i] = new IBindingSet[] { source[i] };
+
+        }
+
+        return sources;
+
+    }
+
+}
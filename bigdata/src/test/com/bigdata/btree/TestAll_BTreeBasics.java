@@ -76,6 +76,8 @@ public class TestAll_BTreeBasics extends TestCase {
         suite.addTestSuite(TestLeafSplitShortestSeparatorKey.class);
         // test indexOf, keyAt, valueAt.
         suite.addTestSuite(TestLinearListMethods.class);
+        // test the merge-style batch lookup.
+        suite.addTestSuite(TestBatchLookup.class);
         // test getCounter()
         suite.addTestSuite(TestIndexCounter.class);
 
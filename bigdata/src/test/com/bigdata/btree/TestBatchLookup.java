@@ -0,0 +1,248 @@
+/**
+
+Copyright (C) SYSTAP, LLC 2006-2015.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@systap.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.btree;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBuffer;
+import com.bigdata.btree.proc.AbstractKeyArrayIndexProcedure.ResultBufferHandler;
+import com.bigdata.btree.proc.BatchLookup.BatchLookupConstructor;
+import com.bigdata.btree.raba.ReadOnlyKeysRaba;
+import com.bigdata.rawstore.SimpleMemoryRawStore;
+
+/**
+ * Test suite for the merge-style batch lookup
+ * {@link AbstractBTree#lookup(int, int, com.bigdata.btree.raba.IRaba, byte[][])}
+ * . The results are verified against point lookups for ordered keys, keys with
+ * duplicates, keys which are not in the index, and keys which are presented
+ * out of order.
+ */
+public class TestBatchLookup extends AbstractBTreeTestCase {
+
+    public TestBatchLookup() {
+    }
+
+    public TestBatchLookup(String name) {
+        super(name);
+    }
+
+    /**
+     * Batch lookup against an empty index.
+     */
+    public void test_batchLookup_emptyIndex() {
+
+        final BTree btree = newBTree(3/* m */, false/* deleteMarkers */);
+
+        final byte[][] keys = new byte[][] { i2k(1), i2k(2) };
+
+        final byte[][] vals = new byte[keys.length][];
+
+        btree.lookup(0, keys.length, new ReadOnlyKeysRaba(keys), vals);
+
+        assertNull(vals[0]);
+        assertNull(vals[1]);
+
+    }
+
+    /**
+     * Ordered keys (with duplicates and missing keys) against a tree with a
+     * small branching factor (many levels).
+     */
+    public void test_batchLookup_orderedKeys() {
+
+        doBatchLookupTest(3/* m */, 1000/* ntuples */, 500/* nprobes */,
+                true/* ordered */);
+
+        doBatchLookupTest(32/* m */, 10000/* ntuples */, 5000/* nprobes */,
+                true/* ordered */);
+
+    }
+
+    /**
+     * Unordered keys are still resolved correctly.
+     */
+    public void test_batchLookup_unorderedKeys() {
+
+        doBatchLookupTest(3/* m */, 1000/* ntuples */, 500/* nprobes */,
+                false/* ordered */);
+
+    }
+
+    /**
+     * Deleted tuples are reported as <code>null</code>.
+     */
+    public void test_batchLookup_deleteMarkers() {
+
+        final BTree btree = newBTree(3/* m */, true/* deleteMarkers */);
+
+        for (int i = 0; i < 100; i++) {
+
+            btree.insert(i2k(i), i2k(i));
+
+        }
+
+        for (int i = 0; i < 100; i += 2) {
+
+            btree.remove(i2k(i));
+
+        }
+
+        final byte[][] keys = new byte[100][];
+
+        for (int i = 0; i < 100; i++) {
+
+            keys[i] = i2k(i);
+
+        }
+
+        final byte[][] vals = new byte[keys.length][];
+
+        btree.lookup(0, keys.length, new ReadOnlyKeysRaba(keys), vals);
+
+        for (int i = 0; i < 100; i++) {
+
+            if (i % 2 == 0) {
+
+                assertNull(vals[i]);
+
+            } else {
+
+                assertEquals(i2k(i), vals[i]);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Verify that the procedure created by {@link BatchLookupConstructor}
+     * (which delegates to the batch lookup for a local B+Tree) reports the
+     * same values as point lookups.
+     */
+    public void test_batchLookupProcedure() {
+
+        final BTree btree = newBTree(3/* m */, false/* deleteMarkers */);
+
+        for (int i = 0; i < 200; i += 2) {
+
+            btree.insert(i2k(i), i2k(i));
+
+        }
+
+        final byte[][] keys = new byte[200][];
+
+        for (int i = 0; i < 200; i++) {
+
+            keys[i] = i2k(i);
+
+        }
+
+        final ResultBufferHandler handler = new ResultBufferHandler(
+                keys.length, btree.getIndexMetadata().getTupleSerializer()
+                        .getLeafValuesCoder());
+
+        btree.submit(0/* fromIndex */, keys.length/* toIndex */, keys,
+                null/* vals */, BatchLookupConstructor.INSTANCE, handler);
+
+        final ResultBuffer results = handler.getResult();
+
+        for (int i = 0; i < 200; i++) {
+
+            assertEquals(btree.lookup(keys[i]), results.getValues().get(i));
+
+        }
+
+    }
+
+    private void doBatchLookupTest(final int m, final int ntuples,
+            final int nprobes, final boolean ordered) {
+
+        final Random r = new Random();
+
+        final BTree btree = newBTree(m, false/* deleteMarkers */);
+
+        for (int i = 0; i < ntuples; i++) {
+
+            final int k = r.nextInt(ntuples * 2);
+
+            btree.insert(i2k(k), i2k(k));
+
+        }
+
+        final byte[][] keys = new byte[nprobes][];
+
+        for (int i = 0; i < nprobes; i++) {
+
+            if (i > 0 && r.nextInt(10) == 0) {
+
+                // duplicate key.
+                keys[i] = keys[i - 1];
+
+            } else {
+
+                keys[i] = i2k(r.nextInt(ntuples * 2));
+
+            }
+
+        }
+
+        if (ordered) {
+
+            Arrays.sort(keys, BytesUtil.UnsignedByteArrayComparator.INSTANCE);
+
+        }
+
+        final byte[][] vals = new byte[nprobes][];
+
+        btree.lookup(0, nprobes, new ReadOnlyKeysRaba(keys), vals);
+
+        for (int i = 0; i < nprobes; i++) {
+
+            assertEquals(btree.lookup(keys[i]), vals[i]);
+
+        }
+
+    }
+
+    /**
+     * Return a B+Tree backed by a transient store (nodes and leaves are
+     * evicted to the store, so the tree may be arbitrarily large).
+     */
+    private BTree newBTree(final int m, final boolean deleteMarkers) {
+
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        metadata.setBranchingFactor(m);
+
+        metadata.setDeleteMarkers(deleteMarkers);
+
+        return BTree.create(new SimpleMemoryRawStore(), metadata);
+
+    }
+
+}